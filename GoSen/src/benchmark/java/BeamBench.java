@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2004-2007 Sen Project
+ * Masanori Harada <harada@ingrid.org>
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.java.sen.SenFactory;
+import net.java.sen.dictionary.Sentence;
+import net.java.sen.dictionary.Token;
+import net.java.sen.dictionary.Viterbi;
+
+
+/**
+ * Compares the speed and accuracy of beam pruned analysis against exact
+ * analysis, for a range of beam widths and thresholds
+ */
+class BeamBench {
+
+	/**
+	 * Beam widths to measure, each alone
+	 */
+	private static final int[] WIDTHS = { 1, 2, 3, 4, 6, 8, 12, 16 };
+
+	/**
+	 * Beam thresholds to measure, each alone
+	 */
+	private static final int[] THRESHOLDS = { 500, 1000, 2000, 3000, 5000, 8000 };
+
+
+	/**
+	 * Analyses every sentence
+	 *
+	 * @param viterbi The Viterbi to analyse with
+	 * @param sentences The sentences to analyse
+	 * @return The tokens of each sentence
+	 * @throws IOException
+	 */
+	private static List<List<Token>> analyse(Viterbi viterbi, List<String> sentences) throws IOException {
+
+		List<List<Token>> results = new ArrayList<List<Token>>(sentences.size());
+
+		for (String sentence : sentences) {
+			results.add(viterbi.getBestTokens(new Sentence(sentence)));
+		}
+
+		return results;
+
+	}
+
+
+	/**
+	 * Creates a key identifying a token's position, length and
+	 * part-of-speech
+	 *
+	 * @param token The token
+	 * @return The key
+	 */
+	private static String tokenKey(Token token) {
+
+		return token.getStart() + ":" + token.getLength() + ":" + token.getMorpheme();
+
+	}
+
+
+	/**
+	 * Measures one beam setting and prints a line of results
+	 *
+	 * @param viterbi The Viterbi to analyse with
+	 * @param sentences The sentences to analyse
+	 * @param repeats The number of times to repeat the analysis
+	 * @param exact The results of exact analysis
+	 * @param exactTime The time taken by exact analysis in nanoseconds
+	 * @param label A description of the setting
+	 * @return The shortest time taken by one repeat in nanoseconds
+	 * @throws IOException
+	 */
+	private static long measure(Viterbi viterbi, List<String> sentences, int repeats, List<List<Token>> exact, long exactTime, String label) throws IOException {
+
+		List<List<Token>> results = analyse(viterbi, sentences);
+
+		long time = Long.MAX_VALUE;
+		for (int j = 0; j < repeats; j++) {
+			long startTime = System.nanoTime();
+			analyse(viterbi, sentences);
+			time = Math.min(time, System.nanoTime() - startTime);
+		}
+
+		int sentencesCorrect = 0;
+		long tokensExact = 0;
+		long tokensFound = 0;
+		long tokensCorrect = 0;
+		for (int i = 0; i < sentences.size(); i++) {
+			Set<String> exactKeys = new HashSet<String>();
+			for (Token token : exact.get(i)) {
+				exactKeys.add(tokenKey(token));
+			}
+			int correct = 0;
+			for (Token token : results.get(i)) {
+				if (exactKeys.contains(tokenKey(token))) {
+					correct++;
+				}
+			}
+			if ((correct == exactKeys.size()) && (correct == results.get(i).size())) {
+				sentencesCorrect++;
+			}
+			tokensExact += exactKeys.size();
+			tokensFound += results.get(i).size();
+			tokensCorrect += correct;
+		}
+
+		double precision = (tokensFound == 0) ? 1 : (double) tokensCorrect / tokensFound;
+		double recall = (tokensExact == 0) ? 1 : (double) tokensCorrect / tokensExact;
+		double f = ((precision + recall) == 0) ? 0 : 2 * precision * recall / (precision + recall);
+
+		System.out.println(String.format("%-22s %8.1f ms %6.2fx  sentences %6.2f%%  token F %6.2f%%",
+				label,
+				time / 1000000.0,
+				(exactTime == 0) ? 1.0 : (double) exactTime / time,
+				100.0 * sentencesCorrect / sentences.size(),
+				100.0 * f
+		));
+
+		return time;
+
+	}
+
+
+	/**
+	 * Main method
+	 *
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 4) {
+			System.out.println("usage: java BeamBench <config> <repeats> <encoding> file [file ..]");
+			System.exit(2);
+		}
+
+		String configFilename = args[0];
+		int repeats = Integer.parseInt(args[1]);
+		String encoding = args[2];
+
+		Viterbi viterbi = SenFactory.getViterbi(configFilename);
+
+		List<String> sentences = new ArrayList<String>();
+		for (int i = 3; i < args.length; i++) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(args[i]), encoding));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				sentences.add(line);
+			}
+			reader.close();
+		}
+
+		System.out.println("number of sentences: " + sentences.size());
+		System.out.println("number of repeats: " + repeats);
+
+		// Warm up every setting before measuring, so that no setting is
+		// measured before the others have been compiled
+		for (int j = 0; j < repeats; j++) {
+			analyse(viterbi, sentences);
+			for (int width : WIDTHS) {
+				viterbi.setBeamWidth(width);
+				analyse(viterbi, sentences);
+			}
+			viterbi.setBeamWidth(0);
+			for (int threshold : THRESHOLDS) {
+				viterbi.setBeamThreshold(threshold);
+				analyse(viterbi, sentences);
+			}
+			viterbi.setBeamThreshold(-1);
+		}
+
+		List<List<Token>> exact = analyse(viterbi, sentences);
+		long exactTime = measure(viterbi, sentences, repeats, exact, 0, "exact");
+
+		for (int width : WIDTHS) {
+			viterbi.setBeamWidth(width);
+			measure(viterbi, sentences, repeats, exact, exactTime, "width " + width);
+		}
+		viterbi.setBeamWidth(0);
+
+		for (int threshold : THRESHOLDS) {
+			viterbi.setBeamThreshold(threshold);
+			measure(viterbi, sentences, repeats, exact, exactTime, "threshold " + threshold);
+		}
+		viterbi.setBeamThreshold(-1);
+
+	}
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2004-2007 Sen Project
+ * Masanori Harada <harada@ingrid.org>
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.java.sen.SenFactory;
+import net.java.sen.dictionary.Sentence;
+import net.java.sen.dictionary.Viterbi;
+
+
+/**
+ * Compares the performance of the Node based and array based Viterbi lattices
+ */
+class LatticeBench {
+
+	/**
+	 * Analyses every sentence with either lattice
+	 *
+	 * @param viterbi The Viterbi to analyse with
+	 * @param sentences The sentences to analyse
+	 * @param compact <code>true</code> to use the array based lattice
+	 * @return The number of tokens found, to defeat dead code elimination
+	 * @throws IOException
+	 */
+	private static long analyse(Viterbi viterbi, List<Sentence> sentences, boolean compact) throws IOException {
+
+		long tokenCount = 0;
+
+		for (Sentence sentence : sentences) {
+			if (compact) {
+				tokenCount += viterbi.getBestTokensCompact(sentence).size();
+			} else {
+				tokenCount += viterbi.getBestTokens(sentence).size();
+			}
+		}
+
+		return tokenCount;
+
+	}
+
+
+	/**
+	 * Main method
+	 *
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 4) {
+			System.out.println("usage: java LatticeBench <config> <repeats> <encoding> file [file ..]");
+			System.exit(2);
+		}
+
+		String configFilename = args[0];
+		int repeats = Integer.parseInt(args[1]);
+		String encoding = args[2];
+
+		Viterbi viterbi = SenFactory.getViterbi(configFilename);
+
+		List<Sentence> sentences = new ArrayList<Sentence>();
+		long totalChars = 0;
+		for (int i = 3; i < args.length; i++) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(args[i]), encoding));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				sentences.add(new Sentence(line));
+				totalChars += line.length();
+			}
+			reader.close();
+		}
+
+		// Warm up both paths before measuring
+		for (int j = 0; j < repeats; j++) {
+			analyse(viterbi, sentences, false);
+			analyse(viterbi, sentences, true);
+		}
+
+		long nodeTime = 0;
+		long compactTime = 0;
+		for (int j = 0; j < repeats; j++) {
+			long startTime = System.nanoTime();
+			analyse(viterbi, sentences, false);
+			nodeTime += System.nanoTime() - startTime;
+
+			startTime = System.nanoTime();
+			analyse(viterbi, sentences, true);
+			compactTime += System.nanoTime() - startTime;
+		}
+
+		System.out.println("number of sentences: " + sentences.size());
+		System.out.println("number of chars: " + totalChars);
+		System.out.println("number of repeats: " + repeats);
+		System.out.println("node lattice: " + (nodeTime / 1000000) + " msec. (" + (totalChars * repeats * 1000000000L / nodeTime) + " chars/sec)");
+		System.out.println("array lattice: " + (compactTime / 1000000) + " msec. (" + (totalChars * repeats * 1000000000L / compactTime) + " chars/sec)");
+
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2004-2007 Sen Project
+ * Masanori Harada <harada@ingrid.org>
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import net.java.sen.SenFactory;
+import net.java.sen.StringTagger;
+
+
+/**
+ * Measures how batch analysis with {@link StringTagger#analyzeAll(List, ForkJoinPool)}
+ * scales with the number of threads
+ */
+class ParallelBench {
+
+	/**
+	 * Analyses every sentence one at a time on the calling thread
+	 *
+	 * @param tagger The StringTagger to analyse with
+	 * @param sentences The sentences to analyse
+	 * @return The number of tokens found, to defeat dead code elimination
+	 * @throws IOException
+	 */
+	private static long analyseSequential(StringTagger tagger, List<String> sentences) throws IOException {
+
+		long tokenCount = 0;
+
+		for (String sentence : sentences) {
+			tokenCount += tagger.analyze(sentence).size();
+		}
+
+		return tokenCount;
+
+	}
+
+
+	/**
+	 * Analyses every sentence as a single batch
+	 *
+	 * @param tagger The StringTagger to analyse with
+	 * @param sentences The sentences to analyse
+	 * @param pool The pool to analyse on
+	 * @return The number of tokens found, to defeat dead code elimination
+	 * @throws IOException
+	 */
+	private static long analyseBatch(StringTagger tagger, List<String> sentences, ForkJoinPool pool) throws IOException {
+
+		long tokenCount = 0;
+
+		for (List<?> tokens : tagger.analyzeAll(sentences, pool)) {
+			tokenCount += tokens.size();
+		}
+
+		return tokenCount;
+
+	}
+
+
+	/**
+	 * Main method
+	 *
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 5) {
+			System.out.println("usage: java ParallelBench <config> <max threads> <repeats> <encoding> file [file ..]");
+			System.exit(2);
+		}
+
+		String configFilename = args[0];
+		int maxThreads = Integer.parseInt(args[1]);
+		int repeats = Integer.parseInt(args[2]);
+		String encoding = args[3];
+
+		StringTagger tagger = SenFactory.getStringTagger(configFilename);
+
+		List<String> sentences = new ArrayList<String>();
+		long totalChars = 0;
+		for (int i = 4; i < args.length; i++) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(args[i]), encoding));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				sentences.add(line);
+				totalChars += line.length();
+			}
+			reader.close();
+		}
+
+		System.out.println("number of sentences: " + sentences.size());
+		System.out.println("number of chars: " + totalChars);
+		System.out.println("number of repeats: " + repeats);
+
+		for (int j = 0; j < repeats; j++) {
+			analyseSequential(tagger, sentences);
+		}
+		long startTime = System.nanoTime();
+		for (int j = 0; j < repeats; j++) {
+			analyseSequential(tagger, sentences);
+		}
+		long sequentialTime = System.nanoTime() - startTime;
+		System.out.println("sequential: " + (sequentialTime / 1000000) + " msec. (" + (totalChars * repeats * 1000000000L / sequentialTime) + " chars/sec)");
+
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+
+			for (int j = 0; j < repeats; j++) {
+				analyseBatch(tagger, sentences, pool);
+			}
+			startTime = System.nanoTime();
+			for (int j = 0; j < repeats; j++) {
+				analyseBatch(tagger, sentences, pool);
+			}
+			long batchTime = System.nanoTime() - startTime;
+
+			pool.shutdown();
+
+			System.out.println(threads + " threads: " + (batchTime / 1000000) + " msec. (" + (totalChars * repeats * 1000000000L / batchTime) + " chars/sec, "
+					+ "speedup " + String.format("%.2f", (double) sequentialTime / batchTime) + ")");
+		}
+
+	}
+
+}
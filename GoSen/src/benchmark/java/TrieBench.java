@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2004-2007 Sen Project
+ * Masanori Harada <harada@ingrid.org>
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import net.java.sen.trie.CharIterator;
+import net.java.sen.trie.MatchListener;
+import net.java.sen.trie.Trie;
+import net.java.sen.trie.TrieScanner;
+import net.java.sen.trie.TrieSearcher;
+
+
+/**
+ * Compares the size and search speed of Trie data files, either mapped or
+ * copied to the heap. Each mode is best measured in a separate run, so that
+ * neither affects how the other is compiled
+ */
+class TrieBench {
+
+	/**
+	 * A CharIterator over a range of a character array
+	 */
+	private static class ArrayIterator implements CharIterator {
+
+		/**
+		 * The characters
+		 */
+		private char[] characters;
+
+		/**
+		 * The index of the next character
+		 */
+		private int index;
+
+		/**
+		 * Restarts the iterator on a new range
+		 *
+		 * @param characters The characters
+		 * @param index The index of the first character
+		 */
+		void reset(char[] characters, int index) {
+
+			this.characters = characters;
+			this.index = index;
+
+		}
+
+		@Override
+		public boolean hasNext() {
+
+			return (this.index < this.characters.length);
+
+		}
+
+		@Override
+		public char next() throws NoSuchElementException {
+
+			return this.characters[this.index++];
+
+		}
+
+	}
+
+
+	/**
+	 * Searches from every position of every line
+	 *
+	 * @param searcher The searcher to use
+	 * @param lines The lines to search
+	 * @return The number of keys found, to defeat dead code elimination
+	 */
+	private static long search(TrieSearcher searcher, List<char[]> lines) {
+
+		ArrayIterator iterator = new ArrayIterator();
+		int[] results = new int[256];
+		long found = 0;
+
+		for (char[] line : lines) {
+			for (int i = 0; i < line.length; i++) {
+				iterator.reset(line, i);
+				found += searcher.commonPrefixSearch(iterator, results);
+			}
+		}
+
+		return found;
+
+	}
+
+
+	/**
+	 * Scans every line in a single pass
+	 *
+	 * @param scanner The scanner to use
+	 * @param lines The lines to scan
+	 * @return The number of keys found, to defeat dead code elimination
+	 */
+	private static long scan(TrieScanner scanner, List<char[]> lines) {
+
+		final long[] found = new long[1];
+		MatchListener listener = new MatchListener() {
+			@Override
+			public void match(int start, int length, int value) {
+				found[0]++;
+			}
+		};
+
+		for (char[] line : lines) {
+			scanner.scan(line, 0, line.length, listener);
+		}
+
+		return found[0];
+
+	}
+
+
+	/**
+	 * Main method
+	 *
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if ((args.length < 5) || !(args[3].equals("mapped") || args[3].equals("heap"))) {
+			System.out.println("usage: java TrieBench <repeats> <encoding> <text file> <mapped|heap> trie.sen [trie.sen ..]");
+			System.exit(2);
+		}
+
+		int repeats = Integer.parseInt(args[0]);
+		String encoding = args[1];
+		boolean onHeap = args[3].equals("heap");
+
+		List<char[]> lines = new ArrayList<char[]>();
+		long totalChars = 0;
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(args[2]), encoding));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lines.add(line.toCharArray());
+			totalChars += line.length();
+		}
+		reader.close();
+
+		System.out.println("number of lines: " + lines.size());
+		System.out.println("number of chars: " + totalChars);
+		System.out.println("number of repeats: " + repeats);
+
+		for (int i = 4; i < args.length; i++) {
+			File file = new File(args[i]);
+			RandomAccessFile trieFile = new RandomAccessFile(file, "r");
+			ByteBuffer buffer = trieFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, trieFile.length());
+			trieFile.close();
+
+			Trie trie = Trie.read(buffer, onHeap);
+			TrieSearcher searcher = new TrieSearcher(trie);
+			TrieScanner scanner = new TrieScanner(trie);
+
+			// Warm up before measuring, and report the fastest repeat
+			long found = 0;
+			for (int j = 0; j < repeats; j++) {
+				found += search(searcher, lines) + scan(scanner, lines);
+			}
+
+			long searchTime = Long.MAX_VALUE;
+			long scanTime = Long.MAX_VALUE;
+			for (int j = 0; j < repeats; j++) {
+				long startTime = System.nanoTime();
+				found += search(searcher, lines);
+				searchTime = Math.min(searchTime, System.nanoTime() - startTime);
+
+				startTime = System.nanoTime();
+				found += scan(scanner, lines);
+				scanTime = Math.min(scanTime, System.nanoTime() - startTime);
+			}
+
+			System.out.println(file + (onHeap ? " (heap)" : " (mapped)") + ": "
+					+ file.length() + " bytes, " + trie.size() + " nodes, alphabet " + trie.getAlphabetSize() + ", "
+					+ "search " + (totalChars * 1000000000L / searchTime) + " origins/sec, "
+					+ "scan " + (totalChars * 1000000000L / scanTime) + " chars/sec"
+					+ " [" + found + "]");
+		}
+
+	}
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Locates the dictionary and text used by the JMH benchmarks
+ *
+ * <p>Every benchmark takes the parameters <code>dictionary</code>, the
+ * filename of a dictionary configuration or container, and
+ * <code>corpus</code>, the filename of a UTF-8 text file analysed one line at
+ * a time. An empty <code>dictionary</code> selects the test dictionary from
+ * the classpath, and an empty <code>corpus</code> selects a small built in
+ * set of sentences
+ */
+public class BenchmarkSupport {
+
+	/**
+	 * The sentences analysed when no corpus is given
+	 */
+	private static final String[] DEFAULT_SENTENCES = new String[] {
+		"これはテストだ",
+		"麻薬の密売は根こそぎ絶やさなければならない",
+		"魔女狩大将マシュー・ホプキンス。",
+		"本来は、貧困層の女性や子供に医療保護を提供するために創設された制度である、",
+		"アメリカ低所得者医療援助制度が今日では、その予算の約３分の１を老人に費やしている。",
+		"ロンドン0171-123456へお電話ください。",
+		"「ファイナル・ファンタジー」のシリーズ第１作が発売されたのは1987年12月18日である。"
+	};
+
+
+	/**
+	 * Gets the filename of the dictionary to benchmark
+	 *
+	 * @param dictionary The <code>dictionary</code> parameter
+	 * @return The filename of the dictionary configuration or container
+	 * @throws IOException if the test dictionary is not on the classpath
+	 */
+	public static String getDictionaryFilename(String dictionary) throws IOException {
+
+		if (dictionary.length() > 0) {
+			return dictionary;
+		}
+
+		URL url = BenchmarkSupport.class.getResource("dictionary.xml");
+		if (url == null) {
+			throw new IOException("Test dictionary not found on the classpath; give a dictionary with -p dictionary=<file>");
+		}
+
+		return new File(url.getPath()).getAbsolutePath();
+
+	}
+
+
+	/**
+	 * Gets the sentences to benchmark
+	 *
+	 * @param corpus The <code>corpus</code> parameter
+	 * @return The non-empty lines of the corpus
+	 * @throws IOException
+	 */
+	public static List<String> getSentences(String corpus) throws IOException {
+
+		if (corpus.length() == 0) {
+			return Arrays.asList(DEFAULT_SENTENCES);
+		}
+
+		List<String> sentences = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(corpus), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.length() > 0) {
+					sentences.add(line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		if (sentences.isEmpty()) {
+			throw new IOException("Corpus \"" + corpus + "\" is empty");
+		}
+
+		return sentences;
+
+	}
+
+
+}
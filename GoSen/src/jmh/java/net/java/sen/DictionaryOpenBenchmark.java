@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.java.sen.dictionary.DictionaryContainer;
+import net.java.sen.dictionary.DictionaryHandle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks opening a dictionary, from its configuration file and from a
+ * single file container. Each operation opens the dictionary, analyses one
+ * sentence so that the first use is included, and closes it again, so that
+ * its files are mapped afresh by the next operation
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DictionaryOpenBenchmark {
+
+	/**
+	 * The dictionary configuration or container, or empty for the test
+	 * dictionary
+	 */
+	@Param("")
+	public String dictionary;
+
+	/**
+	 * The dictionary configuration filename, or <code>null</code> if the
+	 * dictionary was given as a container
+	 */
+	private String configurationFilename;
+
+	/**
+	 * The dictionary container filename
+	 */
+	private String containerFilename;
+
+	/**
+	 * <code>true</code> if the container was packed for the benchmark, and
+	 * should be deleted afterwards
+	 */
+	private boolean packed = false;
+
+
+	/**
+	 * Packs the dictionary into a temporary container if it was not given as
+	 * one
+	 *
+	 * @throws IOException
+	 */
+	@Setup
+	public void setUp() throws IOException {
+
+		String filename = BenchmarkSupport.getDictionaryFilename(this.dictionary);
+
+		if (DictionaryContainer.isContainer(new File(filename))) {
+			this.containerFilename = filename;
+		} else {
+			this.configurationFilename = filename;
+			File containerFile = File.createTempFile("dic", ".sen");
+			SenFactory.packDictionary(filename, containerFile.getAbsolutePath(), "");
+			this.containerFilename = containerFile.getAbsolutePath();
+			this.packed = true;
+		}
+
+	}
+
+
+	/**
+	 * Deletes the temporary container
+	 */
+	@TearDown
+	public void tearDown() {
+
+		if (this.packed) {
+			new File(this.containerFilename).delete();
+		}
+
+	}
+
+
+	/**
+	 * Opens, uses and closes a dictionary
+	 *
+	 * @param filename The dictionary configuration or container filename
+	 * @return The number of tokens found
+	 * @throws IOException
+	 */
+	private static int open(String filename) throws IOException {
+
+		DictionaryHandle handle = SenFactory.openDictionaryHandle(filename);
+		try {
+			return SenFactory.getStringTagger(handle).analyze("これはテストだ").size();
+		} finally {
+			handle.close();
+		}
+
+	}
+
+
+	/**
+	 * Opens the dictionary from its configuration file
+	 *
+	 * @return The number of tokens found
+	 * @throws IOException
+	 */
+	@Benchmark
+	public int openConfiguration() throws IOException {
+
+		if (this.configurationFilename == null) {
+			throw new IOException("Dictionary was given as a container");
+		}
+
+		return open(this.configurationFilename);
+
+	}
+
+
+	/**
+	 * Opens the dictionary from its container
+	 *
+	 * @return The number of tokens found
+	 * @throws IOException
+	 */
+	@Benchmark
+	public int openContainer() throws IOException {
+
+		return open(this.containerFilename);
+
+	}
+
+
+}
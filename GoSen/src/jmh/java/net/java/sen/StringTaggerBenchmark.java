@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.java.sen.dictionary.Token;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks end to end analysis with a {@link StringTagger}. Each operation
+ * analyses the next sentence of the corpus
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringTaggerBenchmark {
+
+	/**
+	 * The dictionary configuration or container, or empty for the test
+	 * dictionary
+	 */
+	@Param("")
+	public String dictionary;
+
+	/**
+	 * The UTF-8 corpus, or empty for the built in sentences
+	 */
+	@Param("")
+	public String corpus;
+
+	/**
+	 * The tagger to analyse with
+	 */
+	private StringTagger tagger;
+
+	/**
+	 * The sentences to analyse
+	 */
+	private List<String> sentences;
+
+	/**
+	 * The index of the next sentence to analyse
+	 */
+	private int index = 0;
+
+
+	/**
+	 * Opens the dictionary and reads the corpus
+	 *
+	 * @throws IOException
+	 */
+	@Setup
+	public void setUp() throws IOException {
+
+		this.tagger = SenFactory.getStringTagger(BenchmarkSupport.getDictionaryFilename(this.dictionary));
+		this.sentences = BenchmarkSupport.getSentences(this.corpus);
+
+	}
+
+
+	/**
+	 * Gets the next sentence to analyse
+	 *
+	 * @return The sentence
+	 */
+	private String nextSentence() {
+
+		String sentence = this.sentences.get(this.index);
+		this.index = (this.index + 1) % this.sentences.size();
+
+		return sentence;
+
+	}
+
+
+	/**
+	 * Analyses a sentence
+	 *
+	 * @return The tokens found
+	 * @throws IOException
+	 */
+	@Benchmark
+	public List<Token> analyze() throws IOException {
+
+		return this.tagger.analyze(nextSentence());
+
+	}
+
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen.dictionary;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.java.sen.BenchmarkSupport;
+import net.java.sen.SenFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks the phases of Viterbi analysis. Each operation analyses the next
+ * sentence of the corpus, either only looking up the candidate morphemes at
+ * each position as the lattice is built, or finding the best path through
+ * the {@link Node} lattice or the array based lattice. The difference between
+ * the lookup and the full analysis is the cost of connecting the lattice and
+ * creating the {@link Token}s
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ViterbiBenchmark {
+
+	/**
+	 * The dictionary configuration or container, or empty for the test
+	 * dictionary
+	 */
+	@Param("")
+	public String dictionary;
+
+	/**
+	 * The UTF-8 corpus, or empty for the built in sentences
+	 */
+	@Param("")
+	public String corpus;
+
+	/**
+	 * The handle holding the dictionary
+	 */
+	private DictionaryHandle handle;
+
+	/**
+	 * The Tokenizer used for lookups
+	 */
+	private Tokenizer tokenizer;
+
+	/**
+	 * The Viterbi used for analysis
+	 */
+	private Viterbi viterbi;
+
+	/**
+	 * The analysis context used for lookups
+	 */
+	private final AnalysisContext context = new AnalysisContext();
+
+	/**
+	 * The sentences to analyse
+	 */
+	private Sentence[] sentences;
+
+	/**
+	 * The index of the next sentence to analyse
+	 */
+	private int index = 0;
+
+
+	/**
+	 * Opens the dictionary and reads the corpus
+	 *
+	 * @throws IOException
+	 */
+	@Setup
+	public void setUp() throws IOException {
+
+		this.handle = SenFactory.openDictionaryHandle(BenchmarkSupport.getDictionaryFilename(this.dictionary));
+		this.tokenizer = this.handle.getTokenizer();
+		this.viterbi = new Viterbi(this.tokenizer);
+
+		List<String> sentences = BenchmarkSupport.getSentences(this.corpus);
+		this.sentences = new Sentence[sentences.size()];
+		for (int i = 0; i < this.sentences.length; i++) {
+			this.sentences[i] = new Sentence(sentences.get(i));
+		}
+
+	}
+
+
+	/**
+	 * Closes the dictionary
+	 */
+	@TearDown
+	public void tearDown() {
+
+		this.handle.close();
+
+	}
+
+
+	/**
+	 * Gets the next sentence to analyse
+	 *
+	 * @return The sentence
+	 */
+	private Sentence nextSentence() {
+
+		Sentence sentence = this.sentences[this.index];
+		this.index = (this.index + 1) % this.sentences.length;
+
+		return sentence;
+
+	}
+
+
+	/**
+	 * Looks up the candidate morphemes at every position of a sentence,
+	 * without connecting them
+	 *
+	 * @return The number of candidates found
+	 * @throws IOException
+	 */
+	@Benchmark
+	public int lookup() throws IOException {
+
+		Sentence sentence = nextSentence();
+		char[] surface = sentence.getArray();
+		SentenceIterator iterator = sentence.iterator();
+		int count = 0;
+
+		this.context.reset();
+		this.tokenizer.prepare(sentence, this.context);
+
+		while (iterator.hasNextOrigin()) {
+			iterator.nextOrigin();
+			for (Node node = this.tokenizer.lookup(iterator, surface, this.context); node != null; node = node.rnext) {
+				count++;
+			}
+		}
+
+		return count;
+
+	}
+
+
+	/**
+	 * Finds the best path through the {@link Node} lattice of a sentence
+	 *
+	 * @return The tokens found
+	 * @throws IOException
+	 */
+	@Benchmark
+	public List<Token> getBestTokens() throws IOException {
+
+		return this.viterbi.getBestTokens(nextSentence());
+
+	}
+
+
+	/**
+	 * Finds the best path through the array based lattice of a sentence
+	 *
+	 * @return The tokens found
+	 * @throws IOException
+	 */
+	@Benchmark
+	public List<Token> getBestTokensCompact() throws IOException {
+
+		return this.viterbi.getBestTokensCompact(nextSentence());
+
+	}
+
+
+	/**
+	 * Finds the best path through the array based lattice of a sentence,
+	 * returning it as primitive arrays without creating any Tokens
+	 *
+	 * @return The tokens found
+	 * @throws IOException
+	 */
+	@Benchmark
+	public TokenList getBestTokenList() throws IOException {
+
+		return this.viterbi.getBestTokenList(nextSentence());
+
+	}
+
+
+}
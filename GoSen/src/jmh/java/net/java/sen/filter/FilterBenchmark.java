@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen.filter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.java.sen.BenchmarkSupport;
+import net.java.sen.SenFactory;
+import net.java.sen.StringTagger;
+import net.java.sen.dictionary.Morpheme;
+import net.java.sen.dictionary.Token;
+import net.java.sen.filter.stream.CompositeTokenFilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks the post-processing of analysed {@link Token}s by a
+ * {@link CompositeTokenFilter}. The corpus is analysed once, and each
+ * operation filters a fresh copy of the {@link Token}s of the next sentence,
+ * as the filter alters the {@link Token}s it merges. The copy is made outside
+ * the measured operation
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+	/**
+	 * The composition rules applied
+	 */
+	private static final String RULES =
+			"名詞-数 名詞-数 名詞-数記号\n"
+			+ "名詞-固有名詞 名詞-固有名詞-一般 名詞-固有名詞-地域-一般 名詞-固有名詞-人名-姓 名詞-固有名詞-人名-名\n";
+
+	/**
+	 * The dictionary configuration or container, or empty for the test
+	 * dictionary
+	 */
+	@Param("")
+	public String dictionary;
+
+	/**
+	 * The UTF-8 corpus, or empty for the built in sentences
+	 */
+	@Param("")
+	public String corpus;
+
+	/**
+	 * The filter to apply
+	 */
+	private final CompositeTokenFilter filter = new CompositeTokenFilter();
+
+	/**
+	 * The analysed Tokens of each sentence
+	 */
+	private List<List<Token>> analysedTokens;
+
+	/**
+	 * The index of the next sentence to filter
+	 */
+	private int index = 0;
+
+	/**
+	 * A copy of the Tokens of the next sentence to filter
+	 */
+	private List<Token> tokens;
+
+
+	/**
+	 * Copies a list of Tokens and their Morphemes
+	 *
+	 * @param tokens The Tokens to copy
+	 * @return The copy
+	 */
+	private static List<Token> copy(List<Token> tokens) {
+
+		List<Token> copy = new ArrayList<Token>(tokens.size());
+
+		for (Token token : tokens) {
+			Morpheme morpheme = token.getMorpheme();
+			List<String> readings = morpheme.getReadings();
+			List<String> pronunciations = morpheme.getPronunciations();
+			copy.add(new Token(token.getSurface(), token.getCost(), token.getStart(), token.getLength(), new Morpheme(
+					morpheme.getPartOfSpeech(),
+					morpheme.getConjugationalType(),
+					morpheme.getConjugationalForm(),
+					morpheme.getBasicForm(),
+					readings.toArray(new String[readings.size()]),
+					pronunciations.toArray(new String[pronunciations.size()]),
+					morpheme.getAdditionalInformation()
+			)));
+		}
+
+		return copy;
+
+	}
+
+
+	/**
+	 * Reads the rules and analyses the corpus
+	 *
+	 * @throws IOException
+	 */
+	@Setup
+	public void setUp() throws IOException {
+
+		this.filter.readRules(new BufferedReader(new StringReader(RULES)));
+
+		StringTagger tagger = SenFactory.getStringTagger(BenchmarkSupport.getDictionaryFilename(this.dictionary));
+		this.analysedTokens = new ArrayList<List<Token>>();
+		for (String sentence : BenchmarkSupport.getSentences(this.corpus)) {
+			this.analysedTokens.add(tagger.analyze(sentence));
+		}
+
+	}
+
+
+	/**
+	 * Copies the Tokens of the next sentence
+	 */
+	@Setup(Level.Invocation)
+	public void nextSentence() {
+
+		this.tokens = copy(this.analysedTokens.get(this.index));
+		this.index = (this.index + 1) % this.analysedTokens.size();
+
+	}
+
+
+	/**
+	 * Filters the Tokens of a sentence
+	 *
+	 * @return The filtered Tokens
+	 */
+	@Benchmark
+	public List<Token> postProcess() {
+
+		return this.filter.postProcess(this.tokens);
+
+	}
+
+
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen.trie;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import net.java.sen.BenchmarkSupport;
+import net.java.sen.compiler.DictionaryFileNames;
+import net.java.sen.dictionary.DictionaryContainer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks searching a dictionary's Trie. Each operation finds the
+ * dictionary words at every position of the next sentence of the corpus,
+ * either with a {@link TrieSearcher#commonPrefixSearch(CharIterator, int[])}
+ * from each position or with a single pass of a {@link TrieScanner}
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrieBenchmark {
+
+	/**
+	 * The dictionary configuration or container, or empty for the test
+	 * dictionary
+	 */
+	@Param("")
+	public String dictionary;
+
+	/**
+	 * The UTF-8 corpus, or empty for the built in sentences
+	 */
+	@Param("")
+	public String corpus;
+
+	/**
+	 * <code>true</code> to copy the Trie's node data onto the heap
+	 */
+	@Param({"false", "true"})
+	public boolean onHeap;
+
+	/**
+	 * The searcher over the dictionary's Trie
+	 */
+	private TrieSearcher searcher;
+
+	/**
+	 * The scanner over the dictionary's Trie
+	 */
+	private TrieScanner scanner;
+
+	/**
+	 * The container the Trie was read from, or <code>null</code> if it was
+	 * read from a file
+	 */
+	private DictionaryContainer container = null;
+
+	/**
+	 * The sentences to search
+	 */
+	private char[][] sentences;
+
+	/**
+	 * The index of the next sentence to search
+	 */
+	private int index = 0;
+
+	/**
+	 * The iterator used to search from each position
+	 */
+	private final ArrayIterator iterator = new ArrayIterator();
+
+	/**
+	 * The buffer for search results
+	 */
+	private final int[] results = new int[256];
+
+	/**
+	 * Counts the matches found by the scanner
+	 */
+	private final CountingListener listener = new CountingListener();
+
+
+	/**
+	 * A CharIterator over an array of characters
+	 */
+	private static final class ArrayIterator implements CharIterator {
+
+		/**
+		 * The characters to iterate over
+		 */
+		private char[] characters;
+
+		/**
+		 * The index of the next character
+		 */
+		private int index;
+
+
+		/**
+		 * Resets the iterator
+		 *
+		 * @param characters The characters to iterate over
+		 * @param index The index of the first character
+		 */
+		void reset(char[] characters, int index) {
+
+			this.characters = characters;
+			this.index = index;
+
+		}
+
+
+		/* (non-Javadoc)
+		 * @see net.java.sen.trie.CharIterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext() {
+
+			return (this.index < this.characters.length);
+
+		}
+
+
+		/* (non-Javadoc)
+		 * @see net.java.sen.trie.CharIterator#next()
+		 */
+		@Override
+		public char next() throws NoSuchElementException {
+
+			if (this.index >= this.characters.length) {
+				throw new NoSuchElementException();
+			}
+
+			return this.characters[this.index++];
+
+		}
+
+	}
+
+
+	/**
+	 * A MatchListener that counts matches
+	 */
+	private static final class CountingListener implements MatchListener {
+
+		/**
+		 * The number of matches
+		 */
+		int count;
+
+
+		/* (non-Javadoc)
+		 * @see net.java.sen.trie.MatchListener#match(int, int, int)
+		 */
+		@Override
+		public void match(int start, int length, int value) {
+
+			this.count++;
+
+		}
+
+	}
+
+
+	/**
+	 * Reads the dictionary's Trie and the corpus
+	 *
+	 * @throws IOException
+	 */
+	@Setup
+	public void setUp() throws IOException {
+
+		File file = new File(BenchmarkSupport.getDictionaryFilename(this.dictionary));
+		ByteBuffer buffer;
+
+		if (DictionaryContainer.isContainer(file)) {
+			this.container = DictionaryContainer.open(file, false);
+			buffer = this.container.getSection(DictionaryContainer.TRIE_SECTION);
+		} else {
+			RandomAccessFile trieFile = new RandomAccessFile(new File(file.getParentFile(), DictionaryFileNames.TRIE_DATA_FILENAME), "r");
+			try {
+				buffer = trieFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, trieFile.length());
+			} finally {
+				trieFile.close();
+			}
+		}
+
+		Trie trie = Trie.read(buffer, this.onHeap);
+		this.searcher = new TrieSearcher(trie);
+		this.scanner = new TrieScanner(trie);
+
+		List<String> sentences = BenchmarkSupport.getSentences(this.corpus);
+		this.sentences = new char[sentences.size()][];
+		for (int i = 0; i < this.sentences.length; i++) {
+			this.sentences[i] = sentences.get(i).toCharArray();
+		}
+
+	}
+
+
+	/**
+	 * Closes the container the Trie was read from, if any
+	 */
+	@TearDown
+	public void tearDown() {
+
+		if (this.container != null) {
+			this.container.close();
+		}
+
+	}
+
+
+	/**
+	 * Gets the next sentence to search
+	 *
+	 * @return The sentence
+	 */
+	private char[] nextSentence() {
+
+		char[] sentence = this.sentences[this.index];
+		this.index = (this.index + 1) % this.sentences.length;
+
+		return sentence;
+
+	}
+
+
+	/**
+	 * Searches from every position of a sentence
+	 *
+	 * @return The number of matches
+	 */
+	@Benchmark
+	public int commonPrefixSearch() {
+
+		char[] sentence = nextSentence();
+		int count = 0;
+
+		for (int i = 0; i < sentence.length; i++) {
+			this.iterator.reset(sentence, i);
+			count += this.searcher.commonPrefixSearch(this.iterator, this.results);
+		}
+
+		return count;
+
+	}
+
+
+	/**
+	 * Scans a sentence in a single pass
+	 *
+	 * @return The number of matches
+	 */
+	@Benchmark
+	public int scan() {
+
+		char[] sentence = nextSentence();
+		this.listener.count = 0;
+
+		this.scanner.scan(sentence, 0, sentence.length, this.listener);
+
+		return this.listener.count;
+
+	}
+
+
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.java.sen.dictionary.Token;
+
+
+/**
+ * A bounded, least recently used cache of the results of analysis, keyed by
+ * the analysed text and the configuration it was analysed with. A cache may
+ * be given to a {@link StringTagger} with
+ * {@link StringTagger#setCache(AnalysisCache)}, and shared between any number
+ * of taggers
+ *
+ * <p>The cache may be limited by its number of entries, by the estimated
+ * memory used by its entries, or both. The estimate counts the characters of
+ * the text and of each {@link Token}'s surface, and a fixed overhead for each
+ * entry and {@link Token}; it does not count part-of-speech data shared with
+ * the {@link net.java.sen.dictionary.Dictionary}
+ *
+ * <p>The lists stored and returned are unmodifiable, and the {@link Token}s
+ * within them and their {@link net.java.sen.dictionary.Morpheme}s are shared
+ * by every caller that receives the same result. They must therefore be
+ * copied rather than altered
+ *
+ * <p><b>Thread Safety</b>: This class and all its public methods are thread
+ * safe
+ */
+public class AnalysisCache {
+
+	/**
+	 * The estimated memory used by an entry, excluding its text and tokens
+	 */
+	private static final long ENTRY_OVERHEAD = 96;
+
+	/**
+	 * The estimated memory used by a {@link Token}, excluding its surface
+	 */
+	private static final long TOKEN_OVERHEAD = 112;
+
+	/**
+	 * The maximum number of entries, or 0 for no limit
+	 */
+	private final int maxEntries;
+
+	/**
+	 * The maximum estimated memory used by the entries in bytes, or 0 for no
+	 * limit
+	 */
+	private final long maxBytes;
+
+	/**
+	 * The entries, in order of least recent use
+	 */
+	private final LinkedHashMap<Key,Entry> entries = new LinkedHashMap<Key,Entry>(16, 0.75f, true);
+
+	/**
+	 * The estimated memory used by the entries in bytes
+	 */
+	private long bytes = 0;
+
+	/**
+	 * The number of lookups that found an entry
+	 */
+	private long hitCount = 0;
+
+	/**
+	 * The number of lookups that found no entry
+	 */
+	private long missCount = 0;
+
+	/**
+	 * The number of entries removed to keep within the limits
+	 */
+	private long evictionCount = 0;
+
+
+	/**
+	 * The key of an entry
+	 */
+	private static final class Key {
+
+		/**
+		 * The analysed text
+		 */
+		private final String text;
+
+		/**
+		 * The configuration the text was analysed with
+		 */
+		private final Object configuration;
+
+		/**
+		 * The hash code of the key
+		 */
+		private final int hashCode;
+
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+
+			return this.hashCode;
+
+		}
+
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object object) {
+
+			if (!(object instanceof Key)) {
+				return false;
+			}
+
+			Key other = (Key) object;
+
+			return (this.hashCode == other.hashCode)
+					&& this.text.equals(other.text)
+					&& this.configuration.equals(other.configuration);
+
+		}
+
+
+		/**
+		 * @param text The analysed text
+		 * @param configuration The configuration the text was analysed with
+		 */
+		public Key(String text, Object configuration) {
+
+			this.text = text;
+			this.configuration = configuration;
+			this.hashCode = text.hashCode() * 31 + configuration.hashCode();
+
+		}
+
+	}
+
+
+	/**
+	 * An entry of the cache
+	 */
+	private static final class Entry {
+
+		/**
+		 * The result of analysis
+		 */
+		final List<Token> tokens;
+
+		/**
+		 * The estimated memory used by the entry in bytes
+		 */
+		final long bytes;
+
+
+		/**
+		 * @param tokens The result of analysis
+		 * @param bytes The estimated memory used by the entry in bytes
+		 */
+		public Entry(List<Token> tokens, long bytes) {
+
+			this.tokens = tokens;
+			this.bytes = bytes;
+
+		}
+
+	}
+
+
+	/**
+	 * Estimates the memory used by an entry
+	 *
+	 * @param text The analysed text
+	 * @param tokens The result of analysis
+	 * @return The estimated memory used in bytes
+	 */
+	private static long estimateBytes(String text, List<Token> tokens) {
+
+		long bytes = ENTRY_OVERHEAD + (2L * text.length()) + (8L * tokens.size());
+
+		for (Token token : tokens) {
+			String surface = token.getSurface();
+			bytes += TOKEN_OVERHEAD + ((surface == null) ? 0 : (2L * surface.length()));
+		}
+
+		return bytes;
+
+	}
+
+
+	/**
+	 * Removes the least recently used entries until the cache is within its
+	 * limits. Must be called with the cache's lock held
+	 */
+	private void evict() {
+
+		Iterator<Entry> iterator = this.entries.values().iterator();
+
+		while (iterator.hasNext()
+				&& (((this.maxEntries > 0) && (this.entries.size() > this.maxEntries))
+						|| ((this.maxBytes > 0) && (this.bytes > this.maxBytes))))
+		{
+			this.bytes -= iterator.next().bytes;
+			iterator.remove();
+			this.evictionCount++;
+		}
+
+	}
+
+
+	/**
+	 * Gets the cached result of analysing the given text with the given
+	 * configuration, marking it as most recently used
+	 *
+	 * @param text The analysed text
+	 * @param configuration The configuration the text was analysed with. Two
+	 *                      configurations are the same if they are equal
+	 * @return The unmodifiable result, or <code>null</code> if none is cached
+	 */
+	public synchronized List<Token> get(String text, Object configuration) {
+
+		Entry entry = this.entries.get(new Key(text, configuration));
+
+		if (entry == null) {
+			this.missCount++;
+			return null;
+		}
+
+		this.hitCount++;
+
+		return entry.tokens;
+
+	}
+
+
+	/**
+	 * Stores the result of analysing the given text with the given
+	 * configuration, replacing any existing result, and removes the least
+	 * recently used results as necessary to stay within the cache's limits.
+	 * The {@link Token}s' part-of-speech data is loaded before the result is
+	 * stored, so that it may be read from any thread
+	 *
+	 * @param text The analysed text
+	 * @param configuration The configuration the text was analysed with
+	 * @param tokens The result of analysis. The list is copied, but the
+	 *               {@link Token}s are not
+	 * @return An unmodifiable copy of the result, as it will be returned by
+	 *         {@link #get(String, Object)}
+	 */
+	public List<Token> put(String text, Object configuration, List<Token> tokens) {
+
+		for (Token token : tokens) {
+			token.getMorpheme().getPartOfSpeech();
+		}
+
+		List<Token> cachedTokens = Collections.unmodifiableList(new ArrayList<Token>(tokens));
+		Entry entry = new Entry(cachedTokens, estimateBytes(text, tokens));
+
+		synchronized (this) {
+			Entry oldEntry = this.entries.put(new Key(text, configuration), entry);
+			if (oldEntry != null) {
+				this.bytes -= oldEntry.bytes;
+			}
+			this.bytes += entry.bytes;
+			evict();
+		}
+
+		return cachedTokens;
+
+	}
+
+
+	/**
+	 * Removes every entry. The counters are not reset
+	 */
+	public synchronized void clear() {
+
+		this.entries.clear();
+		this.bytes = 0;
+
+	}
+
+
+	/**
+	 * Gets the current number of entries
+	 *
+	 * @return The number of entries
+	 */
+	public synchronized int size() {
+
+		return this.entries.size();
+
+	}
+
+
+	/**
+	 * Gets the estimated memory used by the current entries
+	 *
+	 * @return The estimated memory used in bytes
+	 */
+	public synchronized long getEstimatedBytes() {
+
+		return this.bytes;
+
+	}
+
+
+	/**
+	 * Gets the number of lookups that found an entry
+	 *
+	 * @return The number of hits
+	 */
+	public synchronized long getHitCount() {
+
+		return this.hitCount;
+
+	}
+
+
+	/**
+	 * Gets the number of lookups that found no entry
+	 *
+	 * @return The number of misses
+	 */
+	public synchronized long getMissCount() {
+
+		return this.missCount;
+
+	}
+
+
+	/**
+	 * Gets the proportion of lookups that found an entry
+	 *
+	 * @return The hit ratio, from 0 to 1, or 0 if there have been no lookups
+	 */
+	public synchronized double getHitRatio() {
+
+		long lookups = this.hitCount + this.missCount;
+
+		return (lookups == 0) ? 0 : ((double) this.hitCount / lookups);
+
+	}
+
+
+	/**
+	 * Gets the number of entries removed to keep within the cache's limits.
+	 * Entries replaced or removed by {@link #clear()} are not counted
+	 *
+	 * @return The number of evictions
+	 */
+	public synchronized long getEvictionCount() {
+
+		return this.evictionCount;
+
+	}
+
+
+	/**
+	 * Creates a cache limited only by its number of entries
+	 *
+	 * @param maxEntries The maximum number of entries
+	 */
+	public AnalysisCache(int maxEntries) {
+
+		this(maxEntries, 0);
+
+	}
+
+
+	/**
+	 * Creates a cache limited by its number of entries, its estimated memory
+	 * use, or both
+	 *
+	 * @param maxEntries The maximum number of entries, or 0 for no limit
+	 * @param maxBytes The maximum estimated memory used by the entries in
+	 *                 bytes, or 0 for no limit
+	 */
+	public AnalysisCache(int maxEntries, long maxBytes) {
+
+		if ((maxEntries < 0) || (maxBytes < 0) || ((maxEntries == 0) && (maxBytes == 0))) {
+			throw new IllegalArgumentException("Invalid cache limits");
+		}
+
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+
+	}
+
+
+}
@@ -27,12 +27,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+import net.java.sen.dictionary.AnalysisListener;
 import net.java.sen.dictionary.Reading;
 import net.java.sen.dictionary.Sentence;
 import net.java.sen.dictionary.Token;
+import net.java.sen.dictionary.DictionaryHandle;
 import net.java.sen.dictionary.Tokenizer;
 import net.java.sen.dictionary.Viterbi;
 import net.java.sen.filter.ReadingFilter;
@@ -55,12 +55,6 @@ import net.java.sen.util.TextUtil;
  */
 public class ReadingProcessor {
 
-	/**
-	 * A pattern used to ensure that text is treated as literal fixed strings
-	 * within a Pattern
-	 */
-	private static Pattern patternSpecialCharsPattern = Pattern.compile("([^a-zA-z0-9])");
-
 	/**
 	 * A map of reading filters to be applied in order of their integer keys
 	 */
@@ -82,6 +76,20 @@ public class ReadingProcessor {
 	 */
 	private boolean needsAnalysis = true;
 
+	/**
+	 * The earliest position at which the sentence has changed since its last
+	 * analysis. Valid only when <code>needsAnalysis</code> is
+	 * <code>true</code>
+	 */
+	private int changeStart = 0;
+
+	/**
+	 * One greater than the last position at which the sentence has changed
+	 * since its last analysis. Valid only when <code>needsAnalysis</code> is
+	 * <code>true</code>
+	 */
+	private int changeEnd = 0;
+
 	/**
 	 * The currently analysed tokens
 	 */
@@ -249,15 +257,15 @@ public class ReadingProcessor {
 
 
 	/**
-	 * Escapes text to ensure that it is treated as literal fixed strings
-	 * within a Pattern
+	 * Determines whether a character is a kanji
 	 *
-	 * @param input The text to escape
-	 * @return The escaped text
+	 * @param c The character
+	 * @return <code>true</code> if the character is a kanji, otherwise
+	 *         <code>false</code>
 	 */
-	private String escapePatternSpecialChars(String input) {
+	private static boolean isKanji(char c) {
 
-		return patternSpecialCharsPattern.matcher(input).replaceAll("\\\\$1");
+		return (Character.UnicodeBlock.of(c) == UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS);
 
 	}
 
@@ -272,57 +280,87 @@ public class ReadingProcessor {
 	 * @return A list of readings, or <code>null</code> if a match could not be found
 	 */
 	private List<Reading> splitComplexToken(String text, String reading, int tokenStart) {
-	
+
 		List<Reading> tokenReadings = new ArrayList<Reading>();
 
-		// Split the source text on kanji/kana boundaries 
-		List<String> fragments = new ArrayList<String>();
-		boolean fragmentIsKanji = (Character.UnicodeBlock.of(text.charAt(0)) == UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS);
-		boolean firstFragmentIsKanji = fragmentIsKanji;
-		int fragmentStart = 0;
-		for (int i = 1; i < text.length(); i++) {
-			boolean newIsKanji = (Character.UnicodeBlock.of(text.charAt(i)) == UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS);
-			if (fragmentIsKanji != newIsKanji) {
-				fragments.add(text.substring(fragmentStart, i));
-				fragmentStart = i;
-				fragmentIsKanji = newIsKanji;
-			}
+		if (!alignReading(text, 0, reading, 0, tokenStart, tokenReadings)) {
+			return null;
 		}
-		fragments.add(text.substring(fragmentStart, text.length()));
-
-		// Find a way to split the reading to match the source text
-		String regexp = "^";
-		fragmentIsKanji = firstFragmentIsKanji;
-		for (String fragment : fragments) {
-			if (fragmentIsKanji) {
-				regexp += "(.*?)";
-			} else {
-				regexp += "(" + escapePatternSpecialChars(fragment) + ")";
+
+		return tokenReadings;
+
+	}
+
+
+	/**
+	 * Aligns the remainder of a reading with the remainder of a token's text,
+	 * splitting the text on kanji/non-kanji boundaries. Each non-kanji
+	 * fragment must appear literally in the reading, and each kanji fragment
+	 * takes the text of the reading between them. Where more than one
+	 * alignment is possible, the earliest kanji fragments take the shortest
+	 * readings
+	 *
+	 * @param text The source text
+	 * @param textPosition The start of the remainder of the source text, at
+	 *                     the start of a fragment
+	 * @param reading The reading to apply
+	 * @param readingPosition The start of the remainder of the reading
+	 * @param tokenStart The starting index of the token within the sentence
+	 * @param tokenReadings Receives a reading for each kanji fragment
+	 * @return <code>true</code> if an alignment was found, otherwise
+	 *         <code>false</code>, in which case <code>tokenReadings</code> is
+	 *         unchanged
+	 */
+	private boolean alignReading(String text, int textPosition, String reading, int readingPosition, int tokenStart, List<Reading> tokenReadings) {
+
+		int textLength = text.length();
+		int readingLength = reading.length();
+
+		if (textPosition == textLength) {
+			return (readingPosition == readingLength);
+		}
+
+		// A non-kanji fragment must match the reading exactly
+		if (!isKanji(text.charAt(textPosition))) {
+			int fragmentEnd = textPosition + 1;
+			while ((fragmentEnd < textLength) && !isKanji(text.charAt(fragmentEnd))) {
+				fragmentEnd++;
 			}
-			fragmentIsKanji = !fragmentIsKanji;
+			int fragmentLength = fragmentEnd - textPosition;
+			return reading.regionMatches(readingPosition, text, textPosition, fragmentLength)
+					&& alignReading(text, fragmentEnd, reading, readingPosition + fragmentLength, tokenStart, tokenReadings);
 		}
-		regexp += "$";
 
-		Pattern pattern = Pattern.compile(regexp);
-		Matcher matcher = pattern.matcher(reading);
-		if (!matcher.find()) {
-			return null;
+		int kanjiEnd = textPosition + 1;
+		while ((kanjiEnd < textLength) && isKanji(text.charAt(kanjiEnd))) {
+			kanjiEnd++;
 		}
 
-		// Create reading nodes for the kanji fragments of the source text
-		fragmentIsKanji = firstFragmentIsKanji;
-		fragmentStart = 0;
-		for (int i = 0; i < fragments.size(); i++) {
-			String fragment = fragments.get(i);
-			if (fragmentIsKanji) {
-				String fragmentReading = matcher.group(i + 1);
-				tokenReadings.add(new Reading(tokenStart + fragmentStart, fragment.length(), fragmentReading));
+		// A final kanji fragment takes the rest of the reading
+		if (kanjiEnd == textLength) {
+			tokenReadings.add(new Reading(tokenStart + textPosition, kanjiEnd - textPosition, reading.substring(readingPosition)));
+			return true;
+		}
+
+		// Otherwise, try each occurrence of the following non-kanji fragment
+		// in the reading in turn, shortest kanji reading first
+		int kanaEnd = kanjiEnd + 1;
+		while ((kanaEnd < textLength) && !isKanji(text.charAt(kanaEnd))) {
+			kanaEnd++;
+		}
+		int kanaLength = kanaEnd - kanjiEnd;
+		int readingIndex = tokenReadings.size();
+		for (int end = readingPosition; end + kanaLength <= readingLength; end++) {
+			if (reading.regionMatches(end, text, kanjiEnd, kanaLength)) {
+				tokenReadings.add(new Reading(tokenStart + textPosition, kanjiEnd - textPosition, reading.substring(readingPosition, end)));
+				if (alignReading(text, kanaEnd, reading, end + kanaLength, tokenStart, tokenReadings)) {
+					return true;
+				}
+				tokenReadings.remove(readingIndex);
 			}
-			fragmentStart += fragment.length();
-			fragmentIsKanji = !fragmentIsKanji;
 		}
 
-		return tokenReadings;
+		return false;
 
 	}
 
@@ -338,8 +376,10 @@ public class ReadingProcessor {
 
 		try {
 
+			// Only the part of the sentence that the changes since the last
+			// analysis may affect is analysed again
 			if (this.needsAnalysis) {
-				this.tokens = this.viterbi.getBestTokens(this.sentence);
+				this.tokens = this.viterbi.getBestTokensAfterChange(this.sentence, this.changeStart, this.changeEnd);
 				this.needsAnalysis = false;
 			}
 
@@ -352,6 +392,27 @@ public class ReadingProcessor {
 	}
 
 
+	/**
+	 * Records a change to a range of the sentence, requiring it to be
+	 * analysed again
+	 *
+	 * @param start The first position of the change
+	 * @param end One greater than the last position of the change
+	 */
+	private void changed(int start, int end) {
+
+		if (this.needsAnalysis) {
+			this.changeStart = Math.min(this.changeStart, start);
+			this.changeEnd = Math.max(this.changeEnd, end);
+		} else {
+			this.changeStart = start;
+			this.changeEnd = end;
+		}
+		this.needsAnalysis = true;
+
+	}
+
+
 	/**
 	 * Compiles <code>Token</code>s into a list of <code>ReadingNode</code>s
 	 *
@@ -381,7 +442,7 @@ public class ReadingProcessor {
 			boolean hasKanji = false;
 			boolean hasNonKanji = false;
 			for (char c : token.getSurface().toCharArray()) {
-				if (Character.UnicodeBlock.of(c) == UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS) {
+				if (isKanji(c)) {
 					hasKanji = true;
 				} else {
 					hasNonKanji = true;
@@ -471,6 +532,8 @@ public class ReadingProcessor {
 
 		this.sentence = new Sentence(text);
 		this.needsAnalysis = true;
+		this.changeStart = 0;
+		this.changeEnd = text.length();
 
 		// Reset any sentence specific state in filters
 		for (ReadingFilter filter : this.filters.values()) {
@@ -577,8 +640,23 @@ public class ReadingProcessor {
 
 		Reading invertedConstraint = new Reading(constraint.start, constraint.length, TextUtil.invertKanaCase(constraint.text));
 
+		// Any existing constraints overlapping the new constraint are removed,
+		// widening the change to cover them
+		int start = constraint.start;
+		int end = constraint.start + constraint.length;
+		for (int i = Math.min(end, this.sentence.length()) - 1; i >= 0; i--) {
+			Reading existingConstraint = this.sentence.getReadingConstraint(i);
+			if (existingConstraint != null) {
+				if ((i + existingConstraint.length) <= constraint.start) {
+					break;
+				}
+				start = Math.min(start, i);
+				end = Math.max(end, i + existingConstraint.length);
+			}
+		}
+
 		this.sentence.setReadingConstraint(invertedConstraint);
-		this.needsAnalysis = true;
+		changed(start, end);
 
 	}
 
@@ -590,8 +668,38 @@ public class ReadingProcessor {
 	 */
 	public void removeReadingConstraint(int position) {
 
-		this.sentence.removeReadingConstraint(position);
-		this.needsAnalysis = true;
+		Reading existingConstraint = this.sentence.getReadingConstraint(position);
+		if (existingConstraint != null) {
+			this.sentence.removeReadingConstraint(position);
+			changed(position, position + existingConstraint.length);
+		}
+
+	}
+
+
+	/**
+	 * Sets a listener to be passed the statistics of each subsequent analysis
+	 * of the text
+	 *
+	 * @param analysisListener The listener, or <code>null</code> to stop
+	 *                         measuring
+	 * @see Viterbi#setAnalysisListener(AnalysisListener)
+	 */
+	public void setAnalysisListener(AnalysisListener analysisListener) {
+
+		this.viterbi.setAnalysisListener(analysisListener);
+
+	}
+
+
+	/**
+	 * Gets the listener passed the statistics of each analysis
+	 *
+	 * @return The listener, or <code>null</code> if none
+	 */
+	public AnalysisListener getAnalysisListener() {
+
+		return this.viterbi.getAnalysisListener();
 
 	}
 
@@ -680,4 +788,15 @@ public class ReadingProcessor {
 	}
 
 
+	/**
+	 * @param handle The handle to take the Tokenizer from for each analysis
+	 */
+	public ReadingProcessor(DictionaryHandle handle)
+	{
+
+		this.viterbi = new Viterbi(handle);
+
+	}
+
+
 }
@@ -20,7 +20,10 @@
 
 package net.java.sen;
 
+import net.java.sen.compiler.DictionaryContainerBuilder;
 import net.java.sen.dictionary.Dictionary;
+import net.java.sen.dictionary.DictionaryContainer;
+import net.java.sen.dictionary.DictionaryHandle;
 import net.java.sen.dictionary.Tokenizer;
 import net.java.sen.dictionary.Viterbi;
 
@@ -29,6 +32,7 @@ import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.util.HashMap;
 
@@ -44,10 +48,22 @@ import static net.java.sen.compiler.DictionaryFileNames.TRIE_DATA_FILENAME;
 /**
  * A factory to manage creation of {@link Viterbi}, {@link StringTagger}, and
  * {@link ReadingProcessor} objects<br><br>
+ *
+ * A dictionary is named either by its <code>dictionary.xml</code>
+ * configuration file, in which case its data files are read from the same
+ * directory, or by a single file {@link DictionaryContainer}, which holds the
+ * data files and the configuration together<br><br>
  * 
  * <b>Thread Safety:</b> This class and all its public methods are thread safe.
  * The objects constructed by the factory are <b>NOT</b> thread safe and should
- * not be accessed simultaneously by multiple threads
+ * not be accessed simultaneously by multiple threads. All objects created from
+ * the same configuration share a single thread safe {@link Tokenizer} and
+ * {@link Dictionary}, so creating one per thread is cheap<br><br>
+ *
+ * A dictionary that is to be replaced while the application runs is opened
+ * with {@link #openDictionaryHandle(String)} instead. Objects created on the
+ * {@link DictionaryHandle} share its current dictionary, which may then be
+ * swapped with {@link #swapDictionary(DictionaryHandle, String)}
  */
 public class SenFactory {
 	/**
@@ -55,6 +71,11 @@ public class SenFactory {
 	 */
 	private static HashMap<String,Configuration> configurationCache = new HashMap<String,Configuration>();
 
+	/**
+	 * A cache of shared Tokenizers, keyed by canonical configuration filename
+	 */
+	private static HashMap<String,Tokenizer> tokenizerCache = new HashMap<String,Tokenizer>();
+
 
 	/**
 	 * A Tokenizer configuration
@@ -91,17 +112,66 @@ public class SenFactory {
 		 */
 		public String tokenizerClassName = null;
 
+		/**
+		 * If <code>true</code>, the trie data is copied to the heap rather
+		 * than read from the mapped file
+		 */
+		public boolean trieOnHeap = false;
+
+		/**
+		 * The dictionary container filename, if the configuration was read
+		 * from one; otherwise <code>null</code>
+		 */
+		public String containerFilename = null;
+
+	}
+
+
+	/**
+	 * Loads a tokenizer configuration from a dictionary container. The
+	 * container's header is validated, but the checksums of its sections are
+	 * not verified
+	 *
+	 * @param containerFile The container file
+	 * @return The loaded configuration
+	 * @throws IOException if the container is not valid
+	 */
+	private static Configuration loadContainerConfiguration(File containerFile) throws IOException {
+
+		Configuration configuration = new Configuration();
+
+		DictionaryContainer container = DictionaryContainer.open(containerFile, false);
+		try {
+			configuration.containerFilename = containerFile.getPath();
+			configuration.tokenizerClassName = container.getTokenizerClassName();
+			configuration.unknownPartOfSpeechDescription = container.getUnknownPartOfSpeechDescription();
+		} finally {
+			container.close();
+		}
+
+		return configuration;
+
 	}
 
 
 	/**
-	 * Loads a tokenizer configuration file
+	 * Loads a tokenizer configuration file, or the configuration held in a
+	 * dictionary container
 	 *
 	 * @param configurationFilename The filename of the configuration to load
 	 * @return The loaded configuration
 	 */
 	private static Configuration loadConfiguration(String configurationFilename) {
 
+		try {
+			File file = new File(configurationFilename);
+			if (DictionaryContainer.isContainer(file)) {
+				return loadContainerConfiguration(file);
+			}
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+
 		Configuration configuration = new Configuration();
 
 		String dictionaryVersion = "";
@@ -138,6 +208,8 @@ public class SenFactory {
 						configuration.unknownPartOfSpeechDescription = nodeValue;
 					} else if (nodeName.equals("tokenizer")) {
 						configuration.tokenizerClassName = nodeValue;
+					} else if (nodeName.equals("trie-on-heap")) {
+						configuration.trieOnHeap = Boolean.parseBoolean(nodeValue.trim());
 					}
 
 				}
@@ -163,23 +235,71 @@ public class SenFactory {
 	/**
 	 * Builds a Tokenizer for the given dictionary configuration
 	 *
-	 * @param configurationFilename The dictionary configuration filename
+	 * @param configuration The dictionary configuration
 	 * @return The constructed Tokenizer
 	 */
-	private static Tokenizer getTokenizer(String configurationFilename) {
-
-		Configuration configuration = null;
+	private static Tokenizer createTokenizer(Configuration configuration) {
 
 		Tokenizer tokenizer = null;
+		Dictionary dictionary = null;
+
+		try {
 
+			// Create tokenizer
+			Class<?> tokenizerClass = Class.forName(configuration.tokenizerClassName);
+			Constructor constructor = tokenizerClass.getConstructor(new Class[] { Dictionary.class, String.class });
+
+			if (configuration.containerFilename != null) {
+				DictionaryContainer container = DictionaryContainer.open(new File(configuration.containerFilename), false);
+				try {
+					dictionary = new Dictionary(container, configuration.trieOnHeap);
+				} finally {
+					container.close();
+				}
+			} else {
+				dictionary = new Dictionary (
+						configuration.connectionCostFilename,
+						configuration.partOfSpeechDataFilename,
+						configuration.tokenFilename,
+						configuration.trieFilename,
+						configuration.trieOnHeap
+				);
+			}
+
+			tokenizer = (Tokenizer) constructor.newInstance(new Object[] { dictionary, configuration.unknownPartOfSpeechDescription });
+
+		} catch (Exception e) {
+
+			if (dictionary != null) {
+				dictionary.close();
+			}
+			throw new IllegalArgumentException("Failed to initialise Tokenizer class \"" + configuration.tokenizerClassName + "\"", e);
+
+		}
+
+		return tokenizer;
+
+	}
+
+
+	/**
+	 * Gets the shared Tokenizer for the given dictionary configuration,
+	 * building it if it has not previously been requested
+	 *
+	 * @param configurationFilename The dictionary configuration filename
+	 * @return The shared Tokenizer
+	 */
+	private static Tokenizer getTokenizer(String configurationFilename) {
+
+		Configuration configuration = null;
 
 		String canonicalFilename = "";
 
-		try {
+		synchronized (SenFactory.class) {
 
-			// Load configuration
-			synchronized (SenFactory.class) {
-	
+			try {
+
+				// Load configuration
 				canonicalFilename = new File(configurationFilename).getCanonicalPath();
 	
 				configuration = configurationCache.get(canonicalFilename);
@@ -189,37 +309,92 @@ public class SenFactory {
 					configurationCache.put(canonicalFilename, configuration);
 				}
 		
+			} catch (Exception e) {
+
+				throw new IllegalArgumentException("Failed to load configuration \"" + canonicalFilename + "\"", e);
+
 			}
 
-		} catch (Exception e) {
+			Tokenizer tokenizer = tokenizerCache.get(canonicalFilename);
 
-			throw new IllegalArgumentException("Failed to load configuration \"" + canonicalFilename + "\"", e);
+			if (tokenizer == null) {
+				tokenizer = createTokenizer(configuration);
+				tokenizerCache.put(canonicalFilename, tokenizer);
+			}
+
+			return tokenizer;
 
 		}
 
+	}
 
-		try {
 
-			// Create tokenizer
-			Class<?> tokenizerClass = Class.forName(configuration.tokenizerClassName);
-			Constructor constructor = tokenizerClass.getConstructor(new Class[] { Dictionary.class, String.class });
+	/**
+	 * Closes the shared Tokenizer of the given dictionary configuration, if
+	 * it has been built, releasing the dictionary's mapped files. Every
+	 * {@link Viterbi}, {@link StringTagger} and {@link ReadingProcessor}
+	 * previously obtained for the configuration must no longer be used, and
+	 * the {@link net.java.sen.dictionary.Token}s they returned become invalid,
+	 * as described by {@link Dictionary#close()}. A later request for the
+	 * configuration loads it afresh
+	 *
+	 * @param configurationFilename The dictionary configuration filename
+	 */
+	public static void closeDictionary(String configurationFilename) {
 
-			Dictionary dictionary = new Dictionary (
-					configuration.connectionCostFilename,
-					configuration.partOfSpeechDataFilename,
-					configuration.tokenFilename,
-					configuration.trieFilename
-			);
+		Tokenizer tokenizer;
 
-			tokenizer = (Tokenizer) constructor.newInstance(new Object[] { dictionary, configuration.unknownPartOfSpeechDescription });
+		synchronized (SenFactory.class) {
 
-		} catch (Exception e) {
+			String canonicalFilename;
+			try {
+				canonicalFilename = new File(configurationFilename).getCanonicalPath();
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Failed to load configuration \"" + configurationFilename + "\"", e);
+			}
 
-			throw new IllegalArgumentException("Failed to initialise Tokenizer class \"" + configuration.tokenizerClassName + "\"", e);
+			configurationCache.remove(canonicalFilename);
+			tokenizer = tokenizerCache.remove(canonicalFilename);
 
 		}
 
-		return tokenizer;
+		if (tokenizer != null) {
+			tokenizer.close();
+		}
+
+	}
+
+
+	/**
+	 * Packs the dictionary named by a <code>dictionary.xml</code>
+	 * configuration file into a single file {@link DictionaryContainer},
+	 * which may then be passed to any of this factory's methods in place of
+	 * the configuration file
+	 *
+	 * @param configurationFilename The dictionary configuration file
+	 * @param containerFilename The container file to write
+	 * @param description A free text description to record in the container
+	 * @throws IOException
+	 */
+	public static void packDictionary(String configurationFilename, String containerFilename, String description) throws IOException {
+
+		Configuration configuration = loadConfiguration(configurationFilename);
+		if (configuration.containerFilename != null) {
+			throw new IllegalArgumentException("\"" + configurationFilename + "\" is already a dictionary container");
+		}
+
+		DictionaryContainerBuilder builder = new DictionaryContainerBuilder(
+				configuration.tokenizerClassName,
+				configuration.unknownPartOfSpeechDescription
+		);
+		builder.setDescription(description);
+		builder.build(
+				configuration.connectionCostFilename,
+				configuration.partOfSpeechDataFilename,
+				configuration.tokenFilename,
+				configuration.trieFilename,
+				containerFilename
+		);
 
 	}
 
@@ -274,4 +449,116 @@ public class SenFactory {
 
 	}
 
+
+	/**
+	 * Loads a dictionary into a new Tokenizer, unshared with any other
+	 *
+	 * @param configurationFilename The dictionary configuration filename
+	 * @return The Tokenizer
+	 */
+	private static Tokenizer loadTokenizer(String configurationFilename) {
+
+		Configuration configuration;
+		String canonicalFilename = configurationFilename;
+		try {
+			canonicalFilename = new File(configurationFilename).getCanonicalPath();
+			configuration = loadConfiguration(canonicalFilename);
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Failed to load configuration \"" + canonicalFilename + "\"", e);
+		}
+
+		return createTokenizer(configuration);
+
+	}
+
+
+	/**
+	 * Opens a dictionary in a new {@link DictionaryHandle}, so that it can
+	 * later be replaced with {@link #swapDictionary(DictionaryHandle, String)}.
+	 * The dictionary is loaded afresh rather than shared with the objects
+	 * created from the same configuration by the other methods of this
+	 * factory
+	 *
+	 * @param configurationFilename The dictionary configuration filename
+	 * @return The handle
+	 */
+	public static DictionaryHandle openDictionaryHandle(String configurationFilename) {
+
+		return new DictionaryHandle(loadTokenizer(configurationFilename));
+
+	}
+
+
+	/**
+	 * Loads a dictionary and swaps it into the given handle. Analyses in
+	 * progress on the handle finish on the old dictionary, which is closed
+	 * once they have finished, and analyses started after this method returns
+	 * use the new one. The recorded swap latency includes the loading of the
+	 * new dictionary
+	 *
+	 * <p>The old dictionary's files remain mapped until it is closed, so a
+	 * new dictionary should be compiled to new files, or moved into place by
+	 * renaming, rather than overwriting the old files
+	 *
+	 * @param handle The handle to swap the dictionary of
+	 * @param configurationFilename The new dictionary's configuration filename
+	 * @return The number of the new generation of the handle
+	 */
+	public static long swapDictionary(DictionaryHandle handle, String configurationFilename) {
+
+		long startTime = System.nanoTime();
+
+		Tokenizer tokenizer = loadTokenizer(configurationFilename);
+
+		try {
+			return handle.swap(tokenizer, startTime);
+		} catch (RuntimeException e) {
+			tokenizer.close();
+			throw e;
+		}
+
+	}
+
+
+	/**
+	 * Creates a Viterbi that analyses with the current dictionary of the given
+	 * handle
+	 *
+	 * @param handle The dictionary handle
+	 * @return A Viterbi using the handle
+	 */
+	public static Viterbi getViterbi(DictionaryHandle handle) {
+
+		return new Viterbi(handle);
+
+	}
+
+
+	/**
+	 * Creates a StringTagger that analyses with the current dictionary of the
+	 * given handle
+	 *
+	 * @param handle The dictionary handle
+	 * @return A StringTagger using the handle
+	 */
+	public static StringTagger getStringTagger(DictionaryHandle handle) {
+
+		return new StringTagger(handle);
+
+	}
+
+
+	/**
+	 * Creates a ReadingProcessor that analyses with the current dictionary of
+	 * the given handle
+	 *
+	 * @param handle The dictionary handle
+	 * @return A ReadingProcessor using the handle
+	 */
+	public static ReadingProcessor getReadingProcessor(DictionaryHandle handle) {
+
+		return new ReadingProcessor(handle);
+
+	}
+
 }
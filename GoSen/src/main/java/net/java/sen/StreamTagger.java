@@ -22,6 +22,7 @@ package net.java.sen;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.ArrayList;
 import java.util.List;
 
 import net.java.sen.dictionary.Token;
@@ -31,6 +32,21 @@ import net.java.sen.filter.StreamFilter;
 /**
  * Tokenizes text read from a {@link java.io.Reader <code>java.io.Reader</code>}
  * 
+ * <p>Text is read from the <code>Reader</code> in blocks and divided into
+ * sentences, each of which is analysed separately. A sentence ends after a
+ * run of the terminal punctuation 「。」, 「！」 and 「？」 together with any
+ * closing brackets or quotes immediately following it, or after a line
+ * break. Any text remaining after the last sentence boundary of a block is
+ * carried over into the next. A sentence longer than the buffer is divided at
+ * the last whitespace or punctuation character within the buffer, or if there
+ * is none, at the end of the buffer
+ *
+ * <p>The start of each returned {@link Token} is its offset in characters from
+ * the beginning of the stream. If the underlying {@link StringTagger} has a
+ * cache, each {@link Token} is a copy of a cached one, but its
+ * {@link net.java.sen.dictionary.Morpheme} is shared with the cache and so
+ * must be copied rather than altered
+ *
  * <p>See examples.StreamTaggerDemo in the Sen source for an example of how to
  * use this class
  * 
@@ -42,20 +58,36 @@ import net.java.sen.filter.StreamFilter;
  */
 public class StreamTagger {
 
+	/**
+	 * The default size of the read buffer, which is also the longest sentence
+	 * that will be analysed without being divided
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
 	/**
 	 * The underlying StringTagger used to tokenise text
 	 */
 	private StringTagger stringTagger = null;
 
 	/**
-	 * The maximum amount of text to read at a time
+	 * The buffer holding text read from the stream
+	 */
+	private final char[] buffer;
+
+	/**
+	 * The index within the buffer of the first character not yet analysed
 	 */
-	private static final int BUFFER_SIZE = 256;
+	private int bufferStart = 0;
 
 	/**
-	 * The buffer used to contain the current text line
+	 * One greater than the index within the buffer of the last character read
 	 */
-	private final char[] buffer = new char[BUFFER_SIZE];
+	private int bufferEnd = 0;
+
+	/**
+	 * The offset within the stream of the first character of the buffer
+	 */
+	private int bufferOffset = 0;
 
 	/**
 	 * The index of the next token to return
@@ -63,7 +95,7 @@ public class StreamTagger {
 	private int currentTokenIndex = 0;
 
 	/**
-	 * The tokens of the current line of text
+	 * The tokens of the current sentence
 	 */
 	private List<Token> tokens;
 
@@ -73,44 +105,196 @@ public class StreamTagger {
 	private boolean complete = false;
 
 	/**
-	 * The Reader from which lines of text are read
+	 * The Reader from which text is read
 	 */
 	private Reader reader;
 
+
+	/**
+	 * Determines whether a character ends a sentence when followed by any
+	 * character other than a closing bracket or further terminal punctuation
+	 *
+	 * @param c The character
+	 * @return <code>true</code> if the character is terminal punctuation
+	 */
+	private static boolean isTerminal(char c) {
+
+		return (c == '\u3002') || (c == '\uff01') || (c == '\uff1f');
+
+	}
+
+
 	/**
-	 * The offset within the stream of the current line
+	 * Determines whether a character closes a bracket or quotation, and so
+	 * belongs to a sentence ending immediately before it
+	 *
+	 * @param c The character
+	 * @return <code>true</code> if the character is a closing bracket
 	 */
-	private int lastReadOffset;
+	private static boolean isClosing(char c) {
+
+		int type = Character.getType(c);
+
+		return (type == Character.END_PUNCTUATION) || (type == Character.FINAL_QUOTE_PUNCTUATION)
+				|| (c == '"') || (c == '\'') || (c == '\uff02') || (c == '\uff07');
+
+	}
 
 
 	/**
-	 * Reads the next line of text
+	 * Moves any text not yet analysed to the start of the buffer, then fills
+	 * the remainder of the buffer from the stream
 	 *
-	 * @return The number of characters read, or -1 if the end of the stream has
-	 *     been reached with no characters read
 	 * @throws IOException
 	 */
-	private int readToBuffer() throws IOException {
+	private void fillBuffer() throws IOException {
 
-		int position = 0;
-		int charactersRead = 0;
+		if (this.bufferStart > 0) {
+			System.arraycopy(this.buffer, this.bufferStart, this.buffer, 0, this.bufferEnd - this.bufferStart);
+			this.bufferOffset += this.bufferStart;
+			this.bufferEnd -= this.bufferStart;
+			this.bufferStart = 0;
+		}
 
-		while ((position < BUFFER_SIZE) && (!this.complete) && ((charactersRead = this.reader.read(this.buffer, position, 1)) != -1)) {
-			if ((Character.getType(this.buffer[position]) == Character.OTHER_PUNCTUATION) && (position > 0)) {
-				return position + 1;
+		while (!this.complete && (this.bufferEnd < this.buffer.length)) {
+			int charactersRead = this.reader.read(this.buffer, this.bufferEnd, this.buffer.length - this.bufferEnd);
+			if (charactersRead == -1) {
+				this.complete = true;
+			} else if (charactersRead > 0) {
+				this.bufferEnd += charactersRead;
+				return;
 			}
-			position++;
 		}
 
-		if (charactersRead == -1) {
-			this.complete = true;
+	}
+
+
+	/**
+	 * Finds the end of the first sentence in the unanalysed text of the
+	 * buffer
+	 *
+	 * @return One greater than the index within the buffer of the last
+	 *         character of the sentence, or -1 if the buffer does not hold
+	 *         enough text to be sure where the sentence ends
+	 */
+	private int findSentenceEnd() {
+
+		char[] buffer = this.buffer;
+		int end = this.bufferEnd;
+
+		for (int i = this.bufferStart; i < end; i++) {
+			char c = buffer[i];
+
+			if (c == '\n') {
+				return i + 1;
+			}
+
+			if (c == '\r') {
+				if (i + 1 < end) {
+					return (buffer[i + 1] == '\n') ? i + 2 : i + 1;
+				}
+				return this.complete ? i + 1 : -1;
+			}
+
+			if (isTerminal(c)) {
+				int j = i + 1;
+				while ((j < end) && (isTerminal(buffer[j]) || isClosing(buffer[j]))) {
+					j++;
+				}
+				if ((j < end) || this.complete) {
+					return j;
+				}
+				return -1;
+			}
+		}
+
+		return this.complete ? end : -1;
+
+	}
+
+
+	/**
+	 * Finds a place to divide a sentence which fills the whole buffer, as
+	 * late as possible after a whitespace or punctuation character
+	 *
+	 * @return One greater than the index within the buffer of the last
+	 *         character before the division
+	 */
+	private int findForcedBreak() {
+
+		for (int i = this.bufferEnd - 1; i > this.bufferStart; i--) {
+			char c = this.buffer[i - 1];
+			int type = Character.getType(c);
+			if (Character.isWhitespace(c) || (type == Character.OTHER_PUNCTUATION) || (type == Character.SPACE_SEPARATOR)) {
+				return i;
+			}
 		}
 
-		if (this.complete && position == 0) {
-			return -1;
+		// Never divide a surrogate pair
+		int end = this.bufferEnd;
+		if (Character.isHighSurrogate(this.buffer[end - 1]) && (end - 1 > this.bufferStart)) {
+			end--;
 		}
 
-		return position;
+		return end;
+
+	}
+
+
+	/**
+	 * Reads and analyses sentences until one is found that contains at least
+	 * one {@link Token}, or the end of the stream is reached
+	 *
+	 * @return <code>true</code> if a non-empty sentence was analysed,
+	 *         <code>false</code> at the end of the stream
+	 * @throws IOException
+	 */
+	private boolean analyseNextSentence() throws IOException {
+
+		while (true) {
+			int sentenceEnd = findSentenceEnd();
+
+			if (sentenceEnd == -1) {
+				if ((this.bufferStart == 0) && (this.bufferEnd == this.buffer.length)) {
+					sentenceEnd = findForcedBreak();
+				} else {
+					fillBuffer();
+					continue;
+				}
+			}
+
+			int sentenceStart = this.bufferStart;
+			if (sentenceStart == sentenceEnd) {
+				return false;
+			}
+			this.bufferStart = sentenceEnd;
+
+			List<Token> sentenceTokens = this.stringTagger.analyze(this.buffer, sentenceStart, sentenceEnd - sentenceStart);
+
+			if (sentenceTokens.size() > 0) {
+				// Set the token starts to their position within the stream.
+				// Tokens returned through a cache are shared with other
+				// results, and so are copied rather than altered
+				int offset = this.bufferOffset + sentenceStart;
+				if (this.stringTagger.getCache() != null) {
+					List<Token> copiedTokens = new ArrayList<Token>(sentenceTokens.size());
+					for (Token token : sentenceTokens) {
+						copiedTokens.add(new Token(token.getSurface(), token.getCost(), token.getStart() + offset, token.getLength(), token.getMorpheme()));
+					}
+					sentenceTokens = copiedTokens;
+				} else {
+					for (int n = 0; n < sentenceTokens.size(); n++) {
+						Token token = sentenceTokens.get(n);
+						token.setStart(token.getStart() + offset);
+					}
+				}
+
+				this.tokens = sentenceTokens;
+				this.currentTokenIndex = 0;
+
+				return true;
+			}
+		}
 
 	}
 
@@ -125,31 +309,7 @@ public class StreamTagger {
 	public boolean hasNext() throws IOException {
 
 		if ((this.tokens == null) || (this.currentTokenIndex == this.tokens.size())) {
-
-			int i;
-			do {
-				i = readToBuffer();
-				if (i == -1) {
-					return false;
-				}
-				this.tokens = this.stringTagger.analyze(new String(this.buffer, 0, i));
-			} while (this.tokens == null);
-			this.currentTokenIndex = 0;
-
-			// Set the token starts to their position within the stream
-			if (this.tokens != null) {
-				for (int n = 0; n < this.tokens.size(); n++) {
-					Token token = this.tokens.get(n);
-					token.setStart(token.getStart() + this.lastReadOffset);
-				}
-			}
-			this.lastReadOffset += i;
-
-		}
-
-		// In case of a stream containing only newlines
-		if (this.tokens.size() == 0) {
-			return false;
+			return analyseNextSentence();
 		}
 
 		return true;
@@ -160,32 +320,14 @@ public class StreamTagger {
 	/**
 	 * Returns the next available token
 	 * 
-	 * @return The next available token
+	 * @return The next available token, or <code>null</code> if no more
+	 *         {@link Token}s are available
 	 * @throws IOException
 	 */
 	public Token next() throws IOException {
 
-		if ((this.tokens == null) || (this.tokens.size() == this.currentTokenIndex)) {
-			int i;
-
-			do {
-				i = readToBuffer();
-				if (i == -1) {
-					return null;
-				}
-				this.tokens = this.stringTagger.analyze(new String(this.buffer, 0, i));
-			} while (this.tokens == null);
-			this.currentTokenIndex = 0;
-
-			// Set the token starts to their position within the stream
-			if (this.tokens != null) {
-				for (int n = 0; n < this.tokens.size(); n++) {
-					Token token = this.tokens.get(n);
-					token.setStart(token.getStart() + this.lastReadOffset);
-				}
-			}
-			this.lastReadOffset += i;
-
+		if (!hasNext()) {
+			return null;
 		}
 
 		return this.tokens.get(this.currentTokenIndex++);
@@ -211,9 +353,27 @@ public class StreamTagger {
 	 */
 	public StreamTagger(StringTagger stringTagger, Reader reader) {
 
+		this(stringTagger, reader, DEFAULT_BUFFER_SIZE);
+
+	}
+
+
+	/**
+	 * @param stringTagger The StringTagger to use to tokenise the read text 
+	 * @param reader The Reader to read text from
+	 * @param bufferSize The number of characters to read at a time, which is
+	 *        also the longest sentence that will be analysed without being
+	 *        divided
+	 */
+	public StreamTagger(StringTagger stringTagger, Reader reader, int bufferSize) {
+
+		if (bufferSize < 2) {
+			throw new IllegalArgumentException("Buffer size must be at least 2");
+		}
+
 		this.stringTagger = stringTagger;
 		this.reader = reader;
-		this.lastReadOffset = 0;
+		this.buffer = new char[bufferSize];
 
 	}
 
@@ -21,13 +21,26 @@
 package net.java.sen;
 
 import java.io.IOException;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
+import net.java.sen.dictionary.AnalysisListener;
+import net.java.sen.dictionary.AnalysisStatistics;
 import net.java.sen.dictionary.Sentence;
 import net.java.sen.dictionary.Token;
+import net.java.sen.dictionary.DictionaryHandle;
 import net.java.sen.dictionary.Tokenizer;
 import net.java.sen.dictionary.Viterbi;
+import net.java.sen.filter.StatefulStreamFilter;
 import net.java.sen.filter.StreamFilter;
 
 
@@ -40,11 +53,40 @@ import net.java.sen.filter.StreamFilter;
  * <p><b>Thread Safety</b>: Objects of this class are <b>NOT</b> thread safe and
  * should not be accessed simultaneously by multiple threads. Note that creating
  * additional instances using {@link SenFactory} is relatively cheap in both
- * memory and time
+ * memory and time. The batch methods {@link #analyzeAll(List)} and
+ * {@link #analyzeAll(Iterator, int)} analyse their input on multiple threads
+ * internally, but like every other method must not be called simultaneously
+ * on the same instance
  * 
  */
 public class StringTagger {
 
+	/**
+	 * The number of leaf tasks a batch is divided into for each thread of the
+	 * fork-join pool, so that threads that finish early can steal work from
+	 * threads given longer sentences
+	 */
+	private static final int TASKS_PER_THREAD = 8;
+
+	/**
+	 * The fork-join pool used by batch analysis when none is given, created on
+	 * first use and shared between all <code>StringTagger</code>s
+	 */
+	private static ForkJoinPool defaultPool = null;
+
+	/**
+	 * The Tokenizer used for analysis, shared with the workers of batch
+	 * analysis, or <code>null</code> if it is taken from a handle
+	 */
+	private final Tokenizer tokenizer;
+
+	/**
+	 * The handle the Tokenizer is taken from for each analysis, shared with
+	 * the workers of batch analysis, or <code>null</code> if the Tokenizer is
+	 * fixed
+	 */
+	private final DictionaryHandle handle;
+
 	/**
 	 * The Viterbi analyser used to decompose strings
 	 */
@@ -55,6 +97,600 @@ public class StringTagger {
 	 */
 	private List<StreamFilter> filterList = new ArrayList<StreamFilter>();
 
+	/**
+	 * Idle workers for batch analysis. Each worker is a
+	 * <code>StringTagger</code> sharing this tagger's {@link Tokenizer} and
+	 * holding its own copy of the filter chain. Workers are taken from the
+	 * queue by each leaf task and returned when it completes, so no more are
+	 * ever created than there are threads analysing at once. The queue is
+	 * cleared whenever the filter chain or beam settings change
+	 */
+	private final ConcurrentLinkedQueue<StringTagger> idleWorkers = new ConcurrentLinkedQueue<StringTagger>();
+
+	/**
+	 * The cache of analysis results, or <code>null</code> if results are not
+	 * cached
+	 */
+	private AnalysisCache cache = null;
+
+	/**
+	 * The filter chain and beam settings that cached results are keyed by, or
+	 * <code>null</code> if they have changed since it was last calculated.
+	 * Batch workers are given their parent's configuration, as their filter
+	 * chains hold different instances of the same filters
+	 */
+	private List<Object> filterConfiguration = null;
+
+	/**
+	 * The listener passed the statistics of each analysis, or
+	 * <code>null</code> if analysis is not measured
+	 */
+	private AnalysisListener analysisListener = null;
+
+	/**
+	 * The statistics of the last analysis measured by the {@link Viterbi}
+	 */
+	private AnalysisStatistics statistics = null;
+
+	/**
+	 * A reusable buffer that strings are copied into for analysis, so that a
+	 * new character array is not needed for each string. Grown as necessary
+	 */
+	private char[] characterBuffer = new char[256];
+
+
+	/**
+	 * A fork-join task that analyses a contiguous range of a batch of
+	 * sentences, splitting it in half until it is small enough to analyse
+	 * directly
+	 */
+	private class AnalysisTask extends RecursiveAction {
+
+		/**
+		 * Serial version UID
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The sentences of the batch
+		 */
+		private final List<? extends CharSequence> surfaces;
+
+		/**
+		 * The results of the batch, stored at the index of their sentence
+		 */
+		private final List<Token>[] results;
+
+		/**
+		 * The index of the first sentence to analyse
+		 */
+		private final int start;
+
+		/**
+		 * One greater than the index of the last sentence to analyse
+		 */
+		private final int end;
+
+		/**
+		 * The largest number of sentences to analyse without splitting
+		 */
+		private final int threshold;
+
+
+		/* (non-Javadoc)
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		@Override
+		protected void compute() {
+
+			if ((this.end - this.start) <= this.threshold) {
+				StringTagger worker = borrowWorker();
+				try {
+					for (int i = this.start; i < this.end; i++) {
+						this.results[i] = worker.analyze(this.surfaces.get(i));
+					}
+				} catch (IOException e) {
+					throw new BatchAnalysisException(e);
+				} finally {
+					StringTagger.this.idleWorkers.offer(worker);
+				}
+			} else {
+				int middle = (this.start + this.end) >>> 1;
+				invokeAll(
+						new AnalysisTask(this.surfaces, this.results, this.start, middle, this.threshold),
+						new AnalysisTask(this.surfaces, this.results, middle, this.end, this.threshold)
+				);
+			}
+
+		}
+
+
+		/**
+		 * @param surfaces The sentences of the batch
+		 * @param results The results of the batch
+		 * @param start The index of the first sentence to analyse
+		 * @param end One greater than the index of the last sentence to analyse
+		 * @param threshold The largest number of sentences to analyse without
+		 *        splitting
+		 */
+		public AnalysisTask(List<? extends CharSequence> surfaces, List<Token>[] results, int start, int end, int threshold) {
+
+			this.surfaces = surfaces;
+			this.results = results;
+			this.start = start;
+			this.end = end;
+			this.threshold = threshold;
+
+		}
+
+	}
+
+
+	/**
+	 * Carries an <code>IOException</code> thrown by a worker out of the
+	 * fork-join pool
+	 */
+	private static class BatchAnalysisException extends RuntimeException {
+
+		/**
+		 * Serial version UID
+		 */
+		private static final long serialVersionUID = 1L;
+
+
+		/**
+		 * @param cause The <code>IOException</code> thrown by the worker
+		 */
+		public BatchAnalysisException(IOException cause) {
+
+			super(cause);
+
+		}
+
+	}
+
+
+	/**
+	 * Iterates over the results of analysing a stream of sentences. Sentences
+	 * are read and analysed in blocks; the block following the one being
+	 * returned is analysed in the background
+	 */
+	private class BatchIterator implements Iterator<List<Token>> {
+
+		/**
+		 * The sentences to analyse
+		 */
+		private final Iterator<? extends CharSequence> surfaces;
+
+		/**
+		 * The number of sentences in each block
+		 */
+		private final int blockSize;
+
+		/**
+		 * The fork-join pool to analyse on
+		 */
+		private final ForkJoinPool pool;
+
+		/**
+		 * The results of the block being returned
+		 */
+		private List<Token>[] current = null;
+
+		/**
+		 * The index of the next result of the current block to return
+		 */
+		private int index = 0;
+
+		/**
+		 * The results of the next block, filled by <code>nextTask</code>
+		 */
+		private List<Token>[] next = null;
+
+		/**
+		 * The task analysing the next block, or <code>null</code> if the input
+		 * is exhausted
+		 */
+		private ForkJoinTask<Void> nextTask = null;
+
+
+		/**
+		 * Reads the next block of sentences from the input and starts its
+		 * analysis
+		 */
+		private void submitNextBlock() {
+
+			List<CharSequence> block = new ArrayList<CharSequence>(this.blockSize);
+			while ((block.size() < this.blockSize) && this.surfaces.hasNext()) {
+				block.add(this.surfaces.next());
+			}
+
+			if (block.isEmpty()) {
+				this.next = null;
+				this.nextTask = null;
+			} else {
+				this.next = newResultArray(block.size());
+				this.nextTask = this.pool.submit(newAnalysisTask(block, this.next));
+			}
+
+		}
+
+
+		/* (non-Javadoc)
+		 * @see java.util.Iterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext() {
+
+			return ((this.current != null) && (this.index < this.current.length)) || (this.nextTask != null);
+
+		}
+
+
+		/* (non-Javadoc)
+		 * @see java.util.Iterator#next()
+		 */
+		@Override
+		public List<Token> next() {
+
+			if ((this.current == null) || (this.index == this.current.length)) {
+				if (this.nextTask == null) {
+					throw new NoSuchElementException();
+				}
+
+				try {
+					this.nextTask.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(e);
+				} catch (ExecutionException e) {
+					throw new RuntimeException(unwrapIOException(e));
+				}
+
+				this.current = this.next;
+				this.index = 0;
+				submitNextBlock();
+			}
+
+			List<Token> tokens = this.current[this.index];
+			this.current[this.index++] = null;
+
+			return tokens;
+
+		}
+
+
+		/* (non-Javadoc)
+		 * @see java.util.Iterator#remove()
+		 */
+		@Override
+		public void remove() {
+
+			throw new UnsupportedOperationException();
+
+		}
+
+
+		/**
+		 * @param surfaces The sentences to analyse
+		 * @param blockSize The number of sentences in each block
+		 * @param pool The fork-join pool to analyse on
+		 */
+		public BatchIterator(Iterator<? extends CharSequence> surfaces, int blockSize, ForkJoinPool pool) {
+
+			this.surfaces = surfaces;
+			this.blockSize = blockSize;
+			this.pool = pool;
+
+			submitNextBlock();
+
+		}
+
+	}
+
+
+	/**
+	 * Gets the fork-join pool shared by batch analysis, creating it if
+	 * necessary. The pool has one thread for each available processor
+	 *
+	 * @return The shared pool
+	 */
+	private static synchronized ForkJoinPool getDefaultPool() {
+
+		if (defaultPool == null) {
+			defaultPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		}
+
+		return defaultPool;
+
+	}
+
+
+	/**
+	 * Finds the <code>IOException</code> that caused a batch analysis to fail
+	 *
+	 * @param e The exception thrown by the fork-join pool
+	 * @return The <code>IOException</code> thrown by a worker, or
+	 *         <code>null</code> if the failure had another cause
+	 */
+	private static IOException unwrapIOException(Throwable e) {
+
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof IOException) {
+				return (IOException) cause;
+			}
+		}
+
+		return null;
+
+	}
+
+
+	/**
+	 * Creates an array to hold the results of a batch
+	 *
+	 * @param size The number of sentences in the batch
+	 * @return The array
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static List<Token>[] newResultArray(int size) {
+
+		return new List[size];
+
+	}
+
+
+	/**
+	 * Takes an idle batch worker, creating a new one if none is idle. A new
+	 * worker shares this tagger's {@link Tokenizer}, and so its
+	 * {@link net.java.sen.dictionary.Dictionary}, and is given a copy of the
+	 * filter chain in which each {@link StatefulStreamFilter} is replaced by a
+	 * new instance, and the same beam settings
+	 *
+	 * @return The worker
+	 */
+	private StringTagger borrowWorker() {
+
+		StringTagger worker = this.idleWorkers.poll();
+
+		if (worker == null) {
+			worker = (this.handle != null) ? new StringTagger(this.handle) : new StringTagger(this.tokenizer);
+			worker.setBeamWidth(this.viterbi.getBeamWidth());
+			worker.setBeamThreshold(this.viterbi.getBeamThreshold());
+			worker.cache = this.cache;
+			worker.setAnalysisListener(this.analysisListener);
+			for (StreamFilter filter : this.filterList) {
+				if (filter instanceof StatefulStreamFilter) {
+					worker.filterList.add(((StatefulStreamFilter) filter).newInstance());
+				} else {
+					worker.filterList.add(filter);
+				}
+			}
+			worker.filterConfiguration = getFilterConfiguration();
+		}
+
+		return worker;
+
+	}
+
+
+	/**
+	 * Creates a task to analyse a batch of sentences, divided so that each
+	 * thread of the pool receives several leaf tasks
+	 *
+	 * @param surfaces The sentences to analyse
+	 * @param results The array to store the results in
+	 * @return The task
+	 */
+	private AnalysisTask newAnalysisTask(List<? extends CharSequence> surfaces, List<Token>[] results) {
+
+		int leafCount = Runtime.getRuntime().availableProcessors() * TASKS_PER_THREAD;
+		int threshold = Math.max(1, (surfaces.size() + leafCount - 1) / leafCount);
+
+		return new AnalysisTask(surfaces, results, 0, surfaces.size(), threshold);
+
+	}
+
+
+	/**
+	 * Gets the filter chain and beam settings that cached results are keyed
+	 * by, calculating them if they have changed
+	 *
+	 * @return The filter configuration
+	 */
+	private List<Object> getFilterConfiguration() {
+
+		if (this.filterConfiguration == null) {
+			List<Object> configuration = new ArrayList<Object>(this.filterList);
+			configuration.add(this.viterbi.getBeamWidth());
+			configuration.add(this.viterbi.getBeamThreshold());
+			this.filterConfiguration = configuration;
+		}
+
+		return this.filterConfiguration;
+
+	}
+
+
+	/**
+	 * Gets the complete configuration that cached results are keyed by: the
+	 * filter chain, the beam settings, the dictionary in use, and the
+	 * {@link net.java.sen.dictionary.UserDictionary} currently in use. For a
+	 * tagger on a {@link DictionaryHandle}, the dictionary is identified by
+	 * the handle and its generation number rather than by the Tokenizer, so
+	 * that cached entries do not keep a swapped out Tokenizer reachable
+	 *
+	 * @return The configuration
+	 */
+	private List<Object> getCacheConfiguration() {
+
+		if (this.handle != null) {
+			return Arrays.asList(getFilterConfiguration(), this.handle, this.handle.getGeneration(), this.handle.getTokenizer().getUserDictionary());
+		}
+
+		return Arrays.asList(getFilterConfiguration(), this.tokenizer, this.tokenizer.getUserDictionary());
+
+	}
+
+
+	/**
+	 * Analyses a sentence, applying the filter chain
+	 *
+	 * @param sentence The sentence to analyse
+	 * @return The filtered {@link Token}s
+	 * @throws IOException
+	 */
+	private List<Token> analyze(Sentence sentence) throws IOException {
+
+		if (this.analysisListener != null) {
+			return analyzeMeasured(sentence);
+		}
+
+		filterPreProcess(sentence);
+
+		List<Token> tokens = this.viterbi.getBestTokens(sentence);
+
+		tokens = filterPostProcess(tokens);
+
+		return tokens;
+
+	}
+
+
+	/**
+	 * Analyses a sentence, applying the filter chain, and passes the
+	 * statistics of the analysis, including the time spent in each filter, to
+	 * the listener
+	 *
+	 * @param sentence The sentence to analyse
+	 * @return The filtered {@link Token}s
+	 * @throws IOException
+	 */
+	private List<Token> analyzeMeasured(Sentence sentence) throws IOException {
+
+		int filterCount = this.filterList.size();
+		long[] preProcessTimes = new long[filterCount];
+
+		long time = System.nanoTime();
+		for (int i = 0; i < filterCount; i++) {
+			this.filterList.get(i).preProcess(sentence);
+			long now = System.nanoTime();
+			preProcessTimes[i] = now - time;
+			time = now;
+		}
+
+		List<Token> tokens = this.viterbi.getBestTokens(sentence);
+
+		// The Viterbi's statistics are started afresh by its analysis, so the
+		// pre-processing times are added to them afterwards
+		AnalysisStatistics statistics = this.statistics;
+		for (int i = 0; i < filterCount; i++) {
+			statistics.addFilterTime(this.filterList.get(i).getClass().getSimpleName(), preProcessTimes[i]);
+		}
+
+		time = System.nanoTime();
+		for (int i = filterCount - 1; i >= 0; i--) {
+			StreamFilter filter = this.filterList.get(i);
+			tokens = filter.postProcess(tokens);
+			long now = System.nanoTime();
+			statistics.addFilterTime(filter.getClass().getSimpleName(), now - time);
+			time = now;
+		}
+
+		this.analysisListener.analysed(statistics);
+
+		return tokens;
+
+	}
+
+
+	/**
+	 * Gets the reusable buffer that strings are copied into, growing it if
+	 * necessary
+	 *
+	 * @param length The number of characters required
+	 * @return The buffer
+	 */
+	private char[] getCharacterBuffer(int length) {
+
+		if (this.characterBuffer.length < length) {
+			this.characterBuffer = new char[Math.max(length, this.characterBuffer.length * 2)];
+		}
+
+		return this.characterBuffer;
+
+	}
+
+
+	/**
+	 * Creates a sentence of a string. The characters are copied into the
+	 * reusable buffer, and the sentence is valid only until the next call
+	 *
+	 * @param surface The string
+	 * @return The sentence
+	 */
+	private Sentence toSentence(String surface) {
+
+		int length = surface.length();
+		char[] characters = getCharacterBuffer(length);
+		surface.getChars(0, length, characters, 0);
+
+		return new Sentence(characters, 0, length);
+
+	}
+
+
+	/**
+	 * Creates a sentence of a sequence of characters. The characters of a
+	 * CharBuffer with an accessible array are not copied; those of any other
+	 * sequence are copied into the reusable buffer, and the sentence is valid
+	 * only until the next call
+	 *
+	 * @param surface The characters
+	 * @return The sentence
+	 */
+	private Sentence toSentence(CharSequence surface) {
+
+		if (surface instanceof CharBuffer) {
+			return new Sentence((CharBuffer) surface);
+		} else if (surface instanceof String) {
+			return toSentence((String) surface);
+		}
+
+		int length = surface.length();
+		char[] characters = getCharacterBuffer(length);
+		for (int i = 0; i < length; i++) {
+			characters[i] = surface.charAt(i);
+		}
+
+		return new Sentence(characters, 0, length);
+
+	}
+
+
+	/**
+	 * Analyses a string through the cache
+	 *
+	 * @param surface The string to analyse
+	 * @param sentence A sentence of the string's characters, or
+	 *                 <code>null</code> to create one if it is needed
+	 * @return The unmodifiable, possibly shared, filtered {@link Token}s
+	 * @throws IOException
+	 */
+	private List<Token> analyzeCached(String surface, Sentence sentence) throws IOException {
+
+		List<Object> configuration = getCacheConfiguration();
+
+		List<Token> tokens = this.cache.get(surface, configuration);
+		if (tokens == null) {
+			tokens = analyze((sentence == null) ? toSentence(surface) : sentence);
+			tokens = this.cache.put(surface, configuration, tokens);
+		}
+
+		return tokens;
+
+	}
+
 
 	/**
 	 * Apply the pre-processing phase of all attached {@link StreamFilter}s to
@@ -98,6 +734,8 @@ public class StringTagger {
 	public void addFilter(StreamFilter filter) {
 
 		this.filterList.add(filter);
+		this.filterConfiguration = null;
+		this.idleWorkers.clear();
 
 	}
 
@@ -108,6 +746,117 @@ public class StringTagger {
 	public void removeFilters() {
 
 		this.filterList.clear();
+		this.filterConfiguration = null;
+		this.idleWorkers.clear();
+
+	}
+
+
+	/**
+	 * Sets the maximum number of candidate morphemes ending at each position
+	 * of a string that analysis continues from
+	 *
+	 * @param beamWidth The maximum number of candidates, or 0 for no limit
+	 * @see Viterbi#setBeamWidth(int)
+	 */
+	public void setBeamWidth(int beamWidth) {
+
+		this.viterbi.setBeamWidth(beamWidth);
+		this.filterConfiguration = null;
+		this.idleWorkers.clear();
+
+	}
+
+
+	/**
+	 * Sets the maximum amount by which the path cost of a candidate morpheme
+	 * ending at each position of a string may exceed the lowest there for
+	 * analysis to continue from it
+	 *
+	 * @param beamThreshold The maximum cost difference, or -1 for no limit
+	 * @see Viterbi#setBeamThreshold(int)
+	 */
+	public void setBeamThreshold(int beamThreshold) {
+
+		this.viterbi.setBeamThreshold(beamThreshold);
+		this.filterConfiguration = null;
+		this.idleWorkers.clear();
+
+	}
+
+
+	/**
+	 * Sets the cache of analysis results, which may be shared with other
+	 * taggers. While a cache is set, {@link #analyze(String)},
+	 * {@link #analyze(char[])} and batch analysis return unmodifiable lists
+	 * of {@link Token}s which may be shared with other callers, and so must be
+	 * copied rather than altered. Results are keyed by the filter chain, the
+	 * beam settings and the dictionary in use, but not by the internal
+	 * settings of the filters; if a filter is reconfigured after it is added,
+	 * the cache should be cleared
+	 *
+	 * @param cache The cache, or <code>null</code> to stop caching results
+	 */
+	public void setCache(AnalysisCache cache) {
+
+		this.cache = cache;
+		this.idleWorkers.clear();
+
+	}
+
+
+	/**
+	 * Gets the cache of analysis results
+	 *
+	 * @return The cache, or <code>null</code> if results are not cached
+	 */
+	public AnalysisCache getCache() {
+
+		return this.cache;
+
+	}
+
+
+	/**
+	 * Sets a listener to be passed the statistics of each subsequent analysis.
+	 * In addition to the statistics measured by {@link Viterbi}, the time
+	 * spent in the pre- and post-processing of each {@link StreamFilter} is
+	 * reported under the filter's class name. Results returned from the cache
+	 * are not analysed, and are not reported
+	 *
+	 * <p>The listener is shared with the workers of batch analysis, and so
+	 * must be thread safe if batch analysis is used
+	 *
+	 * @param analysisListener The listener, or <code>null</code> to stop
+	 *                         measuring
+	 * @see Viterbi#setAnalysisListener(AnalysisListener)
+	 */
+	public void setAnalysisListener(AnalysisListener analysisListener) {
+
+		this.analysisListener = analysisListener;
+		if (analysisListener == null) {
+			this.viterbi.setAnalysisListener(null);
+		} else {
+			this.viterbi.setAnalysisListener(new AnalysisListener() {
+				@Override
+				public void analysed(AnalysisStatistics statistics) {
+					StringTagger.this.statistics = statistics;
+				}
+			});
+		}
+		this.idleWorkers.clear();
+
+	}
+
+
+	/**
+	 * Gets the listener passed the statistics of each analysis
+	 *
+	 * @return The listener, or <code>null</code> if none
+	 */
+	public AnalysisListener getAnalysisListener() {
+
+		return this.analysisListener;
 
 	}
 
@@ -121,14 +870,31 @@ public class StringTagger {
 	 */
 	public List<Token> analyze(String surface) throws IOException {
 
-		Sentence sentence = new Sentence(surface.toCharArray());
-		filterPreProcess(sentence);
+		if (this.cache != null) {
+			return analyzeCached(surface, null);
+		}
 
-		List<Token> tokens = this.viterbi.getBestTokens(sentence);
+		return analyze(toSentence(surface));
 
-		tokens = filterPostProcess(tokens);
+	}
 
-		return tokens;
+
+	/**
+	 * Decompose a sequence of characters into its most likely constituent
+	 * morphemes. The remaining characters of a <code>CharBuffer</code> backed
+	 * by an accessible array are analysed in place without being copied
+	 *
+	 * @param surface The characters to analyse
+	 * @return An array of {@link Token}s representing the most likely morphemes
+	 * @throws IOException
+	 */
+	public List<Token> analyze(CharSequence surface) throws IOException {
+
+		if (this.cache != null) {
+			return analyzeCached(surface.toString(), null);
+		}
+
+		return analyze(toSentence(surface));
 
 	}
 
@@ -142,14 +908,134 @@ public class StringTagger {
 	 */
 	public List<Token> analyze(char[] surface) throws IOException {
 
-		Sentence sentence = new Sentence(surface);
-		filterPreProcess(sentence);
+		return analyze(surface, 0, surface.length);
 
-		List<Token> tokens = this.viterbi.getBestTokens(sentence);
+	}
 
-		tokens = filterPostProcess(tokens);
 
-		return tokens;
+	/**
+	 * Decompose a range of a character array into its most likely constituent
+	 * morphemes. The characters are analysed in place without being copied.
+	 * The positions of the returned {@link Token}s are relative to
+	 * <code>offset</code>
+	 *
+	 * @param surface The array holding the characters to analyse
+	 * @param offset The index of the first character to analyse
+	 * @param length The number of characters to analyse
+	 * @return An array of {@link Token}s representing the most likely morphemes
+	 * @throws IOException
+	 */
+	public List<Token> analyze(char[] surface, int offset, int length) throws IOException {
+
+		Sentence sentence = new Sentence(surface, offset, length);
+
+		if (this.cache != null) {
+			return analyzeCached(sentence.getSurface(0, length), sentence);
+		}
+
+		return analyze(sentence);
+
+	}
+
+
+	/**
+	 * Decompose each of a list of strings into its most likely constituent
+	 * morphemes, analysing in parallel on a shared fork-join pool with one
+	 * thread per available processor
+	 *
+	 * @param surfaces The strings to analyse
+	 * @return The {@link Token}s of each string, in the same order as the input
+	 * @throws IOException
+	 * @see #analyzeAll(List, ForkJoinPool)
+	 */
+	public List<List<Token>> analyzeAll(List<? extends CharSequence> surfaces) throws IOException {
+
+		return analyzeAll(surfaces, getDefaultPool());
+
+	}
+
+
+	/**
+	 * Decompose each of a list of strings into its most likely constituent
+	 * morphemes, analysing in parallel on the given fork-join pool
+	 *
+	 * <p>Each thread of the pool analyses with its own {@link Viterbi} and its
+	 * own copy of this tagger's filter chain, and all of them share this
+	 * tagger's {@link Tokenizer} and {@link net.java.sen.dictionary.Dictionary}.
+	 * The results are identical to calling {@link #analyze(String)} on each
+	 * string in turn, provided that every filter which is not a
+	 * {@link StatefulStreamFilter} is safe to share between threads
+	 *
+	 * @param surfaces The strings to analyse
+	 * @param pool The fork-join pool to analyse on
+	 * @return The {@link Token}s of each string, in the same order as the input
+	 * @throws IOException
+	 */
+	public List<List<Token>> analyzeAll(List<? extends CharSequence> surfaces, ForkJoinPool pool) throws IOException {
+
+		List<Token>[] results = newResultArray(surfaces.size());
+
+		try {
+			pool.invoke(newAnalysisTask(surfaces, results));
+		} catch (RuntimeException e) {
+			IOException cause = unwrapIOException(e);
+			if (cause != null) {
+				throw cause;
+			}
+			throw e;
+		}
+
+		return Arrays.asList(results);
+
+	}
+
+
+	/**
+	 * Decompose each of a stream of strings into its most likely constituent
+	 * morphemes, analysing in parallel on a shared fork-join pool with one
+	 * thread per available processor
+	 *
+	 * @param surfaces The strings to analyse
+	 * @param blockSize The number of strings read and analysed at a time
+	 * @return An iterator over the {@link Token}s of each string
+	 * @see #analyzeAll(Iterator, int, ForkJoinPool)
+	 */
+	public Iterator<List<Token>> analyzeAll(Iterator<? extends CharSequence> surfaces, int blockSize) {
+
+		return analyzeAll(surfaces, blockSize, getDefaultPool());
+
+	}
+
+
+	/**
+	 * Decompose each of a stream of strings into its most likely constituent
+	 * morphemes, analysing in parallel on the given fork-join pool
+	 *
+	 * <p>The input is read in blocks of <code>blockSize</code> strings, each of
+	 * which is analysed as by {@link #analyzeAll(List, ForkJoinPool)}. While
+	 * the results of one block are being returned, the next block is read and
+	 * analysed in the background, so at most two blocks of input and results
+	 * are held at once. The input iterator is only ever called from the
+	 * thread calling the returned iterator. An <code>IOException</code> during
+	 * analysis is thrown from {@link Iterator#next()} wrapped in a
+	 * <code>RuntimeException</code>
+	 *
+	 * <p>The returned iterator must be used on one thread only, and no other
+	 * method of this tagger may be called until it is exhausted
+	 *
+	 * @param surfaces The strings to analyse
+	 * @param blockSize The number of strings read and analysed at a time
+	 * @param pool The fork-join pool to analyse on
+	 * @return An iterator over the {@link Token}s of each string, in the same
+	 *         order as the input
+	 */
+	public Iterator<List<Token>> analyzeAll(Iterator<? extends CharSequence> surfaces, int blockSize, ForkJoinPool pool) {
+
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("Block size must be positive");
+		}
+
+		return new BatchIterator(surfaces, blockSize, pool);
 
 	}
 
@@ -160,9 +1046,28 @@ public class StringTagger {
 	public StringTagger(Tokenizer tokenizer)
 	{
 
+		this.tokenizer = tokenizer;
+		this.handle = null;
 		this.viterbi = new Viterbi(tokenizer);
 
 	}
 
 
+	/**
+	 * Creates a StringTagger that analyses with the current Tokenizer of the
+	 * given handle, so that its dictionary may be swapped between or during
+	 * analyses
+	 *
+	 * @param handle The handle to take the Tokenizer from
+	 */
+	public StringTagger(DictionaryHandle handle)
+	{
+
+		this.tokenizer = null;
+		this.handle = handle;
+		this.viterbi = new Viterbi(handle);
+
+	}
+
+
 }
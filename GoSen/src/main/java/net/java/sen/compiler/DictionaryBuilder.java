@@ -28,6 +28,7 @@ import net.java.sen.util.CSVParser;
 
 import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -77,6 +78,14 @@ public class DictionaryBuilder {
 	 */
 	private static final String UNKNOWN_PART_OF_SPEECH = "名詞,サ変接続,*,*,*,*,*";
 
+	/**
+	 * <code>true</code> if the connection costs were found not to depend on
+	 * the first extent of the matrix, and so were written as a single plane
+	 * of left/right bigram costs. In this case the <code>rcAttr2</code> of
+	 * every CToken is written as 0
+	 */
+	private boolean bigramConnectionCosts = false;
+
 
 	/**
 	 * Precursor data for the Trie file
@@ -117,6 +126,24 @@ public class DictionaryBuilder {
 	}
 
 
+	/**
+	 * Finds the <code>rcAttr2</code> of a part-of-speech code
+	 *
+	 * @param matrixBuilders The three <code>CostMatrixBuilder</code>s
+	 * @param partOfSpeech The part-of-speech code
+	 * @return The <code>rcAttr2</code>
+	 */
+	private short getRcAttr2(CostMatrixBuilder[] matrixBuilders, String partOfSpeech) {
+
+		if (this.bigramConnectionCosts) {
+			return 0;
+		}
+
+		return (short) matrixBuilders[0].getDicId(partOfSpeech);
+
+	}
+
+
 	/**
 	 * Splits a compound reading or pronunciation field into a list
 	 * 
@@ -134,7 +161,7 @@ public class DictionaryBuilder {
 	 * @param compoundField The field to split
 	 * @return The split list
 	 */
-	private List<String> splitCompoundField(String compoundField) {
+	static List<String> splitCompoundField(String compoundField) {
 
 		List<String> splitFieldList;
 
@@ -221,7 +248,7 @@ public class DictionaryBuilder {
 
 				CToken ctoken = new CToken();
 
-				ctoken.rcAttr2 = (short) matrixBuilders[0].getDicId(key_b.toString());
+				ctoken.rcAttr2 = getRcAttr2(matrixBuilders, key_b.toString());
 				ctoken.rcAttr1 = (short) matrixBuilders[1].getDicId(key_b.toString());
 				ctoken.lcAttr = (short) matrixBuilders[2].getDicId(key_b.toString());
 				ctoken.partOfSpeechIndex = outputStream.size() >> 1;
@@ -280,19 +307,19 @@ public class DictionaryBuilder {
 		dictionaryList.sort();
 
 		CToken bosCToken = new CToken();
-		bosCToken.rcAttr2 = (short) matrixBuilders[0].getDicId(bosPartOfSpeech);
+		bosCToken.rcAttr2 = getRcAttr2(matrixBuilders, bosPartOfSpeech);
 		bosCToken.rcAttr1 = (short) matrixBuilders[1].getDicId(bosPartOfSpeech);
 		bosCToken.lcAttr = (short) matrixBuilders[2].getDicId(bosPartOfSpeech);
 		standardCTokens[0] = bosCToken;
 
 		CToken eosCToken = new CToken();
-		eosCToken.rcAttr2 = (short) matrixBuilders[0].getDicId(eosPartOfSpeech);
+		eosCToken.rcAttr2 = getRcAttr2(matrixBuilders, eosPartOfSpeech);
 		eosCToken.rcAttr1 = (short) matrixBuilders[1].getDicId(eosPartOfSpeech);
 		eosCToken.lcAttr = (short) matrixBuilders[2].getDicId(eosPartOfSpeech);
 		standardCTokens[1] = eosCToken;
 
 		CToken unknownCToken = new CToken();
-		unknownCToken.rcAttr2 = (short) matrixBuilders[0].getDicId(unknownPartOfSpeech);
+		unknownCToken.rcAttr2 = getRcAttr2(matrixBuilders, unknownPartOfSpeech);
 		unknownCToken.rcAttr1 = (short) matrixBuilders[1].getDicId(unknownPartOfSpeech);
 		unknownCToken.lcAttr = (short) matrixBuilders[2].getDicId(unknownPartOfSpeech);
 		unknownCToken.partOfSpeechIndex = -1;
@@ -302,7 +329,36 @@ public class DictionaryBuilder {
 
 
 	/**
-	 * Creates the connection cost matrix file
+	 * Determines whether a connection cost matrix is the same for every value
+	 * of its first extent, meaning that the costs depend only on the left and
+	 * right contexts of a pair of morphemes and not on the morpheme before
+	 *
+	 * @param matrix The connection cost matrix
+	 * @param size1 The size of the first extent of the matrix
+	 * @param planeSize The size of the second extent multiplied by the size
+	 *                  of the third
+	 * @return <code>true</code> if the costs do not depend on the first extent
+	 */
+	private static boolean isBigramMatrix(short[] matrix, int size1, int planeSize) {
+
+		for (int i = 1; i < size1; i++) {
+			int offset = i * planeSize;
+			for (int j = 0; j < planeSize; j++) {
+				if (matrix[offset + j] != matrix[j]) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+
+	}
+
+
+	/**
+	 * Creates the connection cost matrix file. If the costs do not depend on
+	 * the first extent of the matrix, only a single plane of it is written,
+	 * and the file records the size of the first extent as 1
 	 * 
 	 * @param connectionCSVFilename The filename of the connection CSV data
 	 * @param connectionCostDataFilename The filename for the connection cost matrix
@@ -360,26 +416,9 @@ public class DictionaryBuilder {
 		int ruleSize = rule1.size();
 
 
-		// Write connection cost data
-		MappedByteBuffer buffer = null;
-		ShortBuffer shortBuffer = null;
-		int matrixSizeBytes = (size1 * size2 * size3 * 2);
-		int headerSizeBytes = (3 * 2);
-
-		RandomAccessFile file = new RandomAccessFile(connectionCostDataFilename, "rw");
-		file.setLength(0);
-		file.writeShort(size1);
-		file.writeShort(size2);
-		file.writeShort(size3);
-		file.setLength(headerSizeBytes + matrixSizeBytes);
-		FileChannel indexChannel = file.getChannel();
-		buffer = indexChannel.map(FileChannel.MapMode.READ_WRITE, headerSizeBytes, matrixSizeBytes);
-		shortBuffer = buffer.asShortBuffer();
-		indexChannel.close();
-
-		for (int i = 0; i < (size1 * size2 * size3); i++) {
-			shortBuffer.put(i, defaultCost);
-		}
+		// Calculate connection cost data
+		short[] matrix = new short[size1 * size2 * size3];
+		Arrays.fill(matrix, defaultCost);
 
 		for (int i = 0; i < ruleSize; i++) {
 			Vector<Integer> r1 = matrixBuilders[0].getRuleIdList(rule1.get(i));
@@ -393,12 +432,35 @@ public class DictionaryBuilder {
 					for (Iterator<Integer> i3 = r3.iterator(); i3.hasNext();) {
 						int ii3 = i3.next();
 						int position = size3 * (size2 * ii1 + ii2) + ii3;
-						shortBuffer.put(position, scores[i]);
+						matrix[position] = scores[i];
 					}
 				}
 			}
 		}
 
+		this.bigramConnectionCosts = isBigramMatrix(matrix, size1, size2 * size3);
+		int writtenSize1 = this.bigramConnectionCosts ? 1 : size1;
+
+
+		// Write connection cost data
+		MappedByteBuffer buffer = null;
+		ShortBuffer shortBuffer = null;
+		int matrixSizeBytes = (writtenSize1 * size2 * size3 * 2);
+		int headerSizeBytes = (3 * 2);
+
+		RandomAccessFile file = new RandomAccessFile(connectionCostDataFilename, "rw");
+		file.setLength(0);
+		file.writeShort(writtenSize1);
+		file.writeShort(size2);
+		file.writeShort(size3);
+		file.setLength(headerSizeBytes + matrixSizeBytes);
+		FileChannel indexChannel = file.getChannel();
+		buffer = indexChannel.map(FileChannel.MapMode.READ_WRITE, headerSizeBytes, matrixSizeBytes);
+		shortBuffer = buffer.asShortBuffer();
+		indexChannel.close();
+
+		shortBuffer.put(matrix, 0, writtenSize1 * size2 * size3);
+
 		buffer.force();
 		
 		file.close();
@@ -468,7 +530,9 @@ public class DictionaryBuilder {
 
 
 	/**
-	 * Create Trie file
+	 * Create Trie file. The Trie is written with a compact alphabet, which
+	 * numbers the characters of the keys by frequency so that the
+	 * double-array packs more densely
 	 * 
 	 * @param trieDataFilename The filename for the Trie file 
 	 * @param trieData The Trie precursor data
@@ -476,22 +540,38 @@ public class DictionaryBuilder {
 	 */
 	private void createTrieFile(String trieDataFilename, TrieData trieData) throws IOException {
 
-		TrieBuilder builder = new TrieBuilder(trieData.keys, trieData.values, trieData.size);
+		TrieBuilder builder = new TrieBuilder(trieData.keys, trieData.values, trieData.size, true);
 		builder.build(trieDataFilename);
 
 	}
 
 
 	/**
-	 * Compiles CSV source data into the data files used for analysis
+	 * Compiles CSV source data in the current directory into the data files
+	 * used for analysis
 	 * 
 	 * @param customDictionaryCSVFilenames The filenames of custom dictionaries, or <code>null</code>
 	 * @throws IOException 
 	 */
 	public DictionaryBuilder(String[] customDictionaryCSVFilenames) throws IOException {
 
+		this(new File("."), customDictionaryCSVFilenames);
+
+	}
+
+
+	/**
+	 * Compiles CSV source data in a directory into the data files used for
+	 * analysis, which are written to the same directory
+	 * 
+	 * @param directory The directory of the source data
+	 * @param customDictionaryCSVFilenames The filenames of custom dictionaries, or <code>null</code>
+	 * @throws IOException 
+	 */
+	public DictionaryBuilder(File directory, String[] customDictionaryCSVFilenames) throws IOException {
+
 		List<String> dictionaryCSVFilenames = new ArrayList<String>();
-		dictionaryCSVFilenames.add(DictionaryFileNames.DICTIONARY_CSV_FILENAME);
+		dictionaryCSVFilenames.add(new File(directory, DictionaryFileNames.DICTIONARY_CSV_FILENAME).getPath());
 		dictionaryCSVFilenames.addAll(Arrays.asList(customDictionaryCSVFilenames));
 
 		String charset = "UTF-8";
@@ -499,8 +579,8 @@ public class DictionaryBuilder {
 
 		// Create connection cost file (matrix.sen)
 		CostMatrixBuilder[] matrixBuilders = createConnectionCostFile(
-            DictionaryFileNames.CONNECTION_CSV_FILENAME,
-            DictionaryFileNames.CONNECTION_COST_DATA_FILENAME,
+            new File(directory, DictionaryFileNames.CONNECTION_CSV_FILENAME).getPath(),
+            new File(directory, DictionaryFileNames.CONNECTION_COST_DATA_FILENAME).getPath(),
             DEFAULT_CONNECTION_COST,
             charset
 		);
@@ -512,7 +592,7 @@ public class DictionaryBuilder {
 
 		createPartOfSpeechDataFile(
             dictionaryCSVFilenames,
-            DictionaryFileNames.PART_OF_SPEECH_DATA_FILENAME,
+            new File(directory, DictionaryFileNames.PART_OF_SPEECH_DATA_FILENAME).getPath(),
             matrixBuilders,
             PART_OF_SPEECH_START,
             PART_OF_SPEECH_SIZE,
@@ -530,7 +610,7 @@ public class DictionaryBuilder {
 
 		// Create Token file (token.sen)
 		TrieData trieData = createTokenFile(
-            DictionaryFileNames.TOKEN_DATA_FILENAME,
+            new File(directory, DictionaryFileNames.TOKEN_DATA_FILENAME).getPath(),
             standardCTokens,
             dictionaryList
 		);
@@ -540,7 +620,7 @@ public class DictionaryBuilder {
 
 
 		// Create Trie file
-		createTrieFile(DictionaryFileNames.TRIE_DATA_FILENAME, trieData);
+		createTrieFile(new File(directory, DictionaryFileNames.TRIE_DATA_FILENAME).getPath(), trieData);
 
 	}
 
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+import net.java.sen.dictionary.DictionaryContainer;
+
+import static net.java.sen.dictionary.DictionaryContainer.CONNECTION_COST_SECTION;
+import static net.java.sen.dictionary.DictionaryContainer.FIXED_HEADER_SIZE;
+import static net.java.sen.dictionary.DictionaryContainer.PART_OF_SPEECH_SECTION;
+import static net.java.sen.dictionary.DictionaryContainer.SECTION_COUNT;
+import static net.java.sen.dictionary.DictionaryContainer.SECTION_ENTRY_SIZE;
+import static net.java.sen.dictionary.DictionaryContainer.TOKEN_SECTION;
+import static net.java.sen.dictionary.DictionaryContainer.TRIE_SECTION;
+
+
+/**
+ * Packs the data files of a compiled dictionary into a single
+ * {@link DictionaryContainer}
+ */
+public class DictionaryContainerBuilder {
+
+	/**
+	 * The Tokenizer class name to record
+	 */
+	private final String tokenizerClassName;
+
+	/**
+	 * The unknown part-of-speech description to record
+	 */
+	private final String unknownPartOfSpeechDescription;
+
+	/**
+	 * The free text description to record
+	 */
+	private String description = "";
+
+	/**
+	 * The build time to record, in milliseconds since the epoch, or -1 to
+	 * record the time the container is built
+	 */
+	private long buildTime = -1;
+
+
+	/**
+	 * Writes a header string
+	 *
+	 * @param output The output to write to
+	 * @param string The string to write
+	 * @throws IOException
+	 */
+	private static void writeString(DataOutputStream output, String string) throws IOException {
+
+		byte[] bytes = string.getBytes("UTF-8");
+		if (bytes.length > 0xffff) {
+			throw new IOException("Dictionary container header string too long");
+		}
+
+		output.writeShort(bytes.length);
+		output.write(bytes);
+
+	}
+
+
+	/**
+	 * Copies a file to the given position of the container, calculating its
+	 * checksum
+	 *
+	 * @param container The container file
+	 * @param position The position to copy to
+	 * @param file The file to copy
+	 * @return The CRC-32 checksum of the file
+	 * @throws IOException
+	 */
+	private static int copySection(RandomAccessFile container, long position, File file) throws IOException {
+
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[65536];
+
+		container.seek(position);
+		InputStream input = new FileInputStream(file);
+		try {
+			int n;
+			while ((n = input.read(buffer)) != -1) {
+				crc.update(buffer, 0, n);
+				container.write(buffer, 0, n);
+			}
+		} finally {
+			input.close();
+		}
+
+		return (int) crc.getValue();
+
+	}
+
+
+	/**
+	 * Sets the free text description to record in the container
+	 *
+	 * @param description The description
+	 */
+	public void setDescription(String description) {
+
+		this.description = description;
+
+	}
+
+
+	/**
+	 * Sets the build time to record in the container, in place of the time
+	 * it is built. This allows a container to be rebuilt byte for byte
+	 *
+	 * @param buildTime The build time, in milliseconds since the epoch
+	 */
+	public void setBuildTime(long buildTime) {
+
+		this.buildTime = buildTime;
+
+	}
+
+
+	/**
+	 * Writes a container holding the given dictionary data files
+	 *
+	 * @param connectionCostFilename The connection cost matrix file
+	 * @param partOfSpeechInfoFilename The part-of-speech information file
+	 * @param tokenFilename The token file
+	 * @param trieFilename The Trie file
+	 * @param containerFilename The container file to write
+	 * @throws IOException
+	 */
+	public void build(String connectionCostFilename, String partOfSpeechInfoFilename, String tokenFilename, String trieFilename,
+			String containerFilename) throws IOException
+	{
+
+		int[] ids = { CONNECTION_COST_SECTION, PART_OF_SPEECH_SECTION, TOKEN_SECTION, TRIE_SECTION };
+		File[] files = {
+				new File(connectionCostFilename),
+				new File(partOfSpeechInfoFilename),
+				new File(tokenFilename),
+				new File(trieFilename)
+		};
+
+		int headerLength = FIXED_HEADER_SIZE + (SECTION_COUNT * SECTION_ENTRY_SIZE) + 8
+				+ DictionaryContainer.stringSize(DictionaryContainer.DICTIONARY_VERSION)
+				+ DictionaryContainer.stringSize(this.tokenizerClassName)
+				+ DictionaryContainer.stringSize(this.unknownPartOfSpeechDescription)
+				+ DictionaryContainer.stringSize(this.description)
+				+ 4;
+
+		// Lay the sections out after the header, each on an eight byte
+		// boundary
+		long[] offsets = new long[SECTION_COUNT];
+		long[] lengths = new long[SECTION_COUNT];
+		long position = headerLength;
+		for (int i = 0; i < SECTION_COUNT; i++) {
+			position = (position + 7) & ~7L;
+			offsets[i] = position;
+			lengths[i] = files[i].length();
+			position += lengths[i];
+		}
+
+		RandomAccessFile container = new RandomAccessFile(containerFilename, "rw");
+		try {
+
+			container.setLength(0);
+			int[] checksums = new int[SECTION_COUNT];
+			for (int i = 0; i < SECTION_COUNT; i++) {
+				checksums[i] = copySection(container, offsets[i], files[i]);
+			}
+			container.setLength(position);
+
+			ByteArrayOutputStream headerBytes = new ByteArrayOutputStream(headerLength);
+			DataOutputStream header = new DataOutputStream(headerBytes);
+			header.writeInt(DictionaryContainer.MAGIC);
+			header.writeInt(DictionaryContainer.FORMAT_VERSION);
+			header.writeInt(headerLength);
+			header.writeInt(SECTION_COUNT);
+			for (int i = 0; i < SECTION_COUNT; i++) {
+				header.writeInt(ids[i]);
+				header.writeInt(checksums[i]);
+				header.writeLong(offsets[i]);
+				header.writeLong(lengths[i]);
+			}
+			header.writeLong((this.buildTime == -1) ? System.currentTimeMillis() : this.buildTime);
+			writeString(header, DictionaryContainer.DICTIONARY_VERSION);
+			writeString(header, this.tokenizerClassName);
+			writeString(header, this.unknownPartOfSpeechDescription);
+			writeString(header, this.description);
+			header.flush();
+
+			CRC32 crc = new CRC32();
+			crc.update(headerBytes.toByteArray());
+			header.writeInt((int) crc.getValue());
+			header.flush();
+
+			container.seek(0);
+			container.write(headerBytes.toByteArray());
+
+		} finally {
+			container.close();
+		}
+
+	}
+
+
+	/**
+	 * Creates a DictionaryContainerBuilder
+	 *
+	 * @param tokenizerClassName The class name of the Tokenizer to use with
+	 *                           the dictionary
+	 * @param unknownPartOfSpeechDescription The part-of-speech description to
+	 *                                       use for unknown morphemes
+	 */
+	public DictionaryContainerBuilder(String tokenizerClassName, String unknownPartOfSpeechDescription) {
+
+		this.tokenizerClassName = tokenizerClassName;
+		this.unknownPartOfSpeechDescription = unknownPartOfSpeechDescription;
+
+	}
+
+
+}
@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen.compiler;
+
+import net.java.sen.dictionary.CToken;
+import net.java.sen.dictionary.Dictionary;
+import net.java.sen.dictionary.Morpheme;
+import net.java.sen.dictionary.UserDictionary;
+import net.java.sen.trie.Trie;
+import net.java.sen.trie.TrieBuilder;
+import net.java.sen.util.CSVData;
+import net.java.sen.util.CSVParser;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Builds {@link UserDictionary}s at runtime, from CSV data in the same format
+ * as the system dictionary's source data or through calls to
+ * {@link #add(String[])}. Words may be added, replaced and removed, and a new
+ * {@link UserDictionary} built from the current set of words at any time
+ *
+ * <p>The connection attributes of each word are resolved from its
+ * part-of-speech with the same rules as the {@link DictionaryBuilder}, which
+ * are read once from the connection cost CSV data the system dictionary was
+ * compiled from
+ *
+ * <p><b>Thread Safety</b>: Objects of this class are <b>NOT</b> thread safe and
+ * should not be accessed simultaneously by multiple threads
+ */
+public class UserDictionaryBuilder {
+
+	/**
+	 * Start of part-of-speech data within the dictionary CSV
+	 */
+	private static final int PART_OF_SPEECH_START = 2;
+
+	/**
+	 * Size of part-of-speech data within the dictionary CSV
+	 */
+	private static final int PART_OF_SPEECH_SIZE = 7;
+
+	/**
+	 * The maximum number of words sharing a surface
+	 */
+	private static final int MAX_WORDS_PER_SURFACE = 0xff;
+
+	/**
+	 * The three axes of the system dictionary's connection cost matrix
+	 */
+	private final CostMatrixBuilder[] matrixBuilders = new CostMatrixBuilder[3];
+
+	/**
+	 * <code>true</code> if the system dictionary's connection costs have no
+	 * trigram context, in which case the <code>rcAttr2</code> of every word
+	 * is 0
+	 */
+	private final boolean bigram;
+
+	/**
+	 * The current words, keyed by surface and part-of-speech
+	 */
+	private final Map<String,Word> words = new LinkedHashMap<String,Word>();
+
+
+	/**
+	 * A word of the user dictionary
+	 */
+	private static class Word {
+
+		/**
+		 * The surface of the word
+		 */
+		final String surface;
+
+		/**
+		 * The CToken of the word
+		 */
+		final CToken ctoken;
+
+		/**
+		 * The Morpheme of the word
+		 */
+		final Morpheme morpheme;
+
+
+		/**
+		 * @param surface The surface of the word
+		 * @param ctoken The CToken of the word
+		 * @param morpheme The Morpheme of the word
+		 */
+		Word(String surface, CToken ctoken, Morpheme morpheme) {
+
+			this.surface = surface;
+			this.ctoken = ctoken;
+			this.morpheme = morpheme;
+
+		}
+
+	}
+
+
+	/**
+	 * Adds a word, replacing any existing word with the same surface and
+	 * part-of-speech. The values are those of a line of the system
+	 * dictionary's CSV data: surface, cost, four part-of-speech fields,
+	 * conjugational type, conjugational form, basic form, reading and
+	 * pronunciation
+	 *
+	 * @param csvValues The values of the word
+	 * @throws IllegalArgumentException if the values are malformed, or the
+	 *         part-of-speech has no connection attributes
+	 */
+	public void add(String[] csvValues) {
+
+		if (csvValues.length < (PART_OF_SPEECH_START + PART_OF_SPEECH_SIZE + 2)) {
+			throw new IllegalArgumentException("format error:" + Arrays.toString(csvValues));
+		}
+
+		String surface = csvValues[0];
+		if ((surface.length() == 0) || (surface.length() > Short.MAX_VALUE)) {
+			throw new IllegalArgumentException("Invalid surface: \"" + surface + "\"");
+		}
+
+		short cost;
+		try {
+			cost = (short) Integer.parseInt(csvValues[1]);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid cost: \"" + csvValues[1] + "\"");
+		}
+
+		CSVData keyBuilder = new CSVData();
+		for (int i = PART_OF_SPEECH_START; i < (PART_OF_SPEECH_START + PART_OF_SPEECH_SIZE); i++) {
+			keyBuilder.append(csvValues[i]);
+		}
+		String key = keyBuilder.toString();
+
+		CToken ctoken = new CToken();
+		ctoken.rcAttr2 = this.bigram ? 0 : (short) this.matrixBuilders[0].getDicId(key);
+		ctoken.rcAttr1 = (short) this.matrixBuilders[1].getDicId(key);
+		ctoken.lcAttr = (short) this.matrixBuilders[2].getDicId(key);
+		ctoken.partOfSpeechIndex = -1;
+		ctoken.length = (short) surface.length();
+		ctoken.cost = cost;
+		if ((ctoken.rcAttr2 < 0) || (ctoken.rcAttr1 < 0) || (ctoken.lcAttr < 0)) {
+			throw new IllegalArgumentException("Unknown part-of-speech: \"" + key + "\"");
+		}
+
+		String[] values = new String[csvValues.length];
+		for (int i = 0; i < csvValues.length; i++) {
+			values[i] = csvValues[i].replaceAll("&#x21;", ",");
+		}
+
+		StringBuilder partOfSpeechBuilder = new StringBuilder();
+		for (int i = PART_OF_SPEECH_START; i < (PART_OF_SPEECH_START + 4); i++) {
+			if (!values[i].equals("*")) {
+				partOfSpeechBuilder.append(values[i]);
+				partOfSpeechBuilder.append("-");
+			}
+		}
+		String partOfSpeech = (partOfSpeechBuilder.length() == 0) ? "" : partOfSpeechBuilder.substring(0, partOfSpeechBuilder.length() - 1);
+		List<String> readings = DictionaryBuilder.splitCompoundField(values[PART_OF_SPEECH_START + 7]);
+		List<String> pronunciations = DictionaryBuilder.splitCompoundField(values[PART_OF_SPEECH_START + 8]);
+
+		Morpheme morpheme = new Morpheme(
+				partOfSpeech,
+				values[PART_OF_SPEECH_START + 4],
+				values[PART_OF_SPEECH_START + 5],
+				values[PART_OF_SPEECH_START + 6],
+				readings.toArray(new String[readings.size()]),
+				pronunciations.toArray(new String[pronunciations.size()]),
+				null
+		);
+
+		this.words.put(surface + "," + key, new Word(surface, ctoken, morpheme));
+
+	}
+
+
+	/**
+	 * Adds a word from a line of CSV data, as {@link #add(String[])}
+	 *
+	 * @param csvLine The line of CSV data
+	 * @throws IOException
+	 */
+	public void add(String csvLine) throws IOException {
+
+		String[] csvValues = new CSVParser(csvLine).nextTokens();
+		if (csvValues == null) {
+			throw new IllegalArgumentException("format error:" + csvLine);
+		}
+
+		add(csvValues);
+
+	}
+
+
+	/**
+	 * Adds every word from a stream of CSV data
+	 *
+	 * @param inputStream The CSV data
+	 * @param charset The charset of the CSV data
+	 * @return The number of lines read
+	 * @throws IOException
+	 */
+	public int read(InputStream inputStream, String charset) throws IOException {
+
+		CSVParser parser = new CSVParser(inputStream, charset);
+
+		int lines = 0;
+		String[] csvValues;
+		while ((csvValues = parser.nextTokens()) != null) {
+			try {
+				add(csvValues);
+			} catch (IllegalArgumentException e) {
+				throw new IOException(e.getMessage() + " at line " + (lines + 1), e);
+			}
+			lines++;
+		}
+
+		return lines;
+
+	}
+
+
+	/**
+	 * Adds every word from a UTF-8 CSV file
+	 *
+	 * @param csvFilename The CSV file
+	 * @return The number of lines read
+	 * @throws IOException
+	 */
+	public int read(String csvFilename) throws IOException {
+
+		InputStream inputStream = new FileInputStream(csvFilename);
+		try {
+			return read(inputStream, "UTF-8");
+		} finally {
+			inputStream.close();
+		}
+
+	}
+
+
+	/**
+	 * Removes every word with the given surface
+	 *
+	 * @param surface The surface
+	 * @return The number of words removed
+	 */
+	public int remove(String surface) {
+
+		int removed = 0;
+
+		for (Iterator<Word> iterator = this.words.values().iterator(); iterator.hasNext();) {
+			if (iterator.next().surface.equals(surface)) {
+				iterator.remove();
+				removed++;
+			}
+		}
+
+		return removed;
+
+	}
+
+
+	/**
+	 * Removes every word
+	 */
+	public void clear() {
+
+		this.words.clear();
+
+	}
+
+
+	/**
+	 * Gets the current number of words
+	 *
+	 * @return The number of words
+	 */
+	public int size() {
+
+		return this.words.size();
+
+	}
+
+
+	/**
+	 * Builds a {@link UserDictionary} of the current words. Later changes to
+	 * the builder do not affect the dictionary
+	 *
+	 * @return The user dictionary
+	 * @throws IOException
+	 */
+	public UserDictionary build() throws IOException {
+
+		List<Word> sortedWords = new ArrayList<Word>(this.words.values());
+		Collections.sort(sortedWords, new Comparator<Word>() {
+			public int compare(Word word1, Word word2) {
+				return word1.surface.compareTo(word2.surface);
+			}
+		});
+
+		int count = sortedWords.size();
+		CToken[] ctokens = new CToken[count];
+		Morpheme[] morphemes = new Morpheme[count];
+		String[] keys = new String[count];
+		int[] values = new int[count];
+		int size = 0;
+
+		for (int i = 0; i < count;) {
+			String surface = sortedWords.get(i).surface;
+			int start = i;
+			for (; (i < count) && sortedWords.get(i).surface.equals(surface); i++) {
+				ctokens[i] = sortedWords.get(i).ctoken;
+				morphemes[i] = sortedWords.get(i).morpheme;
+			}
+			if ((i - start) > MAX_WORDS_PER_SURFACE) {
+				throw new IllegalArgumentException("Too many words with surface \"" + surface + "\"");
+			}
+			keys[size] = surface;
+			values[size] = (start << 8) | (i - start);
+			size++;
+		}
+
+		Trie trie = (size == 0) ? null : new TrieBuilder(keys, values, size, true).build();
+
+		return new UserDictionary(trie, ctokens, morphemes);
+
+	}
+
+
+	/**
+	 * Creates a builder for user dictionaries to be used with the given system
+	 * dictionary
+	 *
+	 * @param connectionCSVFilename The connection cost CSV data the system
+	 *                              dictionary was compiled from
+	 * @param dictionary The system dictionary
+	 * @throws IOException
+	 */
+	public UserDictionaryBuilder(String connectionCSVFilename, Dictionary dictionary) throws IOException {
+
+		this.bigram = dictionary.isBigram();
+
+		for (int i = 0; i < 3; i++) {
+			this.matrixBuilders[i] = new CostMatrixBuilder();
+		}
+
+		InputStream inputStream = new FileInputStream(connectionCSVFilename);
+		try {
+			CSVParser parser = new CSVParser(inputStream, "UTF-8");
+			String t[];
+			while ((t = parser.nextTokens()) != null) {
+				if (t.length < 4) {
+					throw new IOException("Connection cost CSV format error");
+				}
+				this.matrixBuilders[0].add(t[0]);
+				this.matrixBuilders[1].add(t[1]);
+				this.matrixBuilders[2].add(t[2]);
+			}
+		} finally {
+			inputStream.close();
+		}
+
+		for (int i = 0; i < 3; i++) {
+			this.matrixBuilders[i].build();
+		}
+
+	}
+
+
+}
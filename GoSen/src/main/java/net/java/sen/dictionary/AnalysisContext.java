@@ -0,0 +1,442 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package net.java.sen.dictionary;
+
+import java.util.Arrays;
+
+import net.java.sen.trie.CharIterator;
+
+
+/**
+ * Mutable scratch state used during the analysis of a sentence. Keeping this
+ * state outside the {@link Dictionary} and {@link Tokenizer} allows a single
+ * instance of each to be shared between any number of threads, each of which
+ * uses its own <code>AnalysisContext</code>
+ *
+ * <p>The context also acts as an arena for the {@link Node}s of the Viterbi
+ * lattice and their {@link CToken}s. {@link Node}s obtained from
+ * {@link #newNode()} and {@link CToken}s obtained from {@link #newCToken()}
+ * remain valid only until the next call to {@link #reset()}, after which they
+ * are handed out again, so that analysis allocates neither once the pools have
+ * grown to fit the longest sentence seen
+ *
+ * <p><b>Thread Safety</b>: Objects of this class are <b>NOT</b> thread safe and
+ * should not be accessed simultaneously by multiple threads. Each
+ * {@link Viterbi} owns one context, which it reuses on every call
+ */
+public class AnalysisContext {
+
+	/**
+	 * The initial number of pooled Nodes
+	 */
+	private static final int INITIAL_POOL_SIZE = 1024;
+
+	/**
+	 * Pooled Nodes. Entries below <code>nodeCount</code> are in use; entries
+	 * above it are either free for reuse or not yet allocated
+	 */
+	private Node[] nodePool = new Node[INITIAL_POOL_SIZE];
+
+	/**
+	 * The number of pooled Nodes in use since the last reset
+	 */
+	private int nodeCount = 0;
+
+	/**
+	 * The number of unknown morpheme Nodes created since the last reset
+	 */
+	int unknownNodeCount = 0;
+
+	/**
+	 * Reusable array of linked lists of Nodes ending at each position of the
+	 * sentence
+	 */
+	private Node[] endNodeList = new Node[256];
+
+	/**
+	 * Reusable array based lattice, created on first use
+	 */
+	private CompactLattice compactLattice = null;
+
+	/**
+	 * A buffer used to store result indices from a Trie search. Reused on
+	 * every call to {@link Dictionary#commonPrefixSearch(CharIterator, AnalysisContext)}
+	 */
+	final int trieSearchResults[] = new int[256];
+
+	/**
+	 * A buffer used to store {@link CToken}s resulting from a search. Reused
+	 * on every call to {@link Dictionary#commonPrefixSearch(CharIterator, AnalysisContext)}
+	 */
+	CToken results[] = new CToken[256];
+
+	/**
+	 * A buffer used to store the indices of {@link CToken}s resulting from a
+	 * search. Reused on every call to
+	 * {@link Dictionary#commonPrefixSearchIndices(CharIterator, AnalysisContext)}
+	 */
+	private int tokenIndices[] = new int[256];
+
+	/**
+	 * Pooled CTokens, handed out and reused in the same way as the pooled
+	 * Nodes
+	 */
+	private CToken[] tokenPool = new CToken[INITIAL_POOL_SIZE];
+
+	/**
+	 * The number of pooled CTokens in use since the last reset
+	 */
+	private int tokenCount = 0;
+
+	/**
+	 * The position of the first character of the last run of characters
+	 * measured by the {@link Tokenizer}, or -1 if none
+	 */
+	private int characterRunStart = -1;
+
+	/**
+	 * One greater than the position of the last character of the last run of
+	 * characters measured by the {@link Tokenizer}
+	 */
+	private int characterRunEnd = -1;
+
+	/**
+	 * Reusable holder of the morphemes found at every position of a sentence
+	 * by {@link Dictionary#findAllMatches(Sentence, AnalysisContext)}
+	 */
+	private final DictionaryMatches dictionaryMatches = new DictionaryMatches();
+
+	/**
+	 * The numbers of pooled Nodes, unknown Nodes and CTokens in use at each
+	 * checkpoint taken since the last reset, three entries per checkpoint
+	 */
+	private int[] checkpoints = new int[3 * 256];
+
+	/**
+	 * The number of checkpoints taken since the last reset
+	 */
+	private int checkpointCount = 0;
+
+
+	/**
+	 * Gets a cleared {@link Node} from the pool, growing the pool if
+	 * necessary. The {@link Node} remains owned by this context and will be
+	 * reused after the next call to {@link #reset()}
+	 *
+	 * @return A cleared {@link Node}
+	 */
+	public Node newNode() {
+
+		if (this.nodeCount == this.nodePool.length) {
+			Node[] newPool = new Node[this.nodePool.length * 2];
+			System.arraycopy(this.nodePool, 0, newPool, 0, this.nodePool.length);
+			this.nodePool = newPool;
+		}
+
+		Node node = this.nodePool[this.nodeCount];
+		if (node == null) {
+			node = new Node();
+			this.nodePool[this.nodeCount] = node;
+		} else {
+			node.clear();
+		}
+		this.nodeCount++;
+
+		return node;
+
+	}
+
+
+	/**
+	 * Gets the number of pooled {@link Node}s in use since the last reset
+	 *
+	 * @return The number of {@link Node}s
+	 */
+	int getNodeCount() {
+
+		return this.nodeCount;
+
+	}
+
+
+	/**
+	 * Gets the number of unknown morpheme {@link Node}s created since the
+	 * last reset
+	 *
+	 * @return The number of unknown {@link Node}s
+	 */
+	int getUnknownNodeCount() {
+
+		return this.unknownNodeCount;
+
+	}
+
+
+	/**
+	 * Gets a {@link CToken} from the pool, growing the pool if necessary. The
+	 * {@link CToken}'s fields are left as they were, and should be overwritten
+	 * with {@link Dictionary#readToken(int, CToken)}. The {@link CToken}
+	 * remains owned by this context and will be reused after the next call to
+	 * {@link #reset()}
+	 *
+	 * @return A pooled {@link CToken}
+	 */
+	public CToken newCToken() {
+
+		if (this.tokenCount == this.tokenPool.length) {
+			this.tokenPool = Arrays.copyOf(this.tokenPool, this.tokenPool.length * 2);
+		}
+
+		CToken token = this.tokenPool[this.tokenCount];
+		if (token == null) {
+			token = new CToken();
+			this.tokenPool[this.tokenCount] = token;
+		}
+		this.tokenCount++;
+
+		return token;
+
+	}
+
+
+	/**
+	 * Gets the indices of the {@link CToken}s found by the last call to
+	 * {@link Dictionary#commonPrefixSearchIndices(CharIterator, AnalysisContext)}
+	 *
+	 * @return The token index buffer. Only as many elements as that search
+	 *         returned are valid
+	 */
+	public int[] getTokenIndices() {
+
+		return this.tokenIndices;
+
+	}
+
+
+	/**
+	 * Gets the token index buffer, growing it if necessary
+	 *
+	 * @param length The number of indices required
+	 * @return The token index buffer
+	 */
+	int[] getTokenIndices(int length) {
+
+		if (this.tokenIndices.length < length) {
+			this.tokenIndices = new int[Math.max(length, this.tokenIndices.length * 2)];
+		}
+
+		return this.tokenIndices;
+
+	}
+
+
+	/**
+	 * Records a run of characters measured by the {@link Tokenizer}, such as
+	 * a run of characters of the same class, so that lookups from later
+	 * positions within the run during the same analysis need not measure it
+	 * again
+	 *
+	 * @param start The position of the first character of the run
+	 * @param end One greater than the position of the last character of the
+	 *            run
+	 */
+	public void setCharacterRun(int start, int end) {
+
+		this.characterRunStart = start;
+		this.characterRunEnd = end;
+
+	}
+
+
+	/**
+	 * Gets the end of the last run of characters recorded by
+	 * {@link #setCharacterRun(int, int)} since the last reset, if it contains
+	 * the given position
+	 *
+	 * @param position The position
+	 * @return One greater than the position of the last character of the run,
+	 *         or -1 if the run does not contain the position
+	 */
+	public int getCharacterRunEnd(int position) {
+
+		if ((position >= this.characterRunStart) && (position < this.characterRunEnd)) {
+			return this.characterRunEnd;
+		}
+
+		return -1;
+
+	}
+
+
+	/**
+	 * Gets a cleared array of linked lists of {@link Node}s, one entry for
+	 * each position from 0 to <code>length</code> inclusive. The array is
+	 * reused between calls and may be longer than requested
+	 *
+	 * @param length The length of the sentence
+	 * @return The cleared array
+	 */
+	Node[] getEndNodeList(int length) {
+
+		if (this.endNodeList.length < (length + 1)) {
+			this.endNodeList = new Node[Math.max(length + 1, this.endNodeList.length * 2)];
+		} else {
+			Arrays.fill(this.endNodeList, 0, length + 1, null);
+		}
+
+		return this.endNodeList;
+
+	}
+
+
+	/**
+	 * Extends an array obtained from {@link #getEndNodeList(int)} to have an
+	 * entry for each position from 0 to <code>length</code> inclusive. The
+	 * entries up to <code>oldLength</code> are kept, and the remainder cleared
+	 *
+	 * @param oldLength The length the array was last obtained or extended for
+	 * @param length The new length
+	 * @return The extended array, which may not be the same array
+	 */
+	Node[] extendEndNodeList(int oldLength, int length) {
+
+		if (this.endNodeList.length < (length + 1)) {
+			this.endNodeList = Arrays.copyOf(this.endNodeList, Math.max(length + 1, this.endNodeList.length * 2));
+		}
+		Arrays.fill(this.endNodeList, oldLength + 1, length + 1, null);
+
+		return this.endNodeList;
+
+	}
+
+
+	/**
+	 * Gets the reusable array based lattice, creating it if necessary
+	 *
+	 * @return The lattice
+	 */
+	CompactLattice getCompactLattice() {
+
+		if (this.compactLattice == null) {
+			this.compactLattice = new CompactLattice();
+		}
+
+		return this.compactLattice;
+
+	}
+
+
+	/**
+	 * Gets the holder of the morphemes found at every position of a sentence
+	 *
+	 * @return The holder
+	 */
+	DictionaryMatches getDictionaryMatches() {
+
+		return this.dictionaryMatches;
+
+	}
+
+
+	/**
+	 * Records the numbers of pooled {@link Node}s and {@link CToken}s in use,
+	 * so that those handed out afterwards may be returned to the pool by
+	 * {@link #rewind(int)} without discarding those handed out before
+	 *
+	 * @return The index of the checkpoint. Checkpoints are numbered from 0 in
+	 *         the order they are taken
+	 */
+	int checkpoint() {
+
+		if ((3 * this.checkpointCount) == this.checkpoints.length) {
+			this.checkpoints = Arrays.copyOf(this.checkpoints, this.checkpoints.length * 2);
+		}
+
+		int i = 3 * this.checkpointCount;
+		this.checkpoints[i] = this.nodeCount;
+		this.checkpoints[i + 1] = this.unknownNodeCount;
+		this.checkpoints[i + 2] = this.tokenCount;
+
+		return this.checkpointCount++;
+
+	}
+
+
+	/**
+	 * Returns to the pool every {@link Node} and {@link CToken} handed out
+	 * since a checkpoint, and discards that and every later checkpoint. The
+	 * last recorded run of characters is also forgotten, as it may not apply
+	 * to the lookups that follow
+	 *
+	 * @param checkpoint The index of the checkpoint
+	 */
+	void rewind(int checkpoint) {
+
+		int i = 3 * checkpoint;
+		this.nodeCount = this.checkpoints[i];
+		this.unknownNodeCount = this.checkpoints[i + 1];
+		this.tokenCount = this.checkpoints[i + 2];
+		this.checkpointCount = checkpoint;
+
+		this.characterRunStart = -1;
+		this.characterRunEnd = -1;
+
+	}
+
+
+	/**
+	 * Marks the morphemes found by
+	 * {@link Dictionary#findAllMatches(Sentence, AnalysisContext)} at a range
+	 * of positions as no longer valid, so that lookups there search the
+	 * {@link Dictionary} again
+	 *
+	 * @param start The first position of the range
+	 * @param end One greater than the last position of the range
+	 */
+	void invalidateDictionaryMatches(int start, int end) {
+
+		if (start < end) {
+			this.dictionaryMatches.invalid.set(start, end);
+		}
+
+	}
+
+
+	/**
+	 * Returns every pooled {@link Node} and {@link CToken} to the pool, and
+	 * forgets the last recorded run of characters and any morphemes found by
+	 * {@link Dictionary#findAllMatches(Sentence, AnalysisContext)}.
+	 * {@link Node}s and {@link CToken}s handed out before the reset must no
+	 * longer be used
+	 */
+	void reset() {
+
+		this.nodeCount = 0;
+		this.unknownNodeCount = 0;
+		this.tokenCount = 0;
+		this.checkpointCount = 0;
+		this.characterRunStart = -1;
+		this.characterRunEnd = -1;
+		this.dictionaryMatches.characters = null;
+
+	}
+
+
+}
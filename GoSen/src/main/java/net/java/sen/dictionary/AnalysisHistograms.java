@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen.dictionary;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.java.sen.util.Histogram;
+
+
+/**
+ * An {@link AnalysisListener} that aggregates the {@link AnalysisStatistics}
+ * of every analysis into a {@link Histogram} of each measurement, so that the
+ * distribution of analysis cost over a corpus, and not only its mean, can be
+ * examined. The time spent in each filter is aggregated under the filter's
+ * name
+ *
+ * <p><b>Thread Safety</b>: This class and all its public methods are thread
+ * safe, and it may be attached to a {@link net.java.sen.StringTagger} used for
+ * batch analysis
+ */
+public class AnalysisHistograms implements AnalysisListener {
+
+	/**
+	 * The number of characters analysed
+	 */
+	private final Histogram characters = new Histogram();
+
+	/**
+	 * The number of lattice nodes created
+	 */
+	private final Histogram nodes = new Histogram();
+
+	/**
+	 * The number of connections evaluated
+	 */
+	private final Histogram edges = new Histogram();
+
+	/**
+	 * The number of unknown morpheme nodes synthesised
+	 */
+	private final Histogram unknownNodes = new Histogram();
+
+	/**
+	 * The time spent in the prepare phase
+	 */
+	private final Histogram prepareTime = new Histogram();
+
+	/**
+	 * The time spent in the lookup phase
+	 */
+	private final Histogram lookupTime = new Histogram();
+
+	/**
+	 * The time spent in the connection phase
+	 */
+	private final Histogram connectionTime = new Histogram();
+
+	/**
+	 * The time spent in the token phase
+	 */
+	private final Histogram tokenTime = new Histogram();
+
+	/**
+	 * The total time spent
+	 */
+	private final Histogram totalTime = new Histogram();
+
+	/**
+	 * The time spent in each filter, by filter name, in the order first seen
+	 */
+	private final Map<String,Histogram> filterTimes = new LinkedHashMap<String,Histogram>();
+
+
+	/* (non-Javadoc)
+	 * @see net.java.sen.dictionary.AnalysisListener#analysed(net.java.sen.dictionary.AnalysisStatistics)
+	 */
+	@Override
+	public synchronized void analysed(AnalysisStatistics statistics) {
+
+		this.characters.record(statistics.getCharacters());
+		this.nodes.record(statistics.getNodes());
+		this.edges.record(statistics.getEdges());
+		this.unknownNodes.record(statistics.getUnknownNodes());
+		this.prepareTime.record(statistics.getPrepareTime());
+		this.lookupTime.record(statistics.getLookupTime());
+		this.connectionTime.record(statistics.getConnectionTime());
+		this.tokenTime.record(statistics.getTokenTime());
+		this.totalTime.record(statistics.getTotalTime());
+
+		for (int i = 0; i < statistics.getFilterCount(); i++) {
+			String name = statistics.getFilterName(i);
+			Histogram histogram = this.filterTimes.get(name);
+			if (histogram == null) {
+				histogram = new Histogram();
+				this.filterTimes.put(name, histogram);
+			}
+			histogram.record(statistics.getFilterTime(i));
+		}
+
+	}
+
+
+	/**
+	 * Discards every analysis aggregated
+	 */
+	public synchronized void clear() {
+
+		this.characters.clear();
+		this.nodes.clear();
+		this.edges.clear();
+		this.unknownNodes.clear();
+		this.prepareTime.clear();
+		this.lookupTime.clear();
+		this.connectionTime.clear();
+		this.tokenTime.clear();
+		this.totalTime.clear();
+		this.filterTimes.clear();
+
+	}
+
+
+	/**
+	 * Gets the distribution of the number of characters analysed
+	 *
+	 * @return The histogram
+	 */
+	public Histogram getCharacters() {
+
+		return this.characters;
+
+	}
+
+
+	/**
+	 * Gets the distribution of the number of lattice nodes created
+	 *
+	 * @return The histogram
+	 */
+	public Histogram getNodes() {
+
+		return this.nodes;
+
+	}
+
+
+	/**
+	 * Gets the distribution of the number of connections evaluated
+	 *
+	 * @return The histogram
+	 */
+	public Histogram getEdges() {
+
+		return this.edges;
+
+	}
+
+
+	/**
+	 * Gets the distribution of the number of unknown morpheme nodes
+	 * synthesised
+	 *
+	 * @return The histogram
+	 */
+	public Histogram getUnknownNodes() {
+
+		return this.unknownNodes;
+
+	}
+
+
+	/**
+	 * Gets the distribution of the time spent in the prepare phase
+	 *
+	 * @return The histogram, in nanoseconds
+	 */
+	public Histogram getPrepareTime() {
+
+		return this.prepareTime;
+
+	}
+
+
+	/**
+	 * Gets the distribution of the time spent in the lookup phase
+	 *
+	 * @return The histogram, in nanoseconds
+	 */
+	public Histogram getLookupTime() {
+
+		return this.lookupTime;
+
+	}
+
+
+	/**
+	 * Gets the distribution of the time spent in the connection phase
+	 *
+	 * @return The histogram, in nanoseconds
+	 */
+	public Histogram getConnectionTime() {
+
+		return this.connectionTime;
+
+	}
+
+
+	/**
+	 * Gets the distribution of the time spent in the token phase
+	 *
+	 * @return The histogram, in nanoseconds
+	 */
+	public Histogram getTokenTime() {
+
+		return this.tokenTime;
+
+	}
+
+
+	/**
+	 * Gets the distribution of the total time spent
+	 *
+	 * @return The histogram, in nanoseconds
+	 */
+	public Histogram getTotalTime() {
+
+		return this.totalTime;
+
+	}
+
+
+	/**
+	 * Gets the distributions of the time spent in each filter
+	 *
+	 * @return An unmodifiable copy of the histograms by filter name, in the
+	 *         order first seen
+	 */
+	public synchronized Map<String,Histogram> getFilterTimes() {
+
+		return Collections.unmodifiableMap(new LinkedHashMap<String,Histogram>(this.filterTimes));
+
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString() {
+
+		StringBuilder builder = new StringBuilder();
+
+		builder.append("characters: ").append(this.characters).append('\n');
+		builder.append("nodes: ").append(this.nodes).append('\n');
+		builder.append("edges: ").append(this.edges).append('\n');
+		builder.append("unknown nodes: ").append(this.unknownNodes).append('\n');
+		builder.append("prepare ns: ").append(this.prepareTime).append('\n');
+		builder.append("lookup ns: ").append(this.lookupTime).append('\n');
+		builder.append("connection ns: ").append(this.connectionTime).append('\n');
+		builder.append("token ns: ").append(this.tokenTime).append('\n');
+		for (Map.Entry<String,Histogram> entry : this.filterTimes.entrySet()) {
+			builder.append(entry.getKey()).append(" ns: ").append(entry.getValue()).append('\n');
+		}
+		builder.append("total ns: ").append(this.totalTime).append('\n');
+
+		return builder.toString();
+
+	}
+
+
+}
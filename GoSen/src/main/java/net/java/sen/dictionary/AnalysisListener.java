@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package net.java.sen.dictionary;
+
+
+/**
+ * Receives the {@link AnalysisStatistics} of each analysis performed by a
+ * {@link Viterbi}, {@link net.java.sen.StringTagger} or
+ * {@link net.java.sen.ReadingProcessor} to which it is attached. Analysis is
+ * only measured while a listener is attached
+ *
+ * <p>A listener attached to a {@link net.java.sen.StringTagger} that is used
+ * for batch analysis is called from several threads at once, and must be
+ * thread safe
+ */
+public interface AnalysisListener {
+
+	/**
+	 * Receives the statistics of an analysis once it is complete. The
+	 * statistics are reused for the next analysis, and must be copied with
+	 * {@link AnalysisStatistics#copy()} if they are to be kept
+	 *
+	 * @param statistics The statistics
+	 */
+	public void analysed(AnalysisStatistics statistics);
+
+
+}
@@ -0,0 +1,476 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package net.java.sen.dictionary;
+
+import java.util.Arrays;
+
+
+/**
+ * Measurements of a single analysis, passed to an {@link AnalysisListener}.
+ * The time spent is divided into phases:
+ *
+ * <ul>
+ * <li><b>prepare</b>: the Tokenizer's search of the whole sentence before the
+ *     lattice is built, which for a {@link Dictionary} backed Tokenizer is a
+ *     single pass over the dictionary Trie</li>
+ * <li><b>lookup</b>: finding the candidate morphemes at each position and
+ *     creating their lattice {@link Node}s, including unknown morphemes</li>
+ * <li><b>connection</b>: evaluating connection costs and choosing the best
+ *     connection of each candidate</li>
+ * <li><b>token</b>: following the best path and creating its {@link Token}s,
+ *     including the decoding of any {@link Morpheme}s loaded at that time</li>
+ * <li><b>filter</b>: the pre- and post-processing of each filter applied by
+ *     a {@link net.java.sen.StringTagger}</li>
+ * </ul>
+ *
+ * <p>The total time includes time not attributed to any phase. Phase times
+ * are measured with <code>System.nanoTime()</code> only while a listener is
+ * attached
+ *
+ * <p><b>Thread Safety</b>: Objects of this class are <b>NOT</b> thread safe.
+ * The statistics passed to a listener are reused for the next analysis, and
+ * must be copied with {@link #copy()} if they are to be kept
+ */
+public class AnalysisStatistics {
+
+	/**
+	 * The number of characters analysed
+	 */
+	int characters = 0;
+
+	/**
+	 * The number of lattice nodes created
+	 */
+	long nodes = 0;
+
+	/**
+	 * The number of connections between nodes evaluated
+	 */
+	long edges = 0;
+
+	/**
+	 * The number of unknown morpheme nodes synthesised
+	 */
+	long unknownNodes = 0;
+
+	/**
+	 * Nanoseconds spent searching the whole sentence before building the
+	 * lattice
+	 */
+	long prepareTime = 0;
+
+	/**
+	 * Nanoseconds spent finding candidate morphemes
+	 */
+	long lookupTime = 0;
+
+	/**
+	 * Nanoseconds spent connecting the lattice
+	 */
+	long connectionTime = 0;
+
+	/**
+	 * Nanoseconds spent creating the result Tokens
+	 */
+	long tokenTime = 0;
+
+	/**
+	 * Nanoseconds spent in total
+	 */
+	long totalTime = 0;
+
+	/**
+	 * The value of <code>System.nanoTime()</code> at the start of the analysis
+	 */
+	long startTime = 0;
+
+	/**
+	 * The number of filters timed
+	 */
+	private int filterCount = 0;
+
+	/**
+	 * The name of each filter timed
+	 */
+	private String[] filterNames = new String[4];
+
+	/**
+	 * Nanoseconds spent in each filter timed
+	 */
+	private long[] filterTimes = new long[4];
+
+
+	/**
+	 * Clears the statistics and records the start of a new analysis
+	 *
+	 * @param characters The number of characters to analyse
+	 */
+	void start(int characters) {
+
+		this.characters = characters;
+		this.nodes = 0;
+		this.edges = 0;
+		this.unknownNodes = 0;
+		this.prepareTime = 0;
+		this.lookupTime = 0;
+		this.connectionTime = 0;
+		this.tokenTime = 0;
+		this.totalTime = 0;
+		Arrays.fill(this.filterNames, 0, this.filterCount, null);
+		this.filterCount = 0;
+		this.startTime = System.nanoTime();
+
+	}
+
+
+	/**
+	 * Adds the nodes created from a context since it was last reset
+	 *
+	 * @param context The context
+	 */
+	void addNodes(AnalysisContext context) {
+
+		this.nodes += context.getNodeCount();
+		this.unknownNodes += context.getUnknownNodeCount();
+
+	}
+
+
+	/**
+	 * Records the end of an analysis
+	 */
+	void finish() {
+
+		this.totalTime = System.nanoTime() - this.startTime;
+
+	}
+
+
+	/**
+	 * Adds the time since the given time to the prepare phase
+	 *
+	 * @param time The value of <code>System.nanoTime()</code> at the start of
+	 *             the time to add
+	 * @return The current value of <code>System.nanoTime()</code>
+	 */
+	long addPrepareTime(long time) {
+
+		long now = System.nanoTime();
+		this.prepareTime += now - time;
+
+		return now;
+
+	}
+
+
+	/**
+	 * Adds the time since the given time to the lookup phase
+	 *
+	 * @param time The value of <code>System.nanoTime()</code> at the start of
+	 *             the time to add
+	 * @return The current value of <code>System.nanoTime()</code>
+	 */
+	long addLookupTime(long time) {
+
+		long now = System.nanoTime();
+		this.lookupTime += now - time;
+
+		return now;
+
+	}
+
+
+	/**
+	 * Adds the time since the given time to the connection phase
+	 *
+	 * @param time The value of <code>System.nanoTime()</code> at the start of
+	 *             the time to add
+	 * @return The current value of <code>System.nanoTime()</code>
+	 */
+	long addConnectionTime(long time) {
+
+		long now = System.nanoTime();
+		this.connectionTime += now - time;
+
+		return now;
+
+	}
+
+
+	/**
+	 * Adds the time since the given time to the token phase
+	 *
+	 * @param time The value of <code>System.nanoTime()</code> at the start of
+	 *             the time to add
+	 * @return The current value of <code>System.nanoTime()</code>
+	 */
+	long addTokenTime(long time) {
+
+		long now = System.nanoTime();
+		this.tokenTime += now - time;
+
+		return now;
+
+	}
+
+
+	/**
+	 * Adds time spent in a filter, and to the total time. Time added to a
+	 * filter that has already been timed is added to its existing time
+	 *
+	 * @param name The name of the filter
+	 * @param time The nanoseconds spent in the filter
+	 */
+	public void addFilterTime(String name, long time) {
+
+		for (int i = 0; i < this.filterCount; i++) {
+			if (this.filterNames[i].equals(name)) {
+				this.filterTimes[i] += time;
+				this.totalTime += time;
+				return;
+			}
+		}
+
+		if (this.filterCount == this.filterNames.length) {
+			this.filterNames = Arrays.copyOf(this.filterNames, this.filterCount * 2);
+			this.filterTimes = Arrays.copyOf(this.filterTimes, this.filterCount * 2);
+		}
+
+		this.filterNames[this.filterCount] = name;
+		this.filterTimes[this.filterCount] = time;
+		this.filterCount++;
+		this.totalTime += time;
+
+	}
+
+
+	/**
+	 * Gets the number of characters analysed
+	 *
+	 * @return The number of characters
+	 */
+	public int getCharacters() {
+
+		return this.characters;
+
+	}
+
+
+	/**
+	 * Gets the number of lattice nodes created, including the copies of a
+	 * node made for each left context when the dictionary's connection costs
+	 * have trigram context
+	 *
+	 * @return The number of nodes
+	 */
+	public long getNodes() {
+
+		return this.nodes;
+
+	}
+
+
+	/**
+	 * Gets the number of connections between nodes whose cost was evaluated
+	 *
+	 * @return The number of edges
+	 */
+	public long getEdges() {
+
+		return this.edges;
+
+	}
+
+
+	/**
+	 * Gets the number of unknown morpheme nodes synthesised
+	 *
+	 * @return The number of unknown nodes
+	 */
+	public long getUnknownNodes() {
+
+		return this.unknownNodes;
+
+	}
+
+
+	/**
+	 * Gets the time spent searching the whole sentence before building the
+	 * lattice
+	 *
+	 * @return The time in nanoseconds
+	 */
+	public long getPrepareTime() {
+
+		return this.prepareTime;
+
+	}
+
+
+	/**
+	 * Gets the time spent finding candidate morphemes
+	 *
+	 * @return The time in nanoseconds
+	 */
+	public long getLookupTime() {
+
+		return this.lookupTime;
+
+	}
+
+
+	/**
+	 * Gets the time spent connecting the lattice
+	 *
+	 * @return The time in nanoseconds
+	 */
+	public long getConnectionTime() {
+
+		return this.connectionTime;
+
+	}
+
+
+	/**
+	 * Gets the time spent creating the result {@link Token}s
+	 *
+	 * @return The time in nanoseconds
+	 */
+	public long getTokenTime() {
+
+		return this.tokenTime;
+
+	}
+
+
+	/**
+	 * Gets the number of filters timed
+	 *
+	 * @return The number of filters
+	 */
+	public int getFilterCount() {
+
+		return this.filterCount;
+
+	}
+
+
+	/**
+	 * Gets the name of a filter timed
+	 *
+	 * @param index The index of the filter, in the order first timed
+	 * @return The name of the filter
+	 */
+	public String getFilterName(int index) {
+
+		if (index >= this.filterCount) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		return this.filterNames[index];
+
+	}
+
+
+	/**
+	 * Gets the time spent in a filter
+	 *
+	 * @param index The index of the filter, in the order first timed
+	 * @return The time in nanoseconds
+	 */
+	public long getFilterTime(int index) {
+
+		if (index >= this.filterCount) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		return this.filterTimes[index];
+
+	}
+
+
+	/**
+	 * Gets the total time spent on the analysis, including the time spent in
+	 * filters
+	 *
+	 * @return The time in nanoseconds
+	 */
+	public long getTotalTime() {
+
+		return this.totalTime;
+
+	}
+
+
+	/**
+	 * Creates an independent copy of the statistics
+	 *
+	 * @return The copy
+	 */
+	public AnalysisStatistics copy() {
+
+		AnalysisStatistics copy = new AnalysisStatistics();
+
+		copy.characters = this.characters;
+		copy.nodes = this.nodes;
+		copy.edges = this.edges;
+		copy.unknownNodes = this.unknownNodes;
+		copy.prepareTime = this.prepareTime;
+		copy.lookupTime = this.lookupTime;
+		copy.connectionTime = this.connectionTime;
+		copy.tokenTime = this.tokenTime;
+		copy.totalTime = this.totalTime;
+		copy.startTime = this.startTime;
+		copy.filterCount = this.filterCount;
+		copy.filterNames = this.filterNames.clone();
+		copy.filterTimes = this.filterTimes.clone();
+
+		return copy;
+
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+
+		StringBuilder builder = new StringBuilder();
+
+		builder.append("characters=").append(this.characters);
+		builder.append(" nodes=").append(this.nodes);
+		builder.append(" edges=").append(this.edges);
+		builder.append(" unknown=").append(this.unknownNodes);
+		builder.append(" prepare=").append(this.prepareTime);
+		builder.append("ns lookup=").append(this.lookupTime);
+		builder.append("ns connection=").append(this.connectionTime);
+		builder.append("ns token=").append(this.tokenTime);
+		for (int i = 0; i < this.filterCount; i++) {
+			builder.append("ns ").append(this.filterNames[i]).append('=').append(this.filterTimes[i]);
+		}
+		builder.append("ns total=").append(this.totalTime).append("ns");
+
+		return builder.toString();
+
+	}
+
+
+}
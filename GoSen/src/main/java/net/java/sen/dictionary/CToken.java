@@ -92,6 +92,62 @@ final public class CToken implements Cloneable {
 	}
 
 
+	/**
+	 * Read a CToken from a ByteBuffer at an absolute offset. The buffer's
+	 * position is not changed, so the same buffer may be read concurrently by
+	 * multiple threads
+	 *
+	 * @param buffer The ByteBuffer to read from
+	 * @param offset The offset in bytes of the CToken within the buffer
+	 * @return The CToken
+	 */
+	public static CToken read(ByteBuffer buffer, int offset) {
+
+		CToken token = new CToken();
+		token.readFrom(buffer, offset);
+
+		return token;
+
+	}
+
+
+	/**
+	 * Copies every field of another <code>CToken</code> into this one
+	 *
+	 * @param other The <code>CToken</code> to copy from
+	 */
+	public void copy(CToken other) {
+
+		this.rcAttr2 = other.rcAttr2;
+		this.rcAttr1 = other.rcAttr1;
+		this.lcAttr = other.lcAttr;
+		this.length = other.length;
+		this.cost = other.cost;
+		this.partOfSpeechIndex = other.partOfSpeechIndex;
+
+	}
+
+
+	/**
+	 * Overwrites this CToken with one read from a ByteBuffer at an absolute
+	 * offset. The buffer's position is not changed, so the same buffer may be
+	 * read concurrently by multiple threads
+	 *
+	 * @param buffer The ByteBuffer to read from
+	 * @param offset The offset in bytes of the CToken within the buffer
+	 */
+	public void readFrom(ByteBuffer buffer, int offset) {
+
+		this.rcAttr2 = buffer.getShort(offset);
+		this.rcAttr1 = buffer.getShort(offset + 2);
+		this.lcAttr = buffer.getShort(offset + 4);
+		this.length = buffer.getShort(offset + 6);
+		this.cost = buffer.getShort(offset + 8);
+		this.partOfSpeechIndex = buffer.getInt(offset + 10);
+
+	}
+
+
 	/**
 	 * Write a CToken to a DataOutput
 	 *
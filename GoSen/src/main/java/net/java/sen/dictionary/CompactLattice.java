@@ -0,0 +1,378 @@
+/*
+ * Copyright (C) 2002-2007
+ * Taku Kudoh <taku-ku@is.aist-nara.ac.jp>
+ * Takashi Okamoto <tora@debian.org>
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package net.java.sen.dictionary;
+
+import java.util.Arrays;
+
+
+/**
+ * A Viterbi lattice stored as parallel arrays of primitives rather than as a
+ * graph of {@link Node} objects. Each lattice entry is identified by its
+ * index into the arrays, and entries are linked to each other (the best
+ * previous entry, and the next entry ending at the same position) by index.
+ * The connection cost calculation therefore reads only <code>int</code> and
+ * <code>short</code> arrays rather than dereferencing {@link Node}s and
+ * {@link CToken}s
+ *
+ * <p>The fixed data of each candidate morpheme (its position, context
+ * attributes and word cost) is stored once per word, and the lattice entries
+ * refer to it by index. This keeps the copies of an entry made for each
+ * distinct left context down to a handful of <code>int</code>s
+ *
+ * <p>The lattice is built and connected in exactly the same order as the
+ * {@link Node} lattice of {@link Viterbi#getBestTokens(Sentence)}, and so
+ * finds exactly the same best path
+ *
+ * <p><b>Thread Safety</b>: Objects of this class are <b>NOT</b> thread safe and
+ * should not be accessed simultaneously by multiple threads
+ */
+final class CompactLattice {
+
+	/**
+	 * The initial capacity of the word and entry arrays
+	 */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * The number of words in the lattice
+	 */
+	int wordCount = 0;
+
+	/**
+	 * The index of the first character of each word within the surface
+	 */
+	int[] start = new int[INITIAL_CAPACITY];
+
+	/**
+	 * The number of characters each word covers
+	 */
+	int[] length = new int[INITIAL_CAPACITY];
+
+	/**
+	 * The number of characters between the end of the previous word and the
+	 * end of each word, including ignored characters
+	 */
+	int[] span = new int[INITIAL_CAPACITY];
+
+	/**
+	 * The left context attribute of each word
+	 */
+	short[] lcAttr = new short[INITIAL_CAPACITY];
+
+	/**
+	 * The first right context attribute of each word
+	 */
+	short[] rcAttr1 = new short[INITIAL_CAPACITY];
+
+	/**
+	 * The second right context attribute of each word
+	 */
+	short[] rcAttr2 = new short[INITIAL_CAPACITY];
+
+	/**
+	 * The word cost of each word
+	 */
+	short[] wordCost = new short[INITIAL_CAPACITY];
+
+	/**
+	 * The part-of-speech index of each word
+	 */
+	int[] partOfSpeechIndex = new int[INITIAL_CAPACITY];
+
+	/**
+	 * The explicit {@link Morpheme} of each word, or <code>null</code> if it
+	 * should be read from the {@link Dictionary}
+	 */
+	Morpheme[] morpheme = new Morpheme[INITIAL_CAPACITY];
+
+	/**
+	 * The number of entries in the lattice
+	 */
+	int size = 0;
+
+	/**
+	 * The word of each entry
+	 */
+	int[] word = new int[INITIAL_CAPACITY];
+
+	/**
+	 * The accumulated cost of the best path ending with each entry
+	 */
+	int[] cost = new int[INITIAL_CAPACITY];
+
+	/**
+	 * The index of the previous entry on the best path ending with each entry,
+	 * or -1 if none
+	 */
+	int[] prev = new int[INITIAL_CAPACITY];
+
+	/**
+	 * The <code>rcAttr2</code> of the previous entry on the best path ending
+	 * with each entry, cached so that the connection cost calculation need not
+	 * follow <code>prev</code>
+	 */
+	short[] prevRcAttr2 = new short[INITIAL_CAPACITY];
+
+	/**
+	 * The index of the next entry ending at the same position as each entry,
+	 * or -1 if none
+	 */
+	int[] lnext = new int[INITIAL_CAPACITY];
+
+	/**
+	 * The index of the most recently added entry ending at each position, or
+	 * -1 if none
+	 */
+	int[] endEntryList = new int[256];
+
+	/**
+	 * The number of connections between entries calculated since the last
+	 * reset
+	 */
+	int edgeCount = 0;
+
+	/**
+	 * Scratch array holding the indices of the entries ending at the position
+	 * currently being connected
+	 */
+	private int[] leftEntry = new int[64];
+
+	/**
+	 * Scratch array holding the accumulated costs of the entries ending at the
+	 * position currently being connected
+	 */
+	private int[] leftCost = new int[64];
+
+	/**
+	 * Scratch array holding the connection cost matrix rows of the entries
+	 * ending at the position currently being connected
+	 */
+	private int[] leftConnectionRow = new int[64];
+
+
+	/**
+	 * Grows the word arrays to hold at least one more word
+	 */
+	private void growWords() {
+
+		int capacity = this.start.length * 2;
+
+		this.start = Arrays.copyOf(this.start, capacity);
+		this.length = Arrays.copyOf(this.length, capacity);
+		this.span = Arrays.copyOf(this.span, capacity);
+		this.lcAttr = Arrays.copyOf(this.lcAttr, capacity);
+		this.rcAttr1 = Arrays.copyOf(this.rcAttr1, capacity);
+		this.rcAttr2 = Arrays.copyOf(this.rcAttr2, capacity);
+		this.wordCost = Arrays.copyOf(this.wordCost, capacity);
+		this.partOfSpeechIndex = Arrays.copyOf(this.partOfSpeechIndex, capacity);
+		this.morpheme = Arrays.copyOf(this.morpheme, capacity);
+
+	}
+
+
+	/**
+	 * Grows the entry arrays to hold at least one more entry
+	 */
+	private void growEntries() {
+
+		int capacity = this.word.length * 2;
+
+		this.word = Arrays.copyOf(this.word, capacity);
+		this.cost = Arrays.copyOf(this.cost, capacity);
+		this.prev = Arrays.copyOf(this.prev, capacity);
+		this.prevRcAttr2 = Arrays.copyOf(this.prevRcAttr2, capacity);
+		this.lnext = Arrays.copyOf(this.lnext, capacity);
+
+	}
+
+
+	/**
+	 * Clears the lattice for a sentence of the given length
+	 *
+	 * @param sentenceLength The length of the sentence
+	 */
+	void reset(int sentenceLength) {
+
+		Arrays.fill(this.morpheme, 0, this.wordCount, null);
+		this.wordCount = 0;
+		this.size = 0;
+		this.edgeCount = 0;
+
+		if (this.endEntryList.length < (sentenceLength + 1)) {
+			this.endEntryList = new int[Math.max(sentenceLength + 1, this.endEntryList.length * 2)];
+		}
+		Arrays.fill(this.endEntryList, 0, sentenceLength + 1, -1);
+
+	}
+
+
+	/**
+	 * Adds a word copied from a {@link Node}, and a single unconnected entry
+	 * for it
+	 *
+	 * @param node The {@link Node} to copy
+	 * @return The index of the new entry
+	 */
+	int add(Node node) {
+
+		if (this.wordCount == this.start.length) {
+			growWords();
+		}
+
+		int w = this.wordCount++;
+		CToken ctoken = node.ctoken;
+
+		this.start[w] = node.start;
+		this.length[w] = node.length;
+		this.span[w] = node.span;
+		this.lcAttr[w] = ctoken.lcAttr;
+		this.rcAttr1[w] = ctoken.rcAttr1;
+		this.rcAttr2[w] = ctoken.rcAttr2;
+		this.wordCost[w] = ctoken.cost;
+		this.partOfSpeechIndex[w] = ctoken.partOfSpeechIndex;
+		this.morpheme[w] = node.morpheme;
+
+		if (this.size == this.word.length) {
+			growEntries();
+		}
+
+		int i = this.size++;
+
+		this.word[i] = w;
+		this.cost[i] = node.cost;
+		this.prev[i] = -1;
+		this.prevRcAttr2[i] = 0;
+		this.lnext[i] = -1;
+
+		return i;
+
+	}
+
+
+	/**
+	 * Adds a new unconnected entry for the same word as an existing entry
+	 *
+	 * @param source The index of the entry to copy
+	 * @return The index of the new entry
+	 */
+	private int copy(int source) {
+
+		if (this.size == this.word.length) {
+			growEntries();
+		}
+
+		int i = this.size++;
+
+		this.word[i] = this.word[source];
+		this.prev[i] = -1;
+		this.lnext[i] = -1;
+
+		return i;
+
+	}
+
+
+	/**
+	 * Calculates the best connection for each of a contiguous range of
+	 * entries sharing a starting position, and links them into the lattice.
+	 * This is the array equivalent of the {@link Node} based calculation in
+	 * {@link Viterbi}
+	 *
+	 * @param dictionary The {@link Dictionary} to read connection costs from
+	 * @param position The shared starting position of the entries
+	 * @param limit One greater than the last index of the sentence
+	 * @param first The index of the first entry
+	 * @param last One greater than the index of the last entry
+	 */
+	void calculateConnectionCosts(Dictionary dictionary, int position, int limit, int first, int last) {
+
+		if ((position != limit) && !dictionary.isBigram()) {
+			for (int l = this.endEntryList[position]; l != -1; l = this.lnext[l]) {
+				int lWord = this.word[l];
+				if (this.rcAttr2[lWord] != 0) {
+					this.edgeCount += last - first;
+					int lCost = this.cost[l];
+					int lConnectionRow = dictionary.getConnectionRow(this.prevRcAttr2[l], this.rcAttr1[lWord]);
+					for (int r = first; r < last; r++) {
+						int r2 = copy(r);
+						int rWord = this.word[r2];
+						this.cost[r2] = lCost + dictionary.getCost(lConnectionRow, this.lcAttr[rWord], this.wordCost[rWord]);
+						this.prev[r2] = l;
+						this.prevRcAttr2[r2] = this.rcAttr2[lWord];
+
+						int y = position + this.span[rWord];
+
+						this.lnext[r2] = this.endEntryList[y];
+						this.endEntryList[y] = r2;
+					}
+				}
+			}
+		}
+
+		// Gather the entries ending at the position into contiguous arrays, in
+		// list order, so that each right entry is connected by a linear scan
+		int leftCount = 0;
+		for (int l = this.endEntryList[position]; l != -1; l = this.lnext[l]) {
+			if (leftCount == this.leftEntry.length) {
+				this.leftEntry = Arrays.copyOf(this.leftEntry, leftCount * 2);
+				this.leftCost = Arrays.copyOf(this.leftCost, leftCount * 2);
+				this.leftConnectionRow = Arrays.copyOf(this.leftConnectionRow, leftCount * 2);
+			}
+			this.leftEntry[leftCount] = l;
+			this.leftCost[leftCount] = this.cost[l];
+			this.leftConnectionRow[leftCount] = dictionary.getConnectionRow(this.prevRcAttr2[l], this.rcAttr1[this.word[l]]);
+			leftCount++;
+		}
+
+		int[] leftCost = this.leftCost;
+		int[] leftConnectionRow = this.leftConnectionRow;
+		this.edgeCount += leftCount * (last - first);
+
+		for (int r = first; r < last; r++) {
+			int bestCost = Integer.MAX_VALUE;
+			int best = -1;
+			int rWord = this.word[r];
+			short rLcAttr = this.lcAttr[rWord];
+			short rWordCost = this.wordCost[rWord];
+
+			for (int i = 0; i < leftCount; i++) {
+				int c = leftCost[i] + dictionary.getCost(leftConnectionRow[i], rLcAttr, rWordCost);
+				if (c <= bestCost) {
+					best = i;
+					bestCost = c;
+				}
+			}
+
+			int bestEntry = (best == -1) ? -1 : this.leftEntry[best];
+			this.prev[r] = bestEntry;
+			this.cost[r] = bestCost;
+			this.prevRcAttr2[r] = (bestEntry == -1) ? 0 : this.rcAttr2[this.word[bestEntry]];
+			int x = position + this.span[rWord];
+
+			this.lnext[r] = this.endEntryList[x];
+			this.endEntryList[x] = r;
+		}
+
+	}
+
+
+}
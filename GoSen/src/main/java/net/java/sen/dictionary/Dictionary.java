@@ -21,6 +21,7 @@
 
 package net.java.sen.dictionary;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -28,28 +29,72 @@ import java.nio.CharBuffer;
 import java.nio.ShortBuffer;
 
 import net.java.sen.trie.CharIterator;
+import net.java.sen.trie.Trie;
+import net.java.sen.trie.TrieScanner;
 import net.java.sen.trie.TrieSearcher;
 import net.java.sen.util.BufferCache;
+import net.java.sen.util.BufferCache.SharedBuffer;
 
 /**
  * The <code>Dictionary</code> class wraps access to a compiled Sen dictionary
+ *
+ * <p><b>Thread Safety</b>: Objects of this class are thread safe once
+ * constructed. All mutable search state is held by the caller's
+ * {@link AnalysisContext}, so a single <code>Dictionary</code> may be shared
+ * by any number of threads without locking
+ *
+ * <p>The dictionary's files are mapped through the {@link BufferCache}, and
+ * are released by {@link #close()}. A closed <code>Dictionary</code>, and any
+ * {@link Tokenizer} or analyser using it, must no longer be used, as its
+ * files may have been unmapped; callers sharing a <code>Dictionary</code>
+ * between threads must ensure that no analysis is in progress when it is
+ * closed
  */
-public class Dictionary {
+public class Dictionary implements Closeable {
 
 	/**
-	 * Mapper buffer of the token file (token.sen)
+	 * References to the mapped files the dictionary's data is read from
 	 */
-	private ByteBuffer tokenBuffer = null;
+	private final SharedBuffer[] sharedBuffers;
 
 	/**
-	 * Mapped buffer of the part-of-speech information file (partOfSpeech.sen)
+	 * <code>true</code> once the dictionary has been closed
 	 */
-	private CharBuffer partOfSpeechInfoBuffer = null;
+	private boolean closed = false;
 
 	/**
-	 * Searcher wrapping a mapped buffer of the Trie data (trie.sen)
+	 * Mapper buffer of the token file (token.sen). Only absolute reads are
+	 * made from this buffer, so its position is never changed after
+	 * construction
 	 */
-	private TrieSearcher trieSearcher = null;
+	private final ByteBuffer tokenBuffer;
+
+	/**
+	 * Mapped buffer of the part-of-speech information file (partOfSpeech.sen).
+	 * Only absolute reads are made from this buffer
+	 */
+	private final CharBuffer partOfSpeechInfoBuffer;
+
+	/**
+	 * Cache of decoded records from the part-of-speech information file
+	 */
+	private final PartOfSpeechCache partOfSpeechCache;
+
+	/**
+	 * The Trie data (trie.sen), either mapped or copied to the heap
+	 */
+	private final Trie trie;
+
+	/**
+	 * Searcher over the Trie data
+	 */
+	private final TrieSearcher trieSearcher;
+
+	/**
+	 * Scanner over the Trie data, created on first use by
+	 * {@link #findAllMatches(Sentence, AnalysisContext)}
+	 */
+	private volatile TrieScanner trieScanner = null;
 
 	/**
 	 * Mapped buffer of the connection cost matrix file (connectionCost.sen)
@@ -72,31 +117,26 @@ public class Dictionary {
 	private int connectionSize3;
 
 	/**
-	 * A CToken representing a beginning-of-string
+	 * <code>true</code> if the connection cost matrix has no trigram context,
+	 * that is, the size of its first extent is 1. In this case the
+	 * <code>rcAttr2</code> of a CToken takes no part in cost calculation
 	 */
-	private CToken bosToken = new CToken();
+	private boolean bigram;
 
 	/**
-	 * A CToken representing an end-of-string
-	 */
-	private CToken eosToken = new CToken();
-
-	/**
-	 * A CToken representing an unknown morpheme
+	 * A CToken representing a beginning-of-string
 	 */
-	private CToken unknownToken = new CToken();
+	private final CToken bosToken;
 
 	/**
-	 * A buffer used to store result indices from a Trie search. Reused on
-	 * every call to the {@link #commonPrefixSearch(CharIterator)} method
+	 * A CToken representing an end-of-string
 	 */
-	private int trieSearchResults[] = new int[256];
+	private final CToken eosToken;
 
 	/**
-	 * A buffer used to store {@link CToken}s resulting from a search. Reused
-	 * on every call to the {@link #commonPrefixSearch(CharIterator)} method
+	 * A CToken representing an unknown morpheme
 	 */
-	private CToken results[] = new CToken[256];
+	private final CToken unknownToken;
 
 	/**
 	 * Default connection cost
@@ -104,14 +144,15 @@ public class Dictionary {
 	private static final short DEFAULT_COST = 10000;
 
 	/**
-	 * Map the connection cost matrix file (matrix.sen)
+	 * Reads the header of the connection cost matrix file (matrix.sen)
 	 * 
-	 * @param connectionCostFilename The filename of the connection cost matrix 
+	 * @param connectionCostData The contents of the connection cost matrix
+	 *                           file
 	 * @throws IOException 
 	 */
-	private void loadConnectionCostFile(String connectionCostFilename) throws IOException {
+	private void loadConnectionCostFile(ByteBuffer connectionCostData) throws IOException {
 
-		ShortBuffer buffer = BufferCache.getBuffer(new File(connectionCostFilename)).asShortBuffer();
+		ShortBuffer buffer = connectionCostData.asShortBuffer();
 
 		this.connectionSize1 = buffer.get();
 		this.connectionSize2 = buffer.get();
@@ -123,6 +164,7 @@ public class Dictionary {
 		}
 
 		this.connectionCostBuffer = buffer.slice();
+		this.bigram = (this.connectionSize1 == 1);
 
 	}
 
@@ -167,13 +209,15 @@ public class Dictionary {
 
 
 	/**
-	 * Returns the part of speech info character buffer
+	 * Returns the cache of decoded part-of-speech records shared by every
+	 * {@link Morpheme} loaded from this Dictionary, for example to examine
+	 * its hit and miss counts
 	 *
-	 * @return The character buffer
+	 * @return The part-of-speech cache
 	 */
-	CharBuffer getPartOfSpeechInfoBuffer() {
+	public PartOfSpeechCache getPartOfSpeechCache() {
 
-		return this.partOfSpeechInfoBuffer;
+		return this.partOfSpeechCache;
 
 	}
 
@@ -188,46 +232,517 @@ public class Dictionary {
 	 */
 	public int getCost(Node lNode2, Node lNode, Node rNode) {
 
-		if ( lNode2.ctoken.rcAttr2==-1 || lNode.ctoken.rcAttr1==-1 || rNode.ctoken.lcAttr==-1 ) {
-			return rNode.ctoken.cost + DEFAULT_COST;
+		return getCost(lNode2.ctoken.rcAttr2, lNode.ctoken.rcAttr1, rNode.ctoken.lcAttr, rNode.ctoken.cost);
+
+	}
+
+
+	/**
+	 * Indicates whether the connection cost matrix has no trigram context, so
+	 * that the cost of a connection depends only on the two morphemes being
+	 * connected. If so, {@link #getBigramCost(Node, Node)} may be used in
+	 * place of {@link #getCost(Node, Node, Node)}, and there is no need to
+	 * distinguish between paths that differ only before the left morpheme
+	 *
+	 * @return <code>true</code> if the matrix has no trigram context
+	 */
+	public boolean isBigram() {
+
+		return this.bigram;
+
+	}
+
+
+	/**
+	 * Retrieves the cost of connecting two morphemes. This must only be used
+	 * if {@link #isBigram()} returns <code>true</code>, in which case it
+	 * gives the same result as {@link #getCost(Node, Node, Node)} without
+	 * reading the morpheme preceding the left morpheme
+	 *
+	 * @param lNode The left morpheme
+	 * @param rNode The right morpheme
+	 * @return The connection cost
+	 */
+	public int getBigramCost(Node lNode, Node rNode) {
+
+		CToken lToken = lNode.ctoken;
+		CToken rToken = rNode.ctoken;
+
+		if ( lToken.rcAttr1==-1 || rToken.lcAttr==-1 ) {
+			return rToken.cost + DEFAULT_COST;
+		}
+		return this.connectionCostBuffer.get(this.connectionSize3 * lToken.rcAttr1 + rToken.lcAttr) + rToken.cost;
+
+	}
+
+
+	/**
+	 * Retrieves the cost of connecting a morpheme to two preceding morphemes,
+	 * given the context attributes of each
+	 *
+	 * @param rcAttr2 The <code>rcAttr2</code> of the first morpheme
+	 * @param rcAttr1 The <code>rcAttr1</code> of the second morpheme
+	 * @param lcAttr The <code>lcAttr</code> of the third morpheme
+	 * @param wordCost The cost of the third morpheme
+	 * @return The connection cost
+	 */
+	public int getCost(int rcAttr2, int rcAttr1, int lcAttr, int wordCost) {
+
+		if (this.bigram) {
+			rcAttr2 = 0;
+		}
+
+		if ( rcAttr2==-1 || rcAttr1==-1 || lcAttr==-1 ) {
+			return wordCost + DEFAULT_COST;
+		}
+		int position = this.connectionSize3 * (this.connectionSize2 * rcAttr2 + rcAttr1) + lcAttr;
+		return this.connectionCostBuffer.get(position) + wordCost;
+
+	}
+
+
+	/**
+	 * Finds the row of the connection cost matrix used to connect any
+	 * morpheme to two preceding morphemes with the given context attributes.
+	 * The row may be passed to {@link #getCost(int, int, int)} for each
+	 * candidate following morpheme
+	 *
+	 * @param rcAttr2 The <code>rcAttr2</code> of the first morpheme
+	 * @param rcAttr1 The <code>rcAttr1</code> of the second morpheme
+	 * @return The offset of the row within the matrix, or -1 if the default
+	 *         cost applies
+	 */
+	int getConnectionRow(int rcAttr2, int rcAttr1) {
+
+		if (this.bigram) {
+			rcAttr2 = 0;
+		}
+
+		if ( rcAttr2==-1 || rcAttr1==-1 ) {
+			return -1;
 		}
-		int position = this.connectionSize3 * (this.connectionSize2 * lNode2.ctoken.rcAttr2 + lNode.ctoken.rcAttr1) + rNode.ctoken.lcAttr;
-		return this.connectionCostBuffer.get(position) + rNode.ctoken.cost;
+		return this.connectionSize3 * (this.connectionSize2 * rcAttr2 + rcAttr1);
+
+	}
+
+
+	/**
+	 * Retrieves the cost of connecting a morpheme to a row of the connection
+	 * cost matrix found by {@link #getConnectionRow(int, int)}
+	 *
+	 * @param connectionRow The row of the connection cost matrix
+	 * @param lcAttr The <code>lcAttr</code> of the morpheme
+	 * @param wordCost The cost of the morpheme
+	 * @return The connection cost
+	 */
+	int getCost(int connectionRow, int lcAttr, int wordCost) {
+
+		if ( connectionRow==-1 || lcAttr==-1 ) {
+			return wordCost + DEFAULT_COST;
+		}
+		return this.connectionCostBuffer.get(connectionRow + lcAttr) + wordCost;
+
+	}
+
+
+	/**
+	 * Finds the offset in bytes of a CToken within the token file
+	 *
+	 * @param tokenIndex The index of the CToken
+	 * @return The offset of the CToken
+	 */
+	private static int getTokenOffset(int tokenIndex) {
+
+		return (int) (tokenIndex * CToken.SIZE);
+
+	}
+
+
+	/**
+	 * Reads the <code>rcAttr2</code> of a CToken directly from the token file
+	 *
+	 * @param tokenIndex The index of the CToken, as returned by
+	 *                   {@link #commonPrefixSearchIndices(CharIterator, AnalysisContext)}
+	 * @return The <code>rcAttr2</code> of the CToken
+	 */
+	public short getRcAttr2(int tokenIndex) {
+
+		return this.tokenBuffer.getShort(getTokenOffset(tokenIndex));
+
+	}
+
+
+	/**
+	 * Reads the <code>rcAttr1</code> of a CToken directly from the token file
+	 *
+	 * @param tokenIndex The index of the CToken, as returned by
+	 *                   {@link #commonPrefixSearchIndices(CharIterator, AnalysisContext)}
+	 * @return The <code>rcAttr1</code> of the CToken
+	 */
+	public short getRcAttr1(int tokenIndex) {
+
+		return this.tokenBuffer.getShort(getTokenOffset(tokenIndex) + 2);
+
+	}
+
+
+	/**
+	 * Reads the <code>lcAttr</code> of a CToken directly from the token file
+	 *
+	 * @param tokenIndex The index of the CToken, as returned by
+	 *                   {@link #commonPrefixSearchIndices(CharIterator, AnalysisContext)}
+	 * @return The <code>lcAttr</code> of the CToken
+	 */
+	public short getLcAttr(int tokenIndex) {
+
+		return this.tokenBuffer.getShort(getTokenOffset(tokenIndex) + 4);
+
+	}
+
+
+	/**
+	 * Reads the morpheme length of a CToken directly from the token file
+	 *
+	 * @param tokenIndex The index of the CToken, as returned by
+	 *                   {@link #commonPrefixSearchIndices(CharIterator, AnalysisContext)}
+	 * @return The length of the CToken's morpheme
+	 */
+	public short getLength(int tokenIndex) {
+
+		return this.tokenBuffer.getShort(getTokenOffset(tokenIndex) + 6);
+
+	}
+
+
+	/**
+	 * Reads the word cost of a CToken directly from the token file
+	 *
+	 * @param tokenIndex The index of the CToken, as returned by
+	 *                   {@link #commonPrefixSearchIndices(CharIterator, AnalysisContext)}
+	 * @return The cost of the CToken
+	 */
+	public short getWordCost(int tokenIndex) {
+
+		return this.tokenBuffer.getShort(getTokenOffset(tokenIndex) + 8);
+
+	}
+
+
+	/**
+	 * Reads the part-of-speech index of a CToken directly from the token file
+	 *
+	 * @param tokenIndex The index of the CToken, as returned by
+	 *                   {@link #commonPrefixSearchIndices(CharIterator, AnalysisContext)}
+	 * @return The part-of-speech index of the CToken
+	 */
+	public int getPartOfSpeechIndex(int tokenIndex) {
+
+		return this.tokenBuffer.getInt(getTokenOffset(tokenIndex) + 10);
+
+	}
+
+
+	/**
+	 * Overwrites a CToken with one read from the token file, so that callers
+	 * that reuse their CTokens (see {@link AnalysisContext#newCToken()}) need
+	 * allocate nothing
+	 *
+	 * @param tokenIndex The index of the CToken, as returned by
+	 *                   {@link #commonPrefixSearchIndices(CharIterator, AnalysisContext)}
+	 * @param token The CToken to overwrite
+	 */
+	public void readToken(int tokenIndex, CToken token) {
+
+		token.readFrom(this.tokenBuffer, getTokenOffset(tokenIndex));
 
 	}
 
 
 	/**
 	 * Searches for possible morphemes starting at the current position of a
-	 * CharIterator. The iterator is advanced by the length of the longest
-	 * matching morpheme 
+	 * CharIterator, without creating any objects. The iterator is advanced by
+	 * the length of the longest matching morpheme. The fields of each CToken
+	 * found may be read by index through {@link #readToken(int, CToken)} or
+	 * the individual getters such as {@link #getLcAttr(int)}; all of these use
+	 * absolute reads, and so are independent of any buffer position
 	 *
-	 * @param iterator The iterator to search from 
-	 * @return The possible morphemes found
+	 * @param iterator The iterator to search from
+	 * @param context The analysis context whose buffers are used to hold the
+	 *                search results
+	 * @return The number of CTokens found. Their indices are held in the
+	 *         first elements of {@link AnalysisContext#getTokenIndices()}
+	 *         until the next search made with the same context
 	 */
-	public CToken[] commonPrefixSearch(CharIterator iterator) {
+	public int commonPrefixSearchIndices(CharIterator iterator, AnalysisContext context) {
+
+		int trieSearchResults[] = context.trieSearchResults;
+
+		int n = this.trieSearcher.commonPrefixSearch(iterator, trieSearchResults);
 
 		int size = 0;
+		for (int i = 0; i < n; i++) {
+			size += 0xff & trieSearchResults[i];
+		}
 
-		int n = this.trieSearcher.commonPrefixSearch(iterator, this.trieSearchResults);
+		int tokenIndices[] = context.getTokenIndices(size);
 
+		size = 0;
 		for (int i = 0; i < n; i++) {
 
-			int k = 0xff & this.trieSearchResults[i];
-			int p = this.trieSearchResults[i] >> 8;
+			int k = 0xff & trieSearchResults[i];
+			int p = trieSearchResults[i] >> 8;
 
-			this.tokenBuffer.position((int) ((p + 3) * CToken.SIZE));
+			// The first three CTokens of the file are the beginning-of-string,
+			// end-of-string and unknown CTokens
 			for (int j = 0; j < k; j++) {
-				this.results[size] = CToken.read(this.tokenBuffer);
-				size++;
+				tokenIndices[size++] = p + 3 + j;
 			}
 
 		}
 
+		return size;
+
+	}
+
+
+	/**
+	 * Gets the scanner over the Trie data, creating it if necessary
+	 *
+	 * @return The scanner
+	 */
+	private TrieScanner getTrieScanner() {
+
+		TrieScanner scanner = this.trieScanner;
+
+		if (scanner == null) {
+			synchronized (this) {
+				scanner = this.trieScanner;
+				if (scanner == null) {
+					scanner = new TrieScanner(this.trie);
+					this.trieScanner = scanner;
+				}
+			}
+		}
+
+		return scanner;
+
+	}
+
+
+	/**
+	 * Searches for possible morphemes at every position of a sentence in a
+	 * single pass over its characters, rather than one search from each
+	 * position. The morphemes found are held by the context, and are returned
+	 * by {@link #findTokenIndices(SentenceIterator, char[], AnalysisContext)}
+	 * for each origin of the sentence's {@link Sentence#iterator()} until the
+	 * context is next reset. They are exactly those that
+	 * {@link #commonPrefixSearchIndices(CharIterator, AnalysisContext)} would
+	 * find from the same origin, in the same order
+	 *
+	 * <p>The failure transitions used by the single pass are calculated from
+	 * the Trie data on the first call, and are then kept for the lifetime of
+	 * the <code>Dictionary</code>
+	 *
+	 * @param sentence The sentence to search
+	 * @param context The analysis context to hold the results
+	 */
+	public void findAllMatches(Sentence sentence, AnalysisContext context) {
+
+		TrieScanner scanner = getTrieScanner();
+		DictionaryMatches matches = context.getDictionaryMatches();
+		char[] characters = sentence.getArray();
+		int offset = sentence.getOffset();
+		int length = sentence.length();
+
+		matches.reset(offset, length);
+
+		int position = 0;
+		while (position < length) {
+			int end = sentence.findRunEnd(position);
+			if (end == position) {
+				position++;
+			} else {
+				scanner.scan(characters, offset + position, offset + end, matches);
+				position = end;
+			}
+		}
+
+		matches.finish(characters);
+
+	}
+
+
+	/**
+	 * Gets the possible morphemes starting at the origin of a SentenceIterator,
+	 * without creating any objects. If
+	 * {@link #findAllMatches(Sentence, AnalysisContext)} has been called for
+	 * the iterator's sentence since the context was last reset, and its
+	 * results at the iterator's origin are still valid, they are used and the
+	 * iterator is not moved. Otherwise this searches as
+	 * {@link #commonPrefixSearchIndices(CharIterator, AnalysisContext)} does,
+	 * advancing the iterator by the length of the longest matching morpheme
+	 *
+	 * @param iterator The iterator to search from, positioned at its origin
+	 * @param surface The underlying characters of the iterator's sentence
+	 * @param context The analysis context whose buffers are used to hold the
+	 *                search results
+	 * @return The number of CTokens found. Their indices are held in the
+	 *         first elements of {@link AnalysisContext#getTokenIndices()}
+	 *         until the next search made with the same context
+	 */
+	public int findTokenIndices(SentenceIterator iterator, char[] surface, AnalysisContext context) {
+
+		DictionaryMatches matches = context.getDictionaryMatches();
+
+		int origin = iterator.origin();
+
+		if ((matches.characters != surface) || matches.invalid.get(origin)) {
+			return commonPrefixSearchIndices(iterator, context);
+		}
+
+		int first = matches.offsets[origin];
+		int size = matches.offsets[origin + 1] - first;
+
+		int tokenIndices[] = context.getTokenIndices(size);
+		System.arraycopy(matches.tokenIndices, first, tokenIndices, 0, size);
+
+		return size;
+
+	}
+
+
+	/**
+	 * Finds the earliest position of a sentence from which a search for
+	 * possible morphemes may read as far as a given position. A search from
+	 * any earlier position finds the same morphemes whatever follows it
+	 *
+	 * @param sentence The sentence
+	 * @param position The position
+	 * @return The earliest position, which is no later than
+	 *         <code>position</code>
+	 */
+	public int findSearchStart(Sentence sentence, int position) {
+
+		int offset = sentence.getOffset();
+
+		return position - getTrieScanner().findPrefixLength(sentence.getArray(), offset, offset + position);
+
+	}
+
+
+	/**
+	 * Searches for possible morphemes starting at the current position of a
+	 * CharIterator. The iterator is advanced by the length of the longest
+	 * matching morpheme. A new CToken is created for each morpheme found;
+	 * {@link #commonPrefixSearchIndices(CharIterator, AnalysisContext)}
+	 * avoids this
+	 *
+	 * @param iterator The iterator to search from 
+	 * @param context The analysis context whose buffers are used to hold the
+	 *                search results
+	 * @return The possible morphemes found, terminated by <code>null</code>.
+	 *         The returned array belongs to the context, and is overwritten by
+	 *         the next search made with the same context
+	 */
+	public CToken[] commonPrefixSearch(CharIterator iterator, AnalysisContext context) {
+
+		int size = commonPrefixSearchIndices(iterator, context);
+		int tokenIndices[] = context.getTokenIndices();
+
+		CToken results[] = context.results;
+		if (results.length < (size + 1)) {
+			results = new CToken[size + 1];
+			context.results = results;
+		}
+
+		for (int i = 0; i < size; i++) {
+			results[i] = CToken.read(this.tokenBuffer, getTokenOffset(tokenIndices[i]));
+		}
+
 		// Null terminate
-		this.results[size] = null;
+		results[size] = null;
+
+		return results;
+
+	}
+
 
-		return this.results;
+	/**
+	 * Gets the Trie data
+	 *
+	 * @return The Trie data
+	 */
+	public Trie getTrie() {
+
+		return this.trie;
+
+	}
+
+
+	/**
+	 * Releases the dictionary's references to its mapped files, unmapping
+	 * any that are no longer used elsewhere. Closing an already closed
+	 * dictionary has no effect
+	 *
+	 * <p>The {@link Token}s of earlier analyses become invalid: any of their
+	 * {@link Morpheme}s whose part-of-speech data has not already been read
+	 * throw an <code>IllegalStateException</code> when it is requested
+	 */
+	public void close() {
+
+		synchronized (this) {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+		}
+
+		this.partOfSpeechCache.close();
+		for (SharedBuffer sharedBuffer : this.sharedBuffers) {
+			sharedBuffer.close();
+		}
+
+	}
+
+
+	/**
+	 * Determines whether the dictionary has been closed
+	 *
+	 * @return <code>true</code> if the dictionary has been closed
+	 */
+	public synchronized boolean isClosed() {
+
+		return this.closed;
+
+	}
+
+
+	/**
+	 * Takes references to the mapped files of a dictionary. Either all of the
+	 * files are acquired, or none are
+	 *
+	 * @param filenames The filenames to acquire
+	 * @return The references, in the same order as the filenames
+	 * @throws IOException
+	 */
+	private static SharedBuffer[] acquire(String... filenames) throws IOException {
+
+		SharedBuffer[] sharedBuffers = new SharedBuffer[filenames.length];
+
+		try {
+			for (int i = 0; i < filenames.length; i++) {
+				sharedBuffers[i] = BufferCache.acquire(new File(filenames[i]));
+			}
+		} catch (IOException | RuntimeException e) {
+			for (SharedBuffer sharedBuffer : sharedBuffers) {
+				if (sharedBuffer != null) {
+					sharedBuffer.close();
+				}
+			}
+			throw e;
+		}
+
+		return sharedBuffers;
 
 	}
 
@@ -244,20 +759,122 @@ public class Dictionary {
 			throws IOException
 	{
 
-		// Map connection cost file
-		loadConnectionCostFile(connectionCostFilename);
+		this(connectionCostFilename, partOfSpeechInfoFilename, tokenFilename, trieFilename, false);
+
+	}
+
+
+	/**
+	 * @param connectionCostFilename Name of the connection cost matrix file
+	 * @param partOfSpeechInfoFilename Name of the part-of-string information
+	 *                                 file
+	 * @param tokenFilename Name of the token file
+	 * @param trieFilename Name of the trie file
+	 * @param trieOnHeap If <code>true</code>, the Trie data is copied to the
+	 *                   heap rather than read from the mapped file. This
+	 *                   makes searches faster at the cost of heap memory
+	 *                   equal to the size of the trie file
+	 * @throws IOException
+	 */
+	public Dictionary(String connectionCostFilename, String partOfSpeechInfoFilename, String tokenFilename, String trieFilename, boolean trieOnHeap)
+			throws IOException
+	{
+
+		this(
+				acquire(connectionCostFilename, partOfSpeechInfoFilename, tokenFilename, trieFilename),
+				null,
+				trieOnHeap
+		);
+
+	}
+
+
+	/**
+	 * Creates a Dictionary from the sections of a single file
+	 * {@link DictionaryContainer}. The Dictionary takes its own reference to
+	 * the container's file, so the container may be closed independently
+	 *
+	 * @param container The container to read
+	 * @param trieOnHeap If <code>true</code>, the Trie data is copied to the
+	 *                   heap rather than read from the mapped file
+	 * @throws IOException
+	 */
+	public Dictionary(DictionaryContainer container, boolean trieOnHeap) throws IOException {
+
+		this(
+				new SharedBuffer[] { container.shareBuffer() },
+				container,
+				trieOnHeap
+		);
+
+	}
+
+
+	/**
+	 * @param sharedBuffers References to the mapped files. If no container is
+	 *                      given, these are the connection cost matrix,
+	 *                      part-of-speech information, token and trie files
+	 *                      in that order. The Dictionary takes ownership of
+	 *                      the references, and releases them if construction
+	 *                      fails
+	 * @param container The container to read the dictionary's data from, or
+	 *                  <code>null</code> to read it from the mapped files
+	 * @param trieOnHeap If <code>true</code>, the Trie data is copied to the
+	 *                   heap, and the trie file released at once if it is
+	 *                   separate
+	 * @throws IOException
+	 */
+	private Dictionary(SharedBuffer[] sharedBuffers, DictionaryContainer container, boolean trieOnHeap) throws IOException {
+
+		this.sharedBuffers = sharedBuffers;
+
+		try {
+
+			ByteBuffer connectionCostData;
+			ByteBuffer partOfSpeechInfoData;
+			ByteBuffer tokenData;
+			ByteBuffer trieData;
+			if (container != null) {
+				connectionCostData = container.getSection(DictionaryContainer.CONNECTION_COST_SECTION);
+				partOfSpeechInfoData = container.getSection(DictionaryContainer.PART_OF_SPEECH_SECTION);
+				tokenData = container.getSection(DictionaryContainer.TOKEN_SECTION);
+				trieData = container.getSection(DictionaryContainer.TRIE_SECTION);
+			} else {
+				connectionCostData = sharedBuffers[0].getBuffer();
+				partOfSpeechInfoData = sharedBuffers[1].getBuffer();
+				tokenData = sharedBuffers[2].getBuffer();
+				trieData = sharedBuffers[3].getBuffer();
+			}
+
+			// Map connection cost file
+			loadConnectionCostFile(connectionCostData);
+
+			// Map position infomation file.
+			this.partOfSpeechInfoBuffer = partOfSpeechInfoData.asCharBuffer();
+			this.partOfSpeechCache = new PartOfSpeechCache(this.partOfSpeechInfoBuffer, PartOfSpeechCache.DEFAULT_CAPACITY);
+
+			// Map token file
+			this.tokenBuffer = tokenData;
+			this.bosToken = CToken.read(this.tokenBuffer, 0);
+			this.eosToken = CToken.read(this.tokenBuffer, (int) CToken.SIZE);
+			this.unknownToken = CToken.read(this.tokenBuffer, (int) (2 * CToken.SIZE));
 
-		// Map position infomation file.
-		this.partOfSpeechInfoBuffer = BufferCache.getBuffer(new File(partOfSpeechInfoFilename)).asCharBuffer();
+			// Map double array trie dictionary
+			this.trie = Trie.read(trieData, trieOnHeap);
+			this.trieSearcher = new TrieSearcher(this.trie);
+
+			if (trieOnHeap && (container == null)) {
+				sharedBuffers[3].close();
+			}
 
-		// Map token file
-		this.tokenBuffer = BufferCache.getBuffer(new File(tokenFilename));
-		this.bosToken = CToken.read(this.tokenBuffer);
-		this.eosToken = CToken.read(this.tokenBuffer);
-		this.unknownToken = CToken.read(this.tokenBuffer);
-		
-		// Map double array trie dictionary
-		this.trieSearcher = new TrieSearcher(BufferCache.getBuffer(new File(trieFilename)).asIntBuffer());
+		} catch (IOException | RuntimeException e) {
+
+			for (SharedBuffer sharedBuffer : sharedBuffers) {
+				sharedBuffer.close();
+			}
+			throw e;
+
+		}
 
 	}
 
@@ -0,0 +1,547 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen.dictionary;
+
+import net.java.sen.util.BufferCache;
+import net.java.sen.util.BufferCache.SharedBuffer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+
+/**
+ * A compiled dictionary held in a single file. The container holds the
+ * connection cost matrix, part-of-speech information, token and Trie data
+ * files as sections, preceded by a binary header giving the format version,
+ * the position, length and CRC-32 checksum of each section, and the
+ * metadata otherwise read from <code>dictionary.xml</code>
+ *
+ * <p>All values are big endian. The header is laid out as follows:
+ * <pre>
+ *  int    magic ("SEND")
+ *  int    format version
+ *  int    header length, including the header checksum
+ *  int    section count
+ *  for each section:
+ *    int    section ID
+ *    int    CRC-32 of the section
+ *    long   offset of the section from the start of the file
+ *    long   length of the section
+ *  long   build time, in milliseconds since the epoch
+ *  string dictionary version
+ *  string Tokenizer class name
+ *  string unknown part-of-speech description
+ *  string description
+ *  int    CRC-32 of the preceding header bytes
+ * </pre>
+ * Each string is an unsigned <code>short</code> byte count followed by that
+ * many bytes of UTF-8. Sections begin on eight byte boundaries
+ *
+ * <p>Opening a container maps the whole file once, and checks the header
+ * checksum and the layout and internal sizes of every section, which takes
+ * time independent of the size of the dictionary. The checksums of the
+ * sections themselves are only checked when asked for, since that reads the
+ * whole file
+ *
+ * <p>The file is mapped through the {@link BufferCache}, and remains mapped
+ * until the container is closed and every {@link Dictionary} created from it
+ * has been closed
+ *
+ * <p><b>Thread Safety</b>: Objects of this class are thread safe once
+ * opened. The section buffers returned are independent duplicates
+ */
+public class DictionaryContainer implements Closeable {
+
+	/**
+	 * The first <code>int</code> of a dictionary container ("SEND")
+	 */
+	public static final int MAGIC = 0x53454e44;
+
+	/**
+	 * The current container format version
+	 */
+	public static final int FORMAT_VERSION = 1;
+
+	/**
+	 * The dictionary version, as given in <code>dictionary.xml</code>, that
+	 * this library reads
+	 */
+	public static final String DICTIONARY_VERSION = "1.0";
+
+	/**
+	 * The section ID of the connection cost matrix
+	 */
+	public static final int CONNECTION_COST_SECTION = 1;
+
+	/**
+	 * The section ID of the part-of-speech information
+	 */
+	public static final int PART_OF_SPEECH_SECTION = 2;
+
+	/**
+	 * The section ID of the token data
+	 */
+	public static final int TOKEN_SECTION = 3;
+
+	/**
+	 * The section ID of the Trie data
+	 */
+	public static final int TRIE_SECTION = 4;
+
+	/**
+	 * The number of sections of a container
+	 */
+	public static final int SECTION_COUNT = 4;
+
+	/**
+	 * The size in bytes of the fixed part of the header, before the section
+	 * table
+	 */
+	public static final int FIXED_HEADER_SIZE = 16;
+
+	/**
+	 * The size in bytes of each entry of the section table
+	 */
+	public static final int SECTION_ENTRY_SIZE = 24;
+
+	/**
+	 * The character set of the header strings
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * The reference to the mapped container file
+	 */
+	private final SharedBuffer sharedBuffer;
+
+	/**
+	 * The mapped container file
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * The section buffers, indexed by section ID
+	 */
+	private final ByteBuffer[] sections = new ByteBuffer[SECTION_COUNT + 1];
+
+	/**
+	 * The recorded checksum of each section, indexed by section ID
+	 */
+	private final int[] checksums = new int[SECTION_COUNT + 1];
+
+	/**
+	 * The build time, in milliseconds since the epoch
+	 */
+	private long buildTime;
+
+	/**
+	 * The dictionary version
+	 */
+	private String dictionaryVersion;
+
+	/**
+	 * The Tokenizer class name
+	 */
+	private String tokenizerClassName;
+
+	/**
+	 * The unknown part-of-speech description
+	 */
+	private String unknownPartOfSpeechDescription;
+
+	/**
+	 * The free text description
+	 */
+	private String description;
+
+
+	/**
+	 * Determines whether a file is a dictionary container, by reading its
+	 * first four bytes
+	 *
+	 * @param file The file to check
+	 * @return <code>true</code> if the file begins with the container magic
+	 *         number, otherwise <code>false</code>
+	 * @throws IOException
+	 */
+	public static boolean isContainer(File file) throws IOException {
+
+		if (file.length() < 4) {
+			return false;
+		}
+
+		RandomAccessFile randomFile = new RandomAccessFile(file, "r");
+		try {
+			return (randomFile.readInt() == MAGIC);
+		} finally {
+			randomFile.close();
+		}
+
+	}
+
+
+	/**
+	 * Opens and validates a dictionary container
+	 *
+	 * @param file The container file
+	 * @param verifyChecksums If <code>true</code>, also verify the checksum
+	 *                        of every section, which reads the whole file
+	 * @return The opened container
+	 * @throws IOException if the file cannot be read, or is not a valid
+	 *                     container
+	 */
+	public static DictionaryContainer open(File file, boolean verifyChecksums) throws IOException {
+
+		SharedBuffer sharedBuffer = BufferCache.acquire(file);
+
+		try {
+			DictionaryContainer container = new DictionaryContainer(sharedBuffer);
+			if (verifyChecksums) {
+				container.verifyChecksums();
+			}
+			return container;
+		} catch (IOException | RuntimeException e) {
+			sharedBuffer.close();
+			throw e;
+		}
+
+	}
+
+
+	/**
+	 * Reads a header string
+	 *
+	 * @param position The position of the string
+	 * @param end The end of the header
+	 * @return The string
+	 * @throws IOException if the string extends past the end of the header
+	 */
+	private String readString(int position, int end) throws IOException {
+
+		if (position + 2 > end) {
+			throw new IOException("Truncated dictionary container header");
+		}
+
+		int length = this.buffer.getShort(position) & 0xffff;
+		if (position + 2 + length > end) {
+			throw new IOException("Truncated dictionary container header");
+		}
+
+		byte[] bytes = new byte[length];
+		ByteBuffer source = this.buffer.duplicate();
+		source.position(position + 2);
+		source.get(bytes);
+
+		return new String(bytes, UTF8);
+
+	}
+
+
+	/**
+	 * Calculates the size in bytes of a header string
+	 *
+	 * @param string The string
+	 * @return The size of the string's length and bytes
+	 */
+	public static int stringSize(String string) {
+
+		return 2 + string.getBytes(UTF8).length;
+
+	}
+
+
+	/**
+	 * Calculates the CRC-32 checksum of part of a buffer
+	 *
+	 * @param buffer The buffer
+	 * @param position The position of the first byte
+	 * @param length The number of bytes
+	 * @return The checksum
+	 */
+	private static int checksum(ByteBuffer buffer, int position, int length) {
+
+		CRC32 crc = new CRC32();
+		byte[] chunk = new byte[Math.min(length, 65536)];
+		ByteBuffer source = buffer.duplicate();
+		source.position(position);
+
+		for (int remaining = length; remaining > 0; ) {
+			int n = Math.min(remaining, chunk.length);
+			source.get(chunk, 0, n);
+			crc.update(chunk, 0, n);
+			remaining -= n;
+		}
+
+		return (int) crc.getValue();
+
+	}
+
+
+	/**
+	 * Reads and validates the header, and slices out the sections
+	 *
+	 * @throws IOException if the container is not valid
+	 */
+	private void readHeader() throws IOException {
+
+		ByteBuffer buffer = this.buffer;
+		int fileLength = buffer.limit();
+
+		if ((fileLength < FIXED_HEADER_SIZE) || (buffer.getInt(0) != MAGIC)) {
+			throw new IOException("Not a dictionary container");
+		}
+
+		int formatVersion = buffer.getInt(4);
+		if (formatVersion != FORMAT_VERSION) {
+			throw new IOException("Unsupported dictionary container format version " + formatVersion);
+		}
+
+		int headerLength = buffer.getInt(8);
+		int sectionCount = buffer.getInt(12);
+		if (
+				   (sectionCount != SECTION_COUNT)
+				|| (headerLength < FIXED_HEADER_SIZE + (SECTION_COUNT * SECTION_ENTRY_SIZE) + 12)
+				|| (headerLength > fileLength)
+		   )
+		{
+			throw new IOException("Invalid dictionary container header");
+		}
+
+		int headerChecksum = buffer.getInt(headerLength - 4);
+		if (checksum(buffer, 0, headerLength - 4) != headerChecksum) {
+			throw new IOException("Dictionary container header checksum mismatch");
+		}
+
+		// Sections must follow the header in order, without overlapping
+		long previousEnd = headerLength;
+		for (int i = 0; i < SECTION_COUNT; i++) {
+			int entry = FIXED_HEADER_SIZE + (i * SECTION_ENTRY_SIZE);
+			int id = buffer.getInt(entry);
+			long offset = buffer.getLong(entry + 8);
+			long length = buffer.getLong(entry + 16);
+
+			if ((id < 1) || (id > SECTION_COUNT) || (this.sections[id] != null)) {
+				throw new IOException("Invalid dictionary container section " + id);
+			}
+			if ((offset < previousEnd) || ((offset & 7) != 0) || (length < 0) || (offset + length > fileLength)) {
+				throw new IOException("Dictionary container section " + id + " lies outside the file");
+			}
+
+			ByteBuffer section = buffer.duplicate();
+			section.position((int) offset);
+			section.limit((int) (offset + length));
+			this.sections[id] = section.slice();
+			this.checksums[id] = buffer.getInt(entry + 4);
+			previousEnd = offset + length;
+		}
+
+		int position = FIXED_HEADER_SIZE + (SECTION_COUNT * SECTION_ENTRY_SIZE);
+		int end = headerLength - 4;
+		this.buildTime = buffer.getLong(position);
+		position += 8;
+		this.dictionaryVersion = readString(position, end);
+		position += stringSize(this.dictionaryVersion);
+		this.tokenizerClassName = readString(position, end);
+		position += stringSize(this.tokenizerClassName);
+		this.unknownPartOfSpeechDescription = readString(position, end);
+		position += stringSize(this.unknownPartOfSpeechDescription);
+		this.description = readString(position, end);
+
+		if (!DICTIONARY_VERSION.equals(this.dictionaryVersion)) {
+			throw new IOException("Invalid dictionary version \"" + this.dictionaryVersion + "\"");
+		}
+
+		validateSections();
+
+	}
+
+
+	/**
+	 * Checks that the sizes recorded within each section agree with the
+	 * section's length
+	 *
+	 * @throws IOException if a section is inconsistent
+	 */
+	private void validateSections() throws IOException {
+
+		ByteBuffer connectionCost = this.sections[CONNECTION_COST_SECTION];
+		if (connectionCost.limit() < 6) {
+			throw new IOException("Truncated connection cost section");
+		}
+		long expectedSize = 2L * (3 + ((long) connectionCost.getShort(0) * connectionCost.getShort(2) * connectionCost.getShort(4)));
+		if (expectedSize != connectionCost.limit()) {
+			throw new IOException("Expected connection cost section to be " + expectedSize + " bytes, but was " + connectionCost.limit());
+		}
+
+		ByteBuffer token = this.sections[TOKEN_SECTION];
+		if ((token.limit() < 3 * CToken.SIZE) || ((token.limit() % CToken.SIZE) != 0)) {
+			throw new IOException("Token section length " + token.limit() + " is not a whole number of tokens");
+		}
+
+		if ((this.sections[PART_OF_SPEECH_SECTION].limit() & 1) != 0) {
+			throw new IOException("Part-of-speech section length is not a whole number of characters");
+		}
+
+		ByteBuffer trie = this.sections[TRIE_SECTION];
+		if ((trie.limit() < 8) || ((trie.limit() & 3) != 0)) {
+			throw new IOException("Trie section length " + trie.limit() + " is invalid");
+		}
+
+	}
+
+
+	/**
+	 * Verifies the checksum of every section, reading the whole container
+	 *
+	 * @throws IOException if a section's checksum does not match
+	 */
+	public void verifyChecksums() throws IOException {
+
+		for (int id = 1; id <= SECTION_COUNT; id++) {
+			ByteBuffer section = this.sections[id];
+			if (checksum(section, 0, section.limit()) != this.checksums[id]) {
+				throw new IOException("Dictionary container section " + id + " checksum mismatch");
+			}
+		}
+
+	}
+
+
+	/**
+	 * Gets a section of the container
+	 *
+	 * @param id The section ID
+	 * @return An independent buffer over the section, positioned at its start
+	 */
+	public ByteBuffer getSection(int id) {
+
+		return this.sections[id].duplicate();
+
+	}
+
+
+	/**
+	 * Gets the build time of the container
+	 *
+	 * @return The build time, in milliseconds since the epoch
+	 */
+	public long getBuildTime() {
+
+		return this.buildTime;
+
+	}
+
+
+	/**
+	 * Gets the dictionary version
+	 *
+	 * @return The dictionary version
+	 */
+	public String getDictionaryVersion() {
+
+		return this.dictionaryVersion;
+
+	}
+
+
+	/**
+	 * Gets the class name of the Tokenizer to use with the dictionary
+	 *
+	 * @return The Tokenizer class name
+	 */
+	public String getTokenizerClassName() {
+
+		return this.tokenizerClassName;
+
+	}
+
+
+	/**
+	 * Gets the part-of-speech description to use for unknown morphemes
+	 *
+	 * @return The unknown part-of-speech description
+	 */
+	public String getUnknownPartOfSpeechDescription() {
+
+		return this.unknownPartOfSpeechDescription;
+
+	}
+
+
+	/**
+	 * Gets the free text description recorded when the container was built
+	 *
+	 * @return The description
+	 */
+	public String getDescription() {
+
+		return this.description;
+
+	}
+
+
+	/**
+	 * Takes a further reference to the mapped container file, which remains
+	 * valid after the container is closed
+	 *
+	 * @return The new reference
+	 */
+	SharedBuffer shareBuffer() {
+
+		return this.sharedBuffer.share();
+
+	}
+
+
+	/**
+	 * Releases the container's reference to the mapped file. Section buffers
+	 * obtained from the container must no longer be used unless a
+	 * {@link Dictionary} created from it remains open
+	 */
+	public void close() {
+
+		this.sharedBuffer.close();
+
+	}
+
+
+	/**
+	 * Creates a container over a mapped file, validating its header
+	 *
+	 * @param sharedBuffer The reference to the mapped file
+	 * @throws IOException if the container is not valid
+	 */
+	private DictionaryContainer(SharedBuffer sharedBuffer) throws IOException {
+
+		this.sharedBuffer = sharedBuffer;
+		this.buffer = sharedBuffer.getBuffer();
+
+		readHeader();
+
+	}
+
+
+}
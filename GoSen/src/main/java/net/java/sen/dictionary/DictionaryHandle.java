@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package net.java.sen.dictionary;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * A handle onto a dictionary that may be replaced while it is in use. Each
+ * version of the dictionary installed in the handle is a numbered
+ * <i>generation</i>, represented by the {@link Tokenizer} built on it
+ *
+ * <p>A {@link Viterbi} created on a handle takes a reference to the current
+ * generation at the start of each analysis and releases it at the end, so an
+ * analysis in progress when {@link #swap(Tokenizer)} is called finishes on the
+ * old generation, and every analysis started afterwards uses the new one. When
+ * the last analysis using a replaced generation finishes, its
+ * {@link Tokenizer} is closed, releasing the dictionary's mapped files. The
+ * {@link Morpheme}s of the {@link Token}s returned by such a {@link Viterbi}
+ * are read from the dictionary before the analysis ends, so that the
+ * {@link Token}s remain usable after their generation is released
+ *
+ * <p>The handle records the number of swaps, the latency of each swap (from
+ * the start of the swap, or of the loading of the new dictionary if given,
+ * until new analyses use it), and the time taken for each replaced
+ * generation to drain
+ *
+ * <p><b>Thread Safety</b>: This class and all its public methods are thread
+ * safe. Taking and releasing a reference to the current generation is lock
+ * free
+ */
+public class DictionaryHandle implements Closeable {
+
+	/**
+	 * A version of the dictionary installed in the handle
+	 */
+	static final class Generation {
+
+		/**
+		 * The Tokenizer of the generation
+		 */
+		final Tokenizer tokenizer;
+
+		/**
+		 * The number of the generation, counting from 1
+		 */
+		final long number;
+
+		/**
+		 * The number of references to the generation. The handle holds one
+		 * reference while the generation is current, and each analysis using
+		 * it holds another. Once it reaches zero it is never increased again
+		 */
+		private final AtomicInteger references = new AtomicInteger(1);
+
+		/**
+		 * The value of <code>System.nanoTime()</code> when the generation
+		 * was replaced. Written before the handle's reference is released
+		 */
+		private long retiredTime;
+
+
+		/**
+		 * Takes a reference to the generation, unless it has already been
+		 * released
+		 *
+		 * @return <code>true</code> if a reference was taken
+		 */
+		private boolean retain() {
+
+			for (;;) {
+				int count = this.references.get();
+				if (count == 0) {
+					return false;
+				}
+				if (this.references.compareAndSet(count, count + 1)) {
+					return true;
+				}
+			}
+
+		}
+
+
+		/**
+		 * @param tokenizer The Tokenizer of the generation
+		 * @param number The number of the generation
+		 */
+		Generation(Tokenizer tokenizer, long number) {
+
+			this.tokenizer = tokenizer;
+			this.number = number;
+
+		}
+
+	}
+
+
+	/**
+	 * The current generation, or <code>null</code> once the handle is closed
+	 */
+	private final AtomicReference<Generation> current;
+
+	/**
+	 * The number of swaps made
+	 */
+	private final AtomicLong swapCount = new AtomicLong();
+
+	/**
+	 * The total latency of all swaps, in nanoseconds
+	 */
+	private final AtomicLong totalSwapLatency = new AtomicLong();
+
+	/**
+	 * The latency of the most recent swap, in nanoseconds
+	 */
+	private volatile long lastSwapLatency = 0;
+
+	/**
+	 * The greatest latency of any swap, in nanoseconds
+	 */
+	private volatile long maxSwapLatency = 0;
+
+	/**
+	 * The number of replaced generations not yet released
+	 */
+	private final AtomicInteger drainingCount = new AtomicInteger();
+
+	/**
+	 * The time between the replacement and the release of the most recently
+	 * released generation, in nanoseconds
+	 */
+	private volatile long lastDrainTime = 0;
+
+
+	/**
+	 * Takes a reference to the current generation. The reference must be
+	 * released with {@link #release(Generation)}
+	 *
+	 * @return The current generation
+	 * @throws IllegalStateException if the handle has been closed
+	 */
+	Generation acquire() {
+
+		for (;;) {
+			Generation generation = this.current.get();
+			if (generation == null) {
+				throw new IllegalStateException("Dictionary handle has been closed");
+			}
+			if (generation.retain()) {
+				return generation;
+			}
+		}
+
+	}
+
+
+	/**
+	 * Releases a reference to a generation, closing its Tokenizer if it has
+	 * been replaced and this was the last reference
+	 *
+	 * @param generation The generation to release
+	 */
+	void release(Generation generation) {
+
+		if (generation.references.decrementAndGet() == 0) {
+			generation.tokenizer.close();
+			this.lastDrainTime = System.nanoTime() - generation.retiredTime;
+			this.drainingCount.decrementAndGet();
+		}
+
+	}
+
+
+	/**
+	 * Releases the handle's reference to a generation that is no longer
+	 * current
+	 *
+	 * @param generation The replaced generation
+	 */
+	private void retire(Generation generation) {
+
+		generation.retiredTime = System.nanoTime();
+		this.drainingCount.incrementAndGet();
+		release(generation);
+
+	}
+
+
+	/**
+	 * Makes the given Tokenizer, and its {@link Dictionary}, the current
+	 * generation. Analyses already in progress finish on the old generation,
+	 * whose Tokenizer is closed once they have all finished. The handle takes
+	 * ownership of the new Tokenizer
+	 *
+	 * @param tokenizer The new Tokenizer
+	 * @return The number of the new generation
+	 * @throws IllegalStateException if the handle has been closed
+	 */
+	public long swap(Tokenizer tokenizer) {
+
+		return swap(tokenizer, System.nanoTime());
+
+	}
+
+
+	/**
+	 * Makes the given Tokenizer the current generation, as
+	 * {@link #swap(Tokenizer)}, recording the swap latency from the given
+	 * start time so that it includes the time taken to load the new
+	 * dictionary
+	 *
+	 * @param tokenizer The new Tokenizer
+	 * @param startTime The value of <code>System.nanoTime()</code> at which
+	 *                  loading of the new dictionary began
+	 * @return The number of the new generation
+	 * @throws IllegalStateException if the handle has been closed
+	 */
+	public long swap(Tokenizer tokenizer, long startTime) {
+
+		if (tokenizer == null) {
+			throw new NullPointerException("Tokenizer must not be null");
+		}
+
+		Generation next;
+		Generation old;
+		synchronized (this.current) {
+			old = this.current.get();
+			if (old == null) {
+				throw new IllegalStateException("Dictionary handle has been closed");
+			}
+			next = new Generation(tokenizer, old.number + 1);
+			this.current.set(next);
+		}
+		retire(old);
+
+		long latency = System.nanoTime() - startTime;
+		this.lastSwapLatency = latency;
+		this.totalSwapLatency.addAndGet(latency);
+		this.swapCount.incrementAndGet();
+		synchronized (this.swapCount) {
+			if (latency > this.maxSwapLatency) {
+				this.maxSwapLatency = latency;
+			}
+		}
+
+		return next.number;
+
+	}
+
+
+	/**
+	 * Gets the Tokenizer of the current generation. The Tokenizer may be
+	 * closed at any time after another is swapped in, and so should not be
+	 * used for analysis; use a {@link Viterbi} created on the handle instead
+	 *
+	 * @return The current Tokenizer
+	 * @throws IllegalStateException if the handle has been closed
+	 */
+	public Tokenizer getTokenizer() {
+
+		Generation generation = this.current.get();
+		if (generation == null) {
+			throw new IllegalStateException("Dictionary handle has been closed");
+		}
+
+		return generation.tokenizer;
+
+	}
+
+
+	/**
+	 * Gets the number of the current generation. The first generation is
+	 * number 1, and each swap increases the number by one
+	 *
+	 * @return The number of the current generation, or 0 if the handle has
+	 *         been closed
+	 */
+	public long getGeneration() {
+
+		Generation generation = this.current.get();
+
+		return (generation == null) ? 0 : generation.number;
+
+	}
+
+
+	/**
+	 * Gets the number of swaps made
+	 *
+	 * @return The number of swaps
+	 */
+	public long getSwapCount() {
+
+		return this.swapCount.get();
+
+	}
+
+
+	/**
+	 * Gets the latency of the most recent swap
+	 *
+	 * @return The latency in nanoseconds, or 0 if there has been no swap
+	 */
+	public long getLastSwapLatency() {
+
+		return this.lastSwapLatency;
+
+	}
+
+
+	/**
+	 * Gets the greatest latency of any swap
+	 *
+	 * @return The latency in nanoseconds, or 0 if there has been no swap
+	 */
+	public long getMaxSwapLatency() {
+
+		return this.maxSwapLatency;
+
+	}
+
+
+	/**
+	 * Gets the total latency of all swaps
+	 *
+	 * @return The total latency in nanoseconds
+	 */
+	public long getTotalSwapLatency() {
+
+		return this.totalSwapLatency.get();
+
+	}
+
+
+	/**
+	 * Gets the number of replaced generations that are still in use by
+	 * analyses in progress
+	 *
+	 * @return The number of generations
+	 */
+	public int getDrainingCount() {
+
+		return this.drainingCount.get();
+
+	}
+
+
+	/**
+	 * Gets the time between the replacement and the release of the most
+	 * recently released generation
+	 *
+	 * @return The time in nanoseconds, or 0 if no generation has been
+	 *         released
+	 */
+	public long getLastDrainTime() {
+
+		return this.lastDrainTime;
+
+	}
+
+
+	/**
+	 * Closes the handle. The current generation's Tokenizer is closed once
+	 * any analyses in progress have finished, and no further analyses may be
+	 * started. Closing an already closed handle has no effect
+	 */
+	public void close() {
+
+		Generation old;
+		synchronized (this.current) {
+			old = this.current.getAndSet(null);
+		}
+
+		if (old != null) {
+			retire(old);
+		}
+
+	}
+
+
+	/**
+	 * Creates a handle whose first generation is the given Tokenizer. The
+	 * handle takes ownership of the Tokenizer
+	 *
+	 * @param tokenizer The Tokenizer of the first generation
+	 */
+	public DictionaryHandle(Tokenizer tokenizer) {
+
+		if (tokenizer == null) {
+			throw new NullPointerException("Tokenizer must not be null");
+		}
+
+		this.current = new AtomicReference<Generation>(new Generation(tokenizer, 1));
+
+	}
+
+
+}
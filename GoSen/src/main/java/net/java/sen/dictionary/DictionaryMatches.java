@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen.dictionary;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import net.java.sen.trie.MatchListener;
+
+
+/**
+ * The morphemes found by {@link Dictionary#findAllMatches(Sentence, AnalysisContext)}
+ * at every position of a sentence, held as the indices of their
+ * {@link CToken}s grouped by starting position
+ *
+ * <p><b>Thread Safety</b>: Objects of this class are <b>NOT</b> thread safe and
+ * should not be accessed simultaneously by multiple threads
+ */
+final class DictionaryMatches implements MatchListener {
+
+	/**
+	 * The characters of the sentence the matches were found in, or
+	 * <code>null</code> if the matches are not valid
+	 */
+	char[] characters = null;
+
+	/**
+	 * The index within the sentence's characters of its first character
+	 */
+	private int offset = 0;
+
+	/**
+	 * The number of characters in the sentence
+	 */
+	private int length = 0;
+
+	/**
+	 * The positions of the sentence whose matches are no longer valid, as
+	 * the sentence has been changed there since they were found
+	 */
+	final BitSet invalid = new BitSet();
+
+	/**
+	 * The number of Trie keys found
+	 */
+	private int keyCount = 0;
+
+	/**
+	 * The starting position of each Trie key found, in the order found
+	 */
+	private int[] keyStart = new int[256];
+
+	/**
+	 * The Trie value of each Trie key found, in the order found
+	 */
+	private int[] keyValue = new int[256];
+
+	/**
+	 * For each position of the sentence, the index within
+	 * <code>tokenIndices</code> of the first {@link CToken} starting at that
+	 * position. The {@link CToken}s starting at a position end at the entry
+	 * for the next position. While Trie keys are being found, holds instead
+	 * the number of {@link CToken}s starting at each position, offset by two
+	 */
+	int[] offsets = new int[257];
+
+	/**
+	 * The indices of the {@link CToken}s found, grouped by starting position
+	 */
+	int[] tokenIndices = new int[256];
+
+
+	/**
+	 * Clears the matches in preparation for a search of a sentence
+	 *
+	 * @param offset The index within the sentence's characters of its first
+	 *               character
+	 * @param length The number of characters in the sentence
+	 */
+	void reset(int offset, int length) {
+
+		this.characters = null;
+		this.invalid.clear();
+		this.offset = offset;
+		this.length = length;
+		this.keyCount = 0;
+
+		if (this.offsets.length < (length + 2)) {
+			this.offsets = new int[Math.max(length + 2, this.offsets.length * 2)];
+		} else {
+			Arrays.fill(this.offsets, 0, length + 2, 0);
+		}
+
+	}
+
+
+	/**
+	 * Groups the Trie keys found by starting position, and expands each into
+	 * the indices of its {@link CToken}s. The relative order of the keys
+	 * found at each position is kept
+	 *
+	 * @param characters The characters of the sentence
+	 */
+	void finish(char[] characters) {
+
+		int length = this.length;
+		int[] offsets = this.offsets;
+
+		// Turn the count of CTokens starting at each position into the
+		// starting offset of each position's CTokens
+		for (int i = 2; i < length + 2; i++) {
+			offsets[i] += offsets[i - 1];
+		}
+
+		if (this.tokenIndices.length < offsets[length + 1]) {
+			this.tokenIndices = new int[Math.max(offsets[length + 1], this.tokenIndices.length * 2)];
+		}
+
+		// Fill in the CTokens, advancing each position's offset as it goes so
+		// that it finishes at the start of the next position's CTokens
+		int[] tokenIndices = this.tokenIndices;
+		for (int i = 0; i < this.keyCount; i++) {
+			int k = 0xff & this.keyValue[i];
+			int p = this.keyValue[i] >> 8;
+			int size = offsets[this.keyStart[i] + 1];
+
+			// The first three CTokens of the file are the beginning-of-string,
+			// end-of-string and unknown CTokens
+			for (int j = 0; j < k; j++) {
+				tokenIndices[size++] = p + 3 + j;
+			}
+
+			offsets[this.keyStart[i] + 1] = size;
+		}
+
+		this.characters = characters;
+
+	}
+
+
+	/* MatchListener interface */
+
+	/* (non-Javadoc)
+	 * @see net.java.sen.trie.MatchListener#match(int, int, int)
+	 */
+	@Override
+	public void match(int start, int length, int value) {
+
+		if (this.keyCount == this.keyStart.length) {
+			this.keyStart = Arrays.copyOf(this.keyStart, this.keyCount * 2);
+			this.keyValue = Arrays.copyOf(this.keyValue, this.keyCount * 2);
+		}
+
+		// Keys are found at positions within the whole array of characters,
+		// and held at positions within the sentence
+		int position = start - this.offset;
+
+		this.keyStart[this.keyCount] = position;
+		this.keyValue[this.keyCount] = value;
+		this.keyCount++;
+
+		// Count the CTokens starting at each position
+		this.offsets[position + 2] += 0xff & value;
+
+	}
+
+
+}
@@ -20,7 +20,6 @@
 
 package net.java.sen.dictionary;
 
-import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -36,11 +35,20 @@ import java.util.Objects;
  *  <p><b>Thread Safety</b>: Objects of this class are <b>NOT</b> thread safe and
  * should not be accessed simultaneously by multiple threads.
  * 
- *  <p><b>CAUTION</b>: {@link Morpheme}s are implemented as lazy proxies onto a
- *  {@link Dictionary}, and care should be taken not to access the same
- *  {@link Dictionary} from multiple threads. Once any member of a
- *  {@link Morpheme} has been read, its link to the {@link Dictionary} is broken
- *  and this restriction is relaxed
+ *  <p>{@link Morpheme}s are implemented as lazy proxies onto a
+ *  {@link Dictionary}. As the {@link Dictionary} is only read with absolute
+ *  reads, distinct {@link Morpheme}s sharing the same {@link Dictionary} may be
+ *  used from different threads
+ *
+ *  <p>The readings and pronunciations of a <code>Morpheme</code> loaded from a
+ *  {@link Dictionary} are shared with other <code>Morpheme</code>s, and the
+ *  lists returned for them are unmodifiable. Use
+ *  {@link #setReadings(List)} and {@link #setPronunciations(List)} to change
+ *  them
+ *
+ *  <p>A <code>Morpheme</code> reads its data from the {@link Dictionary} when
+ *  any of it is first requested. If the {@link Dictionary} has been closed by
+ *  then, the request throws an <code>IllegalStateException</code>
  */
 public class Morpheme {
 
@@ -97,50 +105,30 @@ public class Morpheme {
 
 
 	/**
-	 * Loads the part-of-speech data from the {@link Dictionary}
+	 * Loads the part-of-speech data from the {@link Dictionary}'s
+	 * {@link PartOfSpeechCache}. The decoded data is shared with every other
+	 * <code>Morpheme</code> of the same part-of-speech index; as it is
+	 * immutable, the setters of this class replace rather than alter it, so
+	 * that other <code>Morpheme</code>s are unaffected. Once loaded, the
+	 * <code>Morpheme</code> no longer refers to the {@link Dictionary}
 	 *
+	 * @throws IllegalStateException if the {@link Dictionary} has been closed
 	 */
-	private void load() {
+	void load() {
 
 		if (!this.loaded) {
 
-			CharBuffer buffer = this.dictionary.getPartOfSpeechInfoBuffer();
-			buffer.position(this.partOfSpeechIndex);
-			char[] temp = new char[512];
-			int length;
+			PartOfSpeechRecord record = this.dictionary.getPartOfSpeechCache().get(this.partOfSpeechIndex);
 
-			length = buffer.get();
-			buffer.get(temp, 0, length);
-			this.partOfSpeech = new String(temp, 0, length);
-
-			length = buffer.get();
-			buffer.get(temp, 0, length);
-			this.conjugationalType = new String(temp, 0, length);
-
-			length = buffer.get();
-			buffer.get(temp, 0, length);
-			this.conjugationalForm = new String(temp, 0, length);
-
-			length = buffer.get();
-			buffer.get(temp, 0, length);
-			this.basicForm = new String(temp, 0, length);
-
-			int numReadings = buffer.get();
-
-			this.readings = new ArrayList<String>(numReadings);
-			for (int i = 0; i < numReadings; i++) {
-				length = buffer.get();
-				buffer.get(temp, 0, length);
-				this.readings.add(new String(temp, 0, length));
-			}
-			this.pronunciations = new ArrayList<String>(numReadings);
-			for (int i = 0; i < numReadings; i++) {
-				length = buffer.get();
-				buffer.get(temp, 0, length);
-				this.pronunciations.add(new String(temp, 0, length));
-			}
+			this.partOfSpeech = record.partOfSpeech;
+			this.conjugationalType = record.conjugationalType;
+			this.conjugationalForm = record.conjugationalForm;
+			this.basicForm = record.basicForm;
+			this.readings = record.readings;
+			this.pronunciations = record.pronunciations;
 
 			this.loaded = true;
+			this.dictionary = null;
 
 		}
 
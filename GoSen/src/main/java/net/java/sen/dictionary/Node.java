@@ -56,7 +56,11 @@ final public class Node implements Cloneable {
 	public Node rnext = null;
 
 	/**
-	 * The <code>Morpheme</code> that is contained within this <code>Node</code>
+	 * The <code>Morpheme</code> that is contained within this <code>Node</code>.
+	 * For <code>Node</code>s found in the {@link Dictionary} this may be
+	 * <code>null</code> until requested through
+	 * {@link Tokenizer#getMorpheme(Node)}, so that no <code>Morpheme</code> is
+	 * created for <code>Node</code>s that do not form part of the result
 	 */
 	public Morpheme morpheme = null;
 
@@ -87,6 +91,48 @@ final public class Node implements Cloneable {
 	public int cost = 0; 
 
 
+	/**
+	 * Copies every field of another <code>Node</code> into this one. The
+	 * copy is shallow, in the same way as {@link #clone()}
+	 *
+	 * @param other The <code>Node</code> to copy from
+	 */
+	public void copy(Node other) {
+
+		this.ctoken = other.ctoken;
+		this.prev = other.prev;
+		this.next = other.next;
+		this.lnext = other.lnext;
+		this.rnext = other.rnext;
+		this.morpheme = other.morpheme;
+		this.start = other.start;
+		this.length = other.length;
+		this.span = other.span;
+		this.cost = other.cost;
+
+	}
+
+
+	/**
+	 * Returns every field of this <code>Node</code> to its initial value so
+	 * that it may be reused
+	 */
+	public void clear() {
+
+		this.ctoken = null;
+		this.prev = null;
+		this.next = null;
+		this.lnext = null;
+		this.rnext = null;
+		this.morpheme = null;
+		this.start = 0;
+		this.length = 0;
+		this.span = 0;
+		this.cost = 0;
+
+	}
+
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#clone()
 	 */
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2002-2007
+ * Takashi Okamoto <tora@debian.org>
+ * Matt Francis <asbel@neosheffield.co.uk>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ */
+
+package net.java.sen.dictionary;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * A bounded cache of decoded part-of-speech records, keyed by their index
+ * within a {@link Dictionary}'s part-of-speech information file. Every
+ * {@link Morpheme} loaded from the {@link Dictionary} takes its data from
+ * this cache, so that the relatively few part-of-speech entries that recur
+ * constantly in real text are decoded once rather than once per
+ * {@link Morpheme}
+ *
+ * <p>The cache is a fixed size table in which each record may occupy only
+ * one of a pair of slots, chosen by hashing its index. A newly decoded record
+ * takes the first slot of its pair, moving the record it displaces to the
+ * second and evicting the record there. This keeps both lookup and eviction
+ * to a few array accesses, with no locking
+ *
+ * <p>Once the {@link Dictionary} is closed, every lookup throws an
+ * <code>IllegalStateException</code>, rather than reading the unmapped
+ * part-of-speech information buffer. Records are decoded while holding the
+ * cache's lock, so that the dictionary is not closed during a decode
+ *
+ * <p><b>Thread Safety</b>: This class is thread safe. The hit and miss counts
+ * are maintained atomically, but are not updated together, and so may be
+ * momentarily inconsistent with each other while lookups are in progress
+ */
+public final class PartOfSpeechCache {
+
+	/**
+	 * The default number of slots in the cache
+	 */
+	public static final int DEFAULT_CAPACITY = 8192;
+
+	/**
+	 * The part-of-speech information buffer from which records are decoded
+	 */
+	private final CharBuffer buffer;
+
+	/**
+	 * The cached records
+	 */
+	private final AtomicReferenceArray<PartOfSpeechRecord> records;
+
+	/**
+	 * The number of bits to shift a hashed index right by to find its slot
+	 */
+	private final int shift;
+
+	/**
+	 * The number of lookups satisfied from the cache
+	 */
+	private final AtomicLong hitCount = new AtomicLong();
+
+	/**
+	 * The number of lookups that required a record to be decoded
+	 */
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * Indicates that the {@link Dictionary} has been closed, and the
+	 * part-of-speech information buffer may no longer be read
+	 */
+	private volatile boolean closed = false;
+
+
+	/**
+	 * Gets the decoded record at the given index, decoding and caching it if
+	 * necessary
+	 *
+	 * @param partOfSpeechIndex The index of the record within the
+	 *                          part-of-speech information file
+	 * @return The decoded record
+	 * @throws IllegalStateException if the {@link Dictionary} has been closed
+	 */
+	PartOfSpeechRecord get(int partOfSpeechIndex) {
+
+		if (this.closed) {
+			throw new IllegalStateException("Dictionary has been closed");
+		}
+
+		int slot = ((partOfSpeechIndex * 0x9e3779b9) >>> this.shift) & ~1;
+
+		PartOfSpeechRecord first = this.records.get(slot);
+		if ((first != null) && (first.partOfSpeechIndex == partOfSpeechIndex)) {
+			this.hitCount.incrementAndGet();
+			return first;
+		}
+
+		PartOfSpeechRecord second = this.records.get(slot + 1);
+		if ((second != null) && (second.partOfSpeechIndex == partOfSpeechIndex)) {
+			this.hitCount.incrementAndGet();
+			return second;
+		}
+
+		// Records are immutable, so a concurrent update lost here costs no more
+		// than a later miss
+		this.missCount.incrementAndGet();
+		PartOfSpeechRecord record;
+		synchronized (this) {
+			if (this.closed) {
+				throw new IllegalStateException("Dictionary has been closed");
+			}
+			record = PartOfSpeechRecord.read(this.buffer, partOfSpeechIndex);
+		}
+		if (first != null) {
+			this.records.lazySet(slot + 1, first);
+		}
+		this.records.lazySet(slot, record);
+
+		return record;
+
+	}
+
+
+	/**
+	 * Returns the number of lookups that were satisfied from the cache
+	 *
+	 * @return The number of cache hits
+	 */
+	public long getHitCount() {
+
+		return this.hitCount.get();
+
+	}
+
+
+	/**
+	 * Returns the number of lookups that required a record to be decoded
+	 *
+	 * @return The number of cache misses
+	 */
+	public long getMissCount() {
+
+		return this.missCount.get();
+
+	}
+
+
+	/**
+	 * Returns the maximum number of records the cache can hold
+	 *
+	 * @return The capacity of the cache
+	 */
+	public int getCapacity() {
+
+		return this.records.length();
+
+	}
+
+
+	/**
+	 * Counts the records currently held in the cache
+	 *
+	 * @return The number of records held
+	 */
+	public int size() {
+
+		int size = 0;
+		for (int i = 0; i < this.records.length(); i++) {
+			if (this.records.get(i) != null) {
+				size++;
+			}
+		}
+
+		return size;
+
+	}
+
+
+	/**
+	 * Discards every cached record and resets the hit and miss counts
+	 */
+	public void clear() {
+
+		for (int i = 0; i < this.records.length(); i++) {
+			this.records.set(i, null);
+		}
+		this.hitCount.set(0);
+		this.missCount.set(0);
+
+	}
+
+
+	/**
+	 * Prevents any further lookup, waiting for any decode in progress to
+	 * finish. Called by the {@link Dictionary} before its buffers are
+	 * released
+	 */
+	synchronized void close() {
+
+		this.closed = true;
+
+	}
+
+
+	/**
+	 * @param buffer The part-of-speech information buffer from which records
+	 *               are decoded
+	 * @param capacity The requested number of slots. This is rounded up to a
+	 *                 power of two
+	 */
+	PartOfSpeechCache(CharBuffer buffer, int capacity) {
+
+		// At least one pair of slots
+		int bits = 1;
+		while ((bits < 30) && ((1 << bits) < capacity)) {
+			bits++;
+		}
+
+		this.buffer = buffer;
+		this.records = new AtomicReferenceArray<PartOfSpeechRecord>(1 << bits);
+		this.shift = 32 - bits;
+
+	}
+
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2002-2007
+ * Takashi Okamoto <tora@debian.org>
+ * Matt Francis <asbel@neosheffield.co.uk>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ */
+
+package net.java.sen.dictionary;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * The decoded part-of-speech data of a single entry in a {@link Dictionary}'s
+ * part-of-speech information file. A record is immutable, and is shared by
+ * every {@link Morpheme} with the same part-of-speech index through the
+ * {@link PartOfSpeechCache}
+ *
+ * <p><b>Thread Safety</b>: Objects of this class are immutable and may safely
+ * be shared between threads
+ */
+final class PartOfSpeechRecord {
+
+	/**
+	 * The index of this record within the part-of-speech information file
+	 */
+	final int partOfSpeechIndex;
+
+	/**
+	 * The part-of-speech in Chasen format
+	 */
+	final String partOfSpeech;
+
+	/**
+	 * The conjugation type of the morpheme
+	 */
+	final String conjugationalType;
+
+	/**
+	 * The conjugation form of the morpheme
+	 */
+	final String conjugationalForm;
+
+	/**
+	 * The unconjugated form of the morpheme
+	 */
+	final String basicForm;
+
+	/**
+	 * The readings of the morpheme. The list is unmodifiable
+	 */
+	final List<String> readings;
+
+	/**
+	 * The pronunciations of the morpheme. The list is unmodifiable
+	 */
+	final List<String> pronunciations;
+
+
+	/**
+	 * Reads a length-prefixed string from the part-of-speech buffer using
+	 * absolute reads only
+	 *
+	 * @param buffer The buffer to read from
+	 * @param index The index of the string's length prefix within the buffer
+	 * @return The string read
+	 */
+	private static String readString(CharBuffer buffer, int index) {
+
+		int length = buffer.get(index);
+		char[] characters = new char[length];
+		for (int i = 0; i < length; i++) {
+			characters[i] = buffer.get(index + 1 + i);
+		}
+
+		return new String(characters);
+
+	}
+
+
+	/**
+	 * Decodes a record from the part-of-speech information file. Only absolute
+	 * reads are made from the buffer, so records may be decoded concurrently
+	 *
+	 * @param buffer The part-of-speech information buffer
+	 * @param partOfSpeechIndex The index of the record within the buffer
+	 * @return The decoded record
+	 */
+	static PartOfSpeechRecord read(CharBuffer buffer, int partOfSpeechIndex) {
+
+		int index = partOfSpeechIndex;
+
+		String partOfSpeech = readString(buffer, index);
+		index += 1 + partOfSpeech.length();
+
+		String conjugationalType = readString(buffer, index);
+		index += 1 + conjugationalType.length();
+
+		String conjugationalForm = readString(buffer, index);
+		index += 1 + conjugationalForm.length();
+
+		String basicForm = readString(buffer, index);
+		index += 1 + basicForm.length();
+
+		int numReadings = buffer.get(index++);
+
+		String[] readings = new String[numReadings];
+		for (int i = 0; i < numReadings; i++) {
+			readings[i] = readString(buffer, index);
+			index += 1 + readings[i].length();
+		}
+		String[] pronunciations = new String[numReadings];
+		for (int i = 0; i < numReadings; i++) {
+			pronunciations[i] = readString(buffer, index);
+			index += 1 + pronunciations[i].length();
+		}
+
+		return new PartOfSpeechRecord(partOfSpeechIndex, partOfSpeech, conjugationalType, conjugationalForm, basicForm, readings, pronunciations);
+
+	}
+
+
+	/**
+	 * @param partOfSpeechIndex The index of the record within the
+	 *                          part-of-speech information file
+	 * @param partOfSpeech The part-of-speech in Chasen format
+	 * @param conjugationalType The conjugation type
+	 * @param conjugationalForm The conjugation form
+	 * @param basicForm The unconjugated form
+	 * @param readings The readings
+	 * @param pronunciations The pronunciations
+	 */
+	private PartOfSpeechRecord(int partOfSpeechIndex, String partOfSpeech, String conjugationalType, String conjugationalForm,
+			String basicForm, String[] readings, String[] pronunciations)
+	{
+
+		this.partOfSpeechIndex = partOfSpeechIndex;
+		this.partOfSpeech = partOfSpeech;
+		this.conjugationalType = conjugationalType;
+		this.conjugationalForm = conjugationalForm;
+		this.basicForm = basicForm;
+		this.readings = Collections.unmodifiableList(Arrays.asList(readings));
+		this.pronunciations = Collections.unmodifiableList(Arrays.asList(pronunciations));
+
+	}
+
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package net.java.sen.dictionary;
+
+import java.util.List;
+
+
+/**
+ * A class representing one possible sequence of morphemes comprising a
+ * sentence, as returned by {@link Viterbi#getNBestTokens(Sentence, int)}
+ */
+public class Segmentation {
+
+	/**
+	 * The morphemes of the sentence
+	 */
+	private final List<Token> tokens;
+
+	/**
+	 * The total cost of the segmentation, including the connection to the
+	 * end of the sentence
+	 */
+	private final int cost;
+
+
+	/**
+	 * Returns the morphemes of the sentence. The cost of each {@link Token} is
+	 * the accumulated cost of this segmentation up to and including that
+	 * {@link Token}
+	 *
+	 * @return The morphemes of the sentence
+	 */
+	public List<Token> getTokens() {
+
+		return this.tokens;
+
+	}
+
+
+	/**
+	 * Returns the total cost of the segmentation. Lower cost is more likely,
+	 * higher cost less likely
+	 *
+	 * @return The total cost of the segmentation
+	 */
+	public int getCost() {
+
+		return this.cost;
+
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+
+		return "Segmentation:{" + this.cost + ":" + this.tokens + "}";
+
+	}
+
+
+	/**
+	 * @param tokens The morphemes of the sentence
+	 * @param cost The total cost of the segmentation
+	 */
+	public Segmentation(List<Token> tokens, int cost) {
+
+		this.tokens = tokens;
+		this.cost = cost;
+
+	}
+
+
+}
@@ -19,6 +19,8 @@
 
 package net.java.sen.dictionary;
 
+import java.nio.CharBuffer;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.NoSuchElementException;
 
@@ -28,29 +30,47 @@ import java.util.NoSuchElementException;
  * supports breaking ignore spans, which prevent certain characters from being
  * considered for tokenisation, and reading constraints which restrict the
  * returned morphemes at a certain position to those with the given reading.
+ *
+ * <p>A Sentence may be a range of a larger character array, such as a buffer
+ * holding a whole document, which is then analysed in place without being
+ * copied. Positions within a Sentence, including those of the resulting
+ * {@link Token}s, are relative to the start of the range; add
+ * {@link #getOffset()} to find the position within the array returned by
+ * {@link #getArray()}
  */
 public class Sentence {
 
 	/**
-	 * The sentence's characters
+	 * The array holding the sentence's characters
 	 */
-	private char[] characters;
+	private final char[] characters;
 
 	/**
-	 * An BitSet of the same length as the <code>characters</code> array.
-	 * characters at indices that are <code>true</code> are both ignored
-	 * and treated as breaking points
+	 * The index within <code>characters</code> of the sentence's first
+	 * character
 	 */
-	private BitSet breakingIgnoreSet;
+	private final int offset;
+
+	/**
+	 * The number of characters in the sentence
+	 */
+	private final int length;
+
+	/**
+	 * A BitSet covering the characters of the sentence. Characters at
+	 * positions that are <code>true</code> are both ignored and treated as
+	 * breaking points
+	 */
+	private final BitSet breakingIgnoreSet = new BitSet();
 
 	/**
 	 * The reading constraints to apply. The constraints set will prevent other
 	 * spans from intersecting the indicated region, allowing the Viterbi
 	 * algorithm to ensure that a morpheme with the chosen length and reading
 	 * is picked in preference to any other possible sequence of morphemes
-	 * for the same characters
+	 * for the same characters. Created when the first constraint is set
 	 */
-	private Reading[] constraints;
+	private Reading[] constraints = null;
 
 
 	/**
@@ -122,28 +142,25 @@ public class Sentence {
 			// If the current span has a reading constraint, skip to the end.
 			// Otherwise start at the next character
 			int i = this.origin;
-			if ((i >= 0) && (Sentence.this.constraints[i] != null)) {
+			if ((i >= 0) && (Sentence.this.getReadingConstraint(i) != null)) {
 				i += Sentence.this.constraints[i].length;
 			} else {
 				i++;
 			}
 
 			// Find the next iterable position, skipping any ignored spans and space
-			for (int j = i; j < Sentence.this.characters.length; ) {
+			for (int j = i; j < Sentence.this.length; ) {
 				if (Sentence.this.breakingIgnoreSet.get(j)) {
 					j = Sentence.this.breakingIgnoreSet.nextClearBit(j);
-				} else if (
-							   (Sentence.this.characters[j] == ' ')
-							|| (Sentence.this.characters[j] == '\t')
-							|| (Sentence.this.characters[j] == '\r')
-							|| (Sentence.this.characters[j] == '\n')
-				          )
-				{
-					j++;
 				} else {
-					nextOrigin = j;
-					nextSkipped = j - i;
-					break;
+					char c = Sentence.this.characters[Sentence.this.offset + j];
+					if ((c == ' ') || (c == '\t') || (c == '\r') || (c == '\n')) {
+						j++;
+					} else {
+						nextOrigin = j;
+						nextSkipped = j - i;
+						break;
+					}
 				}
 			}
 
@@ -152,13 +169,13 @@ public class Sentence {
 			this.nextSkipped = nextSkipped;
 			if (
 					   (this.nextOrigin >= 0)
-					&& (this.nextOrigin < Sentence.this.characters.length)
-					&& (Sentence.this.constraints[this.nextOrigin] != null)
+					&& (this.nextOrigin < Sentence.this.length)
+					&& (Sentence.this.getReadingConstraint(this.nextOrigin) != null)
 			   )
 			{
 				this.nextLimit = this.nextOrigin + Sentence.this.constraints[this.nextOrigin].length; 
 			} else {
-				this.nextLimit = Sentence.this.characters.length;
+				this.nextLimit = Sentence.this.length;
 			}
 
 		}
@@ -172,7 +189,7 @@ public class Sentence {
 		@Override
 		public char current() {
 
-			return Sentence.this.characters[this.nextIndex];
+			return Sentence.this.characters[Sentence.this.offset + this.nextIndex];
 		}
 
 
@@ -197,7 +214,7 @@ public class Sentence {
 		@Override
 		public int length() {
 
-			return Sentence.this.characters.length;
+			return Sentence.this.length;
 
 		}
 
@@ -270,18 +287,11 @@ public class Sentence {
 				nextIndexValid = false;
 			} else if (Sentence.this.breakingIgnoreSet.get(this.nextIndex)) {
 				nextIndexValid = false;
-			} else 	if ((this.nextIndex > this.origin) && (Sentence.this.constraints[this.nextIndex] != null)) {
-				nextIndexValid = false;
-			} else if (
-						   (Sentence.this.characters[this.nextIndex] == ' ')
-						|| (Sentence.this.characters[this.nextIndex] == '\t')
-						|| (Sentence.this.characters[this.nextIndex] == '\r')
-						|| (Sentence.this.characters[this.nextIndex] == '\n')
-			          )
-			{
+			} else if ((this.nextIndex > this.origin) && (Sentence.this.constraints != null) && (Sentence.this.constraints[this.nextIndex] != null)) {
 				nextIndexValid = false;
 			} else {
-				nextIndexValid = true;
+				char c = Sentence.this.characters[Sentence.this.offset + this.nextIndex];
+				nextIndexValid = (c != ' ') && (c != '\t') && (c != '\r') && (c != '\n');
 			}
 
 			this.nextIndexValid = nextIndexValid;
@@ -305,7 +315,7 @@ public class Sentence {
 				throw new NoSuchElementException();
 			}
 
-			char nextCharacter = Sentence.this.characters[this.nextIndex];
+			char nextCharacter = Sentence.this.characters[Sentence.this.offset + this.nextIndex];
 			this.nextIndex++;
 			this.nextIndexValid = null;
 			return nextCharacter;
@@ -313,6 +323,29 @@ public class Sentence {
 		}
 
 
+		/**
+		 * Creates a ConstrainedIterator positioned before the first origin
+		 */
+		public ConstrainedIterator() {
+
+			// Nothing to do
+
+		}
+
+
+		/**
+		 * Creates a ConstrainedIterator positioned at the given origin, whose
+		 * next origin is the one that would follow it
+		 *
+		 * @param origin The origin
+		 */
+		public ConstrainedIterator(int origin) {
+
+			this.origin = origin;
+
+		}
+
+
 	}
 
 
@@ -351,7 +384,7 @@ public class Sentence {
 		@Override
 		public char current() {
 
-			return Sentence.this.characters[this.nextIndex];
+			return Sentence.this.characters[Sentence.this.offset + this.nextIndex];
 		}
 
 
@@ -372,7 +405,7 @@ public class Sentence {
 		@Override
 		public int length() {
 
-			return Sentence.this.characters.length;
+			return Sentence.this.length;
 
 		}
 
@@ -431,20 +464,13 @@ public class Sentence {
 
 			boolean nextIndexValid;
 
-			if (this.nextIndex >= Sentence.this.characters.length) {
+			if (this.nextIndex >= Sentence.this.length) {
 				nextIndexValid = false;
 			} else if (Sentence.this.breakingIgnoreSet.get(this.nextIndex)) {
 				nextIndexValid = false;
-			} else if (
-					   (Sentence.this.characters[this.nextIndex] == ' ')
-					|| (Sentence.this.characters[this.nextIndex] == '\t')
-					|| (Sentence.this.characters[this.nextIndex] == '\r')
-					|| (Sentence.this.characters[this.nextIndex] == '\n')
-		          )
-			{
-				nextIndexValid = false;
 			} else {
-				nextIndexValid = true;
+				char c = Sentence.this.characters[Sentence.this.offset + this.nextIndex];
+				nextIndexValid = (c != ' ') && (c != '\t') && (c != '\r') && (c != '\n');
 			}
 
 			this.nextIndexValid = nextIndexValid;
@@ -468,7 +494,7 @@ public class Sentence {
 				throw new NoSuchElementException();
 			}
 
-			char nextCharacter = Sentence.this.characters[this.nextIndex];
+			char nextCharacter = Sentence.this.characters[Sentence.this.offset + this.nextIndex];
 			this.nextIndex++;
 			this.nextIndexValid = null;
 			return nextCharacter;
@@ -515,12 +541,12 @@ public class Sentence {
 	public void setReadingConstraint(Reading constraint) {
 
 		// Check starting position
-		if ((constraint.start < 0) || (constraint.start >= this.characters.length)) {
+		if ((constraint.start < 0) || (constraint.start >= this.length)) {
 			throw new IllegalArgumentException("Invalid constraint starting position");
 		}
 
 		// Check length
-		if ((constraint.length <= 0) || (constraint.start + constraint.length - 1) >= this.characters.length) {
+		if ((constraint.length <= 0) || (constraint.start + constraint.length - 1) >= this.length) {
 			throw new IllegalArgumentException("Invalid constraint length");
 		}
 
@@ -529,6 +555,10 @@ public class Sentence {
 			throw new IllegalArgumentException("Invalid constraint reading");
 		}
 
+		if (this.constraints == null) {
+			this.constraints = new Reading[this.length];
+		}
+
 		// Remove any existing constraints that overlap the new constraint
 
 		// Starting at the end of the constraint, work backwards until we hit
@@ -557,6 +587,10 @@ public class Sentence {
 	 */
 	public Reading getReadingConstraint(int position) {
 
+		if (this.constraints == null) {
+			return null;
+		}
+
 		return this.constraints[position];
 
 	}
@@ -569,7 +603,9 @@ public class Sentence {
 	 */
 	public void removeReadingConstraint(int position) {
 
-		this.constraints[position] = null;
+		if (this.constraints != null) {
+			this.constraints[position] = null;
+		}
 
 	}
 
@@ -587,6 +623,21 @@ public class Sentence {
 	}
 
 
+	/**
+	 * Returns a SentenceIterator like that of {@link #iterator()}, positioned
+	 * at one of its origins, so that iteration resumes with the origins that
+	 * follow
+	 *
+	 * @param origin The origin to resume after
+	 * @return The iterator
+	 */
+	SentenceIterator iterator(int origin) {
+
+		return new ConstrainedIterator(origin);
+
+	}
+
+
 	/**
 	 * Returns a SentenceIterator that obeys the defined breaking ignore spans,
 	 * skips space characters, but ignores reading constraints
@@ -602,27 +653,171 @@ public class Sentence {
 
 
 	/**
-	 * Returns the underlying characters of this Sentence
+	 * Finds the end of the run of characters that a search from the given
+	 * position by the iterator of {@link #iterator()} may read. The run ends
+	 * before the first ignored or space character, before the start of the
+	 * next reading constraint, and at the end of any reading constraint
+	 * starting at the given position. A search from any later origin within
+	 * the run is bounded by the same end
+	 *
+	 * @param position The position to start from
+	 * @return One greater than the index of the last character of the run, or
+	 *         <code>position</code> if the character at the position may not
+	 *         be read
+	 */
+	int findRunEnd(int position) {
+
+		int limit = this.length;
+		Reading constraint = getReadingConstraint(position);
+		if (constraint != null) {
+			limit = position + constraint.length;
+		}
+
+		int i = position;
+		while (i < limit) {
+			char c = this.characters[this.offset + i];
+			if (
+					   ((i > position) && (getReadingConstraint(i) != null))
+					|| this.breakingIgnoreSet.get(i)
+					|| (c == ' ')
+					|| (c == '\t')
+					|| (c == '\r')
+					|| (c == '\n')
+			   )
+			{
+				break;
+			}
+			i++;
+		}
+
+		return i;
+
+	}
+
+
+	/**
+	 * Returns the underlying characters of this Sentence. For a Sentence
+	 * created from a whole array, this is that array; for one that is a range
+	 * of a larger array, it is a copy of the range. Use {@link #getArray()}
+	 * to read the characters in place
 	 *
 	 * @return The underlying characters
 	 */
 	public char[] getCharacters() {
 
+		if ((this.offset == 0) && (this.length == this.characters.length)) {
+			return this.characters;
+		}
+
+		return Arrays.copyOfRange(this.characters, this.offset, this.offset + this.length);
+
+	}
+
+
+	/**
+	 * Returns the array holding the characters of this Sentence, without
+	 * copying them. The Sentence's characters begin at {@link #getOffset()}
+	 * within the array, and are {@link #length()} characters long; the rest of
+	 * the array may hold any other characters. The array must not be altered
+	 *
+	 * @return The array holding the characters
+	 */
+	public char[] getArray() {
+
 		return this.characters;
 
 	}
 
 
 	/**
-	 * Creates a sentence with the given characters
+	 * Returns the index within {@link #getArray()} of the first character of
+	 * this Sentence
+	 *
+	 * @return The offset
+	 */
+	public int getOffset() {
+
+		return this.offset;
+
+	}
+
+
+	/**
+	 * Returns the number of characters in this Sentence
+	 *
+	 * @return The length
+	 */
+	public int length() {
+
+		return this.length;
+
+	}
+
+
+	/**
+	 * Creates a string of a range of the characters of this Sentence
+	 *
+	 * @param start The position of the first character
+	 * @param length The number of characters
+	 * @return The string
+	 */
+	public String getSurface(int start, int length) {
+
+		return new String(this.characters, this.offset + start, length);
+
+	}
+
+
+	/**
+	 * Creates a sentence of a range of the given characters. The characters
+	 * are not copied, and must not be altered while the sentence is in use
+	 *
+	 * @param characters The array holding the sentence's characters
+	 * @param offset The index of the first character of the sentence
+	 * @param length The number of characters in the sentence
+	 */
+	public Sentence(char[] characters, int offset, int length) {
+
+		if ((offset < 0) || (length < 0) || (offset > (characters.length - length))) {
+			throw new IllegalArgumentException("Invalid sentence range");
+		}
+
+		this.characters = characters;
+		this.offset = offset;
+		this.length = length;
+
+	}
+
+
+	/**
+	 * Creates a sentence with the given characters. The characters are not
+	 * copied, and must not be altered while the sentence is in use
 	 *  
 	 * @param characters The sentence's characters 
 	 */
 	public Sentence(char[] characters) {
 
-		this.characters = characters;
-		this.breakingIgnoreSet = new BitSet(characters.length);
-		this.constraints = new Reading[characters.length];
+		this(characters, 0, characters.length);
+
+	}
+
+
+	/**
+	 * Creates a sentence of the remaining characters of a CharBuffer. If the
+	 * buffer is backed by an accessible array, the sentence refers to the
+	 * array without copying it, and the array must not be altered while the
+	 * sentence is in use; otherwise the characters are copied. The buffer's
+	 * position is not changed
+	 *
+	 * @param buffer The buffer holding the sentence's characters
+	 */
+	public Sentence(CharBuffer buffer) {
+
+		this(
+				buffer.hasArray() ? buffer.array() : toCharArray(buffer),
+				buffer.hasArray() ? (buffer.arrayOffset() + buffer.position()) : 0,
+				buffer.remaining()
+		);
 
 	}
 
@@ -638,4 +833,21 @@ public class Sentence {
 
 	}
 
+
+	/**
+	 * Copies the remaining characters of a CharBuffer that has no accessible
+	 * array
+	 *
+	 * @param buffer The buffer
+	 * @return The characters
+	 */
+	private static char[] toCharArray(CharBuffer buffer) {
+
+		char[] characters = new char[buffer.remaining()];
+		buffer.duplicate().get(characters);
+
+		return characters;
+
+	}
+
 }
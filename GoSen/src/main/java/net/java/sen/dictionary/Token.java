@@ -28,11 +28,17 @@ import java.util.Objects;
  *  <p><b>Thread Safety</b>: Objects of this class are <b>NOT</b> thread safe and
  * should not be accessed simultaneously by multiple threads.
  *
- *  <p><b>CAUTION</b>: {@link Morpheme}s are implemented as lazy proxies onto a
- *  {@link Dictionary}, and care should be taken not to access the same
- *  {@link Dictionary} from multiple threads. Once any member of a
- *  {@link Morpheme} has been read, its link to the {@link Dictionary} is broken
- *  and this restriction is relaxed
+ *  <p>{@link Morpheme}s are implemented as lazy proxies onto a
+ *  {@link Dictionary}. As the {@link Dictionary} is only read with absolute
+ *  reads, distinct {@link Token}s sharing the same {@link Dictionary} may be
+ *  used from different threads
+ *
+ *  <p>A Token becomes invalid when its {@link Dictionary} is closed: reading
+ *  the data of its {@link Morpheme} then throws an
+ *  <code>IllegalStateException</code>, unless it had already been read. The
+ *  Tokens returned by a {@link Viterbi} created on a {@link DictionaryHandle}
+ *  have their {@link Morpheme}s read before the analysis ends, and so remain
+ *  valid
  */
 public class Token {
 
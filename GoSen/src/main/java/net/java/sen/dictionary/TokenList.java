@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen.dictionary;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+
+/**
+ * The result of an analysis, stored as parallel arrays of primitives rather
+ * than as a list of {@link Token} objects. Only a single reference to the
+ * characters of the sentence is kept, and the position, length, cost and
+ * part-of-speech index of each morpheme can be read without creating any
+ * objects. A {@link Token}, with its surface string and {@link Morpheme}, is
+ * created only when it is first requested through {@link #get(int)}, and is
+ * then kept so that later requests return the same {@link Token}
+ *
+ * <p>The list cannot be modified. Copy it into another list if modification
+ * is required. The characters of the sentence are not copied, and must not be
+ * altered while the list is in use. For a {@link Sentence} that is a range of
+ * a larger array, the list refers to that array, and
+ * {@link #getOffset()} gives the position of the sentence within it
+ *
+ * <p><b>Thread Safety</b>: Objects of this class are <b>NOT</b> thread safe and
+ * should not be accessed simultaneously by multiple threads
+ */
+public class TokenList extends AbstractList<Token> implements RandomAccess {
+
+	/**
+	 * The array holding the characters of the analysed sentence
+	 */
+	private final char[] surface;
+
+	/**
+	 * The index within <code>surface</code> of the sentence's first character
+	 */
+	private final int offset;
+
+	/**
+	 * The Dictionary to read each morpheme's part-of-speech data from
+	 */
+	private final Dictionary dictionary;
+
+	/**
+	 * The start of the character range of each morpheme within the sentence
+	 */
+	private final int[] start;
+
+	/**
+	 * The length of the character range of each morpheme within the sentence
+	 */
+	private final int[] length;
+
+	/**
+	 * The Viterbi cost of each morpheme
+	 */
+	private final int[] cost;
+
+	/**
+	 * The part-of-speech index of each morpheme within the Dictionary
+	 */
+	private final int[] partOfSpeechIndex;
+
+	/**
+	 * The explicit {@link Morpheme} of each morpheme that is not read from
+	 * the Dictionary, or <code>null</code> if there are none
+	 */
+	private Morpheme[] morphemes = null;
+
+	/**
+	 * The {@link Token} created for each morpheme, or <code>null</code> if
+	 * none has been created
+	 */
+	private Token[] tokens = null;
+
+
+	/**
+	 * Sets the data of a morpheme. Used by {@link Viterbi} to fill the list
+	 *
+	 * @param index The index of the morpheme
+	 * @param start The start of the character range within the sentence
+	 * @param length The length of the character range within the sentence
+	 * @param cost The Viterbi cost
+	 * @param partOfSpeechIndex The part-of-speech index within the Dictionary
+	 * @param morpheme The explicit {@link Morpheme}, or <code>null</code> if
+	 *                 it is to be read from the Dictionary
+	 */
+	void set(int index, int start, int length, int cost, int partOfSpeechIndex, Morpheme morpheme) {
+
+		this.start[index] = start;
+		this.length[index] = length;
+		this.cost[index] = cost;
+		this.partOfSpeechIndex[index] = partOfSpeechIndex;
+
+		if (morpheme != null) {
+			if (this.morphemes == null) {
+				this.morphemes = new Morpheme[this.start.length];
+			}
+			this.morphemes[index] = morpheme;
+		}
+
+	}
+
+
+	/**
+	 * Checks that an index is within the list
+	 *
+	 * @param index The index
+	 */
+	private void checkIndex(int index) {
+
+		if ((index < 0) || (index >= this.start.length)) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.start.length);
+		}
+
+	}
+
+
+	/**
+	 * Gets the array holding the characters of the analysed sentence. The
+	 * array is shared, and must not be altered
+	 *
+	 * @return The characters
+	 * @see Sentence#getArray()
+	 */
+	public char[] getArray() {
+
+		return this.surface;
+
+	}
+
+
+	/**
+	 * Gets the index within {@link #getArray()} of the first character of
+	 * the analysed sentence. The start of each morpheme is relative to the
+	 * sentence, so the position of a morpheme within the array is its start
+	 * plus this offset
+	 *
+	 * @return The offset
+	 */
+	public int getOffset() {
+
+		return this.offset;
+
+	}
+
+
+	/**
+	 * Gets the start of the character range of a morpheme within the sentence
+	 *
+	 * @param index The index of the morpheme
+	 * @return The start of the character range
+	 */
+	public int getStart(int index) {
+
+		checkIndex(index);
+
+		return this.start[index];
+
+	}
+
+
+	/**
+	 * Gets the length of the character range of a morpheme within the
+	 * sentence
+	 *
+	 * @param index The index of the morpheme
+	 * @return The length of the character range
+	 */
+	public int getLength(int index) {
+
+		checkIndex(index);
+
+		return this.length[index];
+
+	}
+
+
+	/**
+	 * Gets the Viterbi cost of a morpheme
+	 *
+	 * @param index The index of the morpheme
+	 * @return The Viterbi cost
+	 */
+	public int getCost(int index) {
+
+		checkIndex(index);
+
+		return this.cost[index];
+
+	}
+
+
+	/**
+	 * Gets the index of a morpheme's part-of-speech data within the
+	 * Dictionary. Morphemes that were not read from the Dictionary, such as
+	 * those of a {@link UserDictionary}, may have no valid index
+	 *
+	 * @param index The index of the morpheme
+	 * @return The part-of-speech index
+	 */
+	public int getPartOfSpeechIndex(int index) {
+
+		checkIndex(index);
+
+		return this.partOfSpeechIndex[index];
+
+	}
+
+
+	/**
+	 * Gets the surface string of a morpheme
+	 *
+	 * @param index The index of the morpheme
+	 * @return A new string of the morpheme's characters
+	 */
+	public String getSurface(int index) {
+
+		checkIndex(index);
+
+		return new String(this.surface, this.offset + this.start[index], this.length[index]);
+
+	}
+
+
+	/**
+	 * Gets the {@link Morpheme} of a morpheme. A Morpheme read from the
+	 * Dictionary is a new lazy proxy on each call unless the morpheme's
+	 * {@link Token} has already been created
+	 *
+	 * @param index The index of the morpheme
+	 * @return The {@link Morpheme}
+	 */
+	public Morpheme getMorpheme(int index) {
+
+		checkIndex(index);
+
+		if ((this.tokens != null) && (this.tokens[index] != null)) {
+			return this.tokens[index].getMorpheme();
+		}
+
+		if ((this.morphemes != null) && (this.morphemes[index] != null)) {
+			return this.morphemes[index];
+		}
+
+		return new Morpheme(this.dictionary, this.partOfSpeechIndex[index]);
+
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractList#get(int)
+	 */
+	@Override
+	public Token get(int index) {
+
+		checkIndex(index);
+
+		if (this.tokens == null) {
+			this.tokens = new Token[this.start.length];
+		}
+
+		Token token = this.tokens[index];
+		if (token == null) {
+			token = new Token(getSurface(index), this.cost[index], this.start[index], this.length[index], getMorpheme(index));
+			this.tokens[index] = token;
+		}
+
+		return token;
+
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public int size() {
+
+		return this.start.length;
+
+	}
+
+
+	/**
+	 * Creates a list of the given size. Used by {@link Viterbi}, which then
+	 * fills it with {@link #set(int, int, int, int, int, Morpheme)}
+	 *
+	 * @param dictionary The Dictionary to read part-of-speech data from
+	 * @param surface The array holding the characters of the analysed
+	 *                sentence
+	 * @param offset The index of the sentence's first character
+	 * @param size The number of morphemes
+	 */
+	TokenList(Dictionary dictionary, char[] surface, int offset, int size) {
+
+		this.dictionary = dictionary;
+		this.surface = surface;
+		this.offset = offset;
+		this.start = new int[size];
+		this.length = new int[size];
+		this.cost = new int[size];
+		this.partOfSpeechIndex = new int[size];
+
+	}
+
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package net.java.sen.dictionary;
+
+import java.io.IOException;
+
+
+/**
+ * Receives the {@link Token}s of a sentence from
+ * {@link Viterbi#getBestTokens(Sentence, int, TokenListener)} as soon as each
+ * becomes certain, in order of their position within the sentence
+ */
+public interface TokenListener {
+
+	/**
+	 * Receives the next {@link Token} of the most likely path
+	 *
+	 * @param token The {@link Token}
+	 * @throws IOException
+	 */
+	public void token(Token token) throws IOException;
+
+
+}
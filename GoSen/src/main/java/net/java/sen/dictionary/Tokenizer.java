@@ -21,6 +21,7 @@
 
 package net.java.sen.dictionary;
 
+import java.io.Closeable;
 import java.io.IOException;
 
 
@@ -29,29 +30,40 @@ import java.io.IOException;
  * 
  * <p> The Tokenizer uses a {@link Dictionary} to assist the decomposition of
  * strings into potential morphemes
+ *
+ * <p><b>Thread Safety</b>: Implementations must be thread safe. Any mutable
+ * state needed during a lookup is held by the caller's {@link AnalysisContext},
+ * so a single <code>Tokenizer</code> may be shared between any number of
+ * {@link Viterbi} instances. A closed Tokenizer must no longer be used
  */
-public abstract class Tokenizer {
+public abstract class Tokenizer implements Closeable {
     private final Morpheme unknownMorpheme;
 
 	/**
 	 * The {@link Dictionary}  used to find possible morphemes
 	 */
-	protected Dictionary dictionary;
+	protected final Dictionary dictionary;
 
 	/**
 	 * A {@link CToken} representing an unknown morpheme
 	 */
-	protected CToken unknownCToken;
+	protected final CToken unknownCToken;
 
 	/**
 	 * A {@link Node} representing a beginning-of-string
 	 */
-	protected Node bosNode;
+	protected final Node bosNode;
 
 	/**
 	 * A {@link Node} representing an end-of-string
 	 */
-	protected Node eosNode;
+	protected final Node eosNode;
+
+	/**
+	 * The {@link UserDictionary} consulted alongside the {@link Dictionary},
+	 * or <code>null</code> if none
+	 */
+	private volatile UserDictionary userDictionary = null;
 
 	/**
 	 * @return Returns the dictionary used to find possible morphemes
@@ -78,6 +90,44 @@ public abstract class Tokenizer {
 	}
 
 
+	/**
+	 * Creates a beginning-of-string {@link Node} from the given context's
+	 * {@link Node} pool. The {@link Node} returned by this method is not an
+	 * alias of any other {@link Node} until the context is reset
+	 *
+	 * @param context The analysis context to allocate from
+	 * @return A beginning-of-string {@link Node}
+	 */
+	public Node getBOSNode(AnalysisContext context) {
+
+		Node bosNode = context.newNode();
+		bosNode.copy(this.bosNode);
+		bosNode.prev = context.newNode();
+		bosNode.prev.copy(this.bosNode);
+
+		return bosNode;
+
+	}
+
+
+	/**
+	 * Creates an end-of-string {@link Node} from the given context's
+	 * {@link Node} pool. The {@link Node} returned by this method is not an
+	 * alias of any other {@link Node} until the context is reset
+	 *
+	 * @param context The analysis context to allocate from
+	 * @return An end-of-string {@link Node}
+	 */
+	public Node getEOSNode(AnalysisContext context) {
+
+		Node eosNode = context.newNode();
+		eosNode.copy(this.eosNode);
+
+		return eosNode;
+
+	}
+
+
 	/**
 	 * Creates a unique end-of-string {@link Node}. The {@link Node} returned by
 	 * this method is freshly cloned and not an alias of any other {@link Node}
@@ -93,7 +143,9 @@ public abstract class Tokenizer {
 	/**
 	 * Creates an "unknown morpheme" {@link Node} with the specified
 	 * characteristics.  The {@link Node} returned by this method is freshly
-	 * cloned and not an alias of any other {@link Node}
+	 * cloned and not an alias of any other {@link Node}. Its {@link Morpheme}
+	 * is shared between all unknown {@link Node}s, and must be replaced rather
+	 * than altered if different morpheme data is required
 	 *
 	 * @param start The index of the first character of the surface within the
 	 *              {@link Node}
@@ -108,7 +160,6 @@ public abstract class Tokenizer {
 		unknownNode.start = start;
 		unknownNode.length = length;
 		unknownNode.span = span;
-		unknownNode.morpheme = new Morpheme();
 		unknownNode.morpheme = this.unknownMorpheme;
 
 		return unknownNode;
@@ -116,19 +167,198 @@ public abstract class Tokenizer {
 	}
 
 
+	/**
+	 * Creates an "unknown morpheme" {@link Node} with the specified
+	 * characteristics from the given context's {@link Node} pool. As with
+	 * {@link #getUnknownNode(int, int, int)}, the {@link Morpheme} is shared
+	 * and must be replaced rather than altered
+	 *
+	 * @param context The analysis context to allocate from
+	 * @param start The index of the first character of the surface within the
+	 *              {@link Node}
+	 * @param length The length of the {@link Node}
+	 * @param span The span of the {@link Node}
+	 * @return The new "unknown morpheme" {@link Node}
+	 */
+	public Node getUnknownNode(AnalysisContext context, int start, int length, int span) {
+
+		Node unknownNode = context.newNode();
+		context.unknownNodeCount++;
+		unknownNode.ctoken = this.unknownCToken;
+		unknownNode.start = start;
+		unknownNode.length = length;
+		unknownNode.span = span;
+		unknownNode.morpheme = this.unknownMorpheme;
+
+		return unknownNode;
+
+	}
+
+
+	/**
+	 * Gets the {@link Morpheme} of a {@link Node}, creating a lazy proxy onto
+	 * the {@link Dictionary} if the {@link Node} does not yet have one
+	 *
+	 * @param node The {@link Node}
+	 * @return The {@link Node}'s {@link Morpheme}
+	 */
+	public Morpheme getMorpheme(Node node) {
+
+		if (node.morpheme == null) {
+			node.morpheme = new Morpheme(this.dictionary, node.ctoken.partOfSpeechIndex);
+		}
+
+		return node.morpheme;
+
+	}
+
+
+	/**
+	 * Sets the {@link UserDictionary} to consult alongside the
+	 * {@link Dictionary}, replacing any existing user dictionary. Analyses
+	 * already in progress may continue to use the previous user dictionary
+	 *
+	 * @param userDictionary The user dictionary, or <code>null</code> to
+	 *                       remove the existing user dictionary
+	 */
+	public void setUserDictionary(UserDictionary userDictionary) {
+
+		this.userDictionary = userDictionary;
+
+	}
+
+
+	/**
+	 * Gets the {@link UserDictionary} consulted alongside the
+	 * {@link Dictionary}
+	 *
+	 * @return The user dictionary, or <code>null</code> if none
+	 */
+	public UserDictionary getUserDictionary() {
+
+		return this.userDictionary;
+
+	}
+
+
+	/**
+	 * Prepends a {@link Node} to a chain for every word of the
+	 * {@link UserDictionary} whose surface begins at the origin of the given
+	 * iterator. The iterator is rewound to its origin if there is a user
+	 * dictionary. Implementations of
+	 * {@link #lookup(SentenceIterator, char[], AnalysisContext)} should call
+	 * this after searching the {@link Dictionary}
+	 *
+	 * @param iterator The iterator to search from
+	 * @param context The analysis context to allocate {@link Node}s from
+	 * @param resultNode The head of the chain to prepend to, linked through
+	 *                   <code>Node.rnext</code>, or <code>null</code>
+	 * @return The new head of the chain
+	 */
+	protected Node lookupUserDictionary(SentenceIterator iterator, AnalysisContext context, Node resultNode) {
+
+		UserDictionary userDictionary = this.userDictionary;
+		if (userDictionary == null) {
+			return resultNode;
+		}
+
+		return userDictionary.lookup(iterator, context, resultNode);
+
+	}
+
+
+	/**
+	 * Finds the earliest position from which a search of the
+	 * {@link UserDictionary} may read as far as a given position
+	 *
+	 * @param position The position
+	 * @return The earliest position, which is no later than
+	 *         <code>position</code>
+	 */
+	protected int findUserDictionaryStart(int position) {
+
+		UserDictionary userDictionary = this.userDictionary;
+		if (userDictionary == null) {
+			return position;
+		}
+
+		return Math.max(0, position - userDictionary.getMaximumLength());
+
+	}
+
+
+	/**
+	 * Finds the earliest position of a sentence from which
+	 * {@link #lookup(SentenceIterator, char[], AnalysisContext)} may read as
+	 * far as a given position. Lookups from any earlier position find the same
+	 * morphemes whatever is changed at or after the given position, such as
+	 * the reading constraints set there, and so may be reused by
+	 * {@link Viterbi#getBestTokensAfterChange(Sentence, int, int)}. The default
+	 * implementation returns 0, so that no lookup is reused
+	 *
+	 * @param sentence The sentence
+	 * @param position The position
+	 * @return The earliest position, which is no later than
+	 *         <code>position</code>
+	 */
+	public int findLookupStart(Sentence sentence, int position) {
+
+		return 0;
+
+	}
+
+
+	/**
+	 * Prepares for the lookups of a sentence's analysis. This is called after
+	 * the context is reset and before the first call to
+	 * {@link #lookup(SentenceIterator, char[], AnalysisContext)} with the
+	 * sentence's {@link Sentence#iterator()}, so that a Tokenizer may find the
+	 * possible morphemes of the whole sentence at once. The default
+	 * implementation does nothing
+	 *
+	 * @param sentence The sentence to be analysed
+	 * @param context The analysis context to use for scratch state
+	 * @throws IOException
+	 */
+	public void prepare(Sentence sentence, AnalysisContext context) throws IOException {
+
+		// Do nothing
+
+	}
+
+
 	/**
 	 * Searches for possible morphemes from the given SentenceIterator. The
 	 * {@link Node} that is returned links through
 	 * <code>Node.rnext</code> to a list of matches which may be of varying
-	 * lengths  
+	 * lengths. The {@link Node}s are allocated from the context's pool, and
+	 * are valid only until the context is next reset. Their {@link Morpheme}s
+	 * may be left unset, to be created on demand by {@link #getMorpheme(Node)}
 	 *
 	 * @param iterator The iterator to search from
-	 * @param surface The underlying character surface
+	 * @param surface The array holding the sentence's characters, as returned
+	 *                by {@link Sentence#getArray()}. Positions of the
+	 *                iterator are relative to {@link Sentence#getOffset()}
+	 *                within the array
+	 * @param context The analysis context to use for scratch state
 	 * @return The head of a chain of {@link Node}s representing the possible
 	 *         morphemes beginning at the given index
 	 * @throws IOException
 	 */
-	public abstract Node lookup(SentenceIterator iterator, char[] surface) throws IOException;
+	public abstract Node lookup(SentenceIterator iterator, char[] surface, AnalysisContext context) throws IOException;
+
+
+	/**
+	 * Closes the Tokenizer's {@link Dictionary}, releasing its mapped files.
+	 * The {@link Token}s of earlier analyses become invalid, as described by
+	 * {@link Dictionary#close()}. Closing an already closed Tokenizer has no
+	 * effect
+	 */
+	public void close() {
+
+		this.dictionary.close();
+
+	}
 
 
 	/**
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen.dictionary;
+
+import net.java.sen.trie.Trie;
+import net.java.sen.trie.TrieSearcher;
+
+
+/**
+ * A small dictionary of additional words, held in memory and consulted
+ * alongside the compiled system {@link Dictionary} while the lattice is built.
+ * A user dictionary is built at runtime from CSV data or through the API of
+ * {@link net.java.sen.compiler.UserDictionaryBuilder}, which resolves the
+ * connection attributes of each word with the same rules as the system
+ * dictionary's compiler, and is installed with
+ * {@link Tokenizer#setUserDictionary(UserDictionary)}
+ *
+ * <p>Each word carries a complete {@link Morpheme}, which is shared by every
+ * {@link Node} and {@link Token} found for the word, and so must be replaced
+ * rather than altered
+ *
+ * <p><b>Thread Safety</b>: Objects of this class are immutable and thread
+ * safe
+ */
+public class UserDictionary {
+
+	/**
+	 * Searcher over the Trie of the words' surfaces, or <code>null</code> if
+	 * the dictionary is empty
+	 */
+	private final TrieSearcher trieSearcher;
+
+	/**
+	 * The CToken of each word, ordered by surface
+	 */
+	private final CToken[] ctokens;
+
+	/**
+	 * The Morpheme of each word, ordered by surface
+	 */
+	private final Morpheme[] morphemes;
+
+	/**
+	 * The length of the longest word's surface
+	 */
+	private final int maximumLength;
+
+
+	/**
+	 * Gets the number of words in the dictionary
+	 *
+	 * @return The number of words
+	 */
+	public int size() {
+
+		return this.ctokens.length;
+
+	}
+
+
+	/**
+	 * Gets the length of the longest word's surface. A search from any
+	 * position reads no further than this many characters beyond it
+	 *
+	 * @return The length, or 0 if the dictionary is empty
+	 */
+	public int getMaximumLength() {
+
+		return this.maximumLength;
+
+	}
+
+
+	/**
+	 * Prepends a {@link Node} to a chain for every word whose surface begins
+	 * at the origin of the given iterator. The iterator is rewound to its
+	 * origin before searching
+	 *
+	 * @param iterator The iterator to search from
+	 * @param context The analysis context to allocate {@link Node}s from
+	 * @param resultNode The head of the chain to prepend to, linked through
+	 *                   <code>Node.rnext</code>, or <code>null</code>
+	 * @return The new head of the chain
+	 */
+	Node lookup(SentenceIterator iterator, AnalysisContext context, Node resultNode) {
+
+		if (this.trieSearcher == null) {
+			return resultNode;
+		}
+
+		iterator.rewindToOrigin();
+
+		int skipped = iterator.skippedCharCount();
+		int start = iterator.origin();
+		int results[] = context.trieSearchResults;
+		int n = this.trieSearcher.commonPrefixSearch(iterator, results);
+
+		for (int i = 0; i < n; i++) {
+			int k = 0xff & results[i];
+			int p = results[i] >> 8;
+			for (int j = 0; j < k; j++) {
+				CToken ctoken = this.ctokens[p + j];
+
+				Node newNode = context.newNode();
+				newNode.ctoken = ctoken;
+				newNode.morpheme = this.morphemes[p + j];
+				newNode.length = ctoken.length;
+				newNode.start = start;
+				newNode.span = ctoken.length + skipped;
+				newNode.rnext = resultNode;
+
+				resultNode = newNode;
+			}
+		}
+
+		return resultNode;
+
+	}
+
+
+	/**
+	 * Creates a user dictionary. This constructor is used by
+	 * {@link net.java.sen.compiler.UserDictionaryBuilder}, which should be
+	 * used in preference
+	 *
+	 * @param trie The Trie of the words' surfaces, or <code>null</code> if
+	 *             there are no words. Each value holds the index of the first
+	 *             word with the surface shifted left by 8 bits, and the number
+	 *             of words with the surface in the low 8 bits
+	 * @param ctokens The CToken of each word, ordered by surface
+	 * @param morphemes The Morpheme of each word, ordered by surface
+	 */
+	public UserDictionary(Trie trie, CToken[] ctokens, Morpheme[] morphemes) {
+
+		this.trieSearcher = (trie == null) ? null : new TrieSearcher(trie);
+		this.ctokens = ctokens;
+		this.morphemes = morphemes;
+
+		int maximumLength = 0;
+		for (CToken ctoken : ctokens) {
+			maximumLength = Math.max(maximumLength, ctoken.length);
+		}
+		this.maximumLength = maximumLength;
+
+	}
+
+
+}
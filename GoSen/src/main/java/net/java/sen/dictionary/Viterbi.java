@@ -24,7 +24,13 @@ package net.java.sen.dictionary;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 
 
 /**
@@ -32,54 +38,327 @@ import java.util.List;
  * sequence of morphemes comprising a sentence
  * 
  * <p><b>Thread Safety</b>: Objects of this class are <b>NOT</b> thread safe and
- * should not be accessed simultaneously by multiple threads. Note that creating
- * additional instances using {@link net.java.sen.SenFactory} is relatively
- * cheap in both memory and time
+ * should not be accessed simultaneously by multiple threads. The
+ * {@link Tokenizer} and {@link Dictionary} are thread safe, however, so any
+ * number of <code>Viterbi</code>s may share a single instance of each; the
+ * only per-instance state is the {@link AnalysisContext}. Creating additional
+ * instances using {@link net.java.sen.SenFactory} is therefore cheap in both
+ * memory and time
+ *
+ * <p>A <code>Viterbi</code> created on a {@link DictionaryHandle} takes the
+ * handle's current {@link Tokenizer} and {@link Dictionary} at the start of
+ * each analysis, so that the dictionary may be swapped while analyses are in
+ * progress
  */
 public class Viterbi {
 
+	/**
+	 * The handle the Tokenizer is taken from for each analysis, or
+	 * <code>null</code> if the Tokenizer is fixed
+	 */
+	private final DictionaryHandle handle;
+
+	/**
+	 * The generation of the handle in use by the current analysis, or
+	 * <code>null</code> if none is in progress
+	 */
+	private DictionaryHandle.Generation generation = null;
+
 	/**
 	 * The Tokenizer used to decompose the sentence into prospective morphemes
 	 */
-	private Tokenizer tokenizer = null;
+	private Tokenizer tokenizer;
+
+	/**
+	 * The Dictionary used to calculate connection costs
+	 */
+	private Dictionary dictionary;
+
+	/**
+	 * <code>true</code> if the Dictionary's connection costs have no trigram
+	 * context
+	 */
+	private boolean bigram;
+
+	/**
+	 * Scratch state used during analysis
+	 */
+	private AnalysisContext context = new AnalysisContext();
+
+	/**
+	 * A second context into which the live part of a windowed lattice is
+	 * copied, after which the two are exchanged. Created on first use
+	 */
+	private AnalysisContext spareContext = null;
+
+	/**
+	 * The maximum number of left Nodes connected to at each position, or 0
+	 * for no limit
+	 */
+	private int beamWidth = 0;
+
+	/**
+	 * The maximum amount by which the cost of a left Node connected to at each
+	 * position may exceed the lowest cost there, or -1 for no limit
+	 */
+	private int beamThreshold = -1;
+
+	/**
+	 * Scratch array holding the costs of the left Nodes at the position being
+	 * pruned
+	 */
+	private int[] beamCosts = new int[64];
+
+	/**
+	 * The listener to pass the statistics of each analysis to, or
+	 * <code>null</code> if analysis is not measured
+	 */
+	private AnalysisListener analysisListener = null;
+
+	/**
+	 * The statistics of the current analysis, reused for each analysis
+	 */
+	private final AnalysisStatistics statistics = new AnalysisStatistics();
+
+	/**
+	 * The lattice of the last analysis by {@link #getBestTokens(Sentence)},
+	 * kept for re-analysis
+	 */
+	private final RetainedLattice lattice = new RetainedLattice();
+
+
+	/**
+	 * The state of a lattice analysed in windows by
+	 * {@link Viterbi#getBestTokens(Sentence, int, TokenListener)}
+	 */
+	private static final class LatticeWindow {
+
+		/**
+		 * Linked lists of the {@link Node}s ending at each position of the
+		 * window, indexed from the start of the window
+		 */
+		Node[] endNodeList;
+
+		/**
+		 * The highest index of <code>endNodeList</code> that has been cleared
+		 * for use
+		 */
+		int capacity;
+
+		/**
+		 * The position within the sentence of the start of the window
+		 */
+		int start = 0;
+
+		/**
+		 * The highest index of <code>endNodeList</code> at which a
+		 * {@link Node} ends
+		 */
+		int end = 0;
+
+		/**
+		 * The last {@link Node} passed to the listener, or the
+		 * beginning-of-string {@link Node} if there has been none. Every
+		 * surviving path passes through this {@link Node}
+		 */
+		Node committed;
+
+	}
+
 
 	/**
-	 * The beginning-of-string Node
+	 * The lattice left in the context by {@link Viterbi#getBestTokens(Sentence)},
+	 * from which the sentence may be re-analysed by
+	 * {@link Viterbi#getBestTokensAfterChange(Sentence, int, int)}. Every
+	 * {@link Node} looked up from an origin is handed out by the context after
+	 * those of earlier origins, and is prepended to the linked list of
+	 * {@link Node}s ending at its position after them, so that the lattice may
+	 * be cut back to the state it was in before any origin was looked up
 	 */
-	private Node bosNode;
+	private static final class RetainedLattice {
+
+		/**
+		 * The sentence the lattice was built for, or <code>null</code> if the
+		 * context holds no lattice that may be re-analysed
+		 */
+		Sentence sentence = null;
+
+		/**
+		 * The Tokenizer the lattice was built with
+		 */
+		Tokenizer tokenizer = null;
+
+		/**
+		 * The Tokenizer's UserDictionary when the lattice was built
+		 */
+		UserDictionary userDictionary = null;
+
+		/**
+		 * Linked lists of the {@link Node}s ending at each position of the
+		 * sentence
+		 */
+		Node[] endNodeList;
+
+		/**
+		 * The end-of-string {@link Node}
+		 */
+		Node eosNode;
+
+		/**
+		 * The position of the linked list that the end-of-string {@link Node}
+		 * was added to when it was connected
+		 */
+		int eosPosition;
+
+		/**
+		 * The head of that linked list before the end-of-string {@link Node}
+		 * was connected
+		 */
+		Node eosListHead;
+
+		/**
+		 * The number of origins looked up
+		 */
+		int originCount = 0;
+
+		/**
+		 * The position of each origin looked up, in order. The context's
+		 * checkpoint taken before the lookup of each origin has the same
+		 * index, and a final checkpoint is taken before the end-of-string
+		 * {@link Node} is connected
+		 */
+		int[] origins = new int[256];
+
+	}
+
 
 	/**
-	 * The end-of-string Node
+	 * Removes from the linked list of Nodes ending at a position every Node
+	 * outside the beam: those beyond the <code>beamWidth</code> lowest cost
+	 * Nodes, and those whose cost exceeds the lowest by more than
+	 * <code>beamThreshold</code>. The remaining Nodes keep their order, so that
+	 * ties between them are broken as they would be without pruning
+	 *
+	 * @param endNodeList An array of linked lists of possible morphemes ending
+	 *                    at a given position
+	 * @param position The position to prune
 	 */
-	private Node eosNode;
+	private void pruneLeftNodes(Node[] endNodeList, int position) {
+
+		int count = 0;
+		int minCost = Integer.MAX_VALUE;
+		int maxCost = Integer.MIN_VALUE;
+		for (Node lNode = endNodeList[position]; lNode != null; lNode = lNode.lnext) {
+			if (count == this.beamCosts.length) {
+				this.beamCosts = Arrays.copyOf(this.beamCosts, count * 2);
+			}
+			this.beamCosts[count++] = lNode.cost;
+			minCost = Math.min(minCost, lNode.cost);
+			maxCost = Math.max(maxCost, lNode.cost);
+		}
+
+		// Most positions hold few enough Nodes that nothing need be pruned
+		boolean withinWidth = (this.beamWidth == 0) || (count <= this.beamWidth);
+		boolean withinThreshold = (this.beamThreshold < 0) || (((long) maxCost - minCost) <= this.beamThreshold);
+		if (withinWidth && withinThreshold) {
+			return;
+		}
+
+		// Find the highest cost within the beam. Nodes at exactly that cost are
+		// kept in list order until the beam is full
+		Arrays.sort(this.beamCosts, 0, count);
+		int cutoff = Integer.MAX_VALUE;
+		int cutoffAllowance = count;
+		if ((this.beamWidth > 0) && (this.beamWidth < count)) {
+			cutoff = this.beamCosts[this.beamWidth - 1];
+			cutoffAllowance = this.beamWidth - lowerBound(this.beamCosts, count, cutoff);
+		}
+		if ((this.beamThreshold >= 0) && ((long) this.beamCosts[0] + this.beamThreshold < cutoff)) {
+			cutoff = this.beamCosts[0] + this.beamThreshold;
+			cutoffAllowance = count;
+		}
+
+		Node lastNode = null;
+		for (Node lNode = endNodeList[position]; lNode != null; lNode = lNode.lnext) {
+			boolean keep = (lNode.cost < cutoff) || ((lNode.cost == cutoff) && (cutoffAllowance-- > 0));
+			if (keep) {
+				if (lastNode == null) {
+					endNodeList[position] = lNode;
+				} else {
+					lastNode.lnext = lNode;
+				}
+				lastNode = lNode;
+			}
+		}
+		lastNode.lnext = null;
+
+	}
+
 
 	/**
-	 * An array of linked lists of possible morphemes ending at a given position
+	 * Finds the number of elements of a sorted array that are less than a
+	 * value
+	 *
+	 * @param values The sorted array
+	 * @param count The number of valid elements of the array
+	 * @param value The value to compare with
+	 * @return The number of elements less than <code>value</code>
 	 */
-	private Node[] endNodeList;
+	private static int lowerBound(int[] values, int count, int value) {
+
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (values[middle] < value) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+
+	}
 
 
 	/**
 	 * Calculates the best connection for each of a linked list of Nodes
 	 *
+	 * @param endNodeList An array of linked lists of possible morphemes ending
+	 *                    at a given position
 	 * @param position The shared starting position of the linked list of Nodes 
 	 * @param limit One greater than the last index of the sentence
 	 * @param rNode The head of the linked list of Nodes
 	 */
-	final private void calculateConnectionCosts(int position, int limit, Node rNode) {
+	final private void calculateConnectionCosts(Node[] endNodeList, int position, int limit, Node rNode) {
+
+		if ((this.beamWidth > 0) || (this.beamThreshold >= 0)) {
+			pruneLeftNodes(endNodeList, position);
+		}
+
+		if (this.bigram) {
+			calculateBigramConnectionCosts(endNodeList, position, rNode);
+			return;
+		}
+
+		int edges = 0;
 
 		if (position != limit) {
-			for (Node lNode = this.endNodeList[position]; lNode != null; lNode = lNode.lnext) {
+			for (Node lNode = endNodeList[position]; lNode != null; lNode = lNode.lnext) {
 				if (lNode.ctoken.rcAttr2 != 0) {
 					for (Node rNode2 = rNode; rNode2 != null; rNode2 = rNode2.rnext) {
-						rNode2 = rNode2.clone();
-						rNode2.cost = lNode.cost + this.tokenizer.getDictionary().getCost(lNode.prev, lNode, rNode2);
+						edges++;
+						Node rNodeCopy = this.context.newNode();
+						rNodeCopy.copy(rNode2);
+						rNode2 = rNodeCopy;
+						rNode2.cost = lNode.cost + this.dictionary.getCost(lNode.prev, lNode, rNode2);
 						rNode2.prev = lNode;
 	
 						int y = position + rNode2.span;
 	
-						rNode2.lnext = this.endNodeList[y];
-						this.endNodeList[y] = rNode2;
+						rNode2.lnext = endNodeList[y];
+						endNodeList[y] = rNode2;
 					}
 	
 				}
@@ -90,8 +369,53 @@ public class Viterbi {
 			int bestCost = Integer.MAX_VALUE;
 			Node bestNode = null;
 
-			for (Node lNode = this.endNodeList[position]; lNode != null; lNode = lNode.lnext) {
-				int cost = lNode.cost + this.tokenizer.getDictionary().getCost(lNode.prev, lNode, rNode);
+			for (Node lNode = endNodeList[position]; lNode != null; lNode = lNode.lnext) {
+				edges++;
+				int cost = lNode.cost + this.dictionary.getCost(lNode.prev, lNode, rNode);
+				if (cost <= bestCost) {
+					bestNode = lNode;
+					bestCost = cost;
+				}
+			}
+
+			rNode.prev = bestNode;
+			rNode.cost = bestCost;
+			int x = position + rNode.span;
+
+			rNode.lnext = endNodeList[x];
+			endNodeList[x] = rNode;
+
+		}
+
+		this.statistics.edges += edges;
+
+	}
+
+
+	/**
+	 * Calculates the best connection for each of a linked list of Nodes, when
+	 * the Dictionary's connection costs have no trigram context. As the cost
+	 * of a connection does not depend on the Node before the left Node, no
+	 * copies need be made of the right Nodes for each left context, and the
+	 * cost of each pair of Nodes is read directly from the two Nodes
+	 *
+	 * @param endNodeList An array of linked lists of possible morphemes ending
+	 *                    at a given position
+	 * @param position The shared starting position of the linked list of Nodes
+	 * @param rNode The head of the linked list of Nodes
+	 */
+	final private void calculateBigramConnectionCosts(Node[] endNodeList, int position, Node rNode) {
+
+		Node lNodeList = endNodeList[position];
+		int edges = 0;
+
+		for (; rNode != null; rNode = rNode.rnext) {
+			int bestCost = Integer.MAX_VALUE;
+			Node bestNode = null;
+
+			for (Node lNode = lNodeList; lNode != null; lNode = lNode.lnext) {
+				edges++;
+				int cost = lNode.cost + this.dictionary.getBigramCost(lNode, rNode);
 				if (cost <= bestCost) {
 					bestNode = lNode;
 					bestCost = cost;
@@ -102,11 +426,63 @@ public class Viterbi {
 			rNode.cost = bestCost;
 			int x = position + rNode.span;
 
-			rNode.lnext = this.endNodeList[x];
-			this.endNodeList[x] = rNode;
+			rNode.lnext = endNodeList[x];
+			endNodeList[x] = rNode;
+
+		}
+
+		this.statistics.edges += edges;
 
+	}
+
+
+	/**
+	 * Starts measuring an analysis, if a listener is attached
+	 *
+	 * @param characters The number of characters to analyse
+	 * @return <code>true</code> if the analysis is measured
+	 */
+	private boolean startStatistics(int characters) {
+
+		if (this.analysisListener == null) {
+			return false;
 		}
 
+		this.statistics.start(characters);
+
+		return true;
+
+	}
+
+
+	/**
+	 * Finishes measuring an analysis, and passes the statistics to the
+	 * listener
+	 */
+	private void finishStatistics() {
+
+		this.statistics.addNodes(this.context);
+		this.statistics.finish();
+		this.analysisListener.analysed(this.statistics);
+
+	}
+
+
+	/**
+	 * Creates a Token from a lattice Node. The Token holds no reference to the
+	 * Node, which may safely be reused afterwards
+	 *
+	 * @param sentence The sentence being analysed
+	 * @param node The Node to create from
+	 * @return The Token
+	 */
+	private Token createToken(Sentence sentence, Node node) {
+
+		// The surface is created directly rather than through
+		// Sentence#getSurface(int, int), as the extra call level was found to
+		// prevent the JIT from eliminating allocations on this path
+		return new Token(new String(sentence.getArray(), sentence.getOffset() + node.start, node.length), node.cost, node.start, node.length, detach(this.tokenizer.getMorpheme(node)));
+
 	}
 
 
@@ -123,7 +499,7 @@ public class Viterbi {
 	 */
 	private Node lookup(SentenceIterator iterator, char[] surface, Reading constraint) throws IOException {
 
-		Node resultNode = this.tokenizer.lookup(iterator, surface);
+		Node resultNode = this.tokenizer.lookup(iterator, surface, this.context);
 
 		if (constraint == null) {
 			return resultNode;
@@ -132,7 +508,7 @@ public class Viterbi {
 		Node filteredResultNode = null;
 		Node lastNode = null;
 		for (Node node = resultNode; node != null; node = node.rnext) {
-			if ((node.length == constraint.length) && (node.morpheme.getReadings().contains(constraint.text))) {
+			if ((node.length == constraint.length) && (this.tokenizer.getMorpheme(node).getReadings().contains(constraint.text))) {
 				if (filteredResultNode == null) {
 					filteredResultNode = node;
 				} else {
@@ -147,9 +523,19 @@ public class Viterbi {
 			return filteredResultNode;
 		}
 
-		// Synthesize Node
-		Node unknownNode = this.tokenizer.getUnknownNode(iterator.origin(), constraint.length, constraint.length + iterator.skippedCharCount());
-		unknownNode.morpheme.setReadings(Arrays.asList(constraint.text));
+		// Synthesize Node. The unknown Morpheme is shared, so must be replaced
+		// rather than altered
+		Node unknownNode = this.tokenizer.getUnknownNode(this.context, iterator.origin(), constraint.length, constraint.length + iterator.skippedCharCount());
+		Morpheme unknownMorpheme = unknownNode.morpheme;
+		unknownNode.morpheme = new Morpheme(
+				unknownMorpheme.getPartOfSpeech(),
+				unknownMorpheme.getConjugationalType(),
+				unknownMorpheme.getConjugationalForm(),
+				unknownMorpheme.getBasicForm(),
+				new String[] { constraint.text },
+				unknownMorpheme.getPronunciations().toArray(new String[0]),
+				unknownMorpheme.getAdditionalInformation()
+		);
 
 		return unknownNode;
 
@@ -167,13 +553,37 @@ public class Viterbi {
 	 */
 	public List<Token> getPossibleTokens(Sentence sentence, int position) throws IOException {
 
-		Node resultNode = this.tokenizer.lookup(sentence.unconstrainedIterator(position), sentence.getCharacters());
+		begin();
+		try {
+			return findPossibleTokens(sentence, position);
+		} finally {
+			end();
+		}
+
+	}
+
+
+	/**
+	 * Implements {@link #getPossibleTokens(Sentence, int)}
+	 *
+	 * @param sentence The sentence to analyse
+	 * @param position The position to search at
+	 * @return A list of possible Tokens
+	 * @throws IOException
+	 */
+	private List<Token> findPossibleTokens(Sentence sentence, int position) throws IOException {
+
+		// The spare context is used, so that any lattice kept for re-analysis
+		// survives
+		AnalysisContext context = getSpareContext();
+		context.reset();
+
+		char[] surface = sentence.getArray();
+		Node resultNode = this.tokenizer.lookup(sentence.unconstrainedIterator(position), surface, context);
 
-		String sentenceString = new String(sentence.getCharacters());
 		List<Token> tokenList = new ArrayList<Token>();
 		while (resultNode != null) {
-			Token token = new Token(sentenceString, resultNode);
-			tokenList.add(token);
+			tokenList.add(createToken(sentence, resultNode));
 			resultNode = resultNode.rnext;
 		}
 
@@ -183,24 +593,102 @@ public class Viterbi {
 
 
 	/**
-	 * Analyses a sentence to find the most likely sequence of morphemes
+	 * Gets the spare context, creating it if necessary
+	 *
+	 * @return The spare context
+	 */
+	private AnalysisContext getSpareContext() {
+
+		if (this.spareContext == null) {
+			this.spareContext = new AnalysisContext();
+		}
+
+		return this.spareContext;
+
+	}
+
+
+	/**
+	 * Resets the context for the analysis of a new sentence. Any lattice kept
+	 * for re-analysis is discarded
+	 */
+	private void resetContext() {
+
+		this.lattice.sentence = null;
+		this.context.reset();
+
+	}
+
+
+	/**
+	 * Builds and connects the Viterbi lattice for a sentence, reusing the
+	 * {@link Node}s of the previous analysis
 	 *
 	 * @param sentence The sentence to analyse
-	 * @return The most likely list of morphemes
+	 * @param iterator A fresh iterator over the sentence
+	 * @param endNodeList A cleared array of linked lists of {@link Node}s,
+	 *                    to be filled with the {@link Node}s ending at each
+	 *                    position of the sentence
+	 * @param lookupNodes If not <code>null</code>, receives every {@link Node}
+	 *                    returned by the {@link Tokenizer}, as distinct from
+	 *                    the copies made for each left context
+	 * @return The end-of-string {@link Node}, whose chain of
+	 *         <code>Node.prev</code> leads back along the most likely path to
+	 *         the beginning-of-string {@link Node}
 	 * @throws IOException
 	 */
-	public List<Token> getBestTokens(Sentence sentence) throws IOException {
+	private Node buildLattice(Sentence sentence, SentenceIterator iterator, Node[] endNodeList, Set<Node> lookupNodes) throws IOException {
 
-		SentenceIterator iterator = sentence.iterator();
-		int length = iterator.length();
-		char[] surface = sentence.getCharacters();
+		boolean measured = (this.analysisListener != null);
+		long time = measured ? System.nanoTime() : 0;
+
+		// Initialize the Viterbi lattice, reusing the Nodes of the previous
+		// analysis
+		resetContext();
+		this.tokenizer.prepare(sentence, this.context);
+		Node bosNode = this.tokenizer.getBOSNode(this.context);
+		Node eosNode = this.tokenizer.getEOSNode(this.context);
+		endNodeList[0] = bosNode;
+		if (measured) {
+			this.statistics.addPrepareTime(time);
+		}
+
+		RetainedLattice lattice = this.lattice;
+		lattice.endNodeList = endNodeList;
+		lattice.eosNode = eosNode;
+		lattice.originCount = 0;
+
+		connectLattice(sentence, iterator, endNodeList, lookupNodes, eosNode);
+
+		return eosNode;
+
+	}
+
+
+	/**
+	 * Looks up the potential morphemes at each remaining origin of a
+	 * SentenceIterator and joins them to the lattice, then connects the
+	 * end-of-string {@link Node}. The origins looked up are recorded, with a
+	 * checkpoint of the context before each, so that the lattice may later be
+	 * cut back by {@link #findBestTokensAfterChange(Sentence, int, int)}
+	 *
+	 * @param sentence The sentence to analyse
+	 * @param iterator The iterator over the sentence, positioned before the
+	 *                 first origin to look up
+	 * @param endNodeList The array of linked lists of {@link Node}s ending at
+	 *                    each position of the sentence
+	 * @param lookupNodes If not <code>null</code>, receives every {@link Node}
+	 *                    returned by the {@link Tokenizer}
+	 * @param eosNode The end-of-string {@link Node}
+	 * @throws IOException
+	 */
+	private void connectLattice(Sentence sentence, SentenceIterator iterator, Node[] endNodeList, Set<Node> lookupNodes, Node eosNode) throws IOException {
 
-		// Initialize the Viterbi lattice
-		this.bosNode = this.tokenizer.getBOSNode();
-		this.eosNode = this.tokenizer.getEOSNode();
-		this.endNodeList = new Node[length + 1];
-		this.endNodeList[0] = this.bosNode;
-		this.endNodeList[length] = null;
+		int length = iterator.length();
+		char[] surface = sentence.getArray();
+		boolean measured = (this.analysisListener != null);
+		long time = measured ? System.nanoTime() : 0;
+		RetainedLattice lattice = this.lattice;
 
 
 		// Look up potential morphemes at each position in the sentence, and
@@ -208,10 +696,27 @@ public class Viterbi {
 		while (iterator.hasNextOrigin()) {
 			int position = iterator.nextOrigin();
 			int base = position - iterator.skippedCharCount();
-			if (this.endNodeList[base] != null) {
+			if (endNodeList[base] != null) {
+				if (lattice.originCount == lattice.origins.length) {
+					lattice.origins = Arrays.copyOf(lattice.origins, lattice.originCount * 2);
+				}
+				lattice.origins[lattice.originCount++] = position;
+				this.context.checkpoint();
+
 				Node rNode = lookup(iterator, surface, sentence.getReadingConstraint(position));
+				if (measured) {
+					time = this.statistics.addLookupTime(time);
+				}
 				if (rNode != null) {
-					calculateConnectionCosts(base, length, rNode);
+					if (lookupNodes != null) {
+						for (Node node = rNode; node != null; node = node.rnext) {
+							lookupNodes.add(node);
+						}
+					}
+					calculateConnectionCosts(endNodeList, base, length, rNode);
+					if (measured) {
+						time = this.statistics.addConnectionTime(time);
+					}
 				}
 			}
 		}
@@ -220,18 +725,82 @@ public class Viterbi {
 		// Find the most likely connection from the last position where a
 		// morpheme ended to the end-of-string. If there were no morphemes, this
 		// will connect to the beginning-of-string node.
+		this.context.checkpoint();
 		for (int position = length; position >= 0; position--) {
-			if (this.endNodeList[position] != null) {
-				calculateConnectionCosts(position, length, this.eosNode);
+			if (endNodeList[position] != null) {
+				lattice.eosPosition = position + eosNode.span;
+				lattice.eosListHead = endNodeList[lattice.eosPosition];
+				calculateConnectionCosts(endNodeList, position, length, eosNode);
 				// Once we have connected the end-of-string node, leave the loop. 
 				break;
 			}
 		}
+		if (measured) {
+			this.statistics.addConnectionTime(time);
+		}
+
+	}
+
+
+	/**
+	 * Analyses a sentence to find the most likely sequence of morphemes
+	 *
+	 * @param sentence The sentence to analyse
+	 * @return The most likely list of morphemes
+	 * @throws IOException
+	 */
+	public List<Token> getBestTokens(Sentence sentence) throws IOException {
+
+		begin();
+		try {
+			return findBestTokens(sentence);
+		} finally {
+			end();
+		}
+
+	}
+
+
+	/**
+	 * Implements {@link #getBestTokens(Sentence)}
+	 *
+	 * @param sentence The sentence to analyse
+	 * @return The most likely list of morphemes
+	 * @throws IOException
+	 */
+	private List<Token> findBestTokens(Sentence sentence) throws IOException {
+
+		SentenceIterator iterator = sentence.iterator();
+		boolean measured = startStatistics(iterator.length());
+		Node[] endNodeList = this.context.getEndNodeList(iterator.length());
+		Node eosNode = buildLattice(sentence, iterator, endNodeList, null);
+		retainLattice(sentence);
+		long time = measured ? System.nanoTime() : 0;
+
+		List<Token> tokenList = createBestTokens(sentence, eosNode);
+
+		if (measured) {
+			this.statistics.addTokenTime(time);
+			finishStatistics();
+		}
+
+		return tokenList;
 
+	}
+
+
+	/**
+	 * Creates the Tokens of the most likely path through a connected lattice
+	 *
+	 * @param sentence The sentence being analysed
+	 * @param eosNode The end-of-string {@link Node}
+	 * @return The most likely list of morphemes
+	 */
+	private List<Token> createBestTokens(Sentence sentence, Node eosNode) {
 
 		// Working backwards from the end-of-string Node, make the forward
 		// connections along the most likely path
-		Node node = this.eosNode;
+		Node node = eosNode;
 		for (Node prevNode; node.prev != null;) {
 			prevNode = node.prev;
 			prevNode.next = node;
@@ -239,13 +808,12 @@ public class Viterbi {
 		}
 
 
-		// Convert to Token list
-		String sentenceString = new String(sentence.getCharacters());
+		// Convert to Token list. The loop above stops at the context Node
+		// preceding the beginning-of-string Node
 		List<Token> tokenList = new ArrayList<Token>();
-		node = this.bosNode.next;
+		node = node.next.next;
 		while ((node != null) && (node.next != null)) {
-			Token token = new Token(sentenceString, node);
-			tokenList.add(token);
+			tokenList.add(createToken(sentence, node));
 			node = node.next;
 		}
 
@@ -255,13 +823,1251 @@ public class Viterbi {
 
 
 	/**
-	 * Creates a Viterbi instance using the given Tokenizer
-	 * 
-	 * @param tokenizer The Tokenizer to use
+	 * Keeps the lattice just built for a sentence, so that the sentence may
+	 * be re-analysed by {@link #getBestTokensAfterChange(Sentence, int, int)}.
+	 * A lattice pruned to a beam is not kept, as the pruned {@link Node}s
+	 * could not be restored
+	 *
+	 * @param sentence The sentence
 	 */
-	public Viterbi(Tokenizer tokenizer) {
+	private void retainLattice(Sentence sentence) {
 
-		this.tokenizer = tokenizer;
+		if (!isBeamSet()) {
+			RetainedLattice lattice = this.lattice;
+			lattice.sentence = sentence;
+			lattice.tokenizer = this.tokenizer;
+			lattice.userDictionary = this.tokenizer.getUserDictionary();
+		}
+
+	}
+
+
+	/**
+	 * Re-analyses a sentence after a change to it, such as the setting or
+	 * removal of a reading constraint, to find the most likely sequence of
+	 * morphemes. If the sentence was the subject of the last analysis by
+	 * {@link #getBestTokens(Sentence)} or this method, only the part of the
+	 * lattice that the change may affect is rebuilt: the lookups and
+	 * connection costs of every origin whose lookup cannot read as far as
+	 * the change, as found by
+	 * {@link Tokenizer#findLookupStart(Sentence, int)}, are reused, as are
+	 * the {@link Dictionary} searches made beyond the change. Otherwise the
+	 * sentence is analysed in full
+	 *
+	 * <p>The lattice is kept until the next analysis of any other kind, apart
+	 * from {@link #getPossibleTokens(Sentence, int)}, or the next change to
+	 * the beam, and is not kept at all while a beam is set. The results are
+	 * always the same as those of {@link #getBestTokens(Sentence)}
+	 *
+	 * @param sentence The sentence to analyse
+	 * @param start The earliest position at which the sentence has changed
+	 *              since its last analysis
+	 * @param end One greater than the last position at which the sentence
+	 *            has changed, including the last position of any reading
+	 *            constraint set or removed
+	 * @return The most likely list of morphemes
+	 * @throws IOException
+	 */
+	public List<Token> getBestTokensAfterChange(Sentence sentence, int start, int end) throws IOException {
+
+		begin();
+		try {
+			RetainedLattice lattice = this.lattice;
+			if (
+					   !isBeamSet()
+					&& (lattice.sentence == sentence)
+					&& (lattice.tokenizer == this.tokenizer)
+					&& (lattice.userDictionary == this.tokenizer.getUserDictionary())
+			   )
+			{
+				return findBestTokensAfterChange(sentence, start, end);
+			}
+			return findBestTokens(sentence);
+		} finally {
+			end();
+		}
+
+	}
+
+
+	/**
+	 * Implements {@link #getBestTokensAfterChange(Sentence, int, int)} for a
+	 * sentence whose lattice is held in the context
+	 *
+	 * @param sentence The sentence to analyse
+	 * @param start The earliest position at which the sentence has changed
+	 * @param end One greater than the last position at which the sentence
+	 *            has changed
+	 * @return The most likely list of morphemes
+	 * @throws IOException
+	 */
+	private List<Token> findBestTokensAfterChange(Sentence sentence, int start, int end) throws IOException {
+
+		RetainedLattice lattice = this.lattice;
+		int length = sentence.length();
+
+		// Find the first origin whose lookup may be affected by the change.
+		// The Nodes of the origins before it, and their connections, are kept
+		int lookupStart = this.tokenizer.findLookupStart(sentence, start);
+		int first = lowerBound(lattice.origins, lattice.originCount, lookupStart);
+		if (first == 0) {
+			return findBestTokens(sentence);
+		}
+
+		boolean measured = startStatistics(length);
+		Node[] endNodeList = lattice.endNodeList;
+		Node eosNode = lattice.eosNode;
+
+		// Disconnect the end-of-string Node, then remove the Nodes of the
+		// first affected origin and those after it. These were added to each
+		// linked list after the Nodes of earlier origins, so lie at its head.
+		// The origins after the change are looked up again, reusing the
+		// dictionary matches found for them by the first analysis
+		endNodeList[lattice.eosPosition] = lattice.eosListHead;
+		int firstPosition = (first < lattice.originCount) ? lattice.origins[first] : length;
+		for (int x = firstPosition + 1; x <= length; x++) {
+			Node node = endNodeList[x];
+			while ((node != null) && (node.start >= firstPosition)) {
+				node = node.lnext;
+			}
+			endNodeList[x] = node;
+		}
+		this.context.rewind(first);
+		this.context.invalidateDictionaryMatches(lookupStart, end);
+		lattice.originCount = first;
+
+		connectLattice(sentence, sentence.iterator(lattice.origins[first - 1]), endNodeList, null, eosNode);
+		long time = measured ? System.nanoTime() : 0;
+
+		List<Token> tokenList = createBestTokens(sentence, eosNode);
+
+		if (measured) {
+			this.statistics.addTokenTime(time);
+			finishStatistics();
+		}
+
+		return tokenList;
+
+	}
+
+
+	/**
+	 * Finds the last {@link Node} shared by the paths leading to two
+	 * {@link Node}s. As the end of each {@link Node} on a path is strictly
+	 * before the end of the {@link Node} following it, the {@link Node} that
+	 * ends later can always be stepped back without passing the shared
+	 * {@link Node}
+	 *
+	 * @param a The first {@link Node}
+	 * @param b The second {@link Node}
+	 * @param root A {@link Node} known to lie on both paths
+	 * @return The last shared {@link Node}
+	 */
+	private static Node commonAncestor(Node a, Node b, Node root) {
+
+		while (a != b) {
+			if ((a == root) || (b == root)) {
+				return root;
+			}
+
+			int aEnd = a.start + a.length;
+			int bEnd = b.start + b.length;
+			if (aEnd >= bEnd) {
+				a = a.prev;
+			}
+			if (bEnd >= aEnd) {
+				b = b.prev;
+			}
+		}
+
+		return a;
+
+	}
+
+
+	/**
+	 * Finds the last {@link Node} shared by the paths leading to every
+	 * {@link Node} that may yet be connected to. Analysis of the rest of the
+	 * sentence cannot change the path up to that {@link Node}
+	 *
+	 * @param window The lattice window
+	 * @param base The index within the window of the position being analysed.
+	 *             Only {@link Node}s ending at or after it remain connectable
+	 * @return The last shared {@link Node}
+	 */
+	private static Node findConvergencePoint(LatticeWindow window, int base) {
+
+		Node converged = null;
+
+		for (int i = base; i <= window.end; i++) {
+			for (Node node = window.endNodeList[i]; node != null; node = node.lnext) {
+				converged = (converged == null) ? node : commonAncestor(converged, node, window.committed);
+				if (converged == window.committed) {
+					return converged;
+				}
+			}
+		}
+
+		return converged;
+
+	}
+
+
+	/**
+	 * Passes the {@link Token}s of the path from the last committed
+	 * {@link Node} up to and including the given {@link Node} to a listener
+	 *
+	 * @param sentence The sentence being analysed
+	 * @param window The lattice window
+	 * @param node The last {@link Node} to commit, whose path must pass through
+	 *             the last committed {@link Node}
+	 * @param listener The listener to pass {@link Token}s to
+	 * @throws IOException
+	 */
+	private void commit(Sentence sentence, LatticeWindow window, Node node, TokenListener listener) throws IOException {
+
+		List<Node> path = new ArrayList<Node>();
+		for (Node pathNode = node; pathNode != window.committed; pathNode = pathNode.prev) {
+			path.add(pathNode);
+		}
+
+		for (int i = path.size() - 1; i >= 0; i--) {
+			listener.token(createToken(sentence, path.get(i)));
+		}
+
+		window.committed = node;
+
+	}
+
+
+	/**
+	 * Copies a {@link Node} and its {@link CToken} into a context. The copy
+	 * is not linked to any other {@link Node}
+	 *
+	 * @param target The context to copy into
+	 * @param node The {@link Node} to copy
+	 * @return The copy
+	 */
+	private static Node copyNode(AnalysisContext target, Node node) {
+
+		Node copy = target.newNode();
+		copy.copy(node);
+		copy.prev = null;
+		copy.next = null;
+		copy.lnext = null;
+		copy.rnext = null;
+
+		if (node.ctoken != null) {
+			copy.ctoken = target.newCToken();
+			copy.ctoken.copy(node.ctoken);
+		}
+
+		return copy;
+
+	}
+
+
+	/**
+	 * Copies a {@link Node} into a context together with any {@link Node}s on
+	 * its path that have not already been copied
+	 *
+	 * @param target The context to copy into
+	 * @param node The {@link Node} to copy
+	 * @param copies The copies already made, keyed by the original
+	 *               {@link Node}. Must contain a copy of some {@link Node} on
+	 *               the path
+	 * @return The copy of <code>node</code>
+	 */
+	private static Node copyPath(AnalysisContext target, Node node, Map<Node,Node> copies) {
+
+		List<Node> uncopied = new ArrayList<Node>();
+		Node copy;
+		for (Node pathNode = node; (copy = copies.get(pathNode)) == null; pathNode = pathNode.prev) {
+			uncopied.add(pathNode);
+		}
+
+		for (int i = uncopied.size() - 1; i >= 0; i--) {
+			Node original = uncopied.get(i);
+			Node nextCopy = copyNode(target, original);
+			nextCopy.prev = copy;
+			copies.put(original, nextCopy);
+			copy = nextCopy;
+		}
+
+		return copy;
+
+	}
+
+
+	/**
+	 * Moves the start of a lattice window forward to the given position,
+	 * copying the {@link Node}s that may yet be connected to, and the paths
+	 * leading to them from the last committed {@link Node}, into the spare
+	 * context. The contexts are then exchanged, so that every other
+	 * {@link Node} of the old lattice is released for reuse
+	 *
+	 * @param window The lattice window
+	 * @param base The index within the window of the new start of the window
+	 */
+	private void moveWindow(LatticeWindow window, int base) {
+
+		AnalysisContext target = getSpareContext();
+		target.reset();
+		if (this.analysisListener != null) {
+			this.statistics.addNodes(this.context);
+		}
+
+		int capacity = Math.max(window.capacity - base, window.end - base);
+		Node[] endNodeList = target.getEndNodeList(capacity);
+
+		// The committed Node becomes the root of the new lattice. Its previous
+		// Node is kept without any path of its own, to provide the context for
+		// connection costs
+		Map<Node,Node> copies = new IdentityHashMap<Node,Node>();
+		Node root = window.committed;
+		Node rootCopy = copyNode(target, root);
+		if (root.prev != null) {
+			rootCopy.prev = copyNode(target, root.prev);
+		}
+		copies.put(root, rootCopy);
+
+		for (int i = base; i <= window.end; i++) {
+			Node lastCopy = null;
+			for (Node node = window.endNodeList[i]; node != null; node = node.lnext) {
+				Node copy = copyPath(target, node, copies);
+				if (lastCopy == null) {
+					endNodeList[i - base] = copy;
+				} else {
+					lastCopy.lnext = copy;
+				}
+				lastCopy = copy;
+			}
+		}
+
+		window.endNodeList = endNodeList;
+		window.capacity = capacity;
+		window.start += base;
+		window.end -= base;
+		window.committed = rootCopy;
+
+		this.spareContext = this.context;
+		this.context = target;
+
+	}
+
+
+	/**
+	 * Analyses a sentence to find the most likely sequence of morphemes,
+	 * passing each {@link Token} to a listener as soon as it is certain to
+	 * form part of the result rather than when the whole sentence has been
+	 * analysed
+	 *
+	 * <p>After each position of the sentence is analysed, the paths leading to
+	 * every {@link Node} that may still be connected to are compared. Where
+	 * they all share a common beginning, that part of the path cannot be
+	 * changed by the rest of the sentence, and its {@link Token}s are passed to
+	 * the listener immediately. Once the lattice spans
+	 * <code>maxWindow</code> characters, the part still needed is copied to the
+	 * start of a new lattice and the rest released, so that the memory used is
+	 * bounded by the window size rather than by the length of the sentence.
+	 * Up to this point the result is identical to that of
+	 * {@link #getBestTokens(Sentence)}
+	 *
+	 * <p>If the paths have not converged within <code>maxWindow</code>
+	 * characters of the last {@link Token} passed to the listener, a commit is
+	 * forced: the lowest cost path to the position being analysed is taken as
+	 * certain, and {@link Node}s spanning that position are discarded. The
+	 * result may then differ from that of {@link #getBestTokens(Sentence)}
+	 *
+	 * @param sentence The sentence to analyse
+	 * @param maxWindow The maximum number of characters analysed without
+	 *                  passing a {@link Token} to the listener
+	 * @param listener The listener to pass {@link Token}s to, in order
+	 * @throws IOException
+	 */
+	public void getBestTokens(Sentence sentence, int maxWindow, TokenListener listener) throws IOException {
+
+		begin();
+		try {
+			findBestTokens(sentence, maxWindow, listener);
+		} finally {
+			end();
+		}
+
+	}
+
+
+	/**
+	 * Implements {@link #getBestTokens(Sentence, int, TokenListener)}
+	 *
+	 * @param sentence The sentence to analyse
+	 * @param maxWindow The maximum window size
+	 * @param listener The listener to pass {@link Token}s to
+	 * @throws IOException
+	 */
+	private void findBestTokens(Sentence sentence, int maxWindow, TokenListener listener) throws IOException {
+
+		if (maxWindow < 1) {
+			throw new IllegalArgumentException("Window size must be positive");
+		}
+
+		char[] surface = sentence.getArray();
+		SentenceIterator iterator = sentence.iterator();
+		int length = iterator.length();
+		boolean measured = startStatistics(length);
+		long time = measured ? System.nanoTime() : 0;
+
+		resetContext();
+		LatticeWindow window = new LatticeWindow();
+		window.capacity = Math.min(length, maxWindow);
+		window.endNodeList = this.context.getEndNodeList(window.capacity);
+		Node bosNode = this.tokenizer.getBOSNode(this.context);
+		window.endNodeList[0] = bosNode;
+		window.committed = bosNode;
+		if (measured) {
+			time = this.statistics.addPrepareTime(time);
+		}
+
+
+		// Look up potential morphemes at each position in the sentence and join
+		// them to the lattice, committing the shared beginning of the paths at
+		// each position and moving the window forward when it is full
+		while (iterator.hasNextOrigin()) {
+			int position = iterator.nextOrigin();
+			int base = position - iterator.skippedCharCount() - window.start;
+			if ((base <= window.end) && (window.endNodeList[base] != null)) {
+				Node converged = findConvergencePoint(window, base);
+				if (converged != window.committed) {
+					commit(sentence, window, converged, listener);
+				}
+
+				Node committed = window.committed;
+				if ((window.start + base - (committed.start + committed.length)) >= maxWindow) {
+					Node bestNode = window.endNodeList[base];
+					for (Node node = bestNode.lnext; node != null; node = node.lnext) {
+						if (node.cost < bestNode.cost) {
+							bestNode = node;
+						}
+					}
+					commit(sentence, window, bestNode, listener);
+					bestNode.lnext = null;
+					window.endNodeList[base] = bestNode;
+					Arrays.fill(window.endNodeList, base + 1, window.end + 1, null);
+					window.end = base;
+				}
+
+				if (base >= maxWindow) {
+					moveWindow(window, base);
+					base = 0;
+				}
+				if (measured) {
+					time = this.statistics.addTokenTime(time);
+				}
+
+				Node rNode = lookup(iterator, surface, sentence.getReadingConstraint(position));
+				if (measured) {
+					time = this.statistics.addLookupTime(time);
+				}
+				if (rNode != null) {
+					int maxSpan = 0;
+					for (Node node = rNode; node != null; node = node.rnext) {
+						maxSpan = Math.max(maxSpan, node.span);
+					}
+					if ((base + maxSpan) > window.capacity) {
+						window.endNodeList = this.context.extendEndNodeList(window.capacity, base + maxSpan);
+						window.capacity = base + maxSpan;
+					}
+					calculateConnectionCosts(window.endNodeList, base, length - window.start, rNode);
+					window.end = Math.max(window.end, base + maxSpan);
+					if (measured) {
+						time = this.statistics.addConnectionTime(time);
+					}
+				}
+			}
+		}
+
+
+		// Connect the end-of-string Node as in getBestTokens(Sentence), then
+		// commit the remainder of the path
+		Node eosNode = this.tokenizer.getEOSNode(this.context);
+		for (int position = window.end; position >= 0; position--) {
+			if (window.endNodeList[position] != null) {
+				calculateConnectionCosts(window.endNodeList, position, length - window.start, eosNode);
+				break;
+			}
+		}
+		if (measured) {
+			time = this.statistics.addConnectionTime(time);
+		}
+
+		commit(sentence, window, eosNode.prev, listener);
+
+		if (measured) {
+			this.statistics.addTokenTime(time);
+			finishStatistics();
+		}
+
+	}
+
+
+	/**
+	 * Analyses a sentence to find the <code>n</code> most likely sequences of
+	 * morphemes, in order of increasing cost. The lattice is built once by the
+	 * forward Viterbi pass, after which an A* search working backwards from the
+	 * end-of-string uses the forward cost of each {@link Node} as an exact
+	 * estimate of the cost remaining, so that complete paths are found in
+	 * order of cost with no wasted expansion
+	 *
+	 * <p>The first segmentation returned is always the same as that returned
+	 * by {@link #getBestTokens(Sentence)}. Fewer than <code>n</code>
+	 * segmentations are returned if the lattice does not contain that many
+	 * distinct paths
+	 *
+	 * @param sentence The sentence to analyse
+	 * @param n The maximum number of segmentations to return
+	 * @return The most likely segmentations, most likely first
+	 * @throws IOException
+	 */
+	public List<Segmentation> getNBestTokens(Sentence sentence, int n) throws IOException {
+
+		begin();
+		try {
+			return findNBestTokens(sentence, n);
+		} finally {
+			end();
+		}
+
+	}
+
+
+	/**
+	 * Implements {@link #getNBestTokens(Sentence, int)}
+	 *
+	 * @param sentence The sentence to analyse
+	 * @param n The maximum number of segmentations to return
+	 * @return The most likely segmentations, most likely first
+	 * @throws IOException
+	 */
+	private List<Segmentation> findNBestTokens(Sentence sentence, int n) throws IOException {
+
+		List<Segmentation> segmentations = new ArrayList<Segmentation>();
+		if (n <= 0) {
+			return segmentations;
+		}
+
+		SentenceIterator iterator = sentence.iterator();
+		int length = iterator.length();
+		boolean measured = startStatistics(length);
+		Node[] endNodeList = this.context.getEndNodeList(length);
+		Set<Node> lookupNodes = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+		Node eosNode = buildLattice(sentence, iterator, endNodeList, lookupNodes);
+		long time = measured ? System.nanoTime() : 0;
+
+		// The end-of-string Node was connected at the last position where a
+		// morpheme ended. The beginning-of-string Node is the last on the best
+		// path before its own context Node
+		int eosPosition = length;
+		while (endNodeList[eosPosition] == null) {
+			eosPosition--;
+		}
+
+		Node bosNode = eosNode;
+		while (bosNode.prev.prev != null) {
+			bosNode = bosNode.prev;
+		}
+
+
+		// The most likely path is taken directly from the forward pass, so that
+		// ties between equally likely paths are broken in the same way as by
+		// getBestTokens
+		List<Token> bestTokens = new ArrayList<Token>();
+		for (Node node = eosNode.prev; node != bosNode; node = node.prev) {
+			bestTokens.add(0, createToken(sentence, node));
+		}
+		segmentations.add(new Segmentation(bestTokens, eosNode.cost));
+
+		Set<String> foundPaths = new HashSet<String>();
+		foundPaths.add(getPathKey(eosNode.prev, bosNode));
+
+
+		// Search backwards from the end-of-string Node. Each partial path is
+		// ranked by its exact backward cost plus the forward cost of its first
+		// Node, which is the cost of the best complete path it can form
+		PriorityQueue<PartialPath> queue = new PriorityQueue<PartialPath>();
+		int sequence = 0;
+		queue.add(new PartialPath(eosNode, 0, 0, null, sequence++));
+
+		while ((segmentations.size() < n) && !queue.isEmpty()) {
+			PartialPath path = queue.poll();
+			Node rNode = path.node;
+
+			if (rNode == bosNode) {
+				if (foundPaths.add(getPathKey(path.next))) {
+					segmentations.add(createSegmentation(sentence, path));
+				}
+				continue;
+			}
+
+			// The end-of-string Node may follow any Node at its position other
+			// than its own copies. A copied Node only follows the left Node it
+			// was copied for. A Node returned by the Tokenizer follows its own
+			// best left Node or any left Node with no second right context; the
+			// copies represent every other combination. Without trigram context
+			// no copies are made, and any left Node may be followed
+			if (rNode == eosNode) {
+				for (Node lNode = endNodeList[eosPosition]; lNode != null; lNode = lNode.lnext) {
+					if (lNode.ctoken != eosNode.ctoken) {
+						queue.add(extendPath(path, lNode, sequence++));
+					}
+				}
+			} else if (lookupNodes.contains(rNode)) {
+				int lPosition = rNode.start + rNode.length - rNode.span;
+				for (Node lNode = endNodeList[lPosition]; lNode != null; lNode = lNode.lnext) {
+					if (this.bigram || (lNode.ctoken.rcAttr2 == 0) || (lNode == rNode.prev)) {
+						queue.add(extendPath(path, lNode, sequence++));
+					}
+				}
+			} else {
+				queue.add(extendPath(path, rNode.prev, sequence++));
+			}
+		}
+
+		if (measured) {
+			this.statistics.addTokenTime(time);
+			finishStatistics();
+		}
+
+		return segmentations;
+
+	}
+
+
+	/**
+	 * A partial path built backwards from the end-of-string {@link Node} by
+	 * {@link Viterbi#getNBestTokens(Sentence, int)}
+	 */
+	private static class PartialPath implements Comparable<PartialPath> {
+
+		/**
+		 * The first {@link Node} of the partial path
+		 */
+		final Node node;
+
+		/**
+		 * The cost of the partial path from its first {@link Node} to the
+		 * end-of-string
+		 */
+		final int cost;
+
+		/**
+		 * The cost of connecting the first {@link Node} of the partial path to
+		 * the second
+		 */
+		final int edgeCost;
+
+		/**
+		 * The remainder of the partial path
+		 */
+		final PartialPath next;
+
+		/**
+		 * The order in which the partial path was created, used to break ties
+		 */
+		final int sequence;
+
+
+		/* (non-Javadoc)
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		public int compareTo(PartialPath other) {
+
+			long estimate = (long)this.node.cost + this.cost;
+			long otherEstimate = (long)other.node.cost + other.cost;
+
+			if (estimate != otherEstimate) {
+				return (estimate < otherEstimate) ? -1 : 1;
+			}
+
+			return (this.sequence < other.sequence) ? -1 : ((this.sequence == other.sequence) ? 0 : 1);
+
+		}
+
+
+		/**
+		 * @param node The first {@link Node} of the partial path
+		 * @param cost The cost of the partial path
+		 * @param edgeCost The cost of connecting the first {@link Node} to the
+		 *                 second
+		 * @param next The remainder of the partial path
+		 * @param sequence The order of creation
+		 */
+		PartialPath(Node node, int cost, int edgeCost, PartialPath next, int sequence) {
+
+			this.node = node;
+			this.cost = cost;
+			this.edgeCost = edgeCost;
+			this.next = next;
+			this.sequence = sequence;
+
+		}
+
+	}
+
+
+	/**
+	 * Extends a partial path backwards by one {@link Node}
+	 *
+	 * @param path The partial path to extend
+	 * @param lNode The {@link Node} to prepend to the path
+	 * @param sequence The order of creation of the new path
+	 * @return The extended path
+	 */
+	private PartialPath extendPath(PartialPath path, Node lNode, int sequence) {
+
+		int edgeCost = this.dictionary.getCost(lNode.prev, lNode, path.node);
+
+		return new PartialPath(lNode, path.cost + edgeCost, edgeCost, path, sequence);
+
+	}
+
+
+	/**
+	 * Creates a key identifying the sequence of morphemes along the best path
+	 * found by the forward pass, so that paths differing only in the copies of
+	 * {@link Node}s they pass through are recognised as the same segmentation
+	 *
+	 * @param node The last {@link Node} of the path before the end-of-string
+	 * @param bosNode The beginning-of-string {@link Node}
+	 * @return The key
+	 */
+	private String getPathKey(Node node, Node bosNode) {
+
+		StringBuilder key = new StringBuilder();
+		for (; node != bosNode; node = node.prev) {
+			key.insert(0, nodeKey(node));
+		}
+
+		return key.toString();
+
+	}
+
+
+	/**
+	 * Creates a key identifying the sequence of morphemes along a path found
+	 * by the backward search, in the same form as
+	 * {@link #getPathKey(Node, Node)}
+	 *
+	 * @param path The path following the beginning-of-string {@link Node}
+	 * @return The key
+	 */
+	private String getPathKey(PartialPath path) {
+
+		StringBuilder key = new StringBuilder();
+		for (; path.next != null; path = path.next) {
+			key.append(nodeKey(path.node));
+		}
+
+		return key.toString();
+
+	}
+
+
+	/**
+	 * Creates a key identifying the morpheme of a single {@link Node}
+	 *
+	 * @param node The {@link Node}
+	 * @return The key
+	 */
+	private String nodeKey(Node node) {
+
+		return node.start + ":" + node.length + ":" + node.ctoken.partOfSpeechIndex + ":" + this.tokenizer.getMorpheme(node).getReadings() + ";";
+
+	}
+
+
+	/**
+	 * Creates a {@link Segmentation} from a complete path found by the backward
+	 * search
+	 *
+	 * @param sentence The sentence being analysed
+	 * @param path The path, beginning with the beginning-of-string {@link Node}
+	 * @return The segmentation
+	 */
+	private Segmentation createSegmentation(Sentence sentence, PartialPath path) {
+
+		List<Token> tokenList = new ArrayList<Token>();
+		int cost = path.node.cost;
+		for (; path.next.next != null; path = path.next) {
+			cost += path.edgeCost;
+			Node node = path.next.node;
+			tokenList.add(new Token(new String(sentence.getArray(), sentence.getOffset() + node.start, node.length), cost, node.start, node.length, detach(this.tokenizer.getMorpheme(node))));
+		}
+
+		return new Segmentation(tokenList, cost + path.edgeCost);
+
+	}
+
+
+	/**
+	 * Analyses a sentence to find the most likely sequence of morphemes, using
+	 * a lattice stored in parallel primitive arrays rather than linked
+	 * {@link Node}s. The result is identical to that of
+	 * {@link #getBestTokens(Sentence)}
+	 *
+	 * @param sentence The sentence to analyse
+	 * @return The most likely list of morphemes
+	 * @throws IOException
+	 */
+	public List<Token> getBestTokensCompact(Sentence sentence) throws IOException {
+
+		begin();
+		try {
+			return findBestTokensCompact(sentence);
+		} finally {
+			end();
+		}
+
+	}
+
+
+	/**
+	 * Analyses a sentence to find the most likely sequence of morphemes, as
+	 * {@link #getBestTokensCompact(Sentence)}, but returns the result as a
+	 * {@link TokenList} holding the position, length, cost and part-of-speech
+	 * index of each morpheme in primitive arrays. No {@link Token},
+	 * {@link Morpheme} or surface string is created unless it is requested
+	 * from the list
+	 *
+	 * <p>For a Viterbi created on a {@link DictionaryHandle}, the
+	 * {@link Morpheme} of each morpheme is read at once, as the Dictionary may
+	 * be closed once the analysis ends
+	 *
+	 * @param sentence The sentence to analyse
+	 * @return The most likely list of morphemes
+	 * @throws IOException
+	 */
+	public TokenList getBestTokenList(Sentence sentence) throws IOException {
+
+		begin();
+		try {
+			return findBestTokenList(sentence);
+		} finally {
+			end();
+		}
+
+	}
+
+
+	/**
+	 * Builds and connects the array based lattice for a sentence. Entry 0 of
+	 * the lattice is the context of the beginning-of-string entry 1
+	 *
+	 * @param sentence The sentence to analyse
+	 * @param measured <code>true</code> if the analysis is being measured
+	 * @return The index of the end-of-string entry
+	 * @throws IOException
+	 */
+	private int buildCompactLattice(Sentence sentence, boolean measured) throws IOException {
+
+		SentenceIterator iterator = sentence.iterator();
+		int length = iterator.length();
+		char[] surface = sentence.getArray();
+		long time = measured ? System.nanoTime() : 0;
+
+		// Initialize the lattice. Entry 0 is the context of the
+		// beginning-of-string entry 1
+		resetContext();
+		this.tokenizer.prepare(sentence, this.context);
+		CompactLattice lattice = this.context.getCompactLattice();
+		lattice.reset(length);
+		Node bosNode = this.tokenizer.getBOSNode(this.context);
+		lattice.add(bosNode.prev);
+		int bosEntry = lattice.add(bosNode);
+		lattice.prev[bosEntry] = 0;
+		lattice.prevRcAttr2[bosEntry] = lattice.rcAttr2[lattice.word[0]];
+		lattice.endEntryList[0] = bosEntry;
+		if (measured) {
+			time = this.statistics.addPrepareTime(time);
+		}
+
+
+		// Look up potential morphemes at each position in the sentence, and
+		// join them to the lattice
+		while (iterator.hasNextOrigin()) {
+			int position = iterator.nextOrigin();
+			int base = position - iterator.skippedCharCount();
+			if (lattice.endEntryList[base] != -1) {
+				Node rNode = lookup(iterator, surface, sentence.getReadingConstraint(position));
+				if (measured) {
+					time = this.statistics.addLookupTime(time);
+				}
+				if (rNode != null) {
+					int first = lattice.size;
+					for (; rNode != null; rNode = rNode.rnext) {
+						lattice.add(rNode);
+					}
+					lattice.calculateConnectionCosts(this.dictionary, base, length, first, lattice.size);
+					if (measured) {
+						time = this.statistics.addConnectionTime(time);
+					}
+				}
+			}
+		}
+
+
+		// Connect the end-of-string entry to the last position where a
+		// morpheme ended
+		int eosEntry = lattice.add(this.tokenizer.getEOSNode(this.context));
+		for (int position = length; position >= 0; position--) {
+			if (lattice.endEntryList[position] != -1) {
+				lattice.calculateConnectionCosts(this.dictionary, position, length, eosEntry, eosEntry + 1);
+				break;
+			}
+		}
+		if (measured) {
+			this.statistics.addConnectionTime(time);
+		}
+
+		return eosEntry;
+
+	}
+
+
+	/**
+	 * Counts the entries on the best path through the array based lattice,
+	 * excluding the beginning-of-string and end-of-string entries
+	 *
+	 * @param lattice The lattice
+	 * @param eosEntry The index of the end-of-string entry
+	 * @return The number of entries
+	 */
+	private int getCompactPathLength(CompactLattice lattice, int eosEntry) {
+
+		int pathLength = 0;
+		for (int entry = lattice.prev[eosEntry]; (entry != -1) && (entry != 1); entry = lattice.prev[entry]) {
+			pathLength++;
+		}
+
+		return pathLength;
+
+	}
+
+
+	/**
+	 * Finishes measuring an analysis through the array based lattice
+	 *
+	 * @param lattice The lattice
+	 * @param time The value of <code>System.nanoTime()</code> at the start of
+	 *             the token phase
+	 */
+	private void finishCompactStatistics(CompactLattice lattice, long time) {
+
+		// Entries copied for each distinct left context are lattice nodes in
+		// the same sense as the copied Nodes of the Node lattice
+		this.statistics.nodes += lattice.size - lattice.wordCount;
+		this.statistics.edges += lattice.edgeCount;
+		this.statistics.addTokenTime(time);
+		finishStatistics();
+
+	}
+
+
+	/**
+	 * Implements {@link #getBestTokensCompact(Sentence)}
+	 *
+	 * @param sentence The sentence to analyse
+	 * @return The most likely list of morphemes
+	 * @throws IOException
+	 */
+	private List<Token> findBestTokensCompact(Sentence sentence) throws IOException {
+
+		boolean measured = startStatistics(sentence.length());
+		int eosEntry = buildCompactLattice(sentence, measured);
+		long time = measured ? System.nanoTime() : 0;
+		CompactLattice lattice = this.context.getCompactLattice();
+
+
+		// Working backwards from the end-of-string entry, collect the entries
+		// between the beginning-of-string and end-of-string entries
+		int pathLength = getCompactPathLength(lattice, eosEntry);
+
+		Token[] tokens = new Token[pathLength];
+		int i = pathLength;
+		for (int entry = lattice.prev[eosEntry]; (entry != -1) && (entry != 1); entry = lattice.prev[entry]) {
+			int word = lattice.word[entry];
+			Morpheme morpheme = lattice.morpheme[word];
+			if (morpheme == null) {
+				morpheme = new Morpheme(this.dictionary, lattice.partOfSpeechIndex[word]);
+			}
+			int start = lattice.start[word];
+			int tokenLength = lattice.length[word];
+			tokens[--i] = new Token(new String(sentence.getArray(), sentence.getOffset() + start, tokenLength), lattice.cost[entry], start, tokenLength, detach(morpheme));
+		}
+
+		if (measured) {
+			finishCompactStatistics(lattice, time);
+		}
+
+		return new ArrayList<Token>(Arrays.asList(tokens));
+
+	}
+
+
+	/**
+	 * Implements {@link #getBestTokenList(Sentence)}
+	 *
+	 * @param sentence The sentence to analyse
+	 * @return The most likely list of morphemes
+	 * @throws IOException
+	 */
+	private TokenList findBestTokenList(Sentence sentence) throws IOException {
+
+		boolean measured = startStatistics(sentence.length());
+		int eosEntry = buildCompactLattice(sentence, measured);
+		long time = measured ? System.nanoTime() : 0;
+		CompactLattice lattice = this.context.getCompactLattice();
+
+		// Copy the primitive data of each entry on the best path. Only
+		// explicit Morphemes, such as those of unknown morphemes, are kept
+		int pathLength = getCompactPathLength(lattice, eosEntry);
+		TokenList tokens = new TokenList(this.dictionary, sentence.getArray(), sentence.getOffset(), pathLength);
+		int i = pathLength;
+		for (int entry = lattice.prev[eosEntry]; (entry != -1) && (entry != 1); entry = lattice.prev[entry]) {
+			int word = lattice.word[entry];
+			Morpheme morpheme = lattice.morpheme[word];
+			if ((morpheme == null) && (this.handle != null)) {
+				morpheme = detach(new Morpheme(this.dictionary, lattice.partOfSpeechIndex[word]));
+			}
+			tokens.set(--i, lattice.start[word], lattice.length[word], lattice.cost[entry], lattice.partOfSpeechIndex[word], morpheme);
+		}
+
+		if (measured) {
+			finishCompactStatistics(lattice, time);
+		}
+
+		return tokens;
+
+	}
+
+
+	/**
+	 * Sets the maximum number of {@link Node}s ending at each position of the
+	 * lattice to which the {@link Node}s starting there are connected. Only
+	 * the lowest cost {@link Node}s are kept. Pruning the lattice in this way
+	 * reduces the number of connections calculated at positions with many
+	 * candidate morphemes, at the risk of discarding a {@link Node} on the
+	 * most likely path
+	 *
+	 * <p>Applies to {@link #getBestTokens(Sentence)},
+	 * {@link #getBestTokens(Sentence, int, TokenListener)} and
+	 * {@link #getNBestTokens(Sentence, int)}
+	 *
+	 * @param beamWidth The maximum number of {@link Node}s, or 0 for no limit
+	 */
+	public void setBeamWidth(int beamWidth) {
+
+		if (beamWidth < 0) {
+			throw new IllegalArgumentException("Beam width must not be negative");
+		}
+
+		this.beamWidth = beamWidth;
+		this.lattice.sentence = null;
+
+	}
+
+
+	/**
+	 * Returns the maximum number of {@link Node}s ending at each position of
+	 * the lattice to which the {@link Node}s starting there are connected
+	 *
+	 * @return The maximum number of {@link Node}s, or 0 for no limit
+	 */
+	public int getBeamWidth() {
+
+		return this.beamWidth;
+
+	}
+
+
+	/**
+	 * Sets the maximum amount by which the path cost of a {@link Node} ending
+	 * at each position of the lattice may exceed the lowest path cost there
+	 * for the {@link Node}s starting there to be connected to it. May be
+	 * combined with {@link #setBeamWidth(int)}, in which case both limits
+	 * apply
+	 *
+	 * @param beamThreshold The maximum cost difference, or -1 for no limit
+	 */
+	public void setBeamThreshold(int beamThreshold) {
+
+		if (beamThreshold < -1) {
+			throw new IllegalArgumentException("Beam threshold must be -1 or greater");
+		}
+
+		this.beamThreshold = beamThreshold;
+		this.lattice.sentence = null;
+
+	}
+
+
+	/**
+	 * Determines whether the lattice is pruned to a beam by either
+	 * {@link #setBeamWidth(int)} or {@link #setBeamThreshold(int)}
+	 *
+	 * @return <code>true</code> if a beam is set, otherwise
+	 *         <code>false</code>
+	 */
+	private boolean isBeamSet() {
+
+		return (this.beamWidth != 0) || (this.beamThreshold >= 0);
+
+	}
+
+
+	/**
+	 * Returns the maximum amount by which the path cost of a {@link Node}
+	 * ending at each position of the lattice may exceed the lowest path cost
+	 * there for the {@link Node}s starting there to be connected to it
+	 *
+	 * @return The maximum cost difference, or -1 for no limit
+	 */
+	public int getBeamThreshold() {
+
+		return this.beamThreshold;
+
+	}
+
+
+	/**
+	 * Sets a listener to be passed the {@link AnalysisStatistics} of each
+	 * subsequent analysis: the number of characters, lattice nodes, connections
+	 * and unknown morpheme nodes, and the time spent in each phase. With no
+	 * listener set, the analysis is not measured, and costs nothing beyond a
+	 * test of the listener at each position of the sentence
+	 *
+	 * <p>The statistics passed to the listener are reused by the following
+	 * analysis. A listener that keeps them should keep a copy
+	 *
+	 * @param analysisListener The listener, or <code>null</code> to stop
+	 *                         measuring
+	 */
+	public void setAnalysisListener(AnalysisListener analysisListener) {
+
+		this.analysisListener = analysisListener;
+
+	}
+
+
+	/**
+	 * Returns the listener passed the {@link AnalysisStatistics} of each
+	 * analysis
+	 *
+	 * @return The listener, or <code>null</code> if none
+	 */
+	public AnalysisListener getAnalysisListener() {
+
+		return this.analysisListener;
+
+	}
+
+
+	/**
+	 * Returns the Dictionary used to calculate connection costs. For a
+	 * Viterbi created on a {@link DictionaryHandle}, this is the handle's
+	 * current Dictionary
+	 *
+	 * @return The Dictionary
+	 */
+	public Dictionary getDictionary() {
+
+		if (this.handle != null) {
+			return this.handle.getTokenizer().getDictionary();
+		}
+
+		return this.dictionary;
+
+	}
+
+
+	/**
+	 * Starts an analysis. For a Viterbi created on a {@link DictionaryHandle},
+	 * takes a reference to the handle's current generation and uses its
+	 * Tokenizer for the analysis
+	 */
+	private void begin() {
+
+		if (this.handle != null) {
+			this.generation = this.handle.acquire();
+			Tokenizer tokenizer = this.generation.tokenizer;
+			if (tokenizer != this.tokenizer) {
+				this.tokenizer = tokenizer;
+				this.dictionary = tokenizer.getDictionary();
+				this.bigram = this.dictionary.isBigram();
+			}
+		}
+
+	}
+
+
+	/**
+	 * Ends an analysis, releasing the reference taken by {@link #begin()}
+	 */
+	private void end() {
+
+		if (this.generation != null) {
+			this.handle.release(this.generation);
+			this.generation = null;
+		}
+
+	}
+
+
+	/**
+	 * Gets the {@link Morpheme} of a Token being created. For a Viterbi created
+	 * on a {@link DictionaryHandle}, the Morpheme is read from the Dictionary
+	 * at once, as the Dictionary may be closed once the analysis ends
+	 *
+	 * @param morpheme The Morpheme
+	 * @return The Morpheme
+	 */
+	private Morpheme detach(Morpheme morpheme) {
+
+		if (this.handle != null) {
+			morpheme.load();
+		}
+
+		return morpheme;
+
+	}
+
+
+	/**
+	 * Creates a Viterbi instance using the given Tokenizer
+	 * 
+	 * @param tokenizer The Tokenizer to use
+	 */
+	public Viterbi(Tokenizer tokenizer) {
+
+		this.handle = null;
+		this.tokenizer = tokenizer;
+		this.dictionary = tokenizer.getDictionary();
+		this.bigram = this.dictionary.isBigram();
+
+	}
+
+
+	/**
+	 * Creates a Viterbi instance that uses the current Tokenizer of the given
+	 * handle for each analysis
+	 *
+	 * @param handle The handle to take the Tokenizer from
+	 */
+	public Viterbi(DictionaryHandle handle) {
+
+		this.handle = handle;
+		this.tokenizer = handle.getTokenizer();
+		this.dictionary = this.tokenizer.getDictionary();
+		this.bigram = this.dictionary.isBigram();
 
 	}
 
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ */
+
+package net.java.sen.filter;
+
+
+/**
+ * A {@link StreamFilter} which carries state from
+ * {@link #preProcess(net.java.sen.dictionary.Sentence)} to
+ * {@link #postProcess(java.util.List)}, and so cannot be shared between
+ * sentences that are analysed simultaneously
+ *
+ * <p>When a {@link net.java.sen.StringTagger} analyses sentences in parallel,
+ * each of its workers is given its own filter chain. Filters implementing this
+ * interface are replaced in each chain with a new instance obtained from
+ * {@link #newInstance()}; any other filter is shared between all workers, and
+ * must therefore be safe to call from multiple threads at once
+ */
+public interface StatefulStreamFilter extends StreamFilter {
+
+	/**
+	 * Creates a new filter with the same configuration as this one but its own
+	 * per-sentence state
+	 *
+	 * @return The new filter
+	 */
+	public StatefulStreamFilter newInstance();
+
+
+}
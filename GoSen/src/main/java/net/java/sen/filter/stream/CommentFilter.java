@@ -23,7 +23,7 @@ package net.java.sen.filter.stream;
 import net.java.sen.dictionary.Morpheme;
 import net.java.sen.dictionary.Sentence;
 import net.java.sen.dictionary.Token;
-import net.java.sen.filter.StreamFilter;
+import net.java.sen.filter.StatefulStreamFilter;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -35,8 +35,13 @@ import java.util.StringTokenizer;
 
 /**
  * A filter to ignore delimited comments in the input sentence
+ *
+ * <p>The comments found in a sentence are held by the filter until it is
+ * post-processed, so a single filter must not be used to analyse more than one
+ * sentence at a time. {@link #newInstance()} creates a filter sharing the same
+ * rules for use by another thread
  */
-public class CommentFilter implements StreamFilter {
+public class CommentFilter implements StatefulStreamFilter {
 
 
 	/**
@@ -126,7 +131,7 @@ public class CommentFilter implements StreamFilter {
 		Iterator itr = this.ruleList.iterator();
 		this.commentTokens.clear();
 
-		String surface = new String(sentence.getCharacters());
+		String surface = sentence.getSurface(0, sentence.length());
 		while (itr.hasNext()) {
 			int count = 0;
 			Rule rule = (Rule) itr.next();
@@ -221,4 +226,18 @@ public class CommentFilter implements StreamFilter {
 	}
 
 
+	/* (non-Javadoc)
+	 * @see net.java.sen.filter.StatefulStreamFilter#newInstance()
+	 */
+	@Override
+	public CommentFilter newInstance() {
+
+		CommentFilter filter = new CommentFilter();
+		filter.ruleList = this.ruleList;
+
+		return filter;
+
+	}
+
+
 }
@@ -20,13 +20,13 @@
 
 package net.java.sen.tokenizers.ja;
 
+import net.java.sen.dictionary.AnalysisContext;
 import net.java.sen.dictionary.CToken;
 import net.java.sen.dictionary.Dictionary;
-import net.java.sen.dictionary.Morpheme;
 import net.java.sen.dictionary.Node;
+import net.java.sen.dictionary.Sentence;
 import net.java.sen.dictionary.SentenceIterator;
 import net.java.sen.dictionary.Tokenizer;
-import net.java.sen.trie.CharIterator;
 
 import static java.lang.Character.UnicodeBlock.CYRILLIC;
 import static java.lang.Character.UnicodeBlock.CYRILLIC_EXTENDED_A;
@@ -78,13 +78,41 @@ public class JapaneseTokenizer extends Tokenizer {
     static final int HALF_WIDTH = 0x85;
 
 
+    /**
+     * The character class of every <code>char</code>, indexed by its value.
+     * Each entry holds one more than the class as an unsigned byte, or 0 if
+     * the class has not yet been calculated. Entries are filled on first use
+     * rather than all at once, which would cost tens of milliseconds at
+     * startup; as every thread calculates the same value for an entry, they
+     * may safely race to fill it
+     */
+    private static final byte[] CHAR_CLASSES = new byte[0x10000];
+
+
     /**
      * Gets the character class of the given character
      *
      * @param c The character
      * @return The character class
      */
-    private int getCharClass(char c) {
+    private static int getCharClass(char c) {
+        int entry = CHAR_CLASSES[c] & 0xFF;
+        if (entry == 0) {
+            entry = calculateCharClass(c) + 1;
+            CHAR_CLASSES[c] = (byte) entry;
+        }
+        return entry - 1;
+    }
+
+
+    /**
+     * Calculates the character class of the given character. Used once for
+     * each character to fill the class table
+     *
+     * @param c The character
+     * @return The character class
+     */
+    private static int calculateCharClass(char c) {
         if (c <= 0x7F) {
             return Character.isWhitespace(c) ? SPACE : Character.getType(Character.toLowerCase(c));
         } else if (c >= 0x3040 && c <= 0x309F) {
@@ -116,15 +144,26 @@ public class JapaneseTokenizer extends Tokenizer {
 
 
     /**
-     * Find the length to use for an unknown token
+     * Find the length to use for an unknown token. For character classes
+     * whose unknown tokens span a run of characters, the end of the run is
+     * recorded in the context, so that each run is only measured from the
+     * first origin within it; every later origin in the same run ends at the
+     * same place, as nothing that stops the iterator can lie inside the run
      *
-     * @param iterator The iterator to read from
+     * @param iterator The iterator to read from, positioned at its origin
+     * @param context The analysis context to record runs in
      * @return The length
      */
-    private int findUnknownToken(CharIterator iterator) {
+    private int findUnknownToken(SentenceIterator iterator, AnalysisContext context) {
 
         int length = 0;
 
+        int origin = iterator.origin();
+        int runEnd = context.getCharacterRunEnd(origin);
+        if (runEnd != -1) {
+            return runEnd - origin;
+        }
+
         if (iterator.hasNext()) {
 
             int charClass = getCharClass(iterator.next());
@@ -140,6 +179,7 @@ public class JapaneseTokenizer extends Tokenizer {
                     while (iterator.hasNext() && (getCharClass(iterator.next()) == charClass)) {
                         length++;
                     }
+                    context.setCharacterRun(origin, origin + length);
                     break;
             }
 
@@ -151,38 +191,83 @@ public class JapaneseTokenizer extends Tokenizer {
 
 
     /* (non-Javadoc)
-     * @see net.java.sen.dictionary.Tokenizer#lookup(net.java.sen.dictionary.SentenceIterator, char[])
+     * @see net.java.sen.dictionary.Tokenizer#prepare(net.java.sen.dictionary.Sentence, net.java.sen.dictionary.AnalysisContext)
+     */
+    @Override
+    public void prepare(Sentence sentence, AnalysisContext context) {
+
+        getDictionary().findAllMatches(sentence, context);
+
+    }
+
+
+    /* (non-Javadoc)
+     * @see net.java.sen.dictionary.Tokenizer#findLookupStart(net.java.sen.dictionary.Sentence, int)
      */
     @Override
-    public Node lookup(SentenceIterator iterator, char[] surface) {
+    public int findLookupStart(Sentence sentence, int position) {
+
+        int start = Math.min(getDictionary().findSearchStart(sentence, position), findUserDictionaryStart(position));
+
+        // An unknown token spanning a run of characters reads to the end of
+        // the run from any origin within it
+        if (position > 0) {
+            char[] characters = sentence.getArray();
+            int offset = sentence.getOffset();
+            int charClass = getCharClass(characters[offset + position - 1]);
+            if ((charClass != HIRAGANA) && (charClass != KANJI) && (charClass != OTHER)) {
+                int runStart = position - 1;
+                while ((runStart > 0) && (getCharClass(characters[offset + runStart - 1]) == charClass)) {
+                    runStart--;
+                }
+                start = Math.min(start, runStart);
+            }
+        }
+
+        return start;
+
+    }
+
+
+    /* (non-Javadoc)
+     * @see net.java.sen.dictionary.Tokenizer#lookup(net.java.sen.dictionary.SentenceIterator, char[], net.java.sen.dictionary.AnalysisContext)
+     */
+    @Override
+    public Node lookup(SentenceIterator iterator, char[] surface, AnalysisContext context) {
 
         Node resultNode = null;
 
         int charClass = getCharClass(iterator.current());
 
         int skipped = iterator.skippedCharCount();
-        CToken t[] = getDictionary().commonPrefixSearch(iterator);
-        for (int i = 0; t[i] != null; i++) {
-            Node newNode = new Node();
-            newNode.ctoken = t[i];
-            newNode.length = t[i].length;
+        Dictionary dictionary = getDictionary();
+        int size = dictionary.findTokenIndices(iterator, surface, context);
+        int tokenIndices[] = context.getTokenIndices();
+        for (int i = 0; i < size; i++) {
+            CToken ctoken = context.newCToken();
+            dictionary.readToken(tokenIndices[i], ctoken);
+
+            Node newNode = context.newNode();
+            newNode.ctoken = ctoken;
+            newNode.length = ctoken.length;
             newNode.start = iterator.origin();
-            newNode.span = t[i].length + skipped;
+            newNode.span = ctoken.length + skipped;
             newNode.rnext = resultNode;
-            newNode.morpheme = new Morpheme(getDictionary(), t[i].partOfSpeechIndex);
 
             resultNode = newNode;
         }
 
+        resultNode = lookupUserDictionary(iterator, context, resultNode);
+
         if ((resultNode != null) && (charClass == HIRAGANA || charClass == KANJI || charClass == KATAKANA)) {
             return resultNode;
         }
 
         // Synthesize token for longest consecutive run of same character class
         iterator.rewindToOrigin();
-        int unknownTokenLength = findUnknownToken(iterator);
+        int unknownTokenLength = findUnknownToken(iterator, context);
 
-        Node unknownNode = getUnknownNode(iterator.origin(), unknownTokenLength, skipped + unknownTokenLength);
+        Node unknownNode = getUnknownNode(context, iterator.origin(), unknownTokenLength, skipped + unknownTokenLength);
         unknownNode.rnext = resultNode;
 
         return unknownNode;
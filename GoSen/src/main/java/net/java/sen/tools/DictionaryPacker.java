@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package net.java.sen.tools;
+
+import net.java.sen.SenFactory;
+
+import java.io.IOException;
+
+
+/**
+ * Packs a compiled dictionary into a single file dictionary container
+ */
+public class DictionaryPacker {
+
+	/**
+	 * Main method
+	 *
+	 * @param args &lt;dictionary.xml&gt; &lt;container file&gt; [description]
+	 * @throws IOException
+	 */
+	public static void main(String args[]) throws IOException {
+
+		if ((args.length < 2) || (args.length > 3)) {
+			System.err.println("Usage: java DictionaryPacker <dictionary.xml> <container file> [description]");
+			System.exit(1);
+		}
+
+		SenFactory.packDictionary(args[0], args[1], (args.length == 3) ? args[2] : "");
+
+	}
+
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen.trie;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+
+/**
+ * A double-array Trie as read from a Trie data file, shared by
+ * {@link TrieSearcher} and {@link TrieScanner}
+ *
+ * <p>A Trie data file is either a bare array of <code>(base, check)</code>
+ * pairs, in which the transition for a character is at the character's value
+ * plus one, or a file written by {@link TrieBuilder} with a compact alphabet.
+ * The latter begins with a header holding the characters occurring in the
+ * Trie's keys in order of decreasing frequency, and the transition for a
+ * character is at its position in that order plus one. Keeping the
+ * transition codes small and dense lets sibling nodes pack closely, which
+ * makes the Trie smaller and its searches touch less memory
+ *
+ * <p>The node data may either be read in place from the (usually mapped)
+ * buffer it was loaded from, or copied to an array on the heap, which avoids
+ * the bounds check and byte order conversion of each buffer read at the cost
+ * of holding the whole Trie in heap memory
+ *
+ * <p><b>Thread Safety</b>: Objects of this class are thread safe, and may be
+ * shared between any number of threads
+ */
+public class Trie {
+
+	/**
+	 * The first <code>int</code> of a Trie data file with a compact alphabet.
+	 * The first <code>int</code> of a bare Trie data file is the base of the
+	 * root node, which is always 1
+	 */
+	static final int MAGIC = 0x54524945;
+
+	/**
+	 * The version of the Trie data file format with a compact alphabet
+	 */
+	static final int VERSION = 2;
+
+	/**
+	 * The node data, if read from a buffer; otherwise <code>null</code>
+	 */
+	private final IntBuffer buffer;
+
+	/**
+	 * The node data, if copied to the heap; otherwise <code>null</code>
+	 */
+	private final int[] array;
+
+	/**
+	 * The number of nodes, including unused nodes
+	 */
+	private final int size;
+
+	/**
+	 * The transition code of each character, or <code>null</code> if the
+	 * code of a character is its value plus one
+	 */
+	private final char[] codes;
+
+
+	/**
+	 * Calculates the size in bytes of the header of a Trie data file with a
+	 * compact alphabet. The node data following the header is aligned to a
+	 * multiple of eight bytes
+	 *
+	 * @param alphabetSize The number of characters in the alphabet
+	 * @return The size of the header
+	 */
+	static int headerSize(int alphabetSize) {
+
+		return ((12 + (2 * alphabetSize)) + 7) & ~7;
+
+	}
+
+
+	/**
+	 * Gets the transition code of a character
+	 *
+	 * @param character The character
+	 * @return The character's code, or 0 if the character does not occur in
+	 *         any key
+	 */
+	int code(char character) {
+
+		return (this.codes == null) ? character + 1 : this.codes[character];
+
+	}
+
+
+	/**
+	 * Gets the base of a node
+	 *
+	 * @param node The node
+	 * @return The node's base
+	 */
+	int base(int node) {
+
+		return (this.array != null) ? this.array[node << 1] : this.buffer.get(node << 1);
+
+	}
+
+
+	/**
+	 * Gets the check value of a node, which is the base of the node's parent,
+	 * or 0 for an unused node
+	 *
+	 * @param node The node
+	 * @return The node's check value
+	 */
+	int check(int node) {
+
+		return (this.array != null) ? this.array[(node << 1) + 1] : this.buffer.get((node << 1) + 1);
+
+	}
+
+
+	/**
+	 * Gets the number of nodes, including unused nodes
+	 *
+	 * @return The number of nodes
+	 */
+	public int size() {
+
+		return this.size;
+
+	}
+
+
+	/**
+	 * Gets the number of distinct characters the Trie's keys are made of
+	 *
+	 * @return The size of the compact alphabet, or -1 if the Trie has none
+	 */
+	public int getAlphabetSize() {
+
+		if (this.codes == null) {
+			return -1;
+		}
+
+		int alphabetSize = 0;
+		for (char code : this.codes) {
+			alphabetSize = Math.max(alphabetSize, code);
+		}
+
+		return alphabetSize;
+
+	}
+
+
+	/**
+	 * Determines whether the node data has been copied to the heap
+	 *
+	 * @return <code>true</code> if the node data is held on the heap,
+	 *         otherwise <code>false</code>
+	 */
+	public boolean isOnHeap() {
+
+		return (this.array != null);
+
+	}
+
+
+	/**
+	 * Reads a Trie from the contents of a Trie data file in either format
+	 *
+	 * @param data The contents of the Trie data file. The buffer's position
+	 *             is not changed
+	 * @param onHeap If <code>true</code>, the node data is copied to an array
+	 *               on the heap; otherwise it is read from the given buffer
+	 *               on each access
+	 * @return The Trie
+	 * @throws IOException if the data is not a valid Trie data file
+	 */
+	public static Trie read(ByteBuffer data, boolean onHeap) throws IOException {
+
+		if ((data.limit() < 4) || (data.getInt(0) != MAGIC)) {
+			return new Trie(data.duplicate().asIntBuffer(), null, onHeap);
+		}
+
+		if ((data.limit() < 12) || (data.getInt(4) != VERSION)) {
+			throw new IOException("Unsupported Trie data file version");
+		}
+
+		int alphabetSize = data.getInt(8);
+		int headerSize = headerSize(alphabetSize);
+		if ((alphabetSize < 0) || (alphabetSize > 0xffff) || (headerSize > data.limit())) {
+			throw new IOException("Invalid Trie data file header");
+		}
+
+		char[] codes = new char[0x10000];
+		for (int i = 0; i < alphabetSize; i++) {
+			codes[data.getChar(12 + (2 * i))] = (char) (i + 1);
+		}
+
+		ByteBuffer nodeData = data.duplicate();
+		nodeData.position(headerSize);
+
+		return new Trie(nodeData.slice().asIntBuffer(), codes, onHeap);
+
+	}
+
+
+	/**
+	 * Creates a Trie from bare node data, without a compact alphabet. The
+	 * node data is read from the given buffer on each access
+	 * 
+	 * @param data The node data
+	 */
+	public Trie(IntBuffer data) {
+
+		this(data, null, false);
+
+	}
+
+
+	/**
+	 * Creates a Trie
+	 * 
+	 * @param data The node data
+	 * @param codes The transition code of each character, or
+	 *              <code>null</code>
+	 * @param onHeap If <code>true</code>, the node data is copied to an array
+	 *               on the heap
+	 */
+	private Trie(IntBuffer data, char[] codes, boolean onHeap) {
+
+		this.size = data.limit() >> 1;
+		this.codes = codes;
+
+		if (onHeap) {
+			this.array = new int[data.limit()];
+			data.duplicate().get(this.array);
+			this.buffer = null;
+		} else {
+			this.array = null;
+			this.buffer = data;
+		}
+
+	}
+
+
+}
@@ -22,34 +22,59 @@ package net.java.sen.trie;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Comparator;
 import java.util.Vector;
 
 
 /**
  * Constructs a Trie from the supplied sorted key and value arrays
+ *
+ * <p>By default the Trie data file is a bare double-array in which each
+ * character's transition is at its value plus one. Optionally, the characters
+ * of the keys may instead be numbered in order of decreasing frequency, and
+ * the numbering written to the head of the file; see {@link Trie}
+ *
+ * <p>The Trie may also be built on the heap rather than to a file, for small
+ * Tries built at runtime
  */
 public class TrieBuilder {
 
 	/**
-	 * The file the Trie data is written to
+	 * The file the Trie data is written to, or <code>null</code> if the Trie
+	 * is built on the heap
 	 */
-	private RandomAccessFile trieFile;
+	private RandomAccessFile trieFile = null;
 
 	/**
-	 * An expanding MappedByteBuffer used to write the Trie data without holding
-	 * the entire Trie in heap memory
+	 * An expanding buffer used to write the Trie data. When building to a
+	 * file, this is a MappedByteBuffer, so that the entire Trie need not be
+	 * held in heap memory
 	 */
-	private MappedByteBuffer byteBuffer = null;
+	private ByteBuffer byteBuffer = null;
 
 	/**
 	 * The Trie MappedByteBuffer represented as an IntBuffer
 	 */
 	private IntBuffer trieDataBuffer = null;
 
+	/**
+	 * The characters of the keys in order of decreasing frequency, if the Trie
+	 * has a compact alphabet; otherwise <code>null</code>
+	 */
+	private char[] alphabet = null;
+
+	/**
+	 * The size in bytes of the header preceding the double-array in the Trie
+	 * data file
+	 */
+	private int headerSize = 0;
+
 	/**
 	 * A bit field used to track the occupied regions of the Trie data file
 	 */
@@ -122,21 +147,33 @@ public class TrieBuilder {
 
 
 	/**
-	 * Increases the size of the Trie data file
+	 * Increases the size of the Trie data file, or of the heap buffer
 	 * 
 	 * @param newSize The new size of the file
 	 * @throws IOException 
 	 */
 	private void resize(int newSize) throws IOException {
 
-		if (this.byteBuffer != null) {
-			this.byteBuffer.force();
-		}
+		if (this.trieFile == null) {
+			ByteBuffer newBuffer = ByteBuffer.allocate(this.headerSize + newSize * 8);
+			if (this.byteBuffer != null) {
+				ByteBuffer oldBuffer = this.byteBuffer.duplicate();
+				oldBuffer.clear();
+				newBuffer.put(oldBuffer);
+			}
+			this.byteBuffer = newBuffer;
+		} else {
+			if (this.byteBuffer != null) {
+				((MappedByteBuffer) this.byteBuffer).force();
+			}
 
-		this.trieFile.setLength(newSize * 8);
-		FileChannel indexChannel = this.trieFile.getChannel();
-		this.byteBuffer = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, newSize * 8);
-		this.trieDataBuffer = this.byteBuffer.asIntBuffer();
+			this.trieFile.setLength(this.headerSize + newSize * 8);
+			FileChannel indexChannel = this.trieFile.getChannel();
+			this.byteBuffer = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, this.headerSize + newSize * 8);
+		}
+		this.byteBuffer.position(this.headerSize);
+		this.trieDataBuffer = this.byteBuffer.slice().asIntBuffer();
+		this.byteBuffer.position(0);
 
 	}
 
@@ -319,6 +356,35 @@ public class TrieBuilder {
 	}
 
 
+	/**
+	 * Builds the Trie into the current buffer
+	 *
+	 * @param initialSize The initial number of nodes to allocate
+	 * @throws IOException 
+	 */
+	private void buildNodes(int initialSize) throws IOException {
+
+		resize(initialSize);
+
+		if (this.alphabet != null) {
+			this.byteBuffer.putInt(0, Trie.MAGIC);
+			this.byteBuffer.putInt(4, Trie.VERSION);
+			this.byteBuffer.putInt(8, this.alphabet.length);
+			for (int i = 0; i < this.alphabet.length; i++) {
+				this.byteBuffer.putChar(12 + (2 * i), this.alphabet[i]);
+			}
+		}
+
+		this.trieDataBuffer.put(0, 1);
+
+		TrieNode rootNode = new TrieNode(0, 0, 0, this.size);
+
+		Vector<TrieNode> siblings = fetch(rootNode);
+		insert(siblings);
+
+	}
+
+
 	/**
 	 * Builds The trie data file
 	 * 
@@ -330,16 +396,25 @@ public class TrieBuilder {
 		this.trieFile = new RandomAccessFile(filename, "rw");
 		this.trieFile.setLength(0);
 
-		resize(1024 * 10);
-		this.trieDataBuffer.put(0, 1);
+		buildNodes(1024 * 10);
 
-		TrieNode rootNode = new TrieNode(0, 0, 0, this.size);
+		((MappedByteBuffer) this.byteBuffer).force();
+		this.trieFile.close();
 
-		Vector<TrieNode> siblings = fetch(rootNode);
-		insert(siblings);
+	}
 
-		this.byteBuffer.force();
-		this.trieFile.close();
+
+	/**
+	 * Builds the Trie on the heap, without writing a file
+	 *
+	 * @return The Trie, with its node data held on the heap
+	 * @throws IOException 
+	 */
+	public Trie build() throws IOException {
+
+		buildNodes(Math.max(256, this.size * 4));
+
+		return Trie.read(this.byteBuffer, true);
 
 	}
 
@@ -360,4 +435,90 @@ public class TrieBuilder {
 	}
 
 
+	/**
+	 * Creates a TrieBuilder to build the given data, optionally with a
+	 * compact alphabet. The key and value arrays are not modified
+	 * 
+	 * @param keys The sorted Trie keys
+	 * @param values The values for each key, or <code>null</code> to use the
+	 *               index of each key
+	 * @param size The actual number of entries in the key/value arrays
+	 * @param compactAlphabet If <code>true</code>, number the characters of
+	 *                        the keys in order of decreasing frequency
+	 */
+	public TrieBuilder(String keys[], int values[], int size, boolean compactAlphabet) {
+
+		this(keys, values, size);
+
+		if (!compactAlphabet) {
+			return;
+		}
+
+		// Count the occurrences of each character, and number the characters
+		// from the most frequent
+		final int[] frequency = new int[0x10000];
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < keys[i].length(); j++) {
+				frequency[keys[i].charAt(j)]++;
+			}
+		}
+
+		Integer[] characters = new Integer[0x10000];
+		int alphabetSize = 0;
+		for (int c = 0; c < 0x10000; c++) {
+			if (frequency[c] > 0) {
+				characters[alphabetSize++] = c;
+			}
+		}
+		if (alphabetSize > 0xffff) {
+			throw new RuntimeException("Fatal: Too many distinct characters for a compact alphabet");
+		}
+		Arrays.sort(characters, 0, alphabetSize, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer c1, Integer c2) {
+				if (frequency[c1] != frequency[c2]) {
+					return (frequency[c1] > frequency[c2]) ? -1 : 1;
+				}
+				return c1.compareTo(c2);
+			}
+		});
+
+		this.alphabet = new char[alphabetSize];
+		char[] rank = new char[0x10000];
+		for (int i = 0; i < alphabetSize; i++) {
+			this.alphabet[i] = (char) characters[i].intValue();
+			rank[characters[i]] = (char) i;
+		}
+		this.headerSize = Trie.headerSize(alphabetSize);
+
+		// Replace each character of the keys by its number, which the
+		// double-array then uses in place of the character's value, and sort
+		// the keys again in the new order
+		final String[] rankedKeys = new String[size];
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			char[] key = keys[i].toCharArray();
+			for (int j = 0; j < key.length; j++) {
+				key[j] = rank[key[j]];
+			}
+			rankedKeys[i] = new String(key);
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return rankedKeys[i1].compareTo(rankedKeys[i2]);
+			}
+		});
+
+		this.keys = new String[size];
+		this.values = new int[size];
+		for (int i = 0; i < size; i++) {
+			this.keys[i] = rankedKeys[order[i]];
+			this.values[i] = (values == null) ? order[i] : values[order[i]];
+		}
+
+	}
+
+
 }
@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen.trie;
+
+import java.nio.IntBuffer;
+
+
+/**
+ * Finds every Trie key occurring anywhere within a sequence of characters in
+ * a single pass, rather than searching again from the root of the Trie at
+ * each starting position as {@link TrieSearcher} does
+ *
+ * <p>The scanner follows the same double-array {@link Trie} as
+ * {@link TrieSearcher}, together with an Aho-Corasick failure transition for
+ * each node of the Trie. When the next character cannot be matched from the
+ * current node, the scan moves to the node representing the longest suffix of
+ * the characters read so far that is also a prefix of some key, so that no
+ * character is read more than once. The failure transitions are calculated
+ * from the Trie data when the scanner is created, and are held on the heap
+ * alongside it
+ *
+ * <p><b>Thread Safety</b>: Objects of this class are thread safe, and may be
+ * shared between any number of threads
+ */
+public class TrieScanner {
+
+	/**
+	 * The Trie to scan with
+	 */
+	private final Trie trie;
+
+	/**
+	 * The number of nodes of the Trie, including unused nodes
+	 */
+	private final int size;
+
+	/**
+	 * The failure transition of each node. Only the entries of nodes
+	 * reachable from the root of the Trie are valid
+	 */
+	private final int[] failure;
+
+	/**
+	 * For each node, the nearest node that completes a key and is reached
+	 * from that node by zero or more failure transitions, or -1 if none
+	 */
+	private final int[] output;
+
+	/**
+	 * The number of characters between the root of the Trie and each node
+	 */
+	private final char[] depth;
+
+	/**
+	 * The value of the key completed by each node that completes a key
+	 */
+	private final int[] value;
+
+	/**
+	 * The greatest number of characters between the root of the Trie and any
+	 * node, which is the length of the longest key
+	 */
+	private final int maximumDepth;
+
+
+	/**
+	 * Follows the transition from a node for a given character
+	 *
+	 * @param node The node to move from
+	 * @param code The transition code of the character to move with
+	 * @return The node reached, or -1 if there is no such transition
+	 */
+	private int transition(int node, int code) {
+
+		int b = this.trie.base(node);
+		int p = b + code;
+
+		if ((p < this.size) && (this.trie.check(p) == b)) {
+			return p;
+		}
+
+		return -1;
+
+	}
+
+
+	/**
+	 * Determines whether a node completes a key
+	 *
+	 * @param node The node
+	 * @return <code>true</code> if the node completes a key, otherwise
+	 *         <code>false</code>
+	 */
+	private boolean isTerminal(int node) {
+
+		int b = this.trie.base(node);
+
+		return (b >= 0) && (b < this.size) && (this.trie.check(b) == b) && (this.trie.base(b) < 0);
+
+	}
+
+
+	/**
+	 * Scans a range of characters for Trie keys. Every occurrence of a key
+	 * lying wholly within the range is passed to the listener. Occurrences
+	 * are passed in order of their last character, and those sharing a last
+	 * character in order of decreasing length; the occurrences starting at any
+	 * one index are therefore passed in order of increasing length, as
+	 * {@link TrieSearcher#commonPrefixSearch(CharIterator, int[])} would find
+	 * them from that index
+	 *
+	 * @param characters The characters to scan
+	 * @param start The index of the first character to scan
+	 * @param end One greater than the index of the last character to scan
+	 * @param listener The listener to pass found keys to
+	 */
+	public void scan(char[] characters, int start, int end, MatchListener listener) {
+
+		int node = 0;
+
+		for (int i = start; i < end; i++) {
+
+			int code = this.trie.code(characters[i]);
+			if (code == 0) {
+				// The character does not occur in any key, so no key can
+				// span it
+				node = 0;
+				continue;
+			}
+
+			int next;
+			while (((next = transition(node, code)) == -1) && (node != 0)) {
+				node = this.failure[node];
+			}
+			node = (next == -1) ? 0 : next;
+
+			for (int o = this.output[node]; o != -1; o = this.output[this.failure[o]]) {
+				int length = this.depth[o];
+				listener.match(i + 1 - length, length, this.value[o]);
+			}
+
+		}
+
+	}
+
+
+	/**
+	 * Finds the length of the longest sequence of characters ending before a
+	 * given index that is a prefix of some key. A search for keys starting
+	 * any further back than this cannot read as far as the given index
+	 *
+	 * @param characters The characters to scan
+	 * @param start The index of the first character that the sequence may
+	 *              begin at
+	 * @param end One greater than the index of the last character of the
+	 *            sequence
+	 * @return The length of the sequence, which may be 0
+	 */
+	public int findPrefixLength(char[] characters, int start, int end) {
+
+		int node = 0;
+
+		// No sequence longer than the longest key can be a prefix of one
+		for (int i = Math.max(start, end - this.maximumDepth); i < end; i++) {
+
+			int code = this.trie.code(characters[i]);
+			if (code == 0) {
+				node = 0;
+				continue;
+			}
+
+			int next;
+			while (((next = transition(node, code)) == -1) && (node != 0)) {
+				node = this.failure[node];
+			}
+			node = (next == -1) ? 0 : next;
+
+		}
+
+		return this.depth[node];
+
+	}
+
+
+	/**
+	 * Creates a TrieScanner for the given bare Trie data, calculating the
+	 * failure transition of each of its nodes
+	 * 
+	 * @param trieData The data to scan with
+	 */
+	public TrieScanner(IntBuffer trieData) {
+
+		this(new Trie(trieData));
+
+	}
+
+
+	/**
+	 * Creates a TrieScanner for the given Trie, calculating the failure
+	 * transition of each of its nodes
+	 * 
+	 * @param trie The Trie to scan with
+	 */
+	public TrieScanner(Trie trie) {
+
+		this.trie = trie;
+		this.size = trie.size();
+		this.failure = new int[this.size];
+		this.output = new int[this.size];
+		this.depth = new char[this.size];
+		this.value = new int[this.size];
+
+		// A node's check value is the base of its parent rather than the
+		// parent's index. Bases are unique, so map each back to its node
+		int[] owner = new int[this.size + 1];
+		int[] childCount = new int[this.size + 1];
+		int stateCount = 1;
+		for (int p = 1; p < this.size; p++) {
+			int c = trie.check(p);
+			if ((c > 0) && (c != p)) {
+				owner[trie.base(p)] = p;
+				stateCount++;
+			}
+		}
+		owner[trie.base(0)] = 0;
+
+		// Group the children of each node together, so that the nodes can be
+		// visited in breadth first order
+		for (int p = 1; p < this.size; p++) {
+			int c = trie.check(p);
+			if ((c > 0) && (c != p)) {
+				childCount[owner[c] + 1]++;
+			}
+		}
+		for (int p = 0; p < this.size; p++) {
+			childCount[p + 1] += childCount[p];
+		}
+		int[] children = new int[stateCount];
+		int[] childStart = childCount;
+		for (int p = 1; p < this.size; p++) {
+			int c = trie.check(p);
+			if ((c > 0) && (c != p)) {
+				children[childStart[owner[c]]++] = p;
+			}
+		}
+		// childStart[p] is now the end of node p's children, and so also the
+		// start of node p + 1's
+
+		// Visit the nodes in breadth first order. The failure transition of a
+		// node is found from that of its parent, which is nearer the root
+		int[] order = new int[stateCount];
+		int head = 0;
+		int tail = 0;
+		order[tail++] = 0;
+		this.failure[0] = 0;
+		this.output[0] = -1;
+		this.depth[0] = 0;
+		while (head < tail) {
+			int node = order[head++];
+			int b = trie.base(node);
+			int first = (node == 0) ? 0 : childStart[node - 1];
+			for (int i = first; i < childStart[node]; i++) {
+				int child = children[i];
+				int code = child - b;
+
+				int f = 0;
+				if (node != 0) {
+					f = this.failure[node];
+					int next;
+					while (((next = transition(f, code)) == -1) && (f != 0)) {
+						f = this.failure[f];
+					}
+					f = (next == -1) ? 0 : next;
+				}
+
+				this.failure[child] = f;
+				if (isTerminal(child)) {
+					this.output[child] = child;
+					this.value[child] = -trie.base(trie.base(child)) - 1;
+				} else {
+					this.output[child] = this.output[f];
+				}
+				this.depth[child] = (char) (this.depth[node] + 1);
+				order[tail++] = child;
+			}
+		}
+
+		// The breadth first order visits the deepest node last
+		this.maximumDepth = this.depth[order[tail - 1]];
+
+	}
+
+
+}
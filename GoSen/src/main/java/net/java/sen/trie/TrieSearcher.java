@@ -29,9 +29,9 @@ import java.nio.IntBuffer;
 public class TrieSearcher {
 
 	/**
-	 * The Trie data to search
+	 * The Trie to search
 	 */
-	private IntBuffer trieData;
+	private final Trie trie;
 
 
 	/**
@@ -46,7 +46,9 @@ public class TrieSearcher {
 	 */
 	public int commonPrefixSearch(CharIterator iterator, int results[]) {
 
-		int b = this.trieData.get(0 << 1);
+		Trie trie = this.trie;
+		int size = trie.size();
+		int b = trie.base(0);
 		int num = 0;
 		int n;
 		int p;
@@ -54,32 +56,38 @@ public class TrieSearcher {
 		while (iterator.hasNext()) {
 
 			p = b;
-			n = this.trieData.get(p << 1);
-			if (b == this.trieData.get((p << 1) + 1) && n < 0) {
+			n = trie.base(p);
+			if (b == trie.check(p) && n < 0) {
 				// Will throw ArrayIndexOutOfBoundsException if results[] is too small
 				results[num] = -n - 1;
 				num++;
 			}
 
-			p = b + iterator.next() + 1;
+			int code = trie.code(iterator.next());
+			if (code == 0) {
+				// The character does not occur in any key
+				return num;
+			}
+
+			p = b + code;
 
 
-			if (((p << 1) + 1) >= this.trieData.limit()) {
+			if (p >= size) {
 				// We fell off the end of the Trie data
 				return num;
 			}
 
 
-			if (b == this.trieData.get((p << 1) + 1)) {
-				b = this.trieData.get(p << 1);
+			if (b == trie.check(p)) {
+				b = trie.base(p);
 			} else {
 				return num;
 			}
 		}
 
 		p = b;
-		n = this.trieData.get(p << 1);
-		if (b == this.trieData.get((p << 1) + 1) && (n < 0)) {
+		n = trie.base(p);
+		if (b == trie.check(p) && (n < 0)) {
 			// Will throw ArrayIndexOutOfBoundsException if results[] is too small
 			results[num] = -n - 1;
 			num++;
@@ -91,13 +99,25 @@ public class TrieSearcher {
 
 
 	/**
-	 * Creates a TrieSearcher for the given Trie data
+	 * Creates a TrieSearcher for the given Trie
+	 * 
+	 * @param trie The Trie to search within 
+	 */
+	public TrieSearcher(Trie trie) {
+
+		this.trie = trie;
+
+	}
+
+
+	/**
+	 * Creates a TrieSearcher for the given bare Trie data
 	 * 
 	 * @param trieData The data to search within 
 	 */
 	public TrieSearcher(IntBuffer trieData) {
 
-		this.trieData = trieData;
+		this(new Trie(trieData));
 
 	}
 
@@ -19,9 +19,12 @@
 
 package net.java.sen.util;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
@@ -30,41 +33,354 @@ import java.util.Map;
 
 
 /**
- * Provides a cache of open MappedByteBuffers to avoid exhausting address space
- * with duplicated buffers
+ * Provides a reference counted cache of MappedByteBuffers, to avoid exhausting
+ * address space with duplicated buffers while still allowing files that are
+ * no longer needed to be released
+ *
+ * <p>Each call to {@link #acquire(File)} takes a reference to a single shared
+ * mapping of the file, and each {@link SharedBuffer} it returns must be closed
+ * when its user has finished with it. When the last reference to a mapping is
+ * closed, the mapping is removed from the cache and, where the JVM allows it,
+ * unmapped at once rather than when the garbage collector next notices it.
+ * A file that has been modified since it was mapped is mapped again rather
+ * than shared
+ *
+ * <p>Because an unmapped buffer can no longer be read, a {@link SharedBuffer}
+ * must not be closed while any buffer obtained from it (or any duplicate or
+ * view of one) may still be used
+ *
+ * <p><b>Thread Safety</b>: This class and all its public methods are thread
+ * safe. Files are mapped outside of the cache's lock, so that different
+ * files may be opened concurrently
  */
 public class BufferCache {
 
 	/**
-	 * A cache of MappedByteBuffers
+	 * A reference to a shared mapping of a file. Closing the reference
+	 * releases it, and closing it again has no effect
+	 *
+	 * <p><b>Thread Safety</b>: This class and all its public methods are thread
+	 * safe
+	 */
+	public static final class SharedBuffer implements Closeable {
+
+		/**
+		 * The shared mapping referred to
+		 */
+		private final Mapping mapping;
+
+		/**
+		 * <code>true</code> once the reference has been released
+		 */
+		private boolean closed = false;
+
+
+		/**
+		 * Gets a new buffer over the whole of the mapped file. The buffer is
+		 * created by the .duplicate() method of the shared MappedByteBuffer,
+		 * and so shares its address space (ByteBuffers are not thread safe and
+		 * so must be duplicated, but the memory usage is at least minimal this
+		 * way)
+		 *
+		 * @return A buffer over the mapped file
+		 * @throws IllegalStateException if the reference has been closed
+		 */
+		public synchronized ByteBuffer getBuffer() {
+
+			if (this.closed) {
+				throw new IllegalStateException("Buffer for \"" + this.mapping.path + "\" has been released");
+			}
+
+			synchronized (this.mapping) {
+				return this.mapping.buffer.duplicate();
+			}
+
+		}
+
+
+		/**
+		 * Takes a further, independent reference to the same mapping
+		 *
+		 * @return The new reference
+		 * @throws IllegalStateException if this reference has been closed
+		 */
+		public synchronized SharedBuffer share() {
+
+			if (this.closed) {
+				throw new IllegalStateException("Buffer for \"" + this.mapping.path + "\" has been released");
+			}
+
+			synchronized (cache) {
+				this.mapping.references++;
+			}
+
+			return new SharedBuffer(this.mapping);
+
+		}
+
+
+		/**
+		 * Releases the reference, unmapping the file if it was the last
+		 */
+		public void close() {
+
+			synchronized (this) {
+				if (this.closed) {
+					return;
+				}
+				this.closed = true;
+			}
+
+			release(this.mapping);
+
+		}
+
+
+		/**
+		 * @param mapping The shared mapping to refer to
+		 */
+		private SharedBuffer(Mapping mapping) {
+
+			this.mapping = mapping;
+
+		}
+
+	}
+
+
+	/**
+	 * A shared mapping of a file
 	 */
-	private static Map<String,MappedByteBuffer> cache = new HashMap<String,MappedByteBuffer>();
+	private static final class Mapping {
+
+		/**
+		 * The canonical path of the file
+		 */
+		final String path;
+
+		/**
+		 * The last modification time of the file when it was mapped
+		 */
+		final long lastModified;
+
+		/**
+		 * The length of the file when it was mapped
+		 */
+		final long length;
+
+		/**
+		 * The number of unreleased references to the mapping. Guarded by the
+		 * cache's lock
+		 */
+		int references = 0;
+
+		/**
+		 * The mapped buffer, or <code>null</code> if the file has not yet been
+		 * mapped or has been released. Guarded by the mapping's lock
+		 */
+		MappedByteBuffer buffer = null;
+
+
+		/**
+		 * @param path The canonical path of the file
+		 * @param lastModified The last modification time of the file
+		 * @param length The length of the file
+		 */
+		Mapping(String path, long lastModified, long length) {
+
+			this.path = path;
+			this.lastModified = lastModified;
+			this.length = length;
+
+		}
+
+	}
+
 
 	/**
-	 * Gets a ByteBuffer mapped from the given file. The buffer that is returned
-	 * is created by the .duplicate() method of a unique MappedByteBuffer on the
-	 * whole file, and should thus share the address space of the original
-	 * buffer (ByteBuffers are not thread safe and so must be duplicated, but
-	 * the memory usage is at least minimal this way)
+	 * The current shared mapping of each file, keyed by canonical path
+	 */
+	private static final Map<String,Mapping> cache = new HashMap<String,Mapping>();
+
+	/**
+	 * The method used to unmap a buffer, or <code>null</code> if unmapping is
+	 * not supported by the JVM
+	 */
+	private static final Method unmapMethod;
+
+	/**
+	 * The object on which <code>unmapMethod</code> is invoked, or
+	 * <code>null</code> if it is invoked on the cleaner of the buffer
+	 */
+	private static final Object unmapTarget;
+
+	static {
+
+		Method method = null;
+		Object target = null;
+
+		try {
+			// Java 9 and later
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+			unsafeField.setAccessible(true);
+			target = unsafeField.get(null);
+			method = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (Exception e) {
+			try {
+				// Java 8 and earlier
+				method = Class.forName("sun.misc.Cleaner").getMethod("clean");
+				target = null;
+			} catch (Exception e2) {
+				method = null;
+			}
+		}
+
+		unmapMethod = method;
+		unmapTarget = target;
+
+	}
+
+
+	/**
+	 * Unmaps a buffer, if the JVM allows it. If it does not, the buffer is
+	 * left to be unmapped when it is garbage collected
 	 *
-	 * @param file The file to return a buffer for
-	 * @return A ByteBuffer mapped from the given file 
+	 * @param buffer The buffer to unmap
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+
+		if (unmapMethod == null) {
+			return;
+		}
+
+		try {
+			if (unmapTarget != null) {
+				unmapMethod.invoke(unmapTarget, buffer);
+			} else {
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null) {
+					unmapMethod.invoke(cleaner);
+				}
+			}
+		} catch (Exception e) {
+			// Leave the buffer to the garbage collector
+		}
+
+	}
+
+
+	/**
+	 * Releases a reference to a shared mapping, removing the mapping from the
+	 * cache and unmapping it if it was the last reference
+	 *
+	 * @param mapping The mapping to release
+	 */
+	private static void release(Mapping mapping) {
+
+		synchronized (cache) {
+			mapping.references--;
+			if (mapping.references > 0) {
+				return;
+			}
+			if (cache.get(mapping.path) == mapping) {
+				cache.remove(mapping.path);
+			}
+		}
+
+		MappedByteBuffer buffer;
+		synchronized (mapping) {
+			buffer = mapping.buffer;
+			mapping.buffer = null;
+		}
+
+		if (buffer != null) {
+			unmap(buffer);
+		}
+
+	}
+
+
+	/**
+	 * Takes a reference to the shared mapping of the given file, mapping the
+	 * file if it is not already mapped
+	 *
+	 * @param file The file to map
+	 * @return A reference to the shared mapping, which must be closed when
+	 *         it is no longer needed
 	 * @throws IOException
 	 */
-	public static synchronized ByteBuffer getBuffer(File file) throws IOException {
+	public static SharedBuffer acquire(File file) throws IOException {
 
-		MappedByteBuffer buffer = null;
+		String path = file.getCanonicalPath();
+		long lastModified = file.lastModified();
+		long length = file.length();
+
+		Mapping mapping;
+		synchronized (cache) {
+			mapping = cache.get(path);
+			if ((mapping == null) || (mapping.lastModified != lastModified) || (mapping.length != length)) {
+				mapping = new Mapping(path, lastModified, length);
+				cache.put(path, mapping);
+			}
+			mapping.references++;
+		}
 
-		buffer = cache.get(file.getCanonicalPath());
+		try {
+			synchronized (mapping) {
+				if (mapping.buffer == null) {
+					RandomAccessFile randomFile = new RandomAccessFile(file, "r");
+					try {
+						mapping.buffer = randomFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomFile.length());
+					} finally {
+						randomFile.close();
+					}
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			release(mapping);
+			throw e;
+		}
+
+		return new SharedBuffer(mapping);
+
+	}
+
+
+	/**
+	 * Gets the number of unreleased references to the current shared mapping
+	 * of the given file
+	 *
+	 * @param file The file
+	 * @return The number of references, or 0 if the file is not mapped
+	 * @throws IOException
+	 */
+	public static int getReferenceCount(File file) throws IOException {
 
-		if (buffer == null) {
-			RandomAccessFile randomFile = new RandomAccessFile(file, "r");
-			buffer = randomFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomFile.length());
-			cache.put(file.getCanonicalPath(), buffer);
-			randomFile.close();
+		synchronized (cache) {
+			Mapping mapping = cache.get(file.getCanonicalPath());
+			return (mapping == null) ? 0 : mapping.references;
 		}
 
-		return buffer.duplicate();
+	}
+
+
+	/**
+	 * Gets a ByteBuffer mapped from the given file. The buffer that is returned
+	 * is created by the .duplicate() method of a unique MappedByteBuffer on the
+	 * whole file. The reference taken to the mapping is never released, so the
+	 * file remains mapped until the JVM exits; use {@link #acquire(File)} to
+	 * be able to release it
+	 *
+	 * @param file The file to return a buffer for
+	 * @return A ByteBuffer mapped from the given file
+	 * @throws IOException
+	 */
+	public static ByteBuffer getBuffer(File file) throws IOException {
+
+		return acquire(file).getBuffer();
 
 	}
 
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen.util;
+
+import java.util.Arrays;
+
+
+/**
+ * A histogram of non-negative <code>long</code> values, such as counts or
+ * times in nanoseconds, recorded into buckets of bounded relative size. Values
+ * below 16 each have their own bucket, and each higher power of two is
+ * divided into 16 buckets, so that any percentile is reported within 1/16 of
+ * the true value while the whole <code>long</code> range is covered by 960
+ * buckets
+ *
+ * <p><b>Thread Safety</b>: This class and all its public methods are thread
+ * safe
+ */
+public class Histogram {
+
+	/**
+	 * The number of bits of each value below its highest bit that select
+	 * its bucket
+	 */
+	private static final int SUB_BUCKET_BITS = 4;
+
+	/**
+	 * The number of buckets each power of two is divided into
+	 */
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The number of values recorded in each bucket
+	 */
+	private final long[] buckets = new long[bucketIndex(Long.MAX_VALUE) + 1];
+
+	/**
+	 * The number of values recorded
+	 */
+	private long count = 0;
+
+	/**
+	 * The sum of the values recorded
+	 */
+	private long sum = 0;
+
+	/**
+	 * The lowest value recorded
+	 */
+	private long min = Long.MAX_VALUE;
+
+	/**
+	 * The highest value recorded
+	 */
+	private long max = 0;
+
+
+	/**
+	 * Gets the index of the bucket a value is recorded in
+	 *
+	 * @param value The value
+	 * @return The index of the bucket
+	 */
+	private static int bucketIndex(long value) {
+
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+
+		return ((exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT) + subBucket;
+
+	}
+
+
+	/**
+	 * Gets the highest value recorded in a bucket
+	 *
+	 * @param index The index of the bucket
+	 * @return The highest value
+	 */
+	private static long bucketLimit(int index) {
+
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+
+		int shift = (index / SUB_BUCKET_COUNT) - 1;
+		long lowest = (long) ((index % SUB_BUCKET_COUNT) + SUB_BUCKET_COUNT) << shift;
+
+		return lowest + ((1L << shift) - 1);
+
+	}
+
+
+	/**
+	 * Records a value
+	 *
+	 * @param value The value, which must not be negative
+	 */
+	public synchronized void record(long value) {
+
+		if (value < 0) {
+			throw new IllegalArgumentException("Value must not be negative");
+		}
+
+		this.buckets[bucketIndex(value)]++;
+		this.count++;
+		this.sum += value;
+		this.min = Math.min(this.min, value);
+		this.max = Math.max(this.max, value);
+
+	}
+
+
+	/**
+	 * Discards every value recorded
+	 */
+	public synchronized void clear() {
+
+		Arrays.fill(this.buckets, 0);
+		this.count = 0;
+		this.sum = 0;
+		this.min = Long.MAX_VALUE;
+		this.max = 0;
+
+	}
+
+
+	/**
+	 * Gets the number of values recorded
+	 *
+	 * @return The number of values
+	 */
+	public synchronized long getCount() {
+
+		return this.count;
+
+	}
+
+
+	/**
+	 * Gets the lowest value recorded
+	 *
+	 * @return The lowest value, or 0 if none has been recorded
+	 */
+	public synchronized long getMin() {
+
+		return (this.count == 0) ? 0 : this.min;
+
+	}
+
+
+	/**
+	 * Gets the highest value recorded
+	 *
+	 * @return The highest value, or 0 if none has been recorded
+	 */
+	public synchronized long getMax() {
+
+		return this.max;
+
+	}
+
+
+	/**
+	 * Gets the mean of the values recorded
+	 *
+	 * @return The mean, or 0 if no value has been recorded
+	 */
+	public synchronized double getMean() {
+
+		return (this.count == 0) ? 0 : ((double) this.sum / this.count);
+
+	}
+
+
+	/**
+	 * Gets the value at or below which the given percentage of the values
+	 * recorded fall. The value returned is the highest value of the bucket
+	 * containing the percentile, and so exceeds the true percentile by at
+	 * most 1/16, but never exceeds the highest value recorded
+	 *
+	 * @param percentile The percentage, from 0 to 100
+	 * @return The value, or 0 if no value has been recorded
+	 */
+	public synchronized long getPercentile(double percentile) {
+
+		if ((percentile < 0) || (percentile > 100)) {
+			throw new IllegalArgumentException("Percentile must be between 0 and 100");
+		}
+
+		if (this.count == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil((percentile / 100) * this.count));
+		long seen = 0;
+		for (int i = 0; i < this.buckets.length; i++) {
+			seen += this.buckets[i];
+			if (seen >= rank) {
+				return Math.max(this.min, Math.min(bucketLimit(i), this.max));
+			}
+		}
+
+		return this.max;
+
+	}
+
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString() {
+
+		return "count=" + this.count
+				+ " min=" + getMin()
+				+ " mean=" + Math.round(getMean())
+				+ " p50=" + getPercentile(50)
+				+ " p90=" + getPercentile(90)
+				+ " p99=" + getPercentile(99)
+				+ " max=" + this.max;
+
+	}
+
+
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen;
+
+import net.java.sen.dictionary.DictionaryHandle;
+import net.java.sen.dictionary.Token;
+import net.java.sen.dictionary.Tokenizer;
+import net.java.sen.filter.stream.CommentFilter;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static net.java.sen.SenTestUtils.DIC_PATH;
+import static net.java.sen.SenTestUtils.compareTokens;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Tests for AnalysisCache
+ */
+public class AnalysisCacheTest {
+
+	/**
+	 * Sentences to analyse
+	 */
+	private static final String[] SENTENCES = new String[] {
+		"これはテストだ",
+		"麻薬の密売は根こそぎ絶やさなければならない",
+		"魔女狩大将マシュー・ホプキンス。",
+		"本来は、貧困層の女性や子供に医療保護を提供するために創設された制度である、"
+	};
+
+
+	/**
+	 * Tests that cached results are the same as uncached results, are shared
+	 * and unmodifiable, and are keyed by the filter chain
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testCachedAnalysis() throws Exception {
+
+		StringTagger uncachedTagger = SenFactory.getStringTagger(DIC_PATH);
+		StringTagger tagger = SenFactory.getStringTagger(DIC_PATH);
+		AnalysisCache cache = new AnalysisCache(100);
+		tagger.setCache(cache);
+
+		List<Token> tokens = tagger.analyze(SENTENCES[1]);
+		compareTokens(uncachedTagger.analyze(SENTENCES[1]).toArray(new Token[0]), tokens);
+		assertSame(tokens, tagger.analyze(SENTENCES[1]));
+		assertSame(tokens, tagger.analyze(SENTENCES[1].toCharArray()));
+		assertEquals(1, cache.getMissCount());
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2.0 / 3, cache.getHitRatio(), 0.0001);
+
+		try {
+			tokens.remove(0);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// Expected
+		}
+
+		// A different filter chain gives a different result
+		CommentFilter filter = new CommentFilter();
+		filter.readRules(new BufferedReader(new StringReader("麻薬 の 記号-注釈")));
+		tagger.addFilter(filter);
+		uncachedTagger.addFilter(filter);
+		List<Token> filteredTokens = tagger.analyze(SENTENCES[1]);
+		assertNotSame(tokens, filteredTokens);
+		assertTrue(filteredTokens.size() < tokens.size());
+		compareTokens(uncachedTagger.analyze(SENTENCES[1]).toArray(new Token[0]), filteredTokens);
+		assertEquals(2, cache.size());
+
+		tagger.removeFilters();
+		assertSame(tokens, tagger.analyze(SENTENCES[1]));
+
+		// Batch workers share the cache and the configuration
+		List<List<Token>> results = tagger.analyzeAll(Arrays.asList(SENTENCES));
+		assertSame(tokens, results.get(1));
+
+	}
+
+
+	/**
+	 * Tests that the least recently used entries are evicted to keep within
+	 * the limits
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testEviction() throws Exception {
+
+		StringTagger tagger = SenFactory.getStringTagger(DIC_PATH);
+		AnalysisCache cache = new AnalysisCache(2);
+		tagger.setCache(cache);
+
+		List<Token> tokens0 = tagger.analyze(SENTENCES[0]);
+		tagger.analyze(SENTENCES[1]);
+		assertSame(tokens0, tagger.analyze(SENTENCES[0]));
+		tagger.analyze(SENTENCES[2]);
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertSame(tokens0, tagger.analyze(SENTENCES[0]));
+
+		// Limited by memory, only the most recent entry fits
+		cache = new AnalysisCache(0, 2000);
+		tagger.setCache(cache);
+		for (String sentence : SENTENCES) {
+			tagger.analyze(sentence);
+		}
+		assertTrue(cache.getEstimatedBytes() <= 2000);
+		assertEquals(SENTENCES.length - cache.size(), cache.getEvictionCount());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getEstimatedBytes());
+
+	}
+
+
+	/**
+	 * Tests that a StreamTagger on a cached tagger gives the same results as
+	 * one on an uncached tagger, and leaves the cached results unaltered
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testStreamAnalysis() throws Exception {
+
+		String sentence = "猫です。";
+		String text = sentence + sentence + sentence;
+
+		StringTagger uncachedTagger = SenFactory.getStringTagger(DIC_PATH);
+		StringTagger tagger = SenFactory.getStringTagger(DIC_PATH);
+		tagger.setCache(new AnalysisCache(100));
+
+		List<Token> expectedTokens = new ArrayList<Token>();
+		StreamTagger uncachedStreamTagger = new StreamTagger(uncachedTagger, new StringReader(text));
+		while (uncachedStreamTagger.hasNext()) {
+			expectedTokens.add(uncachedStreamTagger.next());
+		}
+
+		List<Token> tokens = new ArrayList<Token>();
+		StreamTagger streamTagger = new StreamTagger(tagger, new StringReader(text));
+		while (streamTagger.hasNext()) {
+			tokens.add(streamTagger.next());
+		}
+
+		compareTokens(expectedTokens.toArray(new Token[0]), tokens);
+		assertEquals(8, tokens.get(6).getStart());
+		compareTokens(uncachedTagger.analyze(sentence).toArray(new Token[0]), tagger.analyze(sentence));
+
+	}
+
+
+	/**
+	 * Tests that a cache shared between taggers on multiple threads gives the
+	 * same results as uncached analysis
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentAnalysis() throws Exception {
+
+		final List<List<Token>> expectedTokens = new ArrayList<List<Token>>();
+		StringTagger uncachedTagger = SenFactory.getStringTagger(DIC_PATH);
+		for (String sentence : SENTENCES) {
+			expectedTokens.add(uncachedTagger.analyze(sentence));
+		}
+
+		final AnalysisCache cache = new AnalysisCache(2);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+		for (int i = 0; i < 4; i++) {
+			futures.add(executor.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					StringTagger tagger = SenFactory.getStringTagger(DIC_PATH);
+					tagger.setCache(cache);
+					for (int j = 0; j < 200; j++) {
+						int k = j % SENTENCES.length;
+						compareTokens(expectedTokens.get(k).toArray(new Token[0]), tagger.analyze(SENTENCES[k]));
+					}
+					return null;
+				}
+			}));
+		}
+
+		for (Future<Void> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+
+		assertEquals(800, cache.getHitCount() + cache.getMissCount());
+
+	}
+
+
+
+	/**
+	 * Tests that results cached by a tagger on a {@link DictionaryHandle} are
+	 * not reused after a swap, and do not keep the swapped out Tokenizer
+	 * reachable
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testHandleSwap() throws Exception {
+
+		File containerFile = File.createTempFile("dic", ".sen");
+		containerFile.deleteOnExit();
+		SenFactory.packDictionary(DIC_PATH, containerFile.getAbsolutePath(), "");
+
+		StringTagger uncachedTagger = SenFactory.getStringTagger(DIC_PATH);
+		DictionaryHandle handle = SenFactory.openDictionaryHandle(DIC_PATH);
+		StringTagger tagger = SenFactory.getStringTagger(handle);
+		AnalysisCache cache = new AnalysisCache(100);
+		tagger.setCache(cache);
+
+		List<Token> tokens = tagger.analyze(SENTENCES[1]);
+		assertSame(tokens, tagger.analyze(SENTENCES[1]));
+		WeakReference<Tokenizer> oldTokenizer = new WeakReference<Tokenizer>(handle.getTokenizer());
+
+		SenFactory.swapDictionary(handle, containerFile.getAbsolutePath());
+		List<Token> swappedTokens = tagger.analyze(SENTENCES[1]);
+		assertNotSame(tokens, swappedTokens);
+		compareTokens(uncachedTagger.analyze(SENTENCES[1]).toArray(new Token[0]), swappedTokens);
+		assertSame(swappedTokens, tagger.analyze(SENTENCES[1]));
+		assertEquals(2, cache.size());
+
+		for (int i = 0; (i < 20) && (oldTokenizer.get() != null); i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(oldTokenizer.get());
+
+		handle.close();
+
+	}
+
+
+}
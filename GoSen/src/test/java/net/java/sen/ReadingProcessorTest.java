@@ -347,4 +347,66 @@ public class ReadingProcessorTest {
 	}
 
 
+	/**
+	 * Tests that analysing again after a series of constraint changes gives
+	 * the same readings as analysing the constrained sentence afresh with a
+	 * separate processor
+	 */
+	@Test
+	public void testConstraintChanges() {
+
+		String testString = "皆様、只今より映画を上映いたします。空を飛び越える";
+
+		Reading[] constraints = new Reading[] {
+				new Reading (7, 2, "えいが"),
+				new Reading (3, 2, "ただいま"),
+				new Reading (8, 3, "がを"),
+				new Reading (22, 1, "こ"),
+				new Reading (0, 1, "み")
+		};
+
+		ReadingProcessor processor = getReadingProcessor();
+		ReadingProcessor freshProcessor = SenFactory.getReadingProcessor(SenTestUtils.DIC_PATH);
+
+		processor.setText (testString);
+		processor.getDisplayReadings();
+
+		for (Reading constraint : constraints) {
+			processor.setReadingConstraint (constraint);
+			List<Reading> readings = processor.getDisplayReadings();
+			compareReadings (getFreshReadings (freshProcessor, processor, testString), readings);
+		}
+
+		processor.removeReadingConstraint (8);
+		processor.removeReadingConstraint (3);
+		List<Reading> readings = processor.getDisplayReadings();
+		compareReadings (getFreshReadings (freshProcessor, processor, testString), readings);
+
+	}
+
+
+	/**
+	 * Analyses a text afresh with the current constraints of another
+	 * processor
+	 *
+	 * @param freshProcessor The processor to analyse with
+	 * @param processor The processor whose constraints are copied
+	 * @param text The text
+	 * @return The readings of the fresh analysis
+	 */
+	private static Reading[] getFreshReadings(ReadingProcessor freshProcessor, ReadingProcessor processor, String text) {
+
+		freshProcessor.setText (text);
+		for (int i = 0; i < text.length(); i++) {
+			Reading constraint = processor.getReadingConstraint (i);
+			if (constraint != null) {
+				freshProcessor.setReadingConstraint (constraint);
+			}
+		}
+
+		return freshProcessor.getDisplayReadings().toArray (new Reading[0]);
+
+	}
+
+
 }
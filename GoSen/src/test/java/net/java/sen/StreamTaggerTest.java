@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ * 
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ * 
+ */
+
+package net.java.sen;
+
+import net.java.sen.dictionary.Token;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.java.sen.SenTestUtils.getStringTagger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests sentence segmentation and token offsets during stream analysis
+ */
+public class StreamTaggerTest {
+
+	/**
+	 * A Reader which returns at most a few characters from each read, to
+	 * exercise text carried over between reads
+	 */
+	private static class TrickleReader extends Reader {
+
+		/**
+		 * The underlying Reader
+		 */
+		private final Reader reader;
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+
+			return this.reader.read(cbuf, off, Math.min(len, 3));
+
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			this.reader.close();
+
+		}
+
+		/**
+		 * @param text The text to read
+		 */
+		public TrickleReader(String text) {
+
+			this.reader = new StringReader(text);
+
+		}
+
+	}
+
+
+	/**
+	 * Reads every token from a StreamTagger
+	 *
+	 * @param tagger The StreamTagger
+	 * @return The tokens
+	 * @throws IOException
+	 */
+	private static List<Token> readAll(StreamTagger tagger) throws IOException {
+
+		List<Token> tokens = new ArrayList<Token>();
+		while (tagger.hasNext()) {
+			tokens.add(tagger.next());
+		}
+		assertNull(tagger.next());
+
+		return tokens;
+
+	}
+
+
+	/**
+	 * Checks that each token's start is the offset of its surface in the
+	 * original text
+	 *
+	 * @param text The original text
+	 * @param tokens The tokens
+	 */
+	private static void assertOffsets(String text, List<Token> tokens) {
+
+		int previousEnd = 0;
+		for (Token token : tokens) {
+			assertTrue(token.getStart() >= previousEnd);
+			assertEquals(token.getSurface(), text.substring(token.getStart(), token.end()));
+			previousEnd = token.end();
+		}
+
+	}
+
+
+	/**
+	 * Tests that stream analysis gives the same tokens at the same offsets as
+	 * analysing each sentence separately, whatever the buffer size and however
+	 * the Reader divides its text
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testSentences() throws IOException {
+
+		String[] sentences = new String[] {
+				"これはテストだ。",
+				"「麻薬の密売は根こそぎ絶やさなければならない！」",
+				"魔女狩大将マシュー・ホプキンス。\n",
+				"\n",
+				"本来は、貧困層の女性や子供に医療保護を提供するために創設された制度である、\r\n",
+				"これはテストだ"
+		};
+
+		StringBuilder text = new StringBuilder();
+		List<Token> expectedTokens = new ArrayList<Token>();
+		StringTagger stringTagger = getStringTagger();
+		for (String sentence : sentences) {
+			for (Token token : stringTagger.analyze(sentence)) {
+				token.setStart(token.getStart() + text.length());
+				expectedTokens.add(token);
+			}
+			text.append(sentence);
+		}
+
+		for (int bufferSize : new int[] { 64, 256, StreamTagger.DEFAULT_BUFFER_SIZE }) {
+			for (boolean trickle : new boolean[] { false, true }) {
+				Reader reader = trickle ? new TrickleReader(text.toString()) : new StringReader(text.toString());
+				StreamTagger tagger = new StreamTagger(getStringTagger(), reader, bufferSize);
+				List<Token> tokens = readAll(tagger);
+
+				assertEquals(expectedTokens.size(), tokens.size());
+				for (int i = 0; i < tokens.size(); i++) {
+					assertEquals(expectedTokens.get(i).getSurface(), tokens.get(i).getSurface());
+					assertEquals(expectedTokens.get(i).getStart(), tokens.get(i).getStart());
+				}
+				assertOffsets(text.toString(), tokens);
+			}
+		}
+
+	}
+
+
+	/**
+	 * Tests that a sentence longer than the buffer is divided after
+	 * punctuation rather than in the middle of a word
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testLongSentence() throws IOException {
+
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 10; i++) {
+			text.append("これはテストだ、");
+		}
+
+		StreamTagger tagger = new StreamTagger(getStringTagger(), new StringReader(text.toString()), 20);
+		List<Token> tokens = readAll(tagger);
+
+		assertOffsets(text.toString(), tokens);
+		for (Token token : tokens) {
+			assertFalse(token.getSurface().equals("テ") || token.getSurface().equals("スト"));
+		}
+
+	}
+
+
+	/**
+	 * Tests a stream containing only line breaks
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testEmptyLines() throws IOException {
+
+		StreamTagger tagger = new StreamTagger(getStringTagger(), new StringReader("\n\n\r\n"));
+
+		assertFalse(tagger.hasNext());
+		assertNull(tagger.next());
+
+	}
+
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package net.java.sen;
+
+import net.java.sen.dictionary.Token;
+import net.java.sen.filter.stream.CommentFilter;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static net.java.sen.SenTestUtils.DIC_PATH;
+import static net.java.sen.SenTestUtils.compareTokens;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+
+/**
+ * Tests concurrent analysis against a shared Dictionary
+ */
+public class ThreadSafetyTest {
+
+	/**
+	 * Sentences analysed by each thread
+	 */
+	private static final String[] SENTENCES = new String[] {
+		"これはテストだ",
+		"麻薬の密売は根こそぎ絶やさなければならない",
+		"魔女狩大将マシュー・ホプキンス。",
+		"本来は、貧困層の女性や子供に医療保護を提供するために創設された制度である、"
+	};
+
+
+	/**
+	 * Tests that StringTaggers analysing simultaneously on multiple threads
+	 * give the same results as a single thread
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentAnalysis() throws Exception {
+
+		final List<List<Token>> expectedTokens = new ArrayList<List<Token>>();
+		StringTagger tagger = SenFactory.getStringTagger(DIC_PATH);
+		for (String sentence : SENTENCES) {
+			expectedTokens.add(tagger.analyze(sentence));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<List<List<Token>>>> futures = new ArrayList<Future<List<List<Token>>>>();
+		for (int i = 0; i < 8; i++) {
+			futures.add(executor.submit(new Callable<List<List<Token>>>() {
+				@Override
+				public List<List<Token>> call() throws Exception {
+					StringTagger threadTagger = SenFactory.getStringTagger(DIC_PATH);
+					List<List<Token>> results = new ArrayList<List<Token>>();
+					for (int j = 0; j < 50; j++) {
+						for (String sentence : SENTENCES) {
+							results.add(threadTagger.analyze(sentence));
+						}
+					}
+					return results;
+				}
+			}));
+		}
+		executor.shutdown();
+
+		for (Future<List<List<Token>>> future : futures) {
+			List<List<Token>> results = future.get();
+			for (int i = 0; i < results.size(); i++) {
+				List<Token> expected = expectedTokens.get(i % SENTENCES.length);
+				compareTokens(expected.toArray(new Token[expected.size()]), results.get(i));
+			}
+		}
+
+	}
+
+
+	/**
+	 * Creates a StringTagger with a {@link CommentFilter}, which holds state
+	 * between pre- and post-processing and so must be copied for each worker
+	 *
+	 * @return The StringTagger
+	 * @throws Exception
+	 */
+	private static StringTagger getFilteredTagger() throws Exception {
+
+		StringTagger tagger = SenFactory.getStringTagger(DIC_PATH);
+		CommentFilter filter = new CommentFilter();
+		filter.readRules(new BufferedReader(new StringReader("< > 記号-注釈")));
+		tagger.addFilter(filter);
+
+		return tagger;
+
+	}
+
+
+	/**
+	 * Creates a batch of sentences, some of which contain comments
+	 *
+	 * @return The batch
+	 */
+	private static List<String> getBatch() {
+
+		List<String> batch = new ArrayList<String>();
+		for (int i = 0; i < 200; i++) {
+			String sentence = SENTENCES[i % SENTENCES.length];
+			if ((i % 3) == 0) {
+				sentence = "<b>" + sentence + "</b>";
+			}
+			batch.add(sentence);
+		}
+
+		return batch;
+
+	}
+
+
+	/**
+	 * Tests that batch analysis on a fork-join pool gives the same results, in
+	 * the same order, as analysing each sentence in turn
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testAnalyzeAll() throws Exception {
+
+		StringTagger tagger = getFilteredTagger();
+		List<String> batch = getBatch();
+
+		List<List<Token>> expectedTokens = new ArrayList<List<Token>>();
+		for (String sentence : batch) {
+			expectedTokens.add(tagger.analyze(sentence));
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		List<List<Token>> results = tagger.analyzeAll(batch, pool);
+		pool.shutdown();
+
+		assertEquals(batch.size(), results.size());
+		for (int i = 0; i < results.size(); i++) {
+			List<Token> expected = expectedTokens.get(i);
+			compareTokens(expected.toArray(new Token[expected.size()]), results.get(i));
+		}
+
+	}
+
+
+	/**
+	 * Tests that streaming batch analysis gives the same results, in the same
+	 * order, as analysing each sentence in turn
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testAnalyzeAllIterator() throws Exception {
+
+		StringTagger tagger = getFilteredTagger();
+		List<String> batch = getBatch();
+
+		List<List<Token>> expectedTokens = new ArrayList<List<Token>>();
+		for (String sentence : batch) {
+			expectedTokens.add(tagger.analyze(sentence));
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		Iterator<List<Token>> iterator = tagger.analyzeAll(batch.iterator(), 32, pool);
+		for (List<Token> expected : expectedTokens) {
+			compareTokens(expected.toArray(new Token[expected.size()]), iterator.next());
+		}
+		assertFalse(iterator.hasNext());
+		pool.shutdown();
+
+	}
+
+
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package net.java.sen.compiler;
+
+import net.java.sen.SenFactory;
+import net.java.sen.SenTestUtils;
+import net.java.sen.dictionary.CToken;
+import net.java.sen.dictionary.Dictionary;
+import net.java.sen.dictionary.Segmentation;
+import net.java.sen.dictionary.Sentence;
+import net.java.sen.dictionary.Token;
+import net.java.sen.dictionary.Viterbi;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import static net.java.sen.SenTestUtils.compareTokens;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests for DictionaryBuilder
+ */
+public class DictionaryBuilderTest {
+
+	/**
+	 * Sentences to analyse
+	 */
+	private static final String[] SENTENCES = new String[] {
+		"これはテストだ",
+		"麻薬の密売は根こそぎ絶やさなければならない",
+		"本来は、貧困層の女性や子供に医療保護を提供するために創設された制度である、",
+		"私の名前は中野です"
+	};
+
+	/**
+	 * The first extent of the connection rules that do not depend on the
+	 * morpheme before the left morpheme
+	 */
+	private static final String ANY_PART_OF_SPEECH = "\"*,*,*,*,*,*,*\"";
+
+	/**
+	 * The first extent of a redundant rule added to the source data
+	 */
+	private static final String TRIGRAM_PART_OF_SPEECH = "\"助詞,格助詞,一般,*,*,*,の\"";
+
+
+	/**
+	 * Creates a temporary directory
+	 *
+	 * @return The directory
+	 * @throws IOException
+	 */
+	private static File createDirectory() throws IOException {
+
+		File directory = File.createTempFile("dic", "");
+		directory.delete();
+		directory.mkdir();
+		directory.deleteOnExit();
+
+		return directory;
+
+	}
+
+
+	/**
+	 * Copies the lines of a file from the test dictionary that a filter
+	 * accepts
+	 *
+	 * @param filename The name of the file within the test dictionary
+	 * @param directory The directory to copy to
+	 * @param filter The filter
+	 * @throws IOException
+	 */
+	private static void copyLines(String filename, File directory, LineFilter filter) throws IOException {
+
+		File source = new File(new File(SenTestUtils.DIC_PATH).getParentFile(), filename);
+		File target = new File(directory, filename);
+		target.deleteOnExit();
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(source), "UTF-8"));
+		Writer writer = new OutputStreamWriter(new FileOutputStream(target), "UTF-8");
+		String line;
+		while ((line = reader.readLine()) != null) {
+			filter.write(line, writer);
+		}
+		reader.close();
+		writer.close();
+
+	}
+
+
+	/**
+	 * Copies the lines of a file, altering or dropping some
+	 */
+	private static interface LineFilter {
+
+		/**
+		 * Writes the copy of a line
+		 *
+		 * @param line The line
+		 * @param writer The writer of the copy
+		 * @throws IOException
+		 */
+		public void write(String line, Writer writer) throws IOException;
+
+	}
+
+
+	/**
+	 * Compiles a small dictionary whose connection costs are bigram but whose
+	 * rules name a morpheme before the left morpheme: the bigram rules of the
+	 * test dictionary, each followed by a copy of itself that names such a
+	 * morpheme, and the entries of the test dictionary found in the test
+	 * sentences
+	 *
+	 * @return The dictionary's configuration file
+	 * @throws IOException
+	 */
+	private static File buildBigramDictionary() throws IOException {
+
+		File directory = createDirectory();
+
+		copyLines(DictionaryFileNames.CONNECTION_CSV_FILENAME, directory, new LineFilter() {
+			public void write(String line, Writer writer) throws IOException {
+				if (line.startsWith(ANY_PART_OF_SPEECH + ",")) {
+					writer.write(line + "\n");
+					writer.write(TRIGRAM_PART_OF_SPEECH + line.substring(ANY_PART_OF_SPEECH.length()) + "\n");
+				}
+			}
+		});
+
+		copyLines(DictionaryFileNames.DICTIONARY_CSV_FILENAME, directory, new LineFilter() {
+			public void write(String line, Writer writer) throws IOException {
+				String surface = line.substring(0, Math.max(0, line.indexOf(',')));
+				if (surface.length() > 0) {
+					for (String sentence : SENTENCES) {
+						if (sentence.contains(surface)) {
+							writer.write(line + "\n");
+							break;
+						}
+					}
+				}
+			}
+		});
+
+		copyLines("dictionary.xml", directory, new LineFilter() {
+			public void write(String line, Writer writer) throws IOException {
+				writer.write(line + "\n");
+			}
+		});
+
+		new DictionaryBuilder(directory, new String[0]);
+		for (String filename : directory.list()) {
+			new File(directory, filename).deleteOnExit();
+		}
+
+		return new File(directory, "dictionary.xml");
+
+	}
+
+
+	/**
+	 * Copies a compiled dictionary, expanding its collapsed connection cost
+	 * matrix back into a three dimensional matrix of identical planes
+	 *
+	 * @param configurationFile The dictionary's configuration file
+	 * @param size1 The size of the first extent of the expanded matrix
+	 * @return The copy's configuration file
+	 * @throws IOException
+	 */
+	private static File expandDictionary(File configurationFile, int size1) throws IOException {
+
+		File source = configurationFile.getParentFile();
+		File directory = createDirectory();
+
+		for (String filename : source.list()) {
+
+			File target = new File(directory, filename);
+			target.deleteOnExit();
+
+			DataInputStream in = new DataInputStream(new FileInputStream(new File(source, filename)));
+			byte[] bytes = new byte[(int)new File(source, filename).length()];
+			in.readFully(bytes);
+			in.close();
+
+			DataOutputStream out = new DataOutputStream(new FileOutputStream(target));
+			if (filename.equals(DictionaryFileNames.CONNECTION_COST_DATA_FILENAME)) {
+				assertEquals(1, ((bytes[0] & 0xff) << 8) | (bytes[1] & 0xff));
+				out.writeShort(size1);
+				out.write(bytes, 2, 4);
+				for (int i = 0; i < size1; i++) {
+					out.write(bytes, 6, bytes.length - 6);
+				}
+			} else {
+				out.write(bytes);
+			}
+			out.close();
+
+		}
+
+		return new File(directory, "dictionary.xml");
+
+	}
+
+
+	/**
+	 * Tests that a connection cost matrix whose planes are identical is
+	 * collapsed to a single plane, and that the bigram analysis of the
+	 * collapsed matrix gives the same results as that of the full matrix
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testBigramMatrix() throws IOException {
+
+		String bigramPath = buildBigramDictionary().getAbsolutePath();
+		String trigramPath = expandDictionary(new File(bigramPath), 2).getAbsolutePath();
+
+		try {
+
+			Viterbi bigramViterbi = SenFactory.getViterbi(bigramPath);
+			Viterbi trigramViterbi = SenFactory.getViterbi(trigramPath);
+
+			Dictionary dictionary = bigramViterbi.getDictionary();
+			assertTrue(dictionary.isBigram());
+			assertFalse(trigramViterbi.getDictionary().isBigram());
+
+			File tokenFile = new File(new File(bigramPath).getParentFile(), DictionaryFileNames.TOKEN_DATA_FILENAME);
+			int tokenCount = (int)(tokenFile.length() / CToken.SIZE);
+			assertTrue(tokenCount > 3);
+			for (int i = 0; i < tokenCount; i++) {
+				assertEquals(0, dictionary.getRcAttr2(i));
+			}
+
+			for (String text : SENTENCES) {
+
+				List<Token> expected = trigramViterbi.getBestTokens(new Sentence(text));
+				compareTokens(expected.toArray(new Token[expected.size()]), bigramViterbi.getBestTokens(new Sentence(text)));
+				compareTokens(expected.toArray(new Token[expected.size()]), bigramViterbi.getBestTokensCompact(new Sentence(text)));
+
+				List<Segmentation> expectedSegmentations = trigramViterbi.getNBestTokens(new Sentence(text), 10);
+				List<Segmentation> segmentations = bigramViterbi.getNBestTokens(new Sentence(text), 10);
+				assertEquals(expectedSegmentations.size(), segmentations.size());
+				for (int i = 0; i < segmentations.size(); i++) {
+					List<Token> expectedTokens = expectedSegmentations.get(i).getTokens();
+					assertEquals(expectedSegmentations.get(i).getCost(), segmentations.get(i).getCost());
+					compareTokens(expectedTokens.toArray(new Token[expectedTokens.size()]), segmentations.get(i).getTokens());
+				}
+
+			}
+
+		} finally {
+			SenFactory.closeDictionary(bigramPath);
+			SenFactory.closeDictionary(trigramPath);
+		}
+
+	}
+
+
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen.dictionary;
+
+import net.java.sen.SenTestUtils;
+import net.java.sen.StringTagger;
+import net.java.sen.filter.stream.CommentFilter;
+import net.java.sen.util.Histogram;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.java.sen.SenTestUtils.compareTokens;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests the measurement of analysis through AnalysisListener
+ */
+public class AnalysisListenerTest {
+
+	/**
+	 * Sentences to analyse
+	 */
+	private static final String[] SENTENCES = new String[] {
+		"これはテストだ",
+		"麻薬の密売は根こそぎ絶やさなければならない",
+		"魔女狩大将マシュー・ホプキンス。",
+		"本来は、貧困層の女性や子供に医療保護を提供するために創設された制度である、",
+		"Ｈｅｌｌｏ　ｗｏｒｌｄ",
+		"abc def"
+	};
+
+
+	/**
+	 * A listener that keeps a copy of every statistics it is passed
+	 */
+	private static class CollectingListener implements AnalysisListener {
+
+		/**
+		 * The statistics passed to the listener
+		 */
+		final List<AnalysisStatistics> statistics = new ArrayList<AnalysisStatistics>();
+
+		/* (non-Javadoc)
+		 * @see net.java.sen.dictionary.AnalysisListener#analysed(net.java.sen.dictionary.AnalysisStatistics)
+		 */
+		@Override
+		public void analysed(AnalysisStatistics statistics) {
+
+			this.statistics.add(statistics.copy());
+
+		}
+
+	}
+
+
+	/**
+	 * Tests that each analysis is measured, and that measuring it does not
+	 * change its result
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testStatistics() throws IOException {
+
+		Viterbi viterbi = SenTestUtils.getViterbi();
+		CollectingListener listener = new CollectingListener();
+
+		for (String text : SENTENCES) {
+			List<Token> expected = viterbi.getBestTokens(new Sentence(text));
+			viterbi.setAnalysisListener(listener);
+			compareTokens(expected.toArray(new Token[expected.size()]), viterbi.getBestTokens(new Sentence(text)));
+			viterbi.setAnalysisListener(null);
+		}
+
+		assertEquals(SENTENCES.length, listener.statistics.size());
+
+		for (int i = 0; i < SENTENCES.length; i++) {
+			AnalysisStatistics statistics = listener.statistics.get(i);
+			assertEquals(SENTENCES[i].length(), statistics.getCharacters());
+			assertTrue(statistics.getNodes() > SENTENCES[i].length());
+			assertTrue(statistics.getEdges() >= statistics.getNodes() - 2);
+			assertEquals(0, statistics.getFilterCount());
+			long phases = statistics.getPrepareTime() + statistics.getLookupTime() + statistics.getConnectionTime() + statistics.getTokenTime();
+			assertTrue(phases > 0);
+			assertTrue(phases <= statistics.getTotalTime());
+		}
+
+	}
+
+
+	/**
+	 * Tests that the array based lattice counts the same nodes and
+	 * connections as the Node based lattice
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testCompactStatistics() throws IOException {
+
+		Viterbi viterbi = SenTestUtils.getViterbi();
+		CollectingListener listener = new CollectingListener();
+		viterbi.setAnalysisListener(listener);
+
+		for (String text : SENTENCES) {
+			viterbi.getBestTokens(new Sentence(text));
+			viterbi.getBestTokensCompact(new Sentence(text));
+		}
+
+		for (int i = 0; i < SENTENCES.length; i++) {
+			AnalysisStatistics statistics = listener.statistics.get(i * 2);
+			AnalysisStatistics compactStatistics = listener.statistics.get((i * 2) + 1);
+			assertEquals(statistics.getNodes(), compactStatistics.getNodes());
+			assertEquals(statistics.getEdges(), compactStatistics.getEdges());
+			assertEquals(statistics.getUnknownNodes(), compactStatistics.getUnknownNodes());
+		}
+
+	}
+
+
+	/**
+	 * Tests that unknown morphemes are counted
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testUnknownNodes() throws IOException {
+
+		Viterbi viterbi = SenTestUtils.getViterbi();
+		CollectingListener listener = new CollectingListener();
+		viterbi.setAnalysisListener(listener);
+
+		viterbi.getBestTokens(new Sentence("abc def"));
+
+		assertTrue(listener.statistics.get(0).getUnknownNodes() > 0);
+
+	}
+
+
+	/**
+	 * Tests that the n-best and windowed analyses are each measured once
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testOtherAnalyses() throws IOException {
+
+		Viterbi viterbi = SenTestUtils.getViterbi();
+		CollectingListener listener = new CollectingListener();
+		viterbi.setAnalysisListener(listener);
+
+		viterbi.getNBestTokens(new Sentence(SENTENCES[1]), 3);
+		viterbi.getBestTokens(new Sentence(SENTENCES[3]), 4, new TokenListener() {
+			@Override
+			public void token(Token token) {
+			}
+		});
+
+		assertEquals(2, listener.statistics.size());
+		for (AnalysisStatistics statistics : listener.statistics) {
+			assertTrue(statistics.getNodes() > 0);
+			assertTrue(statistics.getEdges() > 0);
+		}
+
+	}
+
+
+	/**
+	 * Tests that a StringTagger reports the time spent in its filters
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testFilterTimes() throws IOException {
+
+		StringTagger tagger = SenTestUtils.getStringTagger();
+		CommentFilter filter = new CommentFilter();
+		filter.readRules(new BufferedReader(new StringReader("麻薬 の 記号-注釈")));
+		tagger.addFilter(filter);
+
+		List<Token> expected = tagger.analyze(SENTENCES[1]);
+
+		CollectingListener listener = new CollectingListener();
+		tagger.setAnalysisListener(listener);
+		compareTokens(expected.toArray(new Token[expected.size()]), tagger.analyze(SENTENCES[1]));
+
+		assertEquals(1, listener.statistics.size());
+		AnalysisStatistics statistics = listener.statistics.get(0);
+		assertEquals(1, statistics.getFilterCount());
+		assertEquals("CommentFilter", statistics.getFilterName(0));
+		assertTrue(statistics.getFilterTime(0) > 0);
+
+		tagger.setAnalysisListener(null);
+		assertNull(tagger.getAnalysisListener());
+		tagger.analyze(SENTENCES[1]);
+		assertEquals(1, listener.statistics.size());
+
+	}
+
+
+	/**
+	 * Tests the aggregation of statistics into histograms
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testHistograms() throws IOException {
+
+		Viterbi viterbi = SenTestUtils.getViterbi();
+		AnalysisHistograms histograms = new AnalysisHistograms();
+		viterbi.setAnalysisListener(histograms);
+
+		for (String text : SENTENCES) {
+			viterbi.getBestTokens(new Sentence(text));
+		}
+
+		assertEquals(SENTENCES.length, histograms.getTotalTime().getCount());
+		assertEquals(7, histograms.getCharacters().getMin());
+		assertEquals(SENTENCES[3].length(), histograms.getCharacters().getMax());
+		assertTrue(histograms.getNodes().getPercentile(50) > 0);
+
+		Histogram histogram = new Histogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500.5, histogram.getMean(), 0.001);
+		assertEquals(1, histogram.getPercentile(0));
+		assertEquals(1000, histogram.getPercentile(100));
+		long median = histogram.getPercentile(50);
+		assertTrue((median >= 500) && (median <= 500 + (500 / 16)));
+		long p99 = histogram.getPercentile(99);
+		assertTrue((p99 >= 990) && (p99 <= 1000));
+
+	}
+
+
+}
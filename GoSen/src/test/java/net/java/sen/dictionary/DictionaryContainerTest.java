@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package net.java.sen.dictionary;
+
+import net.java.sen.SenFactory;
+import net.java.sen.SenTestUtils;
+import net.java.sen.util.BufferCache;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static net.java.sen.SenTestUtils.compareTokens;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Tests for DictionaryContainer
+ */
+public class DictionaryContainerTest {
+
+	/**
+	 * Sentences to analyse
+	 */
+	private static final String[] SENTENCES = new String[] {
+		"これはテストだ",
+		"麻薬の密売は根こそぎ絶やさなければならない",
+		"本来は、貧困層の女性や子供に医療保護を提供するために創設された制度である、",
+		"abc def"
+	};
+
+
+	/**
+	 * Packs the test dictionary into a temporary container
+	 *
+	 * @return The container file
+	 * @throws IOException
+	 */
+	private static File pack() throws IOException {
+
+		File containerFile = File.createTempFile("dic", ".sen");
+		containerFile.deleteOnExit();
+		SenFactory.packDictionary(SenTestUtils.DIC_PATH, containerFile.getAbsolutePath(), "test dictionary");
+
+		return containerFile;
+
+	}
+
+
+	/**
+	 * Copies a file, changing one byte of the copy
+	 *
+	 * @param source The file to copy
+	 * @param position The position of the byte to change, or -1 to change
+	 *                 none
+	 * @param length The length of the copy
+	 * @return The copy
+	 * @throws IOException
+	 */
+	private static File damagedCopy(File source, long position, long length) throws IOException {
+
+		File copy = File.createTempFile("dic", ".sen");
+		copy.deleteOnExit();
+
+		RandomAccessFile in = new RandomAccessFile(source, "r");
+		RandomAccessFile out = new RandomAccessFile(copy, "rw");
+		byte[] bytes = new byte[(int)length];
+		in.readFully(bytes);
+		if (position != -1) {
+			bytes[(int)position] ^= 0x55;
+		}
+		out.write(bytes);
+		in.close();
+		out.close();
+
+		return copy;
+
+	}
+
+
+	/**
+	 * Asserts that a container fails to open
+	 *
+	 * @param file The container file
+	 * @param verifyChecksums Whether to verify the section checksums
+	 */
+	private static void assertInvalid(File file, boolean verifyChecksums) {
+
+		try {
+			DictionaryContainer.open(file, verifyChecksums);
+			fail("Invalid container opened");
+		} catch (IOException e) {
+			// Expected
+		}
+
+	}
+
+
+	/**
+	 * Tests that a packed container records the dictionary's configuration
+	 * and passes validation
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testMetadata() throws IOException {
+
+		File containerFile = pack();
+
+		assertTrue(DictionaryContainer.isContainer(containerFile));
+		assertFalse(DictionaryContainer.isContainer(new File(SenTestUtils.DIC_PATH)));
+
+		DictionaryContainer container = DictionaryContainer.open(containerFile, true);
+		assertEquals(DictionaryContainer.DICTIONARY_VERSION, container.getDictionaryVersion());
+		assertEquals("net.java.sen.tokenizers.ja.JapaneseTokenizer", container.getTokenizerClassName());
+		assertEquals("未知語", container.getUnknownPartOfSpeechDescription());
+		assertEquals("test dictionary", container.getDescription());
+		assertTrue(container.getBuildTime() > 0);
+
+	}
+
+
+	/**
+	 * Tests that a dictionary loaded from a container analyses in the same
+	 * way as one loaded from its separate files
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testAnalysis() throws IOException {
+
+		File containerFile = pack();
+
+		Viterbi expectedViterbi = SenTestUtils.getViterbi();
+		Viterbi viterbi = SenFactory.getViterbi(containerFile.getAbsolutePath());
+
+		for (String text : SENTENCES) {
+			List<Token> expected = expectedViterbi.getBestTokens(new Sentence(text));
+			compareTokens(expected.toArray(new Token[expected.size()]), viterbi.getBestTokens(new Sentence(text)));
+		}
+
+	}
+
+
+	/**
+	 * Tests that a Dictionary created from a container remains usable after
+	 * the container is closed, and releases the file when it is closed
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testClose() throws IOException {
+
+		File containerFile = pack();
+
+		DictionaryContainer container = DictionaryContainer.open(containerFile, false);
+		Dictionary dictionary = new Dictionary(container, false);
+		assertEquals(2, BufferCache.getReferenceCount(containerFile));
+
+		container.close();
+		assertEquals(1, BufferCache.getReferenceCount(containerFile));
+		CToken token = new CToken();
+		dictionary.readToken(3, token);
+		assertTrue(dictionary.getPartOfSpeechCache().get(token.partOfSpeechIndex) != null);
+
+		dictionary.close();
+		assertEquals(0, BufferCache.getReferenceCount(containerFile));
+
+		// A factory dictionary is released when it is closed
+		String path = containerFile.getAbsolutePath();
+		Viterbi viterbi = SenFactory.getViterbi(path);
+		viterbi.getBestTokens(new Sentence(SENTENCES[0]));
+		assertEquals(1, BufferCache.getReferenceCount(containerFile));
+		SenFactory.closeDictionary(path);
+		assertEquals(0, BufferCache.getReferenceCount(containerFile));
+
+	}
+
+
+	/**
+	 * Tests that damaged containers are rejected
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testDamaged() throws IOException {
+
+		File containerFile = pack();
+		long length = containerFile.length();
+
+		// A damaged header is always detected
+		assertInvalid(damagedCopy(containerFile, 40, length), false);
+
+		// As is a truncated file
+		assertInvalid(damagedCopy(containerFile, -1, length - 8), false);
+
+		// A damaged section is only detected when the checksums are verified
+		File damagedSection = damagedCopy(containerFile, length - 16, length);
+		DictionaryContainer container = DictionaryContainer.open(damagedSection, false);
+		try {
+			container.verifyChecksums();
+			fail("Damaged section not detected");
+		} catch (IOException e) {
+			// Expected
+		}
+		assertInvalid(damagedSection, true);
+
+	}
+
+
+	/**
+	 * Tests that the Morphemes of Tokens returned before their dictionary is
+	 * closed throw rather than read the unmapped files, unless their data was
+	 * read before the close
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testTokensAfterClose() throws IOException {
+
+		String path = pack().getAbsolutePath();
+		Viterbi viterbi = SenFactory.getViterbi(path);
+		List<Token> tokens = viterbi.getBestTokens(new Sentence(SENTENCES[1]));
+		String partOfSpeech = tokens.get(0).getMorpheme().getPartOfSpeech();
+
+		SenFactory.closeDictionary(path);
+
+		assertEquals(partOfSpeech, tokens.get(0).getMorpheme().getPartOfSpeech());
+		for (int i = 1; i < tokens.size(); i++) {
+			try {
+				tokens.get(i).getMorpheme().getPartOfSpeech();
+				fail("Morpheme read from a closed dictionary");
+			} catch (IllegalStateException e) {
+				// Expected
+			}
+		}
+
+	}
+
+
+}
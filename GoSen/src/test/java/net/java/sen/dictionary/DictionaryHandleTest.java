@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package net.java.sen.dictionary;
+
+import net.java.sen.SenFactory;
+import net.java.sen.SenTestUtils;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.java.sen.SenTestUtils.compareTokens;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Tests for DictionaryHandle
+ */
+public class DictionaryHandleTest {
+
+	/**
+	 * A sentence to analyse
+	 */
+	private static final String TEXT = "麻薬の密売は根こそぎ絶やさなければならない";
+
+
+	/**
+	 * Packs the test dictionary into a temporary container, to swap to
+	 *
+	 * @return The container filename
+	 * @throws IOException
+	 */
+	private static String pack() throws IOException {
+
+		File containerFile = File.createTempFile("dic", ".sen");
+		containerFile.deleteOnExit();
+		SenFactory.packDictionary(SenTestUtils.DIC_PATH, containerFile.getAbsolutePath(), "");
+
+		return containerFile.getAbsolutePath();
+
+	}
+
+
+	/**
+	 * Tests that a swap takes effect for the next analysis, and that the old
+	 * dictionary is closed at once when no analysis is using it
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testSwap() throws IOException {
+
+		List<Token> expected = SenTestUtils.getViterbi().getBestTokens(new Sentence(TEXT));
+
+		DictionaryHandle handle = SenFactory.openDictionaryHandle(SenTestUtils.DIC_PATH);
+		Viterbi viterbi = SenFactory.getViterbi(handle);
+		assertEquals(1, handle.getGeneration());
+		compareTokens(expected.toArray(new Token[expected.size()]), viterbi.getBestTokens(new Sentence(TEXT)));
+
+		Dictionary oldDictionary = viterbi.getDictionary();
+		assertEquals(2, SenFactory.swapDictionary(handle, pack()));
+		assertEquals(2, handle.getGeneration());
+		assertEquals(1, handle.getSwapCount());
+		assertTrue(handle.getLastSwapLatency() > 0);
+		assertEquals(handle.getLastSwapLatency(), handle.getMaxSwapLatency());
+		assertTrue(oldDictionary.isClosed());
+		assertEquals(0, handle.getDrainingCount());
+
+		Dictionary newDictionary = viterbi.getDictionary();
+		assertFalse(newDictionary == oldDictionary);
+		compareTokens(expected.toArray(new Token[expected.size()]), viterbi.getBestTokens(new Sentence(TEXT)));
+		compareTokens(expected.toArray(new Token[expected.size()]), viterbi.getBestTokensCompact(new Sentence(TEXT)));
+
+		handle.close();
+		assertTrue(newDictionary.isClosed());
+		assertEquals(0, handle.getGeneration());
+		try {
+			viterbi.getBestTokens(new Sentence(TEXT));
+			fail("Closed handle used");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+
+	}
+
+
+	/**
+	 * Tests that an analysis in progress during a swap finishes on the old
+	 * dictionary, which is closed when it finishes, and that the Tokens it
+	 * returned remain usable
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testSwapDuringAnalysis() throws IOException {
+
+		final String containerFilename = pack();
+		final DictionaryHandle handle = SenFactory.openDictionaryHandle(SenTestUtils.DIC_PATH);
+		final Viterbi viterbi = new Viterbi(handle);
+		final Dictionary oldDictionary = handle.getTokenizer().getDictionary();
+		final List<Token> tokens = new ArrayList<Token>();
+
+		viterbi.getBestTokens(new Sentence(TEXT), 4, new TokenListener() {
+			public void token(Token token) throws IOException {
+				if (tokens.isEmpty()) {
+					SenFactory.swapDictionary(handle, containerFilename);
+					assertFalse(oldDictionary.isClosed());
+					assertEquals(1, handle.getDrainingCount());
+				}
+				tokens.add(token);
+			}
+		});
+
+		assertTrue(oldDictionary.isClosed());
+		assertEquals(0, handle.getDrainingCount());
+		assertTrue(handle.getLastDrainTime() > 0);
+
+		final List<Token> expected = new ArrayList<Token>();
+		SenTestUtils.getViterbi().getBestTokens(new Sentence(TEXT), 4, new TokenListener() {
+			public void token(Token token) {
+				expected.add(token);
+			}
+		});
+		compareTokens(expected.toArray(new Token[expected.size()]), tokens);
+
+		// The next analysis uses the new dictionary
+		viterbi.getBestTokens(new Sentence(TEXT));
+		assertSame(handle.getTokenizer().getDictionary(), viterbi.getDictionary());
+
+		handle.close();
+
+	}
+
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package net.java.sen.dictionary;
+
+import net.java.sen.SenTestUtils;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Tests the sharing of decoded part-of-speech data between Morphemes
+ */
+public class PartOfSpeechCacheTest {
+
+	/**
+	 * Tests that repeated analysis of a sentence is satisfied from the cache,
+	 * and that Morphemes of the same part-of-speech share their data
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testCacheHits() throws IOException {
+
+		Viterbi viterbi = SenTestUtils.getViterbi();
+		String text = "麻薬の密売は根こそぎ絶やさなければならない";
+
+		PartOfSpeechCache cache = viterbi.getDictionary().getPartOfSpeechCache();
+
+		List<Token> tokens1 = viterbi.getBestTokens(new Sentence(text));
+		for (Token token : tokens1) {
+			token.getMorpheme().getReadings();
+		}
+		long hitCount = cache.getHitCount();
+		long missCount = cache.getMissCount();
+
+		List<Token> tokens2 = viterbi.getBestTokens(new Sentence(text));
+		for (int i = 0; i < tokens1.size(); i++) {
+			assertSame(tokens1.get(i).getMorpheme().getReadings(), tokens2.get(i).getMorpheme().getReadings());
+		}
+
+		assertEquals(hitCount + tokens1.size(), cache.getHitCount());
+		assertEquals(missCount, cache.getMissCount());
+		assertTrue(cache.size() <= cache.getCapacity());
+
+	}
+
+
+	/**
+	 * Tests that altering a Morpheme does not alter other Morphemes that
+	 * share its part-of-speech data
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testCopyOnWrite() throws IOException {
+
+		Viterbi viterbi = SenTestUtils.getViterbi();
+		String text = "これはテストだ";
+
+		Morpheme morpheme1 = viterbi.getBestTokens(new Sentence(text)).get(0).getMorpheme();
+		Morpheme morpheme2 = viterbi.getBestTokens(new Sentence(text)).get(0).getMorpheme();
+		List<String> readings = morpheme2.getReadings();
+		String partOfSpeech = morpheme2.getPartOfSpeech();
+
+		morpheme1.setReadings(Arrays.asList("テスト"));
+		morpheme1.setPartOfSpeech("名詞");
+
+		assertEquals(Arrays.asList("テスト"), morpheme1.getReadings());
+		assertEquals(readings, morpheme2.getReadings());
+		assertFalse(readings.contains("テスト"));
+		assertEquals(partOfSpeech, morpheme2.getPartOfSpeech());
+
+		try {
+			morpheme2.getReadings().add("テスト");
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// Expected
+		}
+
+	}
+
+
+}
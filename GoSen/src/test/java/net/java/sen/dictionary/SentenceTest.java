@@ -19,17 +19,23 @@
 
 package net.java.sen.dictionary;
 
+import net.java.sen.SenFactory;
 import net.java.sen.SenTestUtils;
+import net.java.sen.StringTagger;
+import net.java.sen.filter.StreamFilter;
 
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
 
 import static net.java.sen.SenTestUtils.compareTokens;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -924,4 +930,129 @@ public class SentenceTest {
 	}
 
 
+	/**
+	 * Tests that a Sentence of a range of a larger array is analysed exactly
+	 * as a Sentence of a copy of the range, without reading the characters
+	 * outside the range
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testRange() throws IOException {
+
+		String text = "麻薬の密売は根こそぎ絶やさなければならない";
+		char[] buffer = ("密売" + text + "ならない").toCharArray();
+
+		Viterbi viterbi = SenTestUtils.getViterbi();
+		List<Token> expected = viterbi.getBestTokens(new Sentence(text));
+		Token[] expectedTokens = expected.toArray(new Token[expected.size()]);
+
+		Sentence sentence = new Sentence(buffer, 2, text.length());
+		assertSame(buffer, sentence.getArray());
+		assertEquals(2, sentence.getOffset());
+		assertEquals(text.length(), sentence.length());
+		assertEquals(text, new String(sentence.getCharacters()));
+		assertSame(buffer, new Sentence(buffer).getCharacters());
+		compareTokens(expectedTokens, viterbi.getBestTokens(sentence));
+		compareTokens(expectedTokens, viterbi.getBestTokensCompact(new Sentence(buffer, 2, text.length())));
+
+		TokenList tokenList = viterbi.getBestTokenList(new Sentence(buffer, 2, text.length()));
+		compareTokens(expectedTokens, tokenList);
+		assertSame(buffer, tokenList.getArray());
+		assertEquals(2, tokenList.getOffset());
+
+		compareTokens(
+				viterbi.getPossibleTokens(new Sentence(text), 3).toArray(new Token[0]),
+				viterbi.getPossibleTokens(new Sentence(buffer, 2, text.length()), 3)
+		);
+
+		Reading constraint = new Reading(0, 2, "マヤク");
+		Sentence constrainedSentence = new Sentence(text);
+		constrainedSentence.setReadingConstraint(constraint);
+		List<Token> constrainedTokens = viterbi.getBestTokens(constrainedSentence);
+		Sentence constrainedRange = new Sentence(buffer, 2, text.length());
+		constrainedRange.setReadingConstraint(constraint);
+		compareTokens(constrainedTokens.toArray(new Token[constrainedTokens.size()]), viterbi.getBestTokens(constrainedRange));
+
+		StringTagger tagger = SenTestUtils.getStringTagger();
+		compareTokens(expectedTokens, tagger.analyze(buffer, 2, text.length()));
+		compareTokens(expectedTokens, tagger.analyze(new StringBuilder(text)));
+
+		try {
+			new Sentence(buffer, 2, buffer.length);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+
+	}
+
+
+	/**
+	 * Tests that a Sentence of a CharBuffer refers to the buffer's array
+	 * where it has one, and copies its characters otherwise
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testCharBuffer() throws IOException {
+
+		String text = "麻薬の密売は根こそぎ絶やさなければならない";
+		char[] buffer = ("密売" + text + "ならない").toCharArray();
+
+		Viterbi viterbi = SenTestUtils.getViterbi();
+		List<Token> expected = viterbi.getBestTokens(new Sentence(text));
+		Token[] expectedTokens = expected.toArray(new Token[expected.size()]);
+
+		CharBuffer wrapped = CharBuffer.wrap(buffer, 2, text.length());
+		Sentence sentence = new Sentence(wrapped);
+		assertSame(buffer, sentence.getArray());
+		assertEquals(2, sentence.getOffset());
+		assertEquals(2, wrapped.position());
+		compareTokens(expectedTokens, viterbi.getBestTokens(sentence));
+
+		CharBuffer readOnly = CharBuffer.wrap("密売" + text);
+		readOnly.position(2);
+		Sentence copiedSentence = new Sentence(readOnly);
+		assertEquals(0, copiedSentence.getOffset());
+		assertEquals(text, new String(copiedSentence.getCharacters()));
+		compareTokens(expectedTokens, viterbi.getBestTokens(copiedSentence));
+
+		StringTagger tagger = SenTestUtils.getStringTagger();
+		compareTokens(expectedTokens, tagger.analyze(CharBuffer.wrap(buffer, 2, text.length())));
+
+	}
+
+
+	/**
+	 * Tests that a filter reading a Sentence's characters sees exactly the
+	 * analysed text, though StringTagger analyses each string in a reusable
+	 * buffer
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testFilterCharacters() throws IOException {
+
+		final List<String> filteredText = new ArrayList<String>();
+
+		StringTagger tagger = SenFactory.getStringTagger(SenTestUtils.DIC_PATH);
+		tagger.addFilter(new StreamFilter() {
+			public void preProcess(Sentence sentence) {
+				filteredText.add(new String(sentence.getCharacters()));
+			}
+			public List<Token> postProcess(List<Token> tokens) {
+				return tokens;
+			}
+		});
+
+		tagger.analyze("麻薬の密売は根こそぎ絶やさなければならない");
+		tagger.analyze("これはテストだ");
+
+		assertEquals("麻薬の密売は根こそぎ絶やさなければならない", filteredText.get(0));
+		assertEquals("これはテストだ", filteredText.get(1));
+
+	}
+
+
 }
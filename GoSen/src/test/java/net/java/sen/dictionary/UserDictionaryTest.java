@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen.dictionary;
+
+import net.java.sen.SenFactory;
+import net.java.sen.SenTestUtils;
+import net.java.sen.compiler.UserDictionaryBuilder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Tests for UserDictionary and UserDictionaryBuilder
+ */
+public class UserDictionaryTest {
+
+	/**
+	 * A sentence containing a word absent from the system dictionary
+	 */
+	private static final String TEXT = "私は蛸壺屋に行く";
+
+
+	/**
+	 * Creates a builder for the test dictionary
+	 *
+	 * @param tokenizer The test dictionary's tokenizer
+	 * @return The builder
+	 * @throws IOException
+	 */
+	private static UserDictionaryBuilder getBuilder(Tokenizer tokenizer) throws IOException {
+
+		String connectionCSVFilename = new File(new File(SenTestUtils.DIC_PATH).getParentFile(), "connection.csv").getPath();
+
+		return new UserDictionaryBuilder(connectionCSVFilename, tokenizer.getDictionary());
+
+	}
+
+
+	/**
+	 * Gets the surfaces of a list of tokens
+	 *
+	 * @param tokens The tokens
+	 * @return The surfaces
+	 */
+	private static List<String> surfaces(List<Token> tokens) {
+
+		List<String> surfaces = new ArrayList<String>();
+		for (Token token : tokens) {
+			surfaces.add(token.getSurface());
+		}
+
+		return surfaces;
+
+	}
+
+
+	/**
+	 * Tests that a user word is found by both lattice implementations, and
+	 * that replacing and removing the user dictionary takes effect for the
+	 * next analysis
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testOverlay() throws IOException {
+
+		DictionaryHandle handle = SenFactory.openDictionaryHandle(SenTestUtils.DIC_PATH);
+		Tokenizer tokenizer = handle.getTokenizer();
+		Viterbi viterbi = new Viterbi(tokenizer);
+		List<String> before = surfaces(viterbi.getBestTokens(new Sentence(TEXT)));
+
+		UserDictionaryBuilder builder = getBuilder(tokenizer);
+		builder.add("蛸壺屋,100,名詞,固有名詞,一般,*,*,*,蛸壺屋,タコツボヤ,タコツボヤ");
+		tokenizer.setUserDictionary(builder.build());
+
+		List<Token> tokens = viterbi.getBestTokens(new Sentence(TEXT));
+		assertEquals("蛸壺屋", tokens.get(2).getSurface());
+		assertEquals(2, tokens.get(2).getStart());
+		assertEquals("名詞-固有名詞-一般", tokens.get(2).getMorpheme().getPartOfSpeech());
+		assertEquals("タコツボヤ", tokens.get(2).getMorpheme().getReadings().get(0));
+		assertEquals(surfaces(tokens), surfaces(viterbi.getBestTokensCompact(new Sentence(TEXT))));
+		assertEquals("名詞-固有名詞-一般", viterbi.getBestTokensCompact(new Sentence(TEXT)).get(2).getMorpheme().getPartOfSpeech());
+
+		// Replacing the word changes its data
+		builder.add("蛸壺屋,100,名詞,固有名詞,一般,*,*,*,蛸壺屋,タコツボヤ,タコツボヤー");
+		assertEquals(1, builder.size());
+		tokenizer.setUserDictionary(builder.build());
+		tokens = viterbi.getBestTokens(new Sentence(TEXT));
+		assertEquals("タコツボヤー", tokens.get(2).getMorpheme().getPronunciations().get(0));
+
+		// Removing the word restores the original analysis
+		assertEquals(1, builder.remove("蛸壺屋"));
+		tokenizer.setUserDictionary(builder.build());
+		assertEquals(before, surfaces(viterbi.getBestTokens(new Sentence(TEXT))));
+
+		tokenizer.setUserDictionary(null);
+		assertNull(tokenizer.getUserDictionary());
+		assertEquals(before, surfaces(viterbi.getBestTokens(new Sentence(TEXT))));
+
+		handle.close();
+
+	}
+
+
+	/**
+	 * Tests that many words sharing surfaces and prefixes can be read and
+	 * found
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testRead() throws IOException {
+
+		DictionaryHandle handle = SenFactory.openDictionaryHandle(SenTestUtils.DIC_PATH);
+		Tokenizer tokenizer = handle.getTokenizer();
+		Viterbi viterbi = new Viterbi(tokenizer);
+
+		StringBuilder csv = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			csv.append("蛸壺" + i + ",100,名詞,固有名詞,一般,*,*,*,蛸壺" + i + ",タコツボ,タコツボ\n");
+		}
+		csv.append("蛸壺,3000,名詞,一般,*,*,*,*,蛸壺,タコツボ,タコツボ\n");
+		csv.append("蛸壺,3000,名詞,固有名詞,一般,*,*,*,蛸壺,タコツボ,タコツボ\n");
+
+		UserDictionaryBuilder builder = getBuilder(tokenizer);
+		assertEquals(5002, builder.read(new ByteArrayInputStream(csv.toString().getBytes("UTF-8")), "UTF-8"));
+		UserDictionary userDictionary = builder.build();
+		assertEquals(5002, userDictionary.size());
+		tokenizer.setUserDictionary(userDictionary);
+
+		List<Token> tokens = viterbi.getBestTokens(new Sentence("蛸壺4321を見る"));
+		assertEquals("蛸壺4321", tokens.get(0).getSurface());
+
+		int count = 0;
+		for (Token token : viterbi.getPossibleTokens(new Sentence("蛸壺を見る"), 0)) {
+			if (token.getSurface().equals("蛸壺")) {
+				count++;
+			}
+		}
+		assertEquals(2, count);
+
+		handle.close();
+
+	}
+
+
+	/**
+	 * Tests that malformed words are rejected
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testInvalid() throws IOException {
+
+		DictionaryHandle handle = SenFactory.openDictionaryHandle(SenTestUtils.DIC_PATH);
+		UserDictionaryBuilder builder = getBuilder(handle.getTokenizer());
+
+		try {
+			builder.add("蛸壺屋,100,名詞");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+
+		try {
+			builder.add("蛸壺屋,100,名詞,存在しない,*,*,*,*,蛸壺屋,タコツボヤ,タコツボヤ");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+
+		try {
+			builder.read(new ByteArrayInputStream("蛸壺屋,x,名詞,一般,*,*,*,*,蛸壺屋,タコツボヤ,タコツボヤ\n".getBytes("UTF-8")), "UTF-8");
+			fail();
+		} catch (IOException e) {
+			// Expected
+		}
+
+		assertEquals(0, builder.size());
+		assertEquals(0, builder.build().size());
+
+		handle.close();
+
+	}
+
+
+}
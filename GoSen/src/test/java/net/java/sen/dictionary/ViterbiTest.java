@@ -0,0 +1,455 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package net.java.sen.dictionary;
+
+import net.java.sen.SenFactory;
+import net.java.sen.SenTestUtils;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static net.java.sen.SenTestUtils.compareTokens;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Tests the alternative analysis methods of Viterbi
+ */
+public class ViterbiTest {
+
+	/**
+	 * Sentences to analyse
+	 */
+	private static final String[] SENTENCES = new String[] {
+		"これはテストだ",
+		"麻薬の密売は根こそぎ絶やさなければならない",
+		"魔女狩大将マシュー・ホプキンス。",
+		"本来は、貧困層の女性や子供に医療保護を提供するために創設された制度である、",
+		"Ｈｅｌｌｏ　ｗｏｒｌｄ",
+		"abc def",
+		"abc def  ",
+		""
+	};
+
+
+	/**
+	 * Tests that the array based lattice finds the same tokens as the Node
+	 * based lattice
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testCompactLattice() throws IOException {
+
+		Viterbi viterbi = SenTestUtils.getViterbi();
+
+		for (String text : SENTENCES) {
+			List<Token> expected = viterbi.getBestTokens(new Sentence(text));
+			compareTokens(expected.toArray(new Token[expected.size()]), viterbi.getBestTokensCompact(new Sentence(text)));
+		}
+
+	}
+
+
+	/**
+	 * Tests that the primitive array result holds the same tokens as the
+	 * Node based lattice, and creates each Token only once
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testTokenList() throws IOException {
+
+		Viterbi viterbi = SenTestUtils.getViterbi();
+
+		for (String text : SENTENCES) {
+			List<Token> expected = viterbi.getBestTokens(new Sentence(text));
+			TokenList tokens = viterbi.getBestTokenList(new Sentence(text));
+
+			assertEquals(expected.size(), tokens.size());
+			for (int i = 0; i < tokens.size(); i++) {
+				Token token = expected.get(i);
+				assertEquals(token.getStart(), tokens.getStart(i));
+				assertEquals(token.getLength(), tokens.getLength(i));
+				assertEquals(token.getCost(), tokens.getCost(i));
+				assertEquals(token.getSurface(), tokens.getSurface(i));
+				assertEquals(token.getMorpheme(), tokens.getMorpheme(i));
+			}
+			compareTokens(expected.toArray(new Token[expected.size()]), tokens);
+
+			if (tokens.size() > 0) {
+				assertSame(tokens.get(0), tokens.get(0));
+				assertSame(tokens.get(0).getMorpheme(), tokens.getMorpheme(0));
+			}
+		}
+
+		try {
+			viterbi.getBestTokenList(new Sentence(SENTENCES[0])).add(new Token());
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// Expected
+		}
+
+	}
+
+
+	/**
+	 * Tests that the array based lattice honours reading constraints in the
+	 * same way as the Node based lattice
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testCompactLatticeConstraint() throws IOException {
+
+		Viterbi viterbi = SenTestUtils.getViterbi();
+
+		String text = "麻薬の密売は根こそぎ絶やさなければならない";
+		Sentence sentence = new Sentence(text);
+		sentence.setReadingConstraint(new Reading(1, 2, "テスト"));
+		List<Token> expected = viterbi.getBestTokens(sentence);
+
+		sentence = new Sentence(text);
+		sentence.setReadingConstraint(new Reading(1, 2, "テスト"));
+		compareTokens(expected.toArray(new Token[expected.size()]), viterbi.getBestTokensCompact(sentence));
+
+	}
+
+
+
+	/**
+	 * Tests that the N-best segmentations begin with the best segmentation,
+	 * are distinct, cover the whole sentence and are ordered by cost
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testNBestTokens() throws IOException {
+
+		Viterbi viterbi = SenTestUtils.getViterbi();
+
+		for (String text : SENTENCES) {
+			List<Token> expected = viterbi.getBestTokens(new Sentence(text));
+			List<Segmentation> segmentations = viterbi.getNBestTokens(new Sentence(text), 10);
+
+			assertTrue(segmentations.size() >= 1);
+			assertTrue(segmentations.size() <= 10);
+			compareTokens(expected.toArray(new Token[expected.size()]), segmentations.get(0).getTokens());
+
+			Set<String> seen = new HashSet<String>();
+			int lastCost = Integer.MIN_VALUE;
+			for (Segmentation segmentation : segmentations) {
+				assertTrue(segmentation.getCost() >= lastCost);
+				lastCost = segmentation.getCost();
+
+				StringBuilder surface = new StringBuilder();
+				StringBuilder key = new StringBuilder();
+				for (Token token : segmentation.getTokens()) {
+					surface.append(token.getSurface());
+					key.append(token.getStart() + ":" + token.getLength() + ":" + token.getMorpheme() + "/" + token.getMorpheme().getReadings() + ";");
+				}
+				assertEquals(text.replace(" ", ""), surface.toString());
+				assertTrue(seen.add(key.toString()));
+			}
+		}
+
+	}
+
+
+	/**
+	 * Tests that the number of N-best segmentations is limited as requested
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testNBestTokensLimit() throws IOException {
+
+		Viterbi viterbi = SenTestUtils.getViterbi();
+		String text = "麻薬の密売は根こそぎ絶やさなければならない";
+
+		assertEquals(0, viterbi.getNBestTokens(new Sentence(text), 0).size());
+		assertEquals(1, viterbi.getNBestTokens(new Sentence(text), 1).size());
+		assertEquals(5, viterbi.getNBestTokens(new Sentence(text), 5).size());
+
+	}
+
+
+	/**
+	 * Analyses a sentence in windows, collecting the tokens passed to the
+	 * listener
+	 *
+	 * @param viterbi The Viterbi to analyse with
+	 * @param text The sentence
+	 * @param maxWindow The window size
+	 * @return The tokens
+	 * @throws IOException
+	 */
+	private static List<Token> getWindowedTokens(Viterbi viterbi, String text, int maxWindow) throws IOException {
+
+		final List<Token> tokens = new ArrayList<Token>();
+		viterbi.getBestTokens(new Sentence(text), maxWindow, new TokenListener() {
+			@Override
+			public void token(Token token) {
+				tokens.add(token);
+			}
+		});
+
+		return tokens;
+
+	}
+
+
+	/**
+	 * Tests that windowed analysis finds the same tokens as whole sentence
+	 * analysis while the paths converge within the window, including when the
+	 * window is moved many times
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testWindowedBestTokens() throws IOException {
+
+		Viterbi viterbi = SenTestUtils.getViterbi();
+
+		StringBuilder longText = new StringBuilder();
+		for (String text : SENTENCES) {
+			longText.append(text);
+		}
+
+		List<String> texts = new ArrayList<String>();
+		for (String text : SENTENCES) {
+			texts.add(text);
+		}
+		texts.add(longText.toString());
+
+		for (String text : texts) {
+			List<Token> expected = viterbi.getBestTokens(new Sentence(text));
+			compareTokens(expected.toArray(new Token[expected.size()]), getWindowedTokens(viterbi, text, 1024));
+			compareTokens(expected.toArray(new Token[expected.size()]), getWindowedTokens(viterbi, text, 8));
+		}
+
+	}
+
+
+	/**
+	 * Tests that forced commits in a window too small for the paths to
+	 * converge still cover the sentence with tokens in order
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testWindowedBestTokensForced() throws IOException {
+
+		Viterbi viterbi = SenTestUtils.getViterbi();
+
+		for (String text : SENTENCES) {
+			int end = 0;
+			StringBuilder surfaces = new StringBuilder();
+			for (Token token : getWindowedTokens(viterbi, text, 1)) {
+				assertTrue(token.getStart() >= end);
+				assertEquals(text.substring(token.getStart(), token.end()), token.getSurface());
+				end = token.end();
+				surfaces.append(token.getSurface());
+			}
+			assertEquals(text.replace(" ", ""), surfaces.toString());
+		}
+
+	}
+
+
+	/**
+	 * Tests that a beam wide enough to hold every candidate finds the same
+	 * tokens as exact analysis, and that the narrowest beams still cover the
+	 * sentence with tokens in order
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testBeam() throws IOException {
+
+		Viterbi viterbi = SenTestUtils.getViterbi();
+
+		try {
+			for (String text : SENTENCES) {
+				List<Token> expected = viterbi.getBestTokens(new Sentence(text));
+
+				viterbi.setBeamWidth(1000);
+				viterbi.setBeamThreshold(Integer.MAX_VALUE);
+				compareTokens(expected.toArray(new Token[expected.size()]), viterbi.getBestTokens(new Sentence(text)));
+
+				viterbi.setBeamWidth(1);
+				viterbi.setBeamThreshold(0);
+				StringBuilder surfaces = new StringBuilder();
+				int end = 0;
+				for (Token token : viterbi.getBestTokens(new Sentence(text))) {
+					assertTrue(token.getStart() >= end);
+					end = token.end();
+					surfaces.append(token.getSurface());
+				}
+				assertEquals(text.replace(" ", ""), surfaces.toString());
+
+				viterbi.setBeamWidth(0);
+				viterbi.setBeamThreshold(-1);
+			}
+		} finally {
+			viterbi.setBeamWidth(0);
+			viterbi.setBeamThreshold(-1);
+		}
+
+	}
+
+
+	/**
+	 * Tests that re-analysing a sentence after each of a random series of
+	 * reading constraint changes gives the same tokens as a full analysis
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testBestTokensAfterChange() throws IOException {
+
+		Viterbi viterbi = SenFactory.getViterbi(SenTestUtils.DIC_PATH);
+		Viterbi fullViterbi = SenFactory.getViterbi(SenTestUtils.DIC_PATH);
+		Random random = new Random(1);
+
+		String text = SENTENCES[1] + SENTENCES[2] + SENTENCES[3] + SENTENCES[1];
+		Sentence sentence = new Sentence(text);
+		viterbi.getBestTokens(sentence);
+
+		for (int i = 0; i < 300; i++) {
+
+			int[] change = changeReadingConstraint(sentence, fullViterbi, random);
+			if (change == null) {
+				continue;
+			}
+			int start = change[0];
+			int end = change[1];
+
+			List<Token> expected = fullViterbi.getBestTokens(sentence);
+			compareTokens(expected.toArray(new Token[expected.size()]), viterbi.getBestTokensAfterChange(sentence, start, end));
+
+		}
+
+	}
+
+
+	/**
+	 * Tests that re-analysing a sentence after each of a random series of
+	 * reading constraint changes, with a beam switched on and off between
+	 * them, gives the same tokens as a full analysis with the same beam
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testBestTokensAfterChangeWithBeam() throws IOException {
+
+		Viterbi viterbi = SenFactory.getViterbi(SenTestUtils.DIC_PATH);
+		Viterbi fullViterbi = SenFactory.getViterbi(SenTestUtils.DIC_PATH);
+		Random random = new Random(2);
+
+		String text = SENTENCES[1] + SENTENCES[2] + SENTENCES[3] + SENTENCES[1];
+		Sentence sentence = new Sentence(text);
+		viterbi.getBestTokens(sentence);
+
+		for (int i = 0; i < 300; i++) {
+
+			int[] change = changeReadingConstraint(sentence, fullViterbi, random);
+			if (change == null) {
+				continue;
+			}
+
+			int beamWidth = random.nextBoolean() ? 1 : 0;
+			viterbi.setBeamWidth(beamWidth);
+			fullViterbi.setBeamWidth(beamWidth);
+
+			List<Token> expected = fullViterbi.getBestTokens(sentence);
+			compareTokens(expected.toArray(new Token[expected.size()]), viterbi.getBestTokensAfterChange(sentence, change[0], change[1]));
+
+		}
+
+	}
+
+
+	/**
+	 * Sets or removes a random reading constraint on a sentence
+	 *
+	 * @param sentence The sentence to change
+	 * @param viterbi A Viterbi to find possible morphemes with
+	 * @param random The source of randomness
+	 * @return The start and end of the change, or <code>null</code> if no
+	 *         change was made
+	 * @throws IOException
+	 */
+	private static int[] changeReadingConstraint(Sentence sentence, Viterbi viterbi, Random random) throws IOException {
+
+		int position = random.nextInt(sentence.length());
+		int start = position;
+		int end;
+
+		if (random.nextInt(3) == 0) {
+			Reading existingConstraint = sentence.getReadingConstraint(position);
+			end = position + ((existingConstraint == null) ? 1 : existingConstraint.length);
+			sentence.removeReadingConstraint(position);
+		} else {
+			// Constrain either a random span to an arbitrary reading, or a
+			// possible morpheme to one of its readings
+			int length = 1 + random.nextInt(Math.min(4, sentence.length() - position));
+			String reading = "ア";
+			List<Token> possibleTokens = viterbi.getPossibleTokens(sentence, position);
+			if (!possibleTokens.isEmpty() && random.nextBoolean()) {
+				Token token = possibleTokens.get(random.nextInt(possibleTokens.size()));
+				if ((position + token.getLength() > sentence.length()) || token.getMorpheme().getReadings().isEmpty()) {
+					return null;
+				}
+				length = token.getLength();
+				reading = token.getMorpheme().getReadings().get(0);
+			}
+
+			// The change covers any existing constraints that the new one
+			// replaces
+			end = position + length;
+			for (int j = end - 1; j >= 0; j--) {
+				Reading existingConstraint = sentence.getReadingConstraint(j);
+				if (existingConstraint != null) {
+					if ((j + existingConstraint.length) <= position) {
+						break;
+					}
+					start = Math.min(start, j);
+					end = Math.max(end, j + existingConstraint.length);
+				}
+			}
+			sentence.setReadingConstraint(new Reading(position, length, reading));
+		}
+
+		return new int[] { start, end };
+
+	}
+
+
+}
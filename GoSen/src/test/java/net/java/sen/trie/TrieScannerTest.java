@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package net.java.sen.trie;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+
+
+/**
+ * Test for TrieScanner
+ */
+public class TrieScannerTest {
+
+	/**
+	 * Builds and maps a Trie
+	 *
+	 * @param keys The sorted keys
+	 * @param values The value of each key
+	 * @return The Trie data
+	 * @throws Exception
+	 */
+	private static IntBuffer buildTrie(String[] keys, int[] values) throws Exception {
+
+		TrieBuilder builder = new TrieBuilder(keys, values, keys.length);
+		File tempFile = File.createTempFile("tst", null);
+		tempFile.deleteOnExit();
+		builder.build(tempFile.getAbsolutePath());
+
+		RandomAccessFile trieFile = new RandomAccessFile(tempFile, "r");
+		IntBuffer trieData = trieFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, trieFile.length()).asIntBuffer();
+		trieFile.close();
+
+		return trieData;
+
+	}
+
+
+	/**
+	 * Finds the keys starting at each index of a string with a
+	 * TrieSearcher, as "start:length:value" strings
+	 *
+	 * @param searcher The searcher
+	 * @param keys The Trie keys, for the length of each value
+	 * @param values The Trie values
+	 * @param text The string to search
+	 * @return The keys found
+	 */
+	private static List<String> search(TrieSearcher searcher, String[] keys, int[] values, final String text) {
+
+		List<String> found = new ArrayList<String>();
+
+		for (int start = 0; start < text.length(); start++) {
+			final int origin = start;
+			CharIterator iterator = new CharIterator() {
+
+				int i = origin;
+
+				@Override
+				public boolean hasNext() {
+					return this.i < text.length();
+				}
+
+				@Override
+				public char next() throws NoSuchElementException {
+					return text.charAt(this.i++);
+				}
+
+			};
+
+			int[] results = new int[256];
+			int count = searcher.commonPrefixSearch(iterator, results);
+			for (int i = 0; i < count; i++) {
+				int key = Arrays.binarySearch(values, results[i]);
+				found.add(start + ":" + keys[key].length() + ":" + results[i]);
+			}
+		}
+
+		return found;
+
+	}
+
+
+	/**
+	 * Finds the keys within a string with a TrieScanner, grouped by starting
+	 * index, as "start:length:value" strings
+	 *
+	 * @param scanner The scanner
+	 * @param text The string to scan
+	 * @return The keys found
+	 */
+	private static List<String> scan(TrieScanner scanner, String text) {
+
+		final List<List<String>> found = new ArrayList<List<String>>();
+		for (int i = 0; i < text.length(); i++) {
+			found.add(new ArrayList<String>());
+		}
+
+		scanner.scan(text.toCharArray(), 0, text.length(), new MatchListener() {
+			@Override
+			public void match(int start, int length, int value) {
+				found.get(start).add(start + ":" + length + ":" + value);
+			}
+		});
+
+		List<String> flattened = new ArrayList<String>();
+		for (List<String> list : found) {
+			flattened.addAll(list);
+		}
+
+		return flattened;
+
+	}
+
+
+	/**
+	 * Tests that a scan finds the same keys in the same order as a search
+	 * from each starting index
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testScan() throws Exception {
+
+		String[] keys = new String[] {
+				"a",
+				"ab",
+				"abc",
+				"abcd",
+				"b",
+				"bc",
+				"bcd",
+				"bd",
+				"c",
+				"cab",
+				"d",
+				"qw",
+				"qwerty",
+				"we",
+				"wert",
+				"x"
+		};
+
+		int[] values = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			values[i] = 100 + i;
+		}
+
+		IntBuffer trieData = buildTrie(keys, values);
+		TrieSearcher searcher = new TrieSearcher(trieData);
+		TrieScanner scanner = new TrieScanner(trieData);
+
+		String[] texts = new String[] {
+				"abcd",
+				"cabcdab",
+				"qwertyqwert",
+				"zzabczz",
+				"bdcabxqwe",
+				"",
+				"y"
+		};
+
+		for (String text : texts) {
+			assertEquals(text, search(searcher, keys, values, text), scan(scanner, text));
+		}
+
+		// The same keys with a compact alphabet, copied to the heap
+		TrieBuilder builder = new TrieBuilder(keys, values, keys.length, true);
+		File tempFile = File.createTempFile("tst", null);
+		tempFile.deleteOnExit();
+		builder.build(tempFile.getAbsolutePath());
+		RandomAccessFile trieFile = new RandomAccessFile(tempFile, "r");
+		Trie trie = Trie.read(trieFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, trieFile.length()), true);
+		trieFile.close();
+
+		TrieScanner compactScanner = new TrieScanner(trie);
+		for (String text : texts) {
+			assertEquals(text, search(searcher, keys, values, text), scan(compactScanner, text));
+		}
+
+	}
+
+
+	/**
+	 * Tests that a scan of part of an array finds only the keys lying wholly
+	 * within that part
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testScanRange() throws Exception {
+
+		String[] keys = new String[] { "ab", "abc", "bc", "c" };
+		int[] values = new int[] { 1, 2, 3, 4 };
+
+		TrieScanner scanner = new TrieScanner(buildTrie(keys, values));
+
+		final List<String> found = new ArrayList<String>();
+		scanner.scan("xabcab".toCharArray(), 1, 3, new MatchListener() {
+			@Override
+			public void match(int start, int length, int value) {
+				found.add(start + ":" + length + ":" + value);
+			}
+		});
+
+		assertEquals(Arrays.asList("1:2:1"), found);
+
+	}
+
+
+}
@@ -23,11 +23,14 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.NoSuchElementException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 
 /**
@@ -107,4 +110,103 @@ public class TrieSearcherTest {
 
 	}
 
+
+	/**
+	 * Tests searching a Trie with a compact alphabet, both mapped and copied
+	 * to the heap
+	 *
+	 * @throws Exception 
+	 */
+	@Test
+	public void testCompactAlphabet() throws Exception {
+
+		String[] keys = new String[] {
+				"b",
+				"ba",
+				"\u3042",
+				"\u3042\u3044",
+				"\u3044",
+				"\u3044\u3046\u3048",
+				"\u4e00",
+				"\u4e00\u3042"
+		};
+
+		int[] values = new int[] { 70, 80, 10, 20, 30, 40, 50, 60 };
+
+		TrieBuilder builder = new TrieBuilder(keys, values, keys.length, true);
+		File tempFile = File.createTempFile("tst", null);
+		tempFile.deleteOnExit();
+		builder.build(tempFile.getAbsolutePath());
+
+		RandomAccessFile trieFile = new RandomAccessFile(tempFile, "r");
+		ByteBuffer trieBuffer = trieFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, trieFile.length());
+		trieFile.close();
+
+		for (boolean onHeap : new boolean[] { false, true }) {
+
+			Trie trie = Trie.read(trieBuffer, onHeap);
+			assertEquals(onHeap, trie.isOnHeap());
+			assertEquals(7, trie.getAlphabetSize());
+			TrieSearcher searcher = new TrieSearcher(trie);
+
+			for (int i = 0; i < keys.length; i++) {
+				int[] results = new int[256];
+				int count = searcher.commonPrefixSearch(iterator(keys[i] + "z"), results);
+				assertTrue(count > 0);
+				assertEquals(values[i], results[count - 1]);
+			}
+
+			int[] results = new int[256];
+			assertEquals(2, searcher.commonPrefixSearch(iterator("\u3042\u3044\u3046"), results));
+			assertEquals(10, results[0]);
+			assertEquals(20, results[1]);
+			assertEquals(0, searcher.commonPrefixSearch(iterator("z\u3042"), results));
+			assertEquals(0, searcher.commonPrefixSearch(iterator("\u3046"), results));
+
+		}
+
+		// A bare Trie is read as before
+		TrieBuilder bareBuilder = new TrieBuilder(keys, values, keys.length);
+		File bareFile = File.createTempFile("tst", null);
+		bareFile.deleteOnExit();
+		bareBuilder.build(bareFile.getAbsolutePath());
+		trieFile = new RandomAccessFile(bareFile, "r");
+		trieBuffer = trieFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, trieFile.length());
+		trieFile.close();
+		Trie trie = Trie.read(trieBuffer, false);
+		assertFalse(trie.isOnHeap());
+		assertEquals(-1, trie.getAlphabetSize());
+		int[] results = new int[256];
+		assertEquals(2, new TrieSearcher(trie).commonPrefixSearch(iterator("\u4e00\u3042"), results));
+		assertEquals(60, results[1]);
+
+	}
+
+
+	/**
+	 * Creates a CharIterator over a string
+	 *
+	 * @param text The string
+	 * @return The iterator
+	 */
+	private static CharIterator iterator(final String text) {
+
+		return new CharIterator() {
+
+			int i = 0;
+
+			@Override
+			public boolean hasNext() {
+				return this.i < text.length();
+			}
+
+			@Override
+			public char next() throws NoSuchElementException {
+				return text.charAt(this.i++);
+			}
+
+		};
+
+	}
+
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2006-2007
+ * Matt Francis <asbel@neosheffield.co.uk>
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package net.java.sen.util;
+
+import net.java.sen.SenTestUtils;
+import net.java.sen.dictionary.Dictionary;
+import net.java.sen.util.BufferCache.SharedBuffer;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Tests for BufferCache
+ */
+public class BufferCacheTest {
+
+	/**
+	 * Creates a temporary file with the given contents
+	 *
+	 * @param contents The contents of the file
+	 * @return The file
+	 * @throws IOException
+	 */
+	private static File createFile(byte[] contents) throws IOException {
+
+		File file = File.createTempFile("buf", null);
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(contents);
+		out.close();
+
+		return file;
+
+	}
+
+
+	/**
+	 * Tests that references to a file share one mapping, which is released
+	 * with the last reference
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testReferenceCount() throws IOException {
+
+		File file = createFile(new byte[] { 1, 2, 3, 4 });
+
+		SharedBuffer first = BufferCache.acquire(file);
+		SharedBuffer second = BufferCache.acquire(file);
+		SharedBuffer third = first.share();
+		assertEquals(3, BufferCache.getReferenceCount(file));
+		assertEquals(3, second.getBuffer().get(2));
+
+		first.close();
+		first.close();
+		assertEquals(2, BufferCache.getReferenceCount(file));
+		assertEquals(4, third.getBuffer().get(3));
+
+		try {
+			first.getBuffer();
+			fail("Closed reference used");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+
+		second.close();
+		third.close();
+		assertEquals(0, BufferCache.getReferenceCount(file));
+
+		// A released file may be mapped again
+		SharedBuffer fourth = BufferCache.acquire(file);
+		assertEquals(1, fourth.getBuffer().get(0));
+		fourth.close();
+		assertEquals(0, BufferCache.getReferenceCount(file));
+
+	}
+
+
+	/**
+	 * Tests that a file modified since it was mapped is mapped again rather
+	 * than shared
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testModifiedFile() throws IOException {
+
+		File file = createFile(new byte[] { 1, 2, 3, 4 });
+
+		SharedBuffer original = BufferCache.acquire(file);
+
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[] { 5, 6, 7, 8, 9, 10 });
+		out.close();
+
+		SharedBuffer modified = BufferCache.acquire(file);
+		assertEquals(6, modified.getBuffer().limit());
+		assertEquals(1, BufferCache.getReferenceCount(file));
+
+		original.close();
+		assertEquals(1, BufferCache.getReferenceCount(file));
+		modified.close();
+		assertEquals(0, BufferCache.getReferenceCount(file));
+
+	}
+
+
+	/**
+	 * Tests that files may be acquired and released concurrently
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentAcquire() throws Exception {
+
+		final File[] files = new File[4];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = createFile(new byte[] { (byte)i });
+		}
+
+		final List<Throwable> errors = new ArrayList<Throwable>();
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < 500; i++) {
+							int f = (offset + i) % files.length;
+							SharedBuffer sharedBuffer = BufferCache.acquire(files[f]);
+							assertEquals(f, sharedBuffer.getBuffer().get(0));
+							sharedBuffer.close();
+						}
+					} catch (Throwable e) {
+						synchronized (errors) {
+							errors.add(e);
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertTrue(errors.toString(), errors.isEmpty());
+		for (File file : files) {
+			assertEquals(0, BufferCache.getReferenceCount(file));
+		}
+
+	}
+
+
+	/**
+	 * Tests that closing a Dictionary releases its files
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testDictionaryClose() throws IOException {
+
+		File directory = new File(SenTestUtils.DIC_PATH).getParentFile();
+		File tokenFile = new File(directory, "token.sen");
+		File trieFile = new File(directory, "trie.sen");
+		int tokenReferences = BufferCache.getReferenceCount(tokenFile);
+		int trieReferences = BufferCache.getReferenceCount(trieFile);
+
+		Dictionary dictionary = new Dictionary(
+				new File(directory, "connectionCost.sen").getPath(),
+				new File(directory, "partOfSpeech.sen").getPath(),
+				tokenFile.getPath(),
+				trieFile.getPath(),
+				true
+		);
+
+		// A trie copied to the heap does not hold its file
+		assertEquals(tokenReferences + 1, BufferCache.getReferenceCount(tokenFile));
+		assertEquals(trieReferences, BufferCache.getReferenceCount(trieFile));
+
+		dictionary.close();
+		assertTrue(dictionary.isClosed());
+		assertEquals(tokenReferences, BufferCache.getReferenceCount(tokenFile));
+
+		dictionary.close();
+		assertEquals(tokenReferences, BufferCache.getReferenceCount(tokenFile));
+
+	}
+
+
+	/**
+	 * Tests that a Dictionary that fails to load releases its files
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testDictionaryFailure() throws IOException {
+
+		File directory = new File(SenTestUtils.DIC_PATH).getParentFile();
+		File connectionCostFile = new File(directory, "connectionCost.sen");
+		File badFile = createFile(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+		int connectionCostReferences = BufferCache.getReferenceCount(connectionCostFile);
+
+		try {
+			new Dictionary(
+					connectionCostFile.getPath(),
+					new File(directory, "partOfSpeech.sen").getPath(),
+					badFile.getPath(),
+					new File(directory, "trie.sen").getPath()
+			);
+			fail("Invalid token file loaded");
+		} catch (Exception e) {
+			// Expected
+		}
+
+		assertEquals(connectionCostReferences, BufferCache.getReferenceCount(connectionCostFile));
+		assertEquals(0, BufferCache.getReferenceCount(badFile));
+
+	}
+
+
+}